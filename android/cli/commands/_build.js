@@ -3406,6 +3406,7 @@ AndroidBuilder.prototype.generateAndroidManifest = function generateAndroidManif
 		geoPermissions = [ 'android.permission.ACCESS_COARSE_LOCATION', 'android.permission.ACCESS_FINE_LOCATION' ],
 		vibratePermissions = [ 'android.permission.VIBRATE' ],
 		wallpaperPermissions = [ 'android.permission.SET_WALLPAPER' ],
+		multicastPermissions = [ 'android.permission.CHANGE_WIFI_MULTICAST_STATE' ],
 
 		permissions = {
 			'android.permission.INTERNET': 1,
@@ -3447,6 +3448,8 @@ AndroidBuilder.prototype.generateAndroidManifest = function generateAndroidManif
 			'Media.Android.setSystemWallpaper': wallpaperPermissions,
 			'Media.showCamera': cameraPermissions,
 			'Media.vibrate': vibratePermissions,
+
+			'Network.Socket.createUDP': multicastPermissions,
 		},
 
 		tiMethodActivities = {
@@ -6,13 +6,22 @@
  */
 package ti.modules.titanium.app;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.appcelerator.kroll.KrollDict;
 import org.appcelerator.kroll.KrollModule;
+import org.appcelerator.kroll.KrollProxy;
 import org.appcelerator.kroll.KrollRuntime;
 import org.appcelerator.kroll.annotations.Kroll;
 import org.appcelerator.kroll.common.Log;
+import org.appcelerator.kroll.common.TiCallTracer;
 import org.appcelerator.titanium.TiApplication;
 import org.appcelerator.titanium.TiBaseActivity;
 import org.appcelerator.titanium.TiContext;
+import org.appcelerator.titanium.io.TiBaseFile;
+import org.appcelerator.titanium.io.TiFileFactory;
 import org.appcelerator.titanium.proxy.ActivityProxy;
 import org.appcelerator.titanium.proxy.IntentProxy;
 import org.appcelerator.titanium.proxy.RProxy;
@@ -112,6 +121,91 @@ public class AndroidModule extends KrollModule
 		return appVersionName;
 	}
 
+	@Kroll.getProperty @Kroll.method
+	public boolean getCallTracingEnabled()
+	{
+		return TiCallTracer.isEnabled();
+	}
+
+	@Kroll.setProperty @Kroll.method
+	public void setCallTracingEnabled(boolean enabled)
+	{
+		TiCallTracer.setEnabled(enabled);
+	}
+
+	@Kroll.method
+	public Object[] getCallTracingStatistics()
+	{
+		List<TiCallTracer.CallStatistics> statistics = TiCallTracer.getStatistics();
+		Object[] result = new Object[statistics.size()];
+		for (int i = 0; i < result.length; i++) {
+			TiCallTracer.CallStatistics stats = statistics.get(i);
+			KrollDict entry = new KrollDict();
+			entry.put("className", stats.className);
+			entry.put("messageId", stats.messageId);
+			entry.put("thread", stats.threadName);
+			entry.put("count", stats.count);
+			entry.put("queueTime", toMillis(stats.queueTime));
+			entry.put("maxQueueTime", toMillis(stats.maxQueueTime));
+			entry.put("executionTime", toMillis(stats.executionTime));
+			entry.put("maxExecutionTime", toMillis(stats.maxExecutionTime));
+			entry.put("blockingCount", stats.blockingCount);
+			entry.put("blockingTime", toMillis(stats.blockingTime));
+			entry.put("maxBlockingTime", toMillis(stats.maxBlockingTime));
+			long[] counts = stats.blockingLatency.getBucketCounts();
+			Object[] histogram = new Object[counts.length];
+			for (int j = 0; j < counts.length; j++) {
+				histogram[j] = counts[j];
+			}
+			entry.put("blockingHistogram", histogram);
+			result[i] = entry;
+		}
+		return result;
+	}
+
+	@Kroll.method
+	public void resetCallTracing()
+	{
+		TiCallTracer.reset();
+	}
+
+	@Kroll.method
+	public KrollDict getPropertyChangeStatistics()
+	{
+		return KrollProxy.getPropertyChangeStatistics();
+	}
+
+	@Kroll.method
+	public String dumpCallTrace(@Kroll.argument(optional=true) String path)
+	{
+		File file;
+		if (path != null) {
+			TiBaseFile tiFile = TiFileFactory.createTitaniumFile(resolveUrl(null, path), false);
+			file = tiFile != null ? tiFile.getNativeFile() : null;
+			if (file == null) {
+				Log.e(TAG, "Unable to write call trace to " + path);
+				return null;
+			}
+
+		} else {
+			file = TiFileFactory.createDataFile("calltrace", ".json");
+		}
+
+		try {
+			TiCallTracer.dumpTraceEvents(file);
+			return file.getAbsolutePath();
+
+		} catch (IOException e) {
+			Log.e(TAG, "Unable to write call trace to " + file.getAbsolutePath(), e);
+			return null;
+		}
+	}
+
+	private static double toMillis(long nanos)
+	{
+		return nanos / 1000000.0;
+	}
+
 	private void initializeVersionValues()
 	{
 		PackageInfo pInfo;
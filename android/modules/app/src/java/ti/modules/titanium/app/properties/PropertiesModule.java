@@ -6,6 +6,7 @@
  */
 package ti.modules.titanium.app.properties;
 
+import org.appcelerator.kroll.KrollDict;
 import org.appcelerator.kroll.KrollModule;
 import org.appcelerator.kroll.annotations.Kroll;
 import org.appcelerator.titanium.TiApplication;
@@ -120,6 +121,20 @@ public class PropertiesModule extends KrollModule {
 		}
 	}
 
+	@Kroll.method
+	public void setProperties(KrollDict properties)
+	{
+		if (appProperties.setProperties(properties).length > 0) {
+			fireEvent(TiC.EVENT_CHANGE, null);
+		}
+	}
+
+	@Kroll.method
+	public void flush()
+	{
+		appProperties.flush();
+	}
+
 	@Override
 	public String getApiName()
 	{
@@ -82,6 +82,23 @@ public abstract class CommonContactsApi
 	protected abstract Intent getIntentForContactsPicker();
 	protected abstract Bitmap getInternalContactImage(long id);
 	protected abstract void removePerson(PersonProxy person);
+
+	/**
+	 * Returns a window of the contacts, ordered by display name.
+	 * @param offset the index of the first contact to return.
+	 * @param limit the maximum number of contacts to return.
+	 * @param fields the person properties to load, or null for all of them. Only the data kinds
+	 * backing these properties are queried.
+	 * @return the page, or null if the contacts can't be queried.
+	 */
+	protected abstract PeoplePage getPeoplePage(int offset, int limit, String[] fields);
+
+	protected static class PeoplePage
+	{
+		PersonProxy[] people;
+		int offset;
+		int total;
+	}
 	
 	protected PersonProxy[] getAllPeople()
 	{
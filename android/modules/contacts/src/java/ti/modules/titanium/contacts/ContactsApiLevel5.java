@@ -12,6 +12,9 @@ import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
 
 import org.appcelerator.kroll.KrollDict;
 import org.appcelerator.kroll.common.Log;
@@ -154,6 +157,35 @@ public class ContactsApiLevel5 extends CommonContactsApi
 	protected static int PEOPLE_COL_NAME = 1;
 	protected static int PEOPLE_COL_PHOTO_ID = 2;
 
+	// The data kind backing each person property that can be requested in getPeoplePage().
+	private static final Map<String, String> FIELD_KINDS = new HashMap<String, String>();
+	static {
+		FIELD_KINDS.put(TiC.PROPERTY_FIRSTNAME, KIND_NAME);
+		FIELD_KINDS.put(TiC.PROPERTY_LASTNAME, KIND_NAME);
+		FIELD_KINDS.put(TiC.PROPERTY_MIDDLENAME, KIND_NAME);
+		FIELD_KINDS.put(TiC.PROPERTY_PREFIX, KIND_NAME);
+		FIELD_KINDS.put(TiC.PROPERTY_SUFFIX, KIND_NAME);
+		FIELD_KINDS.put(TiC.PROPERTY_FIRSTPHONETIC, KIND_NAME);
+		FIELD_KINDS.put(TiC.PROPERTY_MIDDLEPHONETIC, KIND_NAME);
+		FIELD_KINDS.put(TiC.PROPERTY_LASTPHONETIC, KIND_NAME);
+		FIELD_KINDS.put(TiC.PROPERTY_NICKNAME, KIND_NICKNAME);
+		FIELD_KINDS.put(TiC.PROPERTY_NOTE, KIND_NOTE);
+		FIELD_KINDS.put(TiC.PROPERTY_ORGANIZATION, KIND_ORGANIZE);
+		FIELD_KINDS.put(TiC.PROPERTY_JOBTITLE, KIND_ORGANIZE);
+		FIELD_KINDS.put(TiC.PROPERTY_DEPARTMENT, KIND_ORGANIZE);
+		FIELD_KINDS.put(TiC.PROPERTY_BIRTHDAY, KIND_EVENT);
+		FIELD_KINDS.put(TiC.PROPERTY_DATE, KIND_EVENT);
+		FIELD_KINDS.put(TiC.PROPERTY_EMAIL, KIND_EMAIL);
+		FIELD_KINDS.put(TiC.PROPERTY_PHONE, KIND_PHONE);
+		FIELD_KINDS.put(TiC.PROPERTY_ADDRESS, KIND_ADDRESS);
+		FIELD_KINDS.put(TiC.PROPERTY_URL, KIND_WEBSITE);
+		FIELD_KINDS.put(TiC.PROPERTY_INSTANTMSG, KIND_IM);
+		FIELD_KINDS.put(TiC.PROPERTY_RELATED_NAMES, KIND_RELATED_NAME);
+	}
+
+	// Upper bound for the number of contact ids in a single "contact_id IN (...)" data query.
+	private static final int MAX_IDS_PER_DATA_QUERY = 500;
+
 	private static String INConditionForKinds =
 		"('" + KIND_ADDRESS + "','" + KIND_EMAIL + "','" + KIND_EVENT + "','" +
 				KIND_NAME + "','" + KIND_NOTE + "','" + KIND_PHONE + "','"+ KIND_NICKNAME +"','"+KIND_ORGANIZE+"','"+KIND_IM+"','"+KIND_RELATED_NAME+"','"+KIND_WEBSITE+"')";
@@ -232,6 +264,111 @@ public class ContactsApiLevel5 extends CommonContactsApi
 		return proxifyPeople(persons);
 	}
 
+	@Override
+	protected PeoplePage getPeoplePage(int offset, int limit, String[] fields)
+	{
+		if (TiApplication.getInstance() == null) {
+			Log.e(TAG, "Failed to call getPeoplePage(), application is null", Log.DEBUG_MODE);
+			return null;
+		}
+
+		Activity activity = TiApplication.getInstance().getRootOrCurrentActivity();
+		if (activity == null) {
+			Log.e(TAG, "Failed to call getPeoplePage(), activity is null", Log.DEBUG_MODE);
+			return null;
+		}
+		ContentResolver resolver = activity.getContentResolver();
+
+		PeoplePage page = new PeoplePage();
+		page.offset = Math.max(offset, 0);
+		LinkedHashMap<Long, CommonContactsApi.LightPerson> persons = new LinkedHashMap<Long, LightPerson>();
+
+		// Only the three contact columns are read for the whole list, the window is then picked by position.
+		Cursor cursor = resolver.query(ContactsUri, PEOPLE_PROJECTION, null, null,
+			"display_name COLLATE LOCALIZED asc, _id asc");
+		if (cursor == null) {
+			return null;
+		}
+		try {
+			page.total = cursor.getCount();
+			if (limit > 0 && cursor.moveToPosition(page.offset)) {
+				do {
+					CommonContactsApi.LightPerson person = new CommonContactsApi.LightPerson();
+					person.addPersonInfoFromL5PersonRow(cursor);
+					persons.put(person.id, person);
+				} while (persons.size() < limit && cursor.moveToNext());
+			}
+		} finally {
+			cursor.close();
+		}
+
+		String kindsCondition = getKindsCondition(fields);
+		if (kindsCondition != null && !persons.isEmpty()) {
+			ArrayList<Long> ids = new ArrayList<Long>(persons.keySet());
+			for (int start = 0; start < ids.size(); start += MAX_IDS_PER_DATA_QUERY) {
+				StringBuilder condition = new StringBuilder("mimetype IN ").append(kindsCondition).append(" AND contact_id IN (");
+				int end = Math.min(start + MAX_IDS_PER_DATA_QUERY, ids.size());
+				for (int i = start; i < end; i++) {
+					if (i > start) {
+						condition.append(',');
+					}
+					condition.append(ids.get(i));
+				}
+				condition.append(')');
+
+				cursor = resolver.query(DataUri, DATA_PROJECTION, condition.toString(), null,
+					"contact_id asc, mimetype asc, is_super_primary desc, is_primary desc");
+				if (cursor == null) {
+					continue;
+				}
+				try {
+					while (cursor.moveToNext()) {
+						CommonContactsApi.LightPerson person = persons.get(cursor.getLong(DATA_COLUMN_CONTACT_ID));
+						if (person != null) {
+							person.addDataFromL5Cursor(cursor);
+						}
+					}
+				} finally {
+					cursor.close();
+				}
+			}
+		}
+
+		page.people = proxifyPeople(persons);
+		return page;
+	}
+
+	/**
+	 * Builds the "mimetype IN (...)" list for the requested person properties.
+	 * @return the list, or null if none of the fields is backed by a data kind.
+	 */
+	private static String getKindsCondition(String[] fields)
+	{
+		if (fields == null) {
+			return INConditionForKinds;
+		}
+
+		Set<String> kinds = new LinkedHashSet<String>();
+		for (String field : fields) {
+			String kind = FIELD_KINDS.get(field);
+			if (kind != null) {
+				kinds.add(kind);
+			}
+		}
+		if (kinds.isEmpty()) {
+			return null;
+		}
+
+		StringBuilder condition = new StringBuilder("(");
+		for (String kind : kinds) {
+			if (condition.length() > 1) {
+				condition.append(',');
+			}
+			condition.append('\'').append(kind).append('\'');
+		}
+		return condition.append(')').toString();
+	}
+
 	@Override
 	protected Intent getIntentForContactsPicker()
 	{
@@ -9,6 +9,8 @@ package ti.modules.titanium.contacts;
 import java.util.Calendar;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.appcelerator.kroll.KrollDict;
@@ -43,6 +45,10 @@ public class ContactsModule extends KrollModule
 	@Kroll.constant public static final int AUTHORIZATION_RESTRICTED = 1;
 	@Kroll.constant public static final int AUTHORIZATION_UNKNOWN = 0;
 
+	private static final int DEFAULT_PAGE_SIZE = 100;
+
+	// Paged queries run one at a time, off the JS thread.
+	private static final ExecutorService queryExecutor = Executors.newSingleThreadExecutor();
 	
 	private final AtomicInteger requestCodeGen = new AtomicInteger();
 	private final CommonContactsApi contactsApi;
@@ -87,6 +93,58 @@ public class ContactsModule extends KrollModule
 		return persons;
 	}
 	
+	/**
+	 * Returns a window of contacts ordered by name. Supported options are "offset", "limit" (defaults to 100),
+	 * "fields" (the person properties to load, all of them if omitted) and "callback". When a callback is
+	 * given, the query runs in the background and the result is passed to the callback instead of returned.
+	 */
+	@Kroll.method
+	public KrollDict queryPeople(@Kroll.argument(optional=true) KrollDict options)
+	{
+		final int offset = options != null ? options.optInt("offset", 0) : 0;
+		final int limit = options != null ? options.optInt("limit", DEFAULT_PAGE_SIZE) : DEFAULT_PAGE_SIZE;
+		final String[] fields = options != null && options.get("fields") instanceof Object[] ? options.getStringArray("fields") : null;
+		Object callback = options != null ? options.get("callback") : null;
+
+		if (!(callback instanceof KrollFunction)) {
+			return getPeoplePage(offset, limit, fields);
+		}
+
+		final KrollFunction callbackFunction = (KrollFunction) callback;
+		queryExecutor.execute(new Runnable() {
+			public void run()
+			{
+				callbackFunction.callAsync(getKrollObject(), getPeoplePage(offset, limit, fields));
+			}
+		});
+		return null;
+	}
+
+	private KrollDict getPeoplePage(int offset, int limit, String[] fields)
+	{
+		long start = System.currentTimeMillis();
+		KrollDict result = new KrollDict();
+		try {
+			CommonContactsApi.PeoplePage page = contactsApi.getPeoplePage(offset, limit, fields);
+			if (page == null) {
+				result.putCodeAndMessage(TiC.ERROR_CODE_UNKNOWN, "Unable to query contacts");
+				return result;
+			}
+			result.put("people", page.people);
+			result.put("offset", page.offset);
+			result.put("total", page.total);
+			result.put("hasMore", page.offset + page.people.length < page.total);
+			result.putCodeAndMessage(TiC.ERROR_CODE_NO_ERROR, null);
+
+		} catch (Exception e) {
+			Log.e(TAG, "Error while querying contacts: " + e.getMessage(), e);
+			result.putCodeAndMessage(TiC.ERROR_CODE_UNKNOWN, e.getMessage());
+		}
+
+		Log.d(TAG, "queryPeople elapsed: " + (System.currentTimeMillis() - start) + " milliseconds", Log.DEBUG_MODE);
+		return result;
+	}
+
 	@Kroll.method
 	public PersonProxy createPerson(KrollDict options)
 	{
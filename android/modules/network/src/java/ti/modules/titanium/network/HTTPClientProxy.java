@@ -181,6 +181,18 @@ public class HTTPClientProxy extends KrollProxy
 		return client.isConnected();
 	}
 
+	@Kroll.getProperty @Kroll.method
+	public KrollDict getByteCounts()
+	{
+		return client.getByteCounts();
+	}
+
+	@Kroll.getProperty @Kroll.method
+	public KrollDict getTimings()
+	{
+		return client.getTimings();
+	}
+
 	@Kroll.getProperty @Kroll.method
 	public boolean getAutoEncodeUrl()
 	{
@@ -12,7 +12,6 @@ import java.util.List;
 
 import org.apache.http.client.CookieStore;
 import org.apache.http.cookie.Cookie;
-import org.apache.http.impl.client.BasicCookieStore;
 import org.apache.http.impl.cookie.BasicClientCookie;
 import org.appcelerator.kroll.KrollDict;
 import org.appcelerator.kroll.KrollModule;
@@ -42,6 +41,8 @@ public class NetworkModule extends KrollModule {
 	private static CookieStore httpCookieStore;
 
 	public static final String EVENT_CONNECTIVITY = "change";
+	public static final String EVENT_REQUEST_COMPLETE = "requestcomplete";
+	public static final String EVENT_REQUEST_ERROR = "requesterror";
 	public static final String NETWORK_USER_AGENT = System.getProperties().getProperty("http.agent") ;
 
 	@Kroll.constant public static final int NETWORK_NONE = 0;
@@ -159,6 +160,9 @@ public class NetworkModule extends KrollModule {
 			if (!isListeningForConnectivity) {
 				manageConnectivityListener(true);
 			}
+		} else if (EVENT_REQUEST_COMPLETE.equals(event) || EVENT_REQUEST_ERROR.equals(event)) {
+			// Resume requests queued by a previous run once the app is listening for their results.
+			TiRequestQueue.getInstance().start(this);
 		}
 	}
 
@@ -299,19 +303,81 @@ public class NetworkModule extends KrollModule {
 		connectivityManager = null;
 	}
 
+	/**
+	 * Queues a request to be sent when connectivity allows. See {@link TiRequestQueue#enqueue(KrollDict)}.
+	 * @param options the request options.
+	 * @return the id of the request.
+	 */
+	@Kroll.method
+	public String enqueueRequest(KrollDict options)
+	{
+		TiRequestQueue queue = TiRequestQueue.getInstance();
+		queue.start(this);
+		return queue.enqueue(options);
+	}
+
+	@Kroll.method
+	public boolean cancelQueuedRequest(String id)
+	{
+		TiRequestQueue queue = TiRequestQueue.getInstance();
+		queue.start(this);
+		return queue.cancel(id);
+	}
+
+	@Kroll.method
+	public void clearRequestQueue()
+	{
+		TiRequestQueue queue = TiRequestQueue.getInstance();
+		queue.start(this);
+		queue.clear();
+	}
+
+	@Kroll.getProperty @Kroll.method
+	public KrollDict getRequestQueueStats()
+	{
+		TiRequestQueue queue = TiRequestQueue.getInstance();
+		queue.start(this);
+		return queue.getStats();
+	}
+
+	@Kroll.getProperty @Kroll.method
+	public boolean getCollectHTTPMetrics()
+	{
+		return TiHTTPMetrics.getInstance().isEnabled();
+	}
+
+	@Kroll.setProperty @Kroll.method
+	public void setCollectHTTPMetrics(boolean collect)
+	{
+		TiHTTPMetrics.getInstance().setEnabled(collect);
+	}
+
+	/**
+	 * @return the percentiles of the request timings collected per host, as JSON.
+	 */
+	@Kroll.method
+	public String getHTTPMetrics()
+	{
+		return TiHTTPMetrics.getInstance().toJSON();
+	}
+
+	@Kroll.method
+	public void resetHTTPMetrics()
+	{
+		TiHTTPMetrics.getInstance().reset();
+	}
+
 	public static CookieStore getHTTPCookieStoreInstance()
 	{
 		if (httpCookieStore == null) {
-			httpCookieStore = new BasicCookieStore();
+			httpCookieStore = TiCookieStore.getInstance();
 		}
 		return httpCookieStore;
 	}
 
 	/**
-	 * Adds a cookie to the HTTPClient cookie store. Any existing cookie with the same domain and name will be replaced with
-	 * the new cookie. This seems like a bug in org.apache.http.impl.client.BasicCookieStore because based on RFC6265
-	 * (http://tools.ietf.org/html/rfc6265#section-4.1.2), an existing cookie with the same cookie-name, domain-value and
-	 * path-value with the new cookie will be evicted and replaced.
+	 * Adds a cookie to the HTTPClient cookie store. Any existing cookie with the same name, domain and path will be replaced
+	 * with the new cookie (http://tools.ietf.org/html/rfc6265#section-4.1.2). Cookies with an expiry date are persisted.
 	 * @param cookieProxy the cookie to add
 	 */
 	@Kroll.method
@@ -344,7 +410,7 @@ public class NetworkModule extends KrollModule {
 			path = "/";
 		}
 		ArrayList<CookieProxy> cookieList = new ArrayList<CookieProxy>();
-		List<Cookie> cookies = getHTTPCookieStoreInstance().getCookies();
+		List<Cookie> cookies = getHTTPCookiesToMatch(domain);
 		for (Cookie cookie : cookies) {
 			String cookieName = cookie.getName();
 			String cookieDomain = cookie.getDomain();
@@ -375,7 +441,7 @@ public class NetworkModule extends KrollModule {
 			return null;
 		}
 		ArrayList<CookieProxy> cookieList = new ArrayList<CookieProxy>();
-		List<Cookie> cookies = getHTTPCookieStoreInstance().getCookies();
+		List<Cookie> cookies = getHTTPCookiesToMatch(domain);
 		for (Cookie cookie : cookies) {
 			String cookieDomain = cookie.getDomain();
 			if (domainMatch(cookieDomain, domain)) {
@@ -403,6 +469,16 @@ public class NetworkModule extends KrollModule {
 			return;
 		}
 		CookieStore cookieStore = getHTTPCookieStoreInstance();
+		if (cookieStore instanceof TiCookieStore) {
+			TiCookieStore tiCookieStore = (TiCookieStore) cookieStore;
+			for (Cookie cookie : tiCookieStore.getCookiesForHost(domain)) {
+				if (name.equals(cookie.getName()) && stringEqual(domain, cookie.getDomain(), false)
+					&& stringEqual(path, cookie.getPath(), true)) {
+					tiCookieStore.removeCookie(cookie);
+				}
+			}
+			return;
+		}
 		List<Cookie> cookies = new ArrayList<Cookie>(cookieStore.getCookies());
 		cookieStore.clear();
 		for (Cookie cookie : cookies) {
@@ -423,6 +499,15 @@ public class NetworkModule extends KrollModule {
 	public void removeHTTPCookiesForDomain(String domain)
 	{
 		CookieStore cookieStore = getHTTPCookieStoreInstance();
+		if (cookieStore instanceof TiCookieStore && domain != null) {
+			TiCookieStore tiCookieStore = (TiCookieStore) cookieStore;
+			for (Cookie cookie : tiCookieStore.getCookiesForHost(domain)) {
+				if (domainMatch(cookie.getDomain(), domain)) {
+					tiCookieStore.removeCookie(cookie);
+				}
+			}
+			return;
+		}
 		List<Cookie> cookies = new ArrayList<Cookie>(cookieStore.getCookies());
 		cookieStore.clear();
 		for (Cookie cookie : cookies) {
@@ -595,6 +680,19 @@ public class NetworkModule extends KrollModule {
 		}
 	}
 
+	/**
+	 * Returns the cookies that may match the domain. A TiCookieStore only returns the cookies of the domains
+	 * the given domain belongs to, other stores return all cookies.
+	 */
+	private List<Cookie> getHTTPCookiesToMatch(String domain)
+	{
+		CookieStore cookieStore = getHTTPCookieStoreInstance();
+		if (cookieStore instanceof TiCookieStore) {
+			return ((TiCookieStore) cookieStore).getCookiesForHost(domain);
+		}
+		return cookieStore.getCookies();
+	}
+
 	/**
 	 * Helper method to decide whether the path matches the cookie's path. If the cookie's path is null or an empty string, return true.
 	 * If the path is null or an empty string, use "/" as the default value. The path matching follows RFC6265 (http://tools.ietf.org/html/rfc6265#section-5.1.4).
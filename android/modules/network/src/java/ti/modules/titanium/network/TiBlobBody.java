@@ -0,0 +1,107 @@
+/**
+ * Appcelerator Titanium Mobile
+ * Copyright (c) 2014 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Apache Public License
+ * Please see the LICENSE included with this distribution for details.
+ */
+package ti.modules.titanium.network;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.http.entity.mime.MIME;
+import org.apache.http.entity.mime.content.AbstractContentBody;
+import org.apache.james.mime4j.message.BinaryBody;
+import org.appcelerator.titanium.TiBlob;
+
+import android.util.Base64InputStream;
+import android.util.Base64OutputStream;
+
+/**
+ * A multipart body that writes a blob straight to the request. Data, image and string blobs are
+ * written from memory and file blobs (including packaged resources) are copied from their stream,
+ * so nothing is staged in a temporary file.
+ */
+public class TiBlobBody extends AbstractContentBody implements BinaryBody
+{
+	private final TiBlob blob;
+	private final String filename;
+
+	public TiBlobBody(TiBlob blob, String mimeType, String filename)
+	{
+		super(mimeType != null ? mimeType : "application/octet-stream");
+		this.blob = blob;
+		this.filename = filename;
+	}
+
+	public TiBlob getBlob()
+	{
+		return blob;
+	}
+
+	/**
+	 * @return the bytes written by {@link #writeTo(OutputStream, int)}, so base64 encoded streams are encoded.
+	 */
+	public InputStream getInputStream() throws IOException
+	{
+		if (blob.getType() == TiBlob.TYPE_STREAM_BASE64) {
+			return new Base64InputStream(blob.getInputStream(), android.util.Base64.DEFAULT, true);
+		}
+		return blob.getInputStream();
+	}
+
+	/**
+	 * @return false for base64 encoded streams, which can only be read once.
+	 */
+	public boolean isRepeatable()
+	{
+		return blob.getType() != TiBlob.TYPE_STREAM_BASE64;
+	}
+
+	public void writeTo(OutputStream out, int mode) throws IOException
+	{
+		if (blob.getType() == TiBlob.TYPE_STREAM_BASE64) {
+			// Closing the Base64 stream flushes its last block, but must not close the request stream.
+			OutputStream base64Out = new Base64OutputStream(new FilterOutputStream(out) {
+				@Override
+				public void close() throws IOException
+				{
+					flush();
+				}
+			}, android.util.Base64.DEFAULT);
+			blob.writeTo(base64Out);
+			base64Out.close();
+		} else {
+			blob.writeTo(out);
+		}
+		out.flush();
+	}
+
+	public String getTransferEncoding()
+	{
+		return MIME.ENC_BINARY;
+	}
+
+	public String getCharset()
+	{
+		return null;
+	}
+
+	/**
+	 * @return the length of the blob, or -1 for base64 encoded streams whose length isn't known up front.
+	 */
+	public long getContentLength()
+	{
+		if (blob.getType() == TiBlob.TYPE_STREAM_BASE64) {
+			return -1;
+		}
+		return blob.getLength();
+	}
+
+	public String getFilename()
+	{
+		return filename;
+	}
+}
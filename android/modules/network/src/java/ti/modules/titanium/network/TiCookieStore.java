@@ -1,6 +1,6 @@
 /**
  * Appcelerator Titanium Mobile
- * Copyright (c) 2009-2012 by Appcelerator, Inc. All Rights Reserved.
+ * Copyright (c) 2009-2014 by Appcelerator, Inc. All Rights Reserved.
  * Licensed under the terms of the Apache Public License
  * Please see the LICENSE included with this distribution for details.
  */
@@ -8,36 +8,86 @@ package ti.modules.titanium.network;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.util.Set;
 
 import org.apache.commons.codec.binary.Hex;
+import org.apache.http.Header;
+import org.apache.http.HttpException;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.ProtocolException;
 import org.apache.http.client.CookieStore;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.params.HttpClientParams;
+import org.apache.http.client.protocol.ClientContext;
+import org.apache.http.conn.ManagedClientConnection;
 import org.apache.http.cookie.Cookie;
-import org.apache.http.impl.client.BasicCookieStore;
+import org.apache.http.cookie.CookieOrigin;
+import org.apache.http.cookie.CookieSpec;
+import org.apache.http.cookie.CookieSpecRegistry;
 import org.apache.http.impl.cookie.BasicClientCookie;
+import org.apache.http.protocol.ExecutionContext;
+import org.apache.http.protocol.HttpContext;
 import org.appcelerator.kroll.common.Log;
 import org.appcelerator.titanium.TiApplication;
+import org.appcelerator.titanium.util.TiPreferencesWriter;
 
 import android.content.SharedPreferences;
 
+/**
+ * A cookie store that persists cookies in shared preferences. Session cookies, which have no expiry date,
+ * are only kept in memory, so they are gone when the application restarts.
+ * <p>
+ * Cookies are kept in memory indexed by domain, so {@link #getCookies(String, String, boolean)} and
+ * {@link #getCookiesForHost(String)} only look at the domains a host belongs to, and HTTP clients using
+ * this store select request cookies through {@link AddCookiesInterceptor}. Stored cookies are read on
+ * first use and decoded one domain at a time. Changes are written in the background, coalesced over
+ * {@link #FLUSH_DELAY} milliseconds, so adding cookies never waits for the preferences file.
+ */
 public class TiCookieStore implements CookieStore
 {
 
 	private static final String TAG = "TiCookieStore";
 
 	private static final String COOKIE_PREFERENCES = "TiCookiePreferences";
-	private static final String COOKIE_PREFIX = "ti_cookie_";
-	private CookieStore cookieStore;
-	private final SharedPreferences pref;
+	// Keys written by older versions, which only held the cookie name.
+	private static final String LEGACY_COOKIE_PREFIX = "ti_cookie_";
+	// Keys are COOKIE_PREFIX + domain + '\n' + path + '\n' + name, so cookies can be indexed without decoding.
+	private static final String COOKIE_PREFIX = "ti_cookie:";
+
+	/**
+	 * The maximum time in milliseconds a change is held in memory before it is written to disk.
+	 */
+	public static final long FLUSH_DELAY = 500;
+
 	private static TiCookieStore _instance;
 
-	public static TiCookieStore getInstance()
+	private final TiPreferencesWriter writer;
+
+	// Decoded cookies by domain, then by preference key. Guarded by this.
+	private final Map<String, Map<String, Cookie>> cookies = new HashMap<String, Map<String, Cookie>>();
+	// Stored cookies that haven't been decoded yet, by domain, then by preference key. Guarded by this.
+	private final Map<String, Map<String, String>> encodedCookies = new HashMap<String, Map<String, String>>();
+	// The earliest expiry date of the decoded cookies, in milliseconds.
+	private long nextExpiry = Long.MAX_VALUE;
+	private List<Cookie> allCookies;
+	private boolean loaded = false;
+
+	public static synchronized TiCookieStore getInstance()
 	{
 		if (_instance == null) {
 			_instance = new TiCookieStore();
@@ -47,99 +97,338 @@ public class TiCookieStore implements CookieStore
 
 	public TiCookieStore()
 	{
-		cookieStore = new BasicCookieStore();
-		pref = TiApplication.getInstance().getSharedPreferences(COOKIE_PREFERENCES, 0);
-
-		synchronized (cookieStore) {
-			// read from preferences and update local cookie store
-			Map<String, ?> allPrefs = pref.getAll();
-			if (!allPrefs.isEmpty()) {
-				Set<String> keys = allPrefs.keySet();
-				for (String key : keys) {
-					if (key.startsWith(COOKIE_PREFIX)) {
-						String encodedCookie = (String) allPrefs.get(key);
-						if (encodedCookie != null) {
-							Cookie cookie = decodeCookie(encodedCookie);
-							if (cookie != null) {
-								cookieStore.addCookie(cookie);
-							}
-						}
-					}
-				}
-			}
-		}
+		SharedPreferences pref = TiApplication.getInstance().getSharedPreferences(COOKIE_PREFERENCES, 0);
+		writer = new TiPreferencesWriter(pref, FLUSH_DELAY);
 	}
 
 	@Override
-	public void addCookie(Cookie cookie)
+	public synchronized void addCookie(Cookie cookie)
 	{
-		String encodedCookie = encodeCookie(cookie);
-		SharedPreferences.Editor prefWriter = pref.edit();
+		if (cookie == null) {
+			return;
+		}
+		load();
+
+		if (cookie.isExpired(new Date())) {
+			// A cookie that has already expired deletes the stored one.
+			removeCookie(cookie);
+			return;
+		}
 
-		synchronized (cookieStore) {
+		String domain = getDomainKey(cookie.getDomain());
+		String key = getPreferenceKey(cookie);
+		decodeDomain(domain);
+		Map<String, Cookie> domainCookies = cookies.get(domain);
+
+		String encodedCookie = null;
+		if (cookie.isPersistent()) {
+			encodedCookie = encodeCookie(cookie);
 			if (encodedCookie == null) {
 				return;
 			}
+		}
+		if (domainCookies == null) {
+			domainCookies = new LinkedHashMap<String, Cookie>();
+			cookies.put(domain, domainCookies);
+		}
+		domainCookies.put(key, cookie);
+		trackExpiry(cookie);
+		allCookies = null;
+		if (encodedCookie != null) {
+			writer.put(key, encodedCookie);
+		} else if (writer.contains(key)) {
+			// A session cookie replaces the stored cookie with the same key.
+			writer.put(key, null);
+		}
+	}
 
-			cookieStore.addCookie(cookie);
-			prefWriter.putString(COOKIE_PREFIX + cookie.getName(), encodedCookie);
-			prefWriter.commit();
+	/**
+	 * Removes the cookie with the same name, domain and path as the given cookie.
+	 * @param cookie the cookie to remove.
+	 * @return true if a cookie was removed.
+	 */
+	public synchronized boolean removeCookie(Cookie cookie)
+	{
+		if (cookie == null) {
+			return false;
+		}
+		load();
+
+		String domain = getDomainKey(cookie.getDomain());
+		String key = getPreferenceKey(cookie);
+		decodeDomain(domain);
+		Map<String, Cookie> domainCookies = cookies.get(domain);
+		if (domainCookies == null || domainCookies.remove(key) == null) {
+			return false;
 		}
+		if (domainCookies.isEmpty()) {
+			cookies.remove(domain);
+		}
+		allCookies = null;
+		if (writer.contains(key)) {
+			writer.put(key, null);
+		}
+		return true;
 	}
 
 	@Override
-	public void clear()
+	public synchronized void clear()
 	{
-		SharedPreferences.Editor prefWriter = pref.edit();
+		load();
+		for (Map<String, Cookie> domainCookies : cookies.values()) {
+			for (String key : domainCookies.keySet()) {
+				writer.put(key, null);
+			}
+		}
+		for (Map<String, String> domainCookies : encodedCookies.values()) {
+			for (String key : domainCookies.keySet()) {
+				writer.put(key, null);
+			}
+		}
+		cookies.clear();
+		encodedCookies.clear();
+		nextExpiry = Long.MAX_VALUE;
+		allCookies = null;
+	}
 
-		synchronized (cookieStore) {
-			for (String name : getCookieNames()) {
-				prefWriter.remove(COOKIE_PREFIX + name);
+	@Override
+	public synchronized boolean clearExpired(Date date)
+	{
+		load();
+		decodeAll();
+		if (date == null || date.getTime() < nextExpiry) {
+			return false;
+		}
+
+		boolean clearedExpired = false;
+		nextExpiry = Long.MAX_VALUE;
+		Iterator<Map<String, Cookie>> domains = cookies.values().iterator();
+		while (domains.hasNext()) {
+			Map<String, Cookie> domainCookies = domains.next();
+			Iterator<Map.Entry<String, Cookie>> entries = domainCookies.entrySet().iterator();
+			while (entries.hasNext()) {
+				Map.Entry<String, Cookie> entry = entries.next();
+				if (entry.getValue().isExpired(date)) {
+					entries.remove();
+					writer.put(entry.getKey(), null);
+					clearedExpired = true;
+				} else {
+					trackExpiry(entry.getValue());
+				}
+			}
+			if (domainCookies.isEmpty()) {
+				domains.remove();
 			}
-			prefWriter.commit();
-			cookieStore.clear();
 		}
+		if (clearedExpired) {
+			allCookies = null;
+		}
+		return clearedExpired;
 	}
 
+	/**
+	 * Returns all cookies, including expired ones that haven't been cleared. The list is a snapshot
+	 * that is reused until the store changes.
+	 */
 	@Override
-	public boolean clearExpired(Date date)
+	public synchronized List<Cookie> getCookies()
+	{
+		if (allCookies == null) {
+			load();
+			decodeAll();
+			List<Cookie> result = new ArrayList<Cookie>();
+			for (Map<String, Cookie> domainCookies : cookies.values()) {
+				result.addAll(domainCookies.values());
+			}
+			allCookies = Collections.unmodifiableList(result);
+		}
+		return allCookies;
+	}
+
+	/**
+	 * Returns the cookies whose domain is the host or one of its parent domains, including expired ones
+	 * that haven't been cleared. Only the domains the host belongs to are examined.
+	 * @param host the host name.
+	 * @return the cookies of the host's domains.
+	 */
+	public synchronized List<Cookie> getCookiesForHost(String host)
+	{
+		List<Cookie> result = new ArrayList<Cookie>();
+		if (host == null) {
+			return result;
+		}
+		load();
+
+		String domain = getDomainKey(host);
+		while (domain != null) {
+			decodeDomain(domain);
+			Map<String, Cookie> domainCookies = cookies.get(domain);
+			if (domainCookies != null) {
+				result.addAll(domainCookies.values());
+			}
+			int dot = domain.indexOf('.');
+			domain = dot != -1 ? domain.substring(dot + 1) : null;
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the unexpired cookies that would be sent to a URL. Only the domains the host belongs to
+	 * are examined.
+	 * @param host the host name of the URL.
+	 * @param path the path of the URL, or null for "/".
+	 * @param secure whether the URL uses a secure scheme.
+	 * @return the matching cookies.
+	 */
+	public List<Cookie> getCookies(String host, String path, boolean secure)
+	{
+		if (path == null || path.length() == 0) {
+			path = "/";
+		}
+
+		Date now = new Date();
+		List<Cookie> result = getCookiesForHost(host);
+		Iterator<Cookie> iterator = result.iterator();
+		while (iterator.hasNext()) {
+			Cookie cookie = iterator.next();
+			if ((!secure && cookie.isSecure()) || cookie.isExpired(now) || !pathMatches(cookie.getPath(), path)) {
+				iterator.remove();
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Writes all pending changes to disk before returning.
+	 */
+	public void flush()
+	{
+		writer.flush();
+	}
+
+	// Indexes the stored cookies by domain. Must be called while holding the lock on this.
+	private void load()
 	{
-		synchronized (cookieStore) {
-			List<Cookie> cookies = cookieStore.getCookies();
-			boolean clearedExpired = cookieStore.clearExpired(date);
+		if (loaded) {
+			return;
+		}
+		loaded = true;
 
-			if (clearedExpired) {
-				SharedPreferences.Editor prefWriter = pref.edit();
+		for (Map.Entry<String, ?> entry : writer.getAll().entrySet()) {
+			String key = entry.getKey();
+			if (!(entry.getValue() instanceof String)) {
+				continue;
+			}
+			String encodedCookie = (String) entry.getValue();
 
-				for (Cookie cookie : cookies) {
-					if (cookie.isExpired(date)) {
-						prefWriter.remove(COOKIE_PREFIX + cookie.getName());
+			if (key.startsWith(COOKIE_PREFIX)) {
+				int end = key.indexOf('\n', COOKIE_PREFIX.length());
+				if (end == -1) {
+					continue;
+				}
+				String domain = key.substring(COOKIE_PREFIX.length(), end);
+				Map<String, String> domainCookies = encodedCookies.get(domain);
+				if (domainCookies == null) {
+					domainCookies = new HashMap<String, String>();
+					encodedCookies.put(domain, domainCookies);
+				}
+				domainCookies.put(key, encodedCookie);
+
+			} else if (key.startsWith(LEGACY_COOKIE_PREFIX)) {
+				// Move persistent cookies to a key that includes their domain and path.
+				writer.put(key, null);
+				Cookie cookie = decodeCookie(encodedCookie);
+				if (cookie != null && cookie.isPersistent()) {
+					String newKey = getPreferenceKey(cookie);
+					String domain = getDomainKey(cookie.getDomain());
+					Map<String, String> domainCookies = encodedCookies.get(domain);
+					if (domainCookies == null) {
+						domainCookies = new HashMap<String, String>();
+						encodedCookies.put(domain, domainCookies);
 					}
+					domainCookies.put(newKey, encodedCookie);
+					writer.put(newKey, encodedCookie);
 				}
-				prefWriter.commit();
 			}
+		}
+	}
+
+	// Must be called while holding the lock on this.
+	private void decodeDomain(String domain)
+	{
+		Map<String, String> encoded = encodedCookies.remove(domain);
+		if (encoded == null) {
+			return;
+		}
+
+		Map<String, Cookie> domainCookies = cookies.get(domain);
+		if (domainCookies == null) {
+			domainCookies = new LinkedHashMap<String, Cookie>();
+			cookies.put(domain, domainCookies);
+		}
+		for (Map.Entry<String, String> entry : encoded.entrySet()) {
+			// A cookie added before the domain was decoded replaces the stored one.
+			if (domainCookies.containsKey(entry.getKey())) {
+				continue;
+			}
+			Cookie cookie = decodeCookie(entry.getValue());
+			// Session cookies stored by older versions are dropped, as they would be on restart.
+			if (cookie != null && cookie.isPersistent()) {
+				domainCookies.put(entry.getKey(), cookie);
+				trackExpiry(cookie);
+			} else {
+				writer.put(entry.getKey(), null);
+			}
+		}
+		if (domainCookies.isEmpty()) {
+			cookies.remove(domain);
+		}
+	}
 
-			return clearedExpired;
+	// Must be called while holding the lock on this.
+	private void decodeAll()
+	{
+		if (!encodedCookies.isEmpty()) {
+			for (String domain : new ArrayList<String>(encodedCookies.keySet())) {
+				decodeDomain(domain);
+			}
 		}
 	}
 
-	@Override
-	public List<Cookie> getCookies()
+	private void trackExpiry(Cookie cookie)
+	{
+		Date expiryDate = cookie.getExpiryDate();
+		if (expiryDate != null && expiryDate.getTime() < nextExpiry) {
+			nextExpiry = expiryDate.getTime();
+		}
+	}
+
+	private static String getDomainKey(String domain)
 	{
-		synchronized (cookieStore) {
-			return cookieStore.getCookies();
+		if (domain == null) {
+			return "";
 		}
+		domain = domain.toLowerCase(Locale.US);
+		return domain.startsWith(".") ? domain.substring(1) : domain;
 	}
 
-	private List<String> getCookieNames()
+	// Cookies with the same name, domain and path replace each other.
+	private static String getPreferenceKey(Cookie cookie)
 	{
-		List<Cookie> cookies = cookieStore.getCookies();
-		List<String> cookieNames = new ArrayList<String>();
+		String path = cookie.getPath() != null ? cookie.getPath() : "/";
+		return COOKIE_PREFIX + getDomainKey(cookie.getDomain()) + "\n" + path + "\n" + cookie.getName();
+	}
 
-		for (Cookie cookie : cookies) {
-			cookieNames.add(cookie.getName());
+	private static boolean pathMatches(String cookiePath, String path)
+	{
+		if (cookiePath == null || cookiePath.length() == 0) {
+			return true;
+		}
+		if (!path.startsWith(cookiePath)) {
+			return false;
 		}
-		return cookieNames;
+		return path.length() == cookiePath.length() || cookiePath.endsWith("/")
+			|| path.charAt(cookiePath.length()) == '/';
 	}
 
 	private Cookie decodeCookie(String cookieString)
@@ -192,6 +481,88 @@ public class TiCookieStore implements CookieStore
 		return new String(Hex.encodeHex(outputStream.toByteArray()));
 	}
 
+	/**
+	 * Replaces the client's RequestAddCookies interceptor when the cookie store is a TiCookieStore, so the
+	 * cookies of a request are selected from the domains of its host instead of from every cookie.
+	 */
+	public static class AddCookiesInterceptor implements HttpRequestInterceptor
+	{
+		public void process(HttpRequest request, HttpContext context) throws HttpException, IOException
+		{
+			if (request.getRequestLine().getMethod().equalsIgnoreCase("CONNECT")) {
+				return;
+			}
+
+			CookieStore cookieStore = (CookieStore) context.getAttribute(ClientContext.COOKIE_STORE);
+			if (!(cookieStore instanceof TiCookieStore)) {
+				Log.w(TAG, "Cookie store is not a TiCookieStore, no cookies are added", Log.DEBUG_MODE);
+				return;
+			}
+			CookieSpecRegistry registry = (CookieSpecRegistry) context.getAttribute(ClientContext.COOKIESPEC_REGISTRY);
+			if (registry == null) {
+				Log.w(TAG, "Cookie spec registry not available in HTTP context", Log.DEBUG_MODE);
+				return;
+			}
+			HttpHost targetHost = (HttpHost) context.getAttribute(ExecutionContext.HTTP_TARGET_HOST);
+			if (targetHost == null) {
+				throw new IllegalStateException("Target host not specified in HTTP context");
+			}
+			ManagedClientConnection conn = (ManagedClientConnection) context.getAttribute(ExecutionContext.HTTP_CONNECTION);
+			if (conn == null) {
+				throw new IllegalStateException("Client connection not specified in HTTP context");
+			}
+
+			URI requestURI;
+			if (request instanceof HttpUriRequest) {
+				requestURI = ((HttpUriRequest) request).getURI();
+			} else {
+				try {
+					requestURI = new URI(request.getRequestLine().getUri());
+				} catch (URISyntaxException e) {
+					throw new ProtocolException("Invalid request URI: " + request.getRequestLine().getUri(), e);
+				}
+			}
+
+			String hostName = targetHost.getHostName();
+			int port = targetHost.getPort();
+			if (port < 0) {
+				port = conn.getRemotePort();
+			}
+			CookieOrigin cookieOrigin = new CookieOrigin(hostName, port, requestURI.getPath(), conn.isSecure());
+			CookieSpec cookieSpec = registry.getCookieSpec(HttpClientParams.getCookiePolicy(request.getParams()),
+				request.getParams());
+
+			List<Cookie> matchedCookies = new ArrayList<Cookie>();
+			for (Cookie cookie : ((TiCookieStore) cookieStore).getCookies(hostName, requestURI.getPath(), conn.isSecure())) {
+				if (cookieSpec.match(cookie, cookieOrigin)) {
+					matchedCookies.add(cookie);
+				}
+			}
+			if (!matchedCookies.isEmpty()) {
+				for (Header header : cookieSpec.formatCookies(matchedCookies)) {
+					request.addHeader(header);
+				}
+			}
+
+			int version = cookieSpec.getVersion();
+			if (version > 0) {
+				for (Cookie cookie : matchedCookies) {
+					if (cookie.getVersion() != version) {
+						Header header = cookieSpec.getVersionHeader();
+						if (header != null) {
+							request.addHeader(header);
+						}
+						break;
+					}
+				}
+			}
+
+			// ResponseProcessCookies validates the cookies of the response against these.
+			context.setAttribute(ClientContext.COOKIE_SPEC, cookieSpec);
+			context.setAttribute(ClientContext.COOKIE_ORIGIN, cookieOrigin);
+		}
+	}
+
 	protected byte[] hexStringToByteArray(String s)
 	{
 		int len = s.length();
@@ -202,4 +573,4 @@ public class TiCookieStore implements CookieStore
 		return data;
 	}
 
-}
\ No newline at end of file
+}
@@ -6,10 +6,12 @@
  */
 package ti.modules.titanium.network;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -33,7 +35,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import javax.net.ssl.KeyManager;
 import javax.net.ssl.TrustManager;
@@ -61,8 +63,11 @@ import org.apache.http.client.CookieStore;
 import org.apache.http.client.HttpResponseException;
 import org.apache.http.client.ResponseHandler;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.protocol.RequestAddCookies;
+import org.apache.http.conn.ClientConnectionOperator;
 import org.apache.http.conn.params.ConnManagerParams;
 import org.apache.http.conn.params.ConnPerRouteBean;
+import org.apache.http.conn.scheme.LayeredSocketFactory;
 import org.apache.http.conn.scheme.PlainSocketFactory;
 import org.apache.http.conn.scheme.Scheme;
 import org.apache.http.conn.scheme.SchemeRegistry;
@@ -70,8 +75,10 @@ import org.apache.http.conn.ssl.SSLSocketFactory;
 import org.apache.http.cookie.Cookie;
 import org.apache.http.entity.AbstractHttpEntity;
 import org.apache.http.entity.FileEntity;
+import org.apache.http.entity.HttpEntityWrapper;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.entity.mime.MultipartEntity;
+import org.apache.http.entity.mime.content.AbstractContentBody;
 import org.apache.http.entity.mime.content.ContentBody;
 import org.apache.http.entity.mime.content.FileBody;
 import org.apache.http.entity.mime.content.StringBody;
@@ -79,6 +86,7 @@ import org.apache.http.impl.DefaultHttpRequestFactory;
 import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.impl.client.DefaultRedirectHandler;
 import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.message.BasicHeader;
 import org.apache.http.message.BasicHttpEntityEnclosingRequest;
 import org.apache.http.message.BasicNameValuePair;
 import org.apache.http.params.BasicHttpParams;
@@ -87,7 +95,10 @@ import org.apache.http.params.HttpParams;
 import org.apache.http.params.HttpProtocolParams;
 import org.apache.http.protocol.HTTP;
 import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestExecutor;
 import org.apache.http.util.EntityUtils;
+import org.apache.james.mime4j.message.BinaryBody;
+import org.apache.james.mime4j.util.MessageUtils;
 import org.appcelerator.kroll.KrollDict;
 import org.appcelerator.kroll.KrollProxy;
 import org.appcelerator.kroll.common.Log;
@@ -99,16 +110,17 @@ import org.appcelerator.titanium.io.TiBaseFile;
 import org.appcelerator.titanium.io.TiFile;
 import org.appcelerator.titanium.io.TiFileFactory;
 import org.appcelerator.titanium.io.TiResourceFile;
+import org.appcelerator.titanium.io.TiStream;
 import org.appcelerator.titanium.util.TiConvert;
 import org.appcelerator.titanium.util.TiMimeTypeHelper;
 import org.appcelerator.titanium.util.TiPlatformHelper;
+import org.appcelerator.titanium.util.TiStreamHelper;
 import org.appcelerator.titanium.util.TiUrl;
 
 import ti.modules.titanium.xml.DocumentProxy;
 import ti.modules.titanium.xml.XMLModule;
 import android.net.Uri;
 import android.os.Build;
-import android.util.Base64OutputStream;
 
 public class TiHTTPClient
 {
@@ -117,6 +129,7 @@ public class TiHTTPClient
 	private static final String PROPERTY_MAX_BUFFER_SIZE = "ti.android.httpclient.maxbuffersize";
 	private static final int PROTOCOL_DEFAULT_PORT = -1;
 	private static final String TITANIUM_ID_HEADER = "X-Titanium-Id";
+	private static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
 	private static final String TITANIUM_USER_AGENT = "Appcelerator Titanium/" + TiApplication.getInstance().getTiBuildVersion()
 	                                                  + " ("+ Build.MODEL + "; Android API Level: "
 	                                                  + Integer.toString(Build.VERSION.SDK_INT) + "; "
@@ -162,12 +175,21 @@ public class TiHTTPClient
 	private Uri uri;
 	private String url;
 	private String redirectedLocation;
-	private ArrayList<File> tmpFiles = new ArrayList<File>();
 	private ArrayList<X509TrustManager> trustManagers = new ArrayList<X509TrustManager>();
 	private ArrayList<X509KeyManager> keyManagers = new ArrayList<X509KeyManager>();
 	protected SecurityManagerProtocol securityManager;
 	private int tlsVersion = NetworkModule.TLS_DEFAULT;
 
+	// Resumable transfers. resumeFile is the destination of a resumable download and resumeOffset
+	// the length of the partial file being continued. resumableUpload is sent in chunks.
+	private File resumeFile;
+	private long resumeOffset;
+	private TiBlob resumableUpload;
+
+	// Request body bytes before and after compression, and response body bytes after and before decompression.
+	private volatile long sentBytes, sentWireBytes, receivedBytes, receivedWireBytes;
+	private volatile TiHTTPTimings timings;
+
 	private static CookieStore cookieStore = NetworkModule.getHTTPCookieStoreInstance();
 
 
@@ -258,6 +280,11 @@ public class TiHTTPClient
 							Log.w(TAG, "Ignore the provided response file because it is not valid / writable.");
 						}
 					}
+
+					if (c.resumeFile != null && !c.checkResumedResponse(response)) {
+						// An error body must not overwrite the partial download.
+						responseFile = null;
+					}
 				}
 
 				if (Log.isDebugModeEnabled()) {
@@ -274,14 +301,17 @@ public class TiHTTPClient
 				responseStatusLine = response.getStatusLine();
 				entity = response.getEntity();
 				contentEncoding = response.getFirstHeader("Content-Encoding");
+				CountingInputStream wireIn = null;
 				if (entity != null) {
 					if (entity.getContentType() != null) {
 						contentType = entity.getContentType().getValue();
 					}
-					if (contentEncoding != null && contentEncoding.getValue().equalsIgnoreCase("gzip") && entity.getContentLength() != 0) {
-						is = new GZIPInputStream(entity.getContent());
+					// The content of a streamed entity can only be read once.
+					wireIn = new CountingInputStream(entity.getContent());
+					if (contentEncoding != null && entity.getContentLength() != 0) {
+						is = TiStreamHelper.decode(wireIn, contentEncoding.getValue());
 					} else {
-						is = entity.getContent();
+						is = wireIn;
 					}
 					charset = EntityUtils.getContentCharSet(entity);
 				} else {
@@ -294,20 +324,29 @@ public class TiHTTPClient
 					long contentLength = entity.getContentLength();
 					Log.d(TAG, "Content length: " + contentLength, Log.DEBUG_MODE);
 					int count = 0;
-					long totalSize = 0;
+					// A resumed download continues after the bytes already in the file.
+					long totalSize = resumeOffset;
+					if (resumeOffset > 0 && contentLength >= 0) {
+						contentLength += resumeOffset;
+					}
 					byte[] buf = new byte[4096];
 					Log.d(TAG, "Available: " + is.available(), Log.DEBUG_MODE);
 
 					if (entity != null) {
 						charset = EntityUtils.getContentCharSet(entity);
 					}
+					// Content-Length counts encoded bytes, so report progress against those.
+					boolean decoding = is != wireIn;
 					while((count = is.read(buf)) != -1) {
 						if (aborted) {
 							break;
 						}
 						totalSize += count;
+						receivedBytes += count;
+						receivedWireBytes = wireIn.getCount();
+						long transferred = decoding ? resumeOffset + wireIn.getCount() : totalSize;
 						try {
-							handleEntityData(buf, count, totalSize, contentLength);
+							handleEntityData(buf, count, totalSize, transferred, contentLength);
 						} catch (IOException e) {
 							Log.e(TAG, "Error handling entity data", e);
 
@@ -325,6 +364,9 @@ public class TiHTTPClient
 					if (totalSize > 0) {
 						finishedReceivingEntityData(totalSize);
 					}
+					if (resumeFile != null && !aborted) {
+						TiTransferCheckpoints.removeDownload(resumeFile);
+					}
 				}
 			}
 			return clientResponse;
@@ -338,7 +380,7 @@ public class TiHTTPClient
 				tiFile = responseFile;
 				outFile = tiFile.getFile();
 				try {
-					responseOut = new FileOutputStream(outFile, dumpResponseOut);
+					responseOut = new FileOutputStream(outFile, dumpResponseOut || resumeOffset > 0);
 					// If the response file is in the temp folder, don't delete it during cleanup.
 					TiApplication app = TiApplication.getInstance();
 					if (app != null) {
@@ -363,12 +405,12 @@ public class TiHTTPClient
 				tiFile.write(TiBlob.blobFromData(byteStream.toByteArray()), false);
 			}
 
-			responseOut = new FileOutputStream(outFile, dumpResponseOut);
+			responseOut = new FileOutputStream(outFile, dumpResponseOut || resumeOffset > 0);
 			responseData = TiBlob.blobFromFile(tiFile, contentType);
 			return tiFile;
 		}
 		
-		private void handleEntityData(byte[] data, int size, long totalSize, long contentLength) throws IOException
+		private void handleEntityData(byte[] data, int size, long totalSize, long transferred, long contentLength) throws IOException
 		{
 			if (responseOut == null) {
 				if (responseFile != null) {
@@ -399,7 +441,7 @@ public class TiHTTPClient
 
 			TiBlob blob = TiBlob.blobFromData(blobData, contentType);
 			callbackData.put("blob", blob);
-			double progress = ((double)totalSize)/((double)contentLength);
+			double progress = ((double)transferred)/((double)contentLength);
 			// return progress as -1 if it is outside the valid range
 			if (progress > 1 || progress < 0) {
 				progress = NetworkModule.PROGRESS_UNKNOWN;
@@ -777,13 +819,25 @@ public class TiHTTPClient
 		if (client == null) {
 			client = createClient();
 		}
-		List<Cookie> cookies = new ArrayList<Cookie>(client.getCookieStore().getCookies());
-		client.getCookieStore().clear();
+		CookieStore store = client.getCookieStore();
 		String lower_url = url.toLowerCase();
+		String host = Uri.parse(url).getHost();
+		if (store instanceof TiCookieStore && host != null) {
+			// Only the cookies of the URL's domains are looked at, and the others are left untouched.
+			TiCookieStore tiCookieStore = (TiCookieStore) store;
+			for (Cookie cookie : tiCookieStore.getCookiesForHost(host)) {
+				if (lower_url.contains(cookie.getDomain().toLowerCase())) {
+					tiCookieStore.removeCookie(cookie);
+				}
+			}
+			return;
+		}
 
+		List<Cookie> cookies = new ArrayList<Cookie>(store.getCookies());
+		store.clear();
 		for (Cookie cookie : cookies) {
 			if (!lower_url.contains(cookie.getDomain().toLowerCase())) {
-				client.getCookieStore().addCookie(cookie);
+				store.addCookie(cookie);
 			}
 		} 
 	}
@@ -976,81 +1030,583 @@ public class TiHTTPClient
 
 	private int addTitaniumFileAsPostData(String name, Object value)
 	{
-		try {
-			// TiResourceFile cannot use the FileBody approach directly, because it requires
-			// a java File object, which you can't get from packaged resources. So
-			// TiResourceFile uses the approach we use for blobs, which is write out the
-			// contents to a temp file, then use that for the FileBody.
-			if (value instanceof TiBaseFile && !(value instanceof TiResourceFile)) {
-				TiBaseFile baseFile = (TiBaseFile) value;
-				FileBody body = new FileBody(baseFile.getNativeFile(), TiMimeTypeHelper.getMimeType(baseFile.nativePath()));
-				parts.put(name, body);
-				return (int)baseFile.getNativeFile().length();
-
-			} else if (value instanceof TiBlob || value instanceof TiResourceFile) {
-				TiBlob blob;
-				if (value instanceof TiBlob) {
-					blob = (TiBlob) value;
-				} else {
-					blob = ((TiResourceFile) value).read();
-				}
-				String mimeType = blob.getMimeType();
-				File tmpFile = File.createTempFile("tixhr", "." + TiMimeTypeHelper.getFileExtensionFromMimeType(mimeType, "txt"));
-				FileOutputStream fos = new FileOutputStream(tmpFile);
-				if (blob.getType() == TiBlob.TYPE_STREAM_BASE64) {
-					TiBaseFile.copyStream(blob.getInputStream(), new Base64OutputStream(fos, android.util.Base64.DEFAULT));
-				} else {
-					fos.write(blob.getBytes());
-				}
-				fos.close();
+		// Blobs, packaged resources and streams are written to the request as it is sent,
+		// rather than being staged in a temp file first.
+		if (value instanceof TiBaseFile && !(value instanceof TiResourceFile)) {
+			TiBaseFile baseFile = (TiBaseFile) value;
+			FileBody body = new FileBody(baseFile.getNativeFile(), TiMimeTypeHelper.getMimeType(baseFile.nativePath()));
+			parts.put(name, body);
+			return (int)baseFile.getNativeFile().length();
 
-				tmpFiles.add(tmpFile);
+		} else if (value instanceof TiBlob || value instanceof TiResourceFile || value instanceof TiStream) {
+			AbstractContentBody body = createContentBody(name, value);
+			parts.put(name, body);
+			return (int) Math.max(body.getContentLength(), 0);
 
-				FileBody body = new FileBody(tmpFile, mimeType);
-				parts.put(name, body);
-				return (int)tmpFile.length();
+		} else {
+			if (value != null) {
+				Log.e(TAG, name + " is a " + value.getClass().getSimpleName());
 
 			} else {
-				if (value != null) {
-					Log.e(TAG, name + " is a " + value.getClass().getSimpleName());
-
-				} else {
-					Log.e(TAG, name + " is null");
-				}
+				Log.e(TAG, name + " is null");
 			}
-
-		} catch (IOException e) {
-			Log.e(TAG, "Error adding post data ("+name+"): " + e.getMessage());
 		}
 		return 0;
 	}
-	
+
+	private AbstractContentBody createContentBody(String name, Object value)
+	{
+		if (value instanceof TiStream) {
+			return new TiStreamBody((TiStream) value, "application/octet-stream", name);
+		}
+
+		TiBlob blob;
+		if (value instanceof TiBlob) {
+			blob = (TiBlob) value;
+		} else {
+			blob = TiBlob.blobFromFile((TiResourceFile) value);
+		}
+		String mimeType = blob.getMimeType();
+		String filename;
+		if (blob.getType() == TiBlob.TYPE_FILE) {
+			filename = ((TiBaseFile) blob.getData()).name();
+		} else {
+			filename = name + "." + TiMimeTypeHelper.getFileExtensionFromMimeType(mimeType, "txt");
+		}
+		return new TiBlobBody(blob, mimeType, filename);
+	}
+
 	private Object titaniumFileAsPutData(Object value)
 	{
 		if (value instanceof TiBaseFile && !(value instanceof TiResourceFile)) {
 			TiBaseFile baseFile = (TiBaseFile) value;
 			return new FileEntity(baseFile.getNativeFile(), TiMimeTypeHelper.getMimeType(baseFile.nativePath()));
-		} else if (value instanceof TiBlob || value instanceof TiResourceFile) {
-			try {
-				TiBlob blob;
-				if (value instanceof TiBlob) {
-					blob = (TiBlob) value;
+		} else if (value instanceof TiBlob || value instanceof TiResourceFile || value instanceof TiStream) {
+			return new ContentBodyEntity(createContentBody("file", value));
+		}
+		return value;
+	}
+
+	/**
+	 * Sends a single content body as the whole request entity.
+	 */
+	private static class ContentBodyEntity extends AbstractHttpEntity
+	{
+		private final AbstractContentBody body;
+
+		public ContentBodyEntity(AbstractContentBody body)
+		{
+			this.body = body;
+			setContentType(body.getMimeType());
+			setChunked(body.getContentLength() < 0);
+		}
+
+		public InputStream getContent() throws IOException
+		{
+			return ((BinaryBody) body).getInputStream();
+		}
+
+		public long getContentLength()
+		{
+			return body.getContentLength();
+		}
+
+		public boolean isRepeatable()
+		{
+			// Streams can only be read once.
+			if (body instanceof TiBlobBody) {
+				return ((TiBlobBody) body).isRepeatable();
+			}
+			return !(body instanceof TiStreamBody);
+		}
+
+		public boolean isStreaming()
+		{
+			return false;
+		}
+
+		public void writeTo(OutputStream out) throws IOException
+		{
+			body.writeTo(out, MessageUtils.STRICT_IGNORE);
+		}
+	}
+
+	private boolean isCompressRequest()
+	{
+		return TiConvert.toBoolean(proxy.getProperty(TiC.PROPERTY_COMPRESS_REQUEST), false);
+	}
+
+	/**
+	 * @return the request and response body byte counts of the current or last request, before and
+	 * after compression.
+	 */
+	public KrollDict getByteCounts()
+	{
+		KrollDict counts = new KrollDict();
+		counts.put("sent", sentBytes);
+		counts.put("sentWire", sentWireBytes);
+		counts.put("received", receivedBytes);
+		counts.put("receivedWire", receivedWireBytes);
+		return counts;
+	}
+
+	/**
+	 * @return the timeline of the current or last request in milliseconds since send(), or null if
+	 * nothing has been sent.
+	 */
+	public KrollDict getTimings()
+	{
+		TiHTTPTimings current = timings;
+		return current != null ? current.toDict() : null;
+	}
+
+	private void finishTimings()
+	{
+		timings.end = System.nanoTime();
+		timings.sentBytes = sentWireBytes;
+		timings.receivedBytes = receivedWireBytes;
+		TiHTTPMetrics.getInstance().record(timings);
+	}
+
+	/**
+	 * Wraps a request entity to count the bytes it writes and, optionally, to gzip them on the fly.
+	 * A compressed entity has no known length, so it is sent chunked.
+	 */
+	private class EncodingEntity extends HttpEntityWrapper
+	{
+		private final boolean gzip;
+
+		public EncodingEntity(HttpEntity wrapped, boolean gzip)
+		{
+			super(wrapped);
+			this.gzip = gzip;
+		}
+
+		@Override
+		public InputStream getContent() throws IOException
+		{
+			if (gzip) {
+				return new GzipEncodingInputStream(super.getContent());
+			}
+			return super.getContent();
+		}
+
+		@Override
+		public Header getContentEncoding()
+		{
+			return gzip ? new BasicHeader(HTTP.CONTENT_ENCODING, "gzip") : super.getContentEncoding();
+		}
+
+		@Override
+		public long getContentLength()
+		{
+			return gzip ? -1 : super.getContentLength();
+		}
+
+		@Override
+		public boolean isChunked()
+		{
+			return gzip || super.isChunked();
+		}
+
+		@Override
+		public void writeTo(OutputStream out) throws IOException
+		{
+			CountingOutputStream wireOut = new CountingOutputStream(out);
+			if (gzip) {
+				GZIPOutputStream gzipOut = new GZIPOutputStream(wireOut);
+				CountingOutputStream bodyOut = new CountingOutputStream(gzipOut);
+				wrappedEntity.writeTo(bodyOut);
+				gzipOut.finish();
+				gzipOut.flush();
+				sentBytes += bodyOut.getCount();
+			} else {
+				wrappedEntity.writeTo(wireOut);
+				sentBytes += wireOut.getCount();
+			}
+			sentWireBytes += wireOut.getCount();
+		}
+	}
+
+	/**
+	 * Compresses a stream with gzip as it is read, one chunk of the source at a time.
+	 */
+	private static class GzipEncodingInputStream extends InputStream
+	{
+		private final InputStream in;
+		private final ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+		private final GZIPOutputStream gzipOut;
+		private final byte[] chunk = new byte[8192];
+		private byte[] pending = new byte[0];
+		private int position;
+		private boolean finished;
+
+		public GzipEncodingInputStream(InputStream in) throws IOException
+		{
+			this.in = in;
+			this.gzipOut = new GZIPOutputStream(encoded);
+		}
+
+		@Override
+		public int read() throws IOException
+		{
+			byte[] single = new byte[1];
+			return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException
+		{
+			if (len == 0) {
+				return 0;
+			}
+			// The deflater may buffer a whole chunk without output, so keep feeding it until it has some.
+			while (position == pending.length) {
+				if (finished) {
+					return -1;
+				}
+				int count = in.read(chunk);
+				if (count == -1) {
+					gzipOut.finish();
+					finished = true;
 				} else {
-					blob = ((TiResourceFile) value).read();
+					gzipOut.write(chunk, 0, count);
 				}
-				String mimeType = blob.getMimeType();
-				File tmpFile = File.createTempFile("tixhr", "." + TiMimeTypeHelper.getFileExtensionFromMimeType(mimeType, "txt"));
-				FileOutputStream fos = new FileOutputStream(tmpFile);
-				fos.write(blob.getBytes());
-				fos.close();
-		
-				tmpFiles.add(tmpFile);
-				return new FileEntity(tmpFile, mimeType);
-			} catch (IOException e) {
-				Log.e(TAG, "Error adding put data: " + e.getMessage());
+				pending = encoded.toByteArray();
+				encoded.reset();
+				position = 0;
+			}
+			int count = Math.min(len, pending.length - position);
+			System.arraycopy(pending, position, b, off, count);
+			position += count;
+			return count;
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			in.close();
+		}
+	}
+
+	private static class CountingOutputStream extends FilterOutputStream
+	{
+		private long count;
+
+		public CountingOutputStream(OutputStream out)
+		{
+			super(out);
+		}
+
+		public long getCount()
+		{
+			return count;
+		}
+
+		@Override
+		public void write(int b) throws IOException
+		{
+			out.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException
+		{
+			out.write(b, off, len);
+			count += len;
+		}
+	}
+
+	private static class CountingInputStream extends FilterInputStream
+	{
+		private long count;
+
+		public CountingInputStream(InputStream in)
+		{
+			super(in);
+		}
+
+		public long getCount()
+		{
+			return count;
+		}
+
+		@Override
+		public int read() throws IOException
+		{
+			int b = in.read();
+			if (b != -1) {
+				count++;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException
+		{
+			int n = in.read(b, off, len);
+			if (n > 0) {
+				count += n;
+			}
+			return n;
+		}
+
+		@Override
+		public long skip(long n) throws IOException
+		{
+			long skipped = in.skip(n);
+			count += skipped;
+			return skipped;
+		}
+	}
+
+	private boolean isResumable()
+	{
+		return TiConvert.toBoolean(proxy.getProperty(TiC.PROPERTY_RESUMABLE), false);
+	}
+
+	/**
+	 * @return the data as a blob that can be re-read from any offset, or null if it can't be sent in chunks.
+	 */
+	private TiBlob getResumableBlob(Object value)
+	{
+		if (value instanceof TiBlob && ((TiBlob) value).getType() != TiBlob.TYPE_STREAM_BASE64) {
+			return (TiBlob) value;
+		} else if (value instanceof TiBaseFile) {
+			return TiBlob.blobFromFile((TiBaseFile) value);
+		}
+		return null;
+	}
+
+	/**
+	 * Asks the server for the rest of a partially downloaded response file. If-Range makes the
+	 * server send the whole resource instead if it changed since the partial download began.
+	 */
+	private void prepareResumableDownload()
+	{
+		Object f = proxy.getProperty(TiC.PROPERTY_FILE);
+		if (!(f instanceof String)) {
+			return;
+		}
+		TiBaseFile baseFile = TiFileFactory.createTitaniumFile((String) f, false);
+		if (!(baseFile instanceof TiFile)) {
+			return;
+		}
+		resumeFile = ((TiFile) baseFile).getFile();
+
+		// Byte ranges of a compressed representation don't line up with the decoded file.
+		request.setHeader("Accept-Encoding", "identity");
+
+		String validator = TiTransferCheckpoints.getDownloadValidator(url, resumeFile);
+		if (validator != null) {
+			resumeOffset = resumeFile.length();
+			request.setHeader("Range", "bytes=" + resumeOffset + "-");
+			request.setHeader("If-Range", validator);
+			Log.d(TAG, "Resuming download of " + url + " at " + resumeOffset, Log.DEBUG_MODE);
+		}
+	}
+
+	/**
+	 * @return false if the response isn't written to the response file because it is an error. The partial
+	 * file and its checkpoint are then left for a later attempt.
+	 */
+	private boolean checkResumedResponse(HttpResponse response) throws IOException
+	{
+		int statusCode = response.getStatusLine().getStatusCode();
+		if (statusCode == 206 && resumeOffset > 0) {
+			Header contentRange = response.getFirstHeader("Content-Range");
+			if (contentRange == null || parseRangeStart(contentRange.getValue()) != resumeOffset) {
+				TiTransferCheckpoints.removeDownload(resumeFile);
+				throw new IOException("Server resumed the download at an unexpected offset");
+			}
+		} else if (statusCode == 200 || statusCode == 206) {
+			// The whole resource replaces the partial file, so the old checkpoint no longer applies.
+			resumeOffset = 0;
+			TiTransferCheckpoints.removeDownload(resumeFile);
+		} else {
+			// E.g. a transient 5xx or a 416 doesn't say anything about the partial file.
+			resumeOffset = 0;
+			resumeFile = null;
+			return false;
+		}
+
+		String validator = null;
+		Header etag = response.getFirstHeader("ETag");
+		if (etag != null && !etag.getValue().startsWith("W/")) {
+			validator = etag.getValue();
+		} else {
+			Header lastModified = response.getFirstHeader("Last-Modified");
+			if (lastModified != null) {
+				validator = lastModified.getValue();
+			}
+		}
+		if (validator != null) {
+			TiTransferCheckpoints.putDownloadValidator(url, resumeFile, validator);
+		}
+		return true;
+	}
+
+	/**
+	 * @return the first byte position of a "bytes first-last/length" Content-Range value, or -1.
+	 */
+	private static long parseRangeStart(String contentRange)
+	{
+		Matcher matcher = Pattern.compile("bytes\\s+(\\d+)-").matcher(contentRange);
+		return matcher.find() ? Long.parseLong(matcher.group(1)) : -1;
+	}
+
+	/**
+	 * Sends resumableUpload as a series of requests of at most chunkSize bytes, each carrying a
+	 * Content-Range header. After every chunk the server acknowledges with a 2xx or 308 status, the
+	 * offset is checkpointed, so a later send() of the same data to the same URL continues from there.
+	 * The response to the last chunk is handled like a normal response.
+	 */
+	private String executeResumableUpload() throws IOException
+	{
+		// abort() clears the client field from another thread.
+		DefaultHttpClient httpClient = client;
+		final long total = resumableUpload.getLength();
+		// Sources that can't be identified are sent in chunks but always from the start.
+		String key = TiTransferCheckpoints.getUploadKey(method, url, resumableUpload,
+			TiConvert.toString(proxy.getProperty(TiC.PROPERTY_UPLOAD_ID)));
+		long offset = key != null ? Math.min(TiTransferCheckpoints.getUploadOffset(key), total) : 0;
+		int chunkSize = TiConvert.toInt(proxy.getProperty(TiC.PROPERTY_CHUNK_SIZE), DEFAULT_CHUNK_SIZE);
+		if (chunkSize <= 0) {
+			chunkSize = DEFAULT_CHUNK_SIZE;
+		}
+		if (offset > 0) {
+			Log.d(TAG, "Resuming upload to " + url + " at " + offset, Log.DEBUG_MODE);
+		}
+
+		while (!aborted) {
+			long end = Math.min(offset + chunkSize, total);
+			BasicHttpEntityEnclosingRequest chunkRequest = new BasicHttpEntityEnclosingRequest(method, url);
+			chunkRequest.setHeaders(request.getAllHeaders());
+			chunkRequest.removeHeaders("Content-Length");
+			chunkRequest.setParams(request.getParams());
+			if (total > 0) {
+				chunkRequest.setHeader("Content-Range", "bytes " + offset + "-" + (end - 1) + "/" + total);
+			}
+
+			// Content-Range refers to uncompressed bytes, so chunks are never compressed.
+			final long chunkOffset = offset;
+			chunkRequest.setEntity(new EncodingEntity(new ProgressEntity(new BlobRangeEntity(resumableUpload, offset, end - offset),
+				new ProgressListener() {
+					public void progress(int progress) {
+						KrollDict data = new KrollDict();
+						data.put("progress", ((double) (chunkOffset + progress)) / total);
+						dispatchCallback("onsendstream", data);
+					}
+				}), false));
+
+			if (end == total) {
+				String result = httpClient.execute(host, chunkRequest, handler);
+				if (key != null && responseStatusLine != null && responseStatusLine.getStatusCode() < 400) {
+					TiTransferCheckpoints.removeUpload(key);
+				}
+				return result;
+			}
+
+			HttpResponse chunkResponse = httpClient.execute(host, chunkRequest);
+			StatusLine chunkStatus = chunkResponse.getStatusLine();
+			if (chunkResponse.getEntity() != null) {
+				chunkResponse.getEntity().consumeContent();
+			}
+			int statusCode = chunkStatus.getStatusCode();
+			if (statusCode != 308 && (statusCode < 200 || statusCode >= 300)) {
+				throw new HttpResponseException(statusCode, chunkStatus.getReasonPhrase());
+			}
+
+			// The server may say how much it actually stored, e.g. "Range: bytes=0-1048575".
+			offset = end;
+			Header range = chunkResponse.getFirstHeader("Range");
+			if (range != null) {
+				Matcher matcher = Pattern.compile("bytes=0-(\\d+)").matcher(range.getValue());
+				if (matcher.find()) {
+					offset = Math.min(Long.parseLong(matcher.group(1)) + 1, total);
+				}
+			}
+			if (key != null) {
+				TiTransferCheckpoints.putUploadOffset(key, offset);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * An entity that sends length bytes of a blob starting at offset.
+	 */
+	private static class BlobRangeEntity extends AbstractHttpEntity
+	{
+		private final TiBlob blob;
+		private final long offset;
+		private final long length;
+
+		public BlobRangeEntity(TiBlob blob, long offset, long length)
+		{
+			this.blob = blob;
+			this.offset = offset;
+			this.length = length;
+			setContentType(blob.getMimeType());
+		}
+
+		public InputStream getContent() throws IOException
+		{
+			ByteArrayOutputStream out = new ByteArrayOutputStream((int) length);
+			writeTo(out);
+			return new ByteArrayInputStream(out.toByteArray());
+		}
+
+		public long getContentLength()
+		{
+			return length;
+		}
+
+		public boolean isRepeatable()
+		{
+			return true;
+		}
+
+		public boolean isStreaming()
+		{
+			return false;
+		}
+
+		public void writeTo(OutputStream out) throws IOException
+		{
+			InputStream in = blob.getInputStream();
+			if (in == null) {
+				throw new IOException("Unable to read the upload data");
+			}
+			try {
+				long skipped = 0;
+				while (skipped < offset) {
+					long n = in.skip(offset - skipped);
+					if (n <= 0) {
+						if (in.read() == -1) {
+							throw new IOException("Upload data ended before offset " + offset);
+						}
+						n = 1;
+					}
+					skipped += n;
+				}
+
+				byte[] buffer = new byte[16 * 1024];
+				long remaining = length;
+				while (remaining > 0) {
+					int count = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+					if (count == -1) {
+						throw new IOException("Upload data ended early");
+					}
+					out.write(buffer, 0, count);
+					remaining -= count;
+				}
+				out.flush();
+			} finally {
+				in.close();
 			}
 		}
-		return value;
 	}
 
 	protected DefaultHttpClient createClient()
@@ -1066,8 +1622,27 @@ public class TiHTTPClient
 		HttpProtocolParams.setUseExpectContinue(params, false);
 		HttpProtocolParams.setVersion(params, HttpVersion.HTTP_1_1);
 		
-		DefaultHttpClient httpClient = new DefaultHttpClient(new ThreadSafeClientConnManager(params, registry), params);
+		// The connection operator and request executor record the timings of each request.
+		ThreadSafeClientConnManager connManager = new ThreadSafeClientConnManager(params, registry) {
+			@Override
+			protected ClientConnectionOperator createConnectionOperator(SchemeRegistry schreg)
+			{
+				return new TiHTTPTimings.ConnectionOperator(schreg);
+			}
+		};
+		DefaultHttpClient httpClient = new DefaultHttpClient(connManager, params) {
+			@Override
+			protected HttpRequestExecutor createRequestExecutor()
+			{
+				return new TiHTTPTimings.RequestExecutor();
+			}
+		};
 		httpClient.setCookieStore(cookieStore);
+		if (cookieStore instanceof TiCookieStore) {
+			// Select the cookies of each request from the domains of its host.
+			httpClient.removeRequestInterceptorByClass(RequestAddCookies.class);
+			httpClient.addRequestInterceptor(new TiCookieStore.AddCookiesInterceptor());
+		}
 
 		return httpClient;
 	}
@@ -1125,13 +1700,16 @@ public class TiHTTPClient
 			client = createClient();
 		}
 		
+		LayeredSocketFactory httpsSocketFactory;
 		if (sslSocketFactory != null) {
-			client.getConnectionManager().getSchemeRegistry().register(new Scheme("https", sslSocketFactory, 443));
+			httpsSocketFactory = sslSocketFactory;
 		} else if (!validating) {
-			client.getConnectionManager().getSchemeRegistry().register(new Scheme("https", new NonValidatingSSLSocketFactory(), 443));
+			httpsSocketFactory = new NonValidatingSSLSocketFactory();
 		} else {
-			client.getConnectionManager().getSchemeRegistry().register(new Scheme("https", SSLSocketFactory.getSocketFactory(), 443));
+			httpsSocketFactory = SSLSocketFactory.getSocketFactory();
 		}
+		client.getConnectionManager().getSchemeRegistry().register(
+			new Scheme("https", new TiHTTPTimings.TimingSocketFactory(httpsSocketFactory), 443));
 		
 		return client;
 	}
@@ -1143,6 +1721,14 @@ public class TiHTTPClient
 		// TODO consider using task manager
 		int totalLength = 0;
 		needMultipart = false;
+		resumeFile = null;
+		resumeOffset = 0;
+		resumableUpload = null;
+		sentBytes = 0;
+		sentWireBytes = 0;
+		receivedBytes = 0;
+		receivedWireBytes = 0;
+		timings = new TiHTTPTimings(uri != null ? uri.getHost() : null);
 		
 		if (userData != null)
 		{
@@ -1161,7 +1747,7 @@ public class TiHTTPClient
 							value = ((TiFileProxy) value).getBaseFile();
 						}
 
-						if (value instanceof TiBaseFile || value instanceof TiBlob) {
+						if (value instanceof TiBaseFile || value instanceof TiBlob || value instanceof TiStream) {
 							needMultipart = true;
 							break;
 						}
@@ -1177,7 +1763,7 @@ public class TiHTTPClient
 							value = ((TiFileProxy) value).getBaseFile();
 						}
 
-						if (value instanceof TiBaseFile || value instanceof TiBlob) {
+						if (value instanceof TiBaseFile || value instanceof TiBlob || value instanceof TiStream) {
 							totalLength += addTitaniumFileAsPostData(key, value);
 
 						} else {
@@ -1196,12 +1782,16 @@ public class TiHTTPClient
 				if (queryStringAltered) {
 					this.url = uri.toString();
 				}
-			} else if (userData instanceof TiFileProxy || userData instanceof TiBaseFile || userData instanceof TiBlob) {
+			} else if (userData instanceof TiFileProxy || userData instanceof TiBaseFile || userData instanceof TiBlob
+				|| userData instanceof TiStream) {
 				Object value = userData;
 				if (value instanceof TiFileProxy) {
 					value = ((TiFileProxy) value).getBaseFile();
 				}
-				if (value instanceof TiBaseFile || value instanceof TiBlob) {
+				TiBlob resumableBlob = isResumable() ? getResumableBlob(value) : null;
+				if (resumableBlob != null) {
+					resumableUpload = resumableBlob;
+				} else if (value instanceof TiBaseFile || value instanceof TiBlob || value instanceof TiStream) {
 					setRawData(titaniumFileAsPutData(value));
 				} else {
 					setRawData(TiConvert.toString(value));
@@ -1219,6 +1809,12 @@ public class TiHTTPClient
 		for (String header : headers.keySet()) {
 			request.setHeader(header, headers.get(header));
 		}
+		if (!request.containsHeader("Accept-Encoding")) {
+			request.setHeader("Accept-Encoding", "gzip, deflate");
+		}
+		if (isResumable() && method.equals("GET")) {
+			prepareResumableDownload();
+		}
 
 		clientThread = new Thread(new ClientRunnable(totalLength), "TiHttpClient-" + httpClientThreadCounter.incrementAndGet());
 		clientThread.setPriority(Thread.MIN_PRIORITY);
@@ -1241,6 +1837,8 @@ public class TiHTTPClient
 			try {
 				Thread.sleep(10);
 				Log.d(TAG, "send()", Log.DEBUG_MODE);
+				timings.start = System.nanoTime();
+				TiHTTPTimings.setCurrent(timings);
 
 				handler = new LocalResponseHandler(TiHTTPClient.this);
 
@@ -1317,6 +1915,7 @@ public class TiHTTPClient
 					//Remove Content-Length header if entity is set since setEntity implicitly sets Content-Length
 					HttpEntityEnclosingRequest enclosingEntity = (HttpEntityEnclosingRequest) request;
 					if (enclosingEntity.getEntity() != null) {
+						enclosingEntity.setEntity(new EncodingEntity(enclosingEntity.getEntity(), isCompressRequest()));
 						request.removeHeaders("Content-Length");
 					}
 				}
@@ -1334,7 +1933,14 @@ public class TiHTTPClient
 					return;
 				}
 				try {
-					result = client.execute(host, request, handler);
+					if (resumableUpload != null) {
+						result = executeResumableUpload();
+						if (aborted) {
+							return;
+						}
+					} else {
+						result = client.execute(host, request, handler);
+					}
 				} catch (IOException e) {
 					if (!aborted) {
 						throw e;
@@ -1352,6 +1958,7 @@ public class TiHTTPClient
 				}
 
 				if (!aborted) {
+					finishTimings();
 					setReadyState(READY_STATE_DONE);
 				}
 
@@ -1374,12 +1981,13 @@ public class TiHTTPClient
 				}
 				Log.e(TAG, "HTTP Error (" + t.getClass().getName() + "): " + msg, t);
 
+				if (!aborted) {
+					finishTimings();
+				}
 				KrollDict data = new KrollDict();
 				data.putCodeAndMessage(TiC.ERROR_CODE_UNKNOWN, msg);
 				dispatchCallback("onerror", data);
 			} finally {
-				deleteTmpFiles();
-				
 				//Clean up response,request,client,handler and clientThread
 				if(response != null) {
 					responseHeaders = response.getAllHeaders();
@@ -1390,6 +1998,7 @@ public class TiHTTPClient
 				handler = null;
 				client = null;
 				clientThread = null;
+				TiHTTPTimings.setCurrent(null);
 				
 				// Fire the disposehandle event if the request is finished successfully or the errors occur.
 				// And it will dispose the handle of the httpclient in the JS.
@@ -1399,18 +2008,6 @@ public class TiHTTPClient
 		}
 	}
 
-	private void deleteTmpFiles()
-	{
-		if (tmpFiles.isEmpty()) {
-			return;
-		}
-
-		for (File tmpFile : tmpFiles) {
-			tmpFile.delete();
-		}
-		tmpFiles.clear();
-	}
-
 	private void handleURLEncodedData(UrlEncodedFormEntity form)
 	{
 		AbstractHttpEntity entity = null;
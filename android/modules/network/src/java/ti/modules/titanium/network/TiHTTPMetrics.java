@@ -0,0 +1,173 @@
+/**
+ * Appcelerator Titanium Mobile
+ * Copyright (c) 2014 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Apache Public License
+ * Please see the LICENSE included with this distribution for details.
+ */
+package ti.modules.titanium.network;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.appcelerator.kroll.common.Log;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Aggregates the timings of completed HTTPClient requests per host. Each phase keeps the durations of
+ * the last {@link #WINDOW_SIZE} requests to the host, and percentiles are computed from them on export.
+ * Nothing is recorded until collection is enabled.
+ */
+public class TiHTTPMetrics
+{
+	private static final String TAG = "TiHTTPMetrics";
+
+	/**
+	 * The number of recent requests per host the percentiles are computed from.
+	 */
+	public static final int WINDOW_SIZE = 200;
+
+	private static final String[] PHASES = { "queue", "dns", "connect", "tls", "request", "wait", "transfer", "total" };
+	private static final double[] PERCENTILES = { 50, 90, 99 };
+
+	protected static TiHTTPMetrics _instance;
+
+	private final Map<String, HostMetrics> hosts = new HashMap<String, HostMetrics>();
+	private volatile boolean enabled = false;
+
+	public static synchronized TiHTTPMetrics getInstance()
+	{
+		if (_instance == null) {
+			_instance = new TiHTTPMetrics();
+		}
+		return _instance;
+	}
+
+	public boolean isEnabled()
+	{
+		return enabled;
+	}
+
+	public void setEnabled(boolean enabled)
+	{
+		this.enabled = enabled;
+	}
+
+	/**
+	 * Adds the timings of a completed request, if collection is enabled.
+	 */
+	public void record(TiHTTPTimings timings)
+	{
+		if (!enabled || timings.host == null || timings.end == 0) {
+			return;
+		}
+
+		long[] durations = {
+			TiHTTPTimings.between(timings.queued, timings.start),
+			TiHTTPTimings.between(timings.dnsStart, timings.dnsEnd),
+			timings.getConnectTime(),
+			TiHTTPTimings.between(timings.tlsStart, timings.tlsEnd),
+			TiHTTPTimings.between(timings.requestStart, timings.requestEnd),
+			TiHTTPTimings.between(timings.requestEnd, timings.firstByte),
+			TiHTTPTimings.between(timings.firstByte, timings.end),
+			TiHTTPTimings.between(timings.queued, timings.end)
+		};
+
+		synchronized (hosts) {
+			HostMetrics metrics = hosts.get(timings.host);
+			if (metrics == null) {
+				metrics = new HostMetrics();
+				hosts.put(timings.host, metrics);
+			}
+			metrics.add(durations, timings);
+		}
+	}
+
+	public void reset()
+	{
+		synchronized (hosts) {
+			hosts.clear();
+		}
+	}
+
+	/**
+	 * Returns the metrics as a JSON object keyed by host. Each host has the number of requests, how many
+	 * reused a connection, the bytes sent and received, and the 50th, 90th and 99th percentile of each
+	 * phase in milliseconds.
+	 */
+	public String toJSON()
+	{
+		JSONObject json = new JSONObject();
+		synchronized (hosts) {
+			try {
+				for (Map.Entry<String, HostMetrics> entry : hosts.entrySet()) {
+					json.put(entry.getKey(), entry.getValue().toJSON());
+				}
+			} catch (JSONException e) {
+				Log.e(TAG, "Unable to export HTTP metrics: " + e.getMessage(), e);
+			}
+		}
+		return json.toString();
+	}
+
+	private static class HostMetrics
+	{
+		// Durations in nanoseconds by phase, as ring buffers. -1 means the phase didn't happen.
+		private final long[][] samples = new long[PHASES.length][WINDOW_SIZE];
+		private int next;
+		private int size;
+		private long count;
+		private long reused;
+		private long sentBytes;
+		private long receivedBytes;
+
+		void add(long[] durations, TiHTTPTimings timings)
+		{
+			for (int i = 0; i < PHASES.length; i++) {
+				samples[i][next] = durations[i];
+			}
+			next = (next + 1) % WINDOW_SIZE;
+			size = Math.min(size + 1, WINDOW_SIZE);
+			count++;
+			if (timings.reused) {
+				reused++;
+			}
+			sentBytes += timings.sentBytes;
+			receivedBytes += timings.receivedBytes;
+		}
+
+		JSONObject toJSON() throws JSONException
+		{
+			JSONObject json = new JSONObject();
+			json.put("count", count);
+			json.put("reused", reused);
+			json.put("sent", sentBytes);
+			json.put("received", receivedBytes);
+
+			long[] sorted = new long[size];
+			for (int i = 0; i < PHASES.length; i++) {
+				// Skip requests where the phase didn't happen.
+				int n = 0;
+				for (int j = 0; j < size; j++) {
+					if (samples[i][j] >= 0) {
+						sorted[n++] = samples[i][j];
+					}
+				}
+				if (n == 0) {
+					continue;
+				}
+				Arrays.sort(sorted, 0, n);
+
+				JSONObject phase = new JSONObject();
+				phase.put("samples", n);
+				for (double percentile : PERCENTILES) {
+					int rank = (int) Math.ceil(percentile / 100 * n) - 1;
+					phase.put("p" + (int) percentile, sorted[Math.max(rank, 0)] / 1000000.0);
+				}
+				json.put(PHASES[i], phase);
+			}
+			return json;
+		}
+	}
+}
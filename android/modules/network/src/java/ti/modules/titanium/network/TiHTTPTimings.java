@@ -0,0 +1,250 @@
+/**
+ * Appcelerator Titanium Mobile
+ * Copyright (c) 2014 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Apache Public License
+ * Please see the LICENSE included with this distribution for details.
+ */
+package ti.modules.titanium.network;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.UnknownHostException;
+
+import javax.net.ssl.SSLSocket;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpException;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.conn.OperatedClientConnection;
+import org.apache.http.conn.scheme.LayeredSocketFactory;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.impl.conn.DefaultClientConnectionOperator;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestExecutor;
+import org.appcelerator.kroll.KrollDict;
+
+/**
+ * The timeline of one HTTPClient request. Each phase is recorded as a pair of {@link System#nanoTime()}
+ * timestamps, 0 meaning the phase didn't happen, e.g. no DNS lookup or connect on a reused connection.
+ * <p>
+ * The connection manager, socket factory and request executor of the client record into the timings
+ * of the request running on the current thread, set with {@link #setCurrent(TiHTTPTimings)}. When a
+ * request is redirected or sent in chunks, the phases are those of the last exchange.
+ */
+public class TiHTTPTimings
+{
+	private static final ThreadLocal<TiHTTPTimings> current = new ThreadLocal<TiHTTPTimings>();
+
+	public final String host;
+	public final long queued;
+	public volatile long start, dnsStart, dnsEnd, connectStart, connectEnd, tlsStart, tlsEnd;
+	public volatile long requestStart, requestEnd, firstByte, end;
+	public volatile boolean reused;
+	public volatile long sentBytes, receivedBytes;
+
+	// Set when a connection is opened, and cleared when a request is written on it.
+	private boolean connectionOpened;
+
+	public TiHTTPTimings(String host)
+	{
+		this.host = host;
+		this.queued = System.nanoTime();
+	}
+
+	public static void setCurrent(TiHTTPTimings timings)
+	{
+		if (timings != null) {
+			current.set(timings);
+		} else {
+			current.remove();
+		}
+	}
+
+	public static TiHTTPTimings getCurrent()
+	{
+		return current.get();
+	}
+
+	/**
+	 * @return the connect time in nanoseconds, excluding the TLS handshake where it could be measured
+	 * separately, or -1 if no connection was opened.
+	 */
+	public long getConnectTime()
+	{
+		if (connectStart == 0 || connectEnd == 0) {
+			return -1;
+		}
+		return (tlsStart != 0 ? tlsStart : connectEnd) - connectStart;
+	}
+
+	/**
+	 * @return the time in nanoseconds between two timestamps, or -1 if either phase didn't happen.
+	 */
+	public static long between(long from, long to)
+	{
+		return (from == 0 || to == 0) ? -1 : to - from;
+	}
+
+	/**
+	 * Returns the timeline in milliseconds since the request was queued by send(). Phases that didn't
+	 * happen are -1.
+	 */
+	public KrollDict toDict()
+	{
+		KrollDict dict = new KrollDict();
+		dict.put("queued", 0.0);
+		dict.put("start", toMillis(start));
+		dict.put("dnsStart", toMillis(dnsStart));
+		dict.put("dnsEnd", toMillis(dnsEnd));
+		dict.put("connectStart", toMillis(connectStart));
+		dict.put("connectEnd", toMillis(connectEnd));
+		dict.put("tlsStart", toMillis(tlsStart));
+		dict.put("tlsEnd", toMillis(tlsEnd));
+		dict.put("requestStart", toMillis(requestStart));
+		dict.put("requestEnd", toMillis(requestEnd));
+		dict.put("firstByte", toMillis(firstByte));
+		dict.put("end", toMillis(end));
+		dict.put("reused", reused);
+		dict.put("sent", sentBytes);
+		dict.put("received", receivedBytes);
+		return dict;
+	}
+
+	private double toMillis(long timestamp)
+	{
+		return timestamp == 0 ? -1 : (timestamp - queued) / 1000000.0;
+	}
+
+	/**
+	 * Times the DNS lookup and connect of new connections. The lookup is made here so that it can be
+	 * timed, and the operator's own lookup is then answered from the address cache.
+	 */
+	public static class ConnectionOperator extends DefaultClientConnectionOperator
+	{
+		public ConnectionOperator(SchemeRegistry schemes)
+		{
+			super(schemes);
+		}
+
+		@Override
+		public void openConnection(OperatedClientConnection conn, HttpHost target, InetAddress local,
+			HttpContext context, HttpParams params) throws IOException
+		{
+			TiHTTPTimings timings = getCurrent();
+			if (timings == null) {
+				super.openConnection(conn, target, local, context, params);
+				return;
+			}
+
+			timings.connectionOpened = true;
+			timings.tlsStart = 0;
+			timings.tlsEnd = 0;
+			timings.dnsStart = System.nanoTime();
+			try {
+				InetAddress.getAllByName(target.getHostName());
+			} catch (UnknownHostException e) {
+				// The operator reports the failure.
+			}
+			timings.dnsEnd = System.nanoTime();
+			timings.connectStart = timings.dnsEnd;
+			timings.connectEnd = 0;
+			super.openConnection(conn, target, local, context, params);
+			timings.connectEnd = System.nanoTime();
+		}
+	}
+
+	/**
+	 * Wraps the socket factory of a secure scheme to time the TLS handshake when the connection
+	 * operator layers TLS over a plain socket.
+	 */
+	public static class TimingSocketFactory implements LayeredSocketFactory
+	{
+		private final LayeredSocketFactory delegate;
+
+		public TimingSocketFactory(LayeredSocketFactory delegate)
+		{
+			this.delegate = delegate;
+		}
+
+		public Socket createSocket() throws IOException
+		{
+			return delegate.createSocket();
+		}
+
+		public Socket connectSocket(Socket sock, String host, int port, InetAddress localAddress, int localPort,
+			HttpParams params) throws IOException
+		{
+			return delegate.connectSocket(sock, host, port, localAddress, localPort, params);
+		}
+
+		public boolean isSecure(Socket sock)
+		{
+			return delegate.isSecure(sock);
+		}
+
+		public Socket createSocket(Socket socket, String host, int port, boolean autoClose) throws IOException,
+			UnknownHostException
+		{
+			TiHTTPTimings timings = getCurrent();
+			if (timings == null) {
+				return delegate.createSocket(socket, host, port, autoClose);
+			}
+
+			timings.tlsStart = System.nanoTime();
+			Socket secureSocket = delegate.createSocket(socket, host, port, autoClose);
+			if (secureSocket instanceof SSLSocket) {
+				// Handshake now rather than on the first write. A failed handshake leaves an invalid
+				// session, and the error is reported when the request is written.
+				((SSLSocket) secureSocket).getSession();
+			}
+			timings.tlsEnd = System.nanoTime();
+			return secureSocket;
+		}
+	}
+
+	/**
+	 * Times writing the request and waiting for the response headers.
+	 */
+	public static class RequestExecutor extends HttpRequestExecutor
+	{
+		@Override
+		protected HttpResponse doSendRequest(HttpRequest request, HttpClientConnection conn, HttpContext context)
+			throws IOException, HttpException
+		{
+			TiHTTPTimings timings = getCurrent();
+			if (timings != null) {
+				timings.reused = !timings.connectionOpened;
+				timings.connectionOpened = false;
+				if (timings.reused) {
+					timings.dnsStart = timings.dnsEnd = 0;
+					timings.connectStart = timings.connectEnd = 0;
+					timings.tlsStart = timings.tlsEnd = 0;
+				}
+				timings.requestStart = System.nanoTime();
+				timings.requestEnd = 0;
+				timings.firstByte = 0;
+			}
+			HttpResponse response = super.doSendRequest(request, conn, context);
+			if (timings != null) {
+				timings.requestEnd = System.nanoTime();
+			}
+			return response;
+		}
+
+		@Override
+		protected HttpResponse doReceiveResponse(HttpRequest request, HttpClientConnection conn, HttpContext context)
+			throws HttpException, IOException
+		{
+			HttpResponse response = super.doReceiveResponse(request, conn, context);
+			TiHTTPTimings timings = getCurrent();
+			if (timings != null) {
+				timings.firstByte = System.nanoTime();
+			}
+			return response;
+		}
+	}
+}
@@ -0,0 +1,601 @@
+/**
+ * Appcelerator Titanium Mobile
+ * Copyright (c) 2014 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Apache Public License
+ * Please see the LICENSE included with this distribution for details.
+ */
+package ti.modules.titanium.network;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.appcelerator.kroll.KrollDict;
+import org.appcelerator.kroll.KrollProxy;
+import org.appcelerator.kroll.common.Log;
+import org.appcelerator.titanium.TiApplication;
+import org.appcelerator.titanium.TiC;
+import org.appcelerator.titanium.util.TiConvert;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
+
+/**
+ * A persistent queue of HTTP requests that are sent with {@link TiHTTPClient} when the network allows.
+ * <p>
+ * Queued requests are stored in shared preferences until they complete, so they survive the application
+ * being stopped while offline. Nothing is sent while there is no connectivity, and requests marked
+ * wifiOnly wait for a Wi-Fi connection. When connectivity returns, the queue waits a short, jittered
+ * delay before replaying so that a flapping network doesn't cause bursts of requests. Failed requests
+ * are retried with exponential backoff and full jitter.
+ * <p>
+ * Urgent requests are sent as soon as possible. Other requests are held for up to {@link #BATCH_INTERVAL}
+ * and go out together, or alongside the next urgent request, so the cellular radio wakes less often.
+ * <p>
+ * Results are fired as {@link NetworkModule#EVENT_REQUEST_COMPLETE} and {@link NetworkModule#EVENT_REQUEST_ERROR}
+ * events on the module that started the queue.
+ */
+public class TiRequestQueue
+{
+	private static final String TAG = "TiRequestQueue";
+	private static final String PREFS_NAME = "titanium.network.requestqueue";
+
+	public static final String PROPERTY_METHOD = "method";
+	public static final String PROPERTY_HEADERS = "headers";
+	public static final String PROPERTY_URGENT = "urgent";
+	public static final String PROPERTY_WIFI_ONLY = "wifiOnly";
+	public static final String PROPERTY_MAX_RETRIES = "maxRetries";
+	private static final String PROPERTY_ATTEMPTS = "attempts";
+	private static final String PROPERTY_ENQUEUED = "enqueued";
+
+	/**
+	 * The longest time in milliseconds a request that isn't urgent is held back to be batched with others.
+	 */
+	public static final long BATCH_INTERVAL = 60 * 1000;
+	public static final long INITIAL_BACKOFF = 1000;
+	public static final long MAX_BACKOFF = 5 * 60 * 1000;
+	/**
+	 * The minimum time in milliseconds connectivity has to be back before requests are replayed. A random
+	 * delay of up to the same length is added.
+	 */
+	public static final long RECONNECT_DELAY = 2000;
+	public static final int DEFAULT_MAX_RETRIES = 8;
+	public static final int DEFAULT_TIMEOUT = 30000;
+	private static final int MAX_IN_FLIGHT = 3;
+	private static final int LATENCY_SAMPLES = 100;
+
+	protected static TiRequestQueue _instance;
+
+	private final Random random = new Random();
+	// Requests in the order they were queued, including those in flight.
+	private final List<QueuedRequest> queue = new ArrayList<QueuedRequest>();
+	private ScheduledExecutorService executor;
+	private ScheduledFuture<?> scheduledDispatch;
+	private long scheduledDispatchTime;
+	private final SharedPreferences prefs;
+	private WeakReference<KrollProxy> eventTarget;
+	private boolean started = false;
+
+	private TiNetworkListener networkListener;
+	private boolean online = false;
+	private boolean wifi = false;
+	private int inFlight = 0;
+
+	private long completed, failed, retries;
+	// Enqueue to completion times of recently completed requests, as a ring buffer.
+	private final long[] latencies = new long[LATENCY_SAMPLES];
+	private int latencyCount;
+
+	private static class QueuedRequest
+	{
+		String id;
+		String method;
+		String url;
+		KrollDict headers;
+		Object data;
+		boolean urgent;
+		boolean wifiOnly;
+		int maxRetries;
+		int timeout;
+		int attempts;
+		// Wall clock time, so that it can be persisted.
+		long enqueued;
+		// The request isn't sent before notBefore, and is sent without waiting for a batch from dueTime.
+		long notBefore;
+		long dueTime;
+		boolean sending;
+	}
+
+	/**
+	 * Sends the queued requests on a {@link TiHTTPClient} and routes its callbacks back to the queue.
+	 * The client isn't visible to JavaScript, so events on it are dropped.
+	 */
+	private static class QueuedClientProxy extends HTTPClientProxy
+	{
+		private final TiRequestQueue queue;
+		private final QueuedRequest request;
+
+		QueuedClientProxy(TiRequestQueue queue, QueuedRequest request)
+		{
+			super();
+			this.queue = queue;
+			this.request = request;
+		}
+
+		@Override
+		public void callPropertyAsync(String name, Object[] args)
+		{
+			if ("onload".equals(name)) {
+				queue.onResult(request, this, true, null);
+
+			} else if ("onerror".equals(name)) {
+				String error = null;
+				if (args != null && args.length > 0 && args[0] instanceof KrollDict) {
+					error = ((KrollDict) args[0]).getString(TiC.EVENT_PROPERTY_ERROR);
+				}
+				queue.onResult(request, this, false, error);
+			}
+		}
+
+		@Override
+		public boolean fireEvent(String event, Object data)
+		{
+			return false;
+		}
+	}
+
+	public static synchronized TiRequestQueue getInstance()
+	{
+		if (_instance == null) {
+			_instance = new TiRequestQueue();
+		}
+		return _instance;
+	}
+
+	protected TiRequestQueue()
+	{
+		prefs = TiApplication.getInstance().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+	}
+
+	/**
+	 * Loads the persisted requests and starts sending them. Results are fired as events on target.
+	 * Calling it again only replaces the event target.
+	 * @param target the proxy to fire result events on.
+	 */
+	public synchronized void start(KrollProxy target)
+	{
+		eventTarget = new WeakReference<KrollProxy>(target);
+		if (started) {
+			return;
+		}
+		started = true;
+
+		long now = System.currentTimeMillis();
+		for (Map.Entry<String, ?> entry : prefs.getAll().entrySet()) {
+			try {
+				QueuedRequest request = fromJSON(entry.getKey(), new JSONObject((String) entry.getValue()));
+				request.notBefore = now;
+				request.dueTime = request.urgent ? now : Math.min(request.enqueued + BATCH_INTERVAL, now + BATCH_INTERVAL);
+				queue.add(request);
+			} catch (Exception e) {
+				Log.w(TAG, "Dropping unreadable queued request: " + e.getMessage());
+				persist(entry.getKey(), null);
+			}
+		}
+		Collections.sort(queue, new Comparator<QueuedRequest>() {
+			public int compare(QueuedRequest a, QueuedRequest b)
+			{
+				return a.enqueued < b.enqueued ? -1 : (a.enqueued == b.enqueued ? 0 : 1);
+			}
+		});
+		if (!queue.isEmpty()) {
+			Log.d(TAG, "Restored " + queue.size() + " queued requests", Log.DEBUG_MODE);
+		}
+		updateListening();
+		scheduleDispatch(0);
+	}
+
+	/**
+	 * Queues a request.
+	 * @param options the url, and optionally the method, headers, data (a string or a dictionary of
+	 * form fields), timeout, urgent, wifiOnly and maxRetries.
+	 * @return the id of the request, which is passed to the result events.
+	 */
+	public synchronized String enqueue(KrollDict options)
+	{
+		String url = options.getString(TiC.PROPERTY_URL);
+		if (url == null) {
+			throw new IllegalArgumentException("A url is required to queue a request");
+		}
+		Object data = options.get(TiC.PROPERTY_DATA);
+		if (data != null && !(data instanceof String) && !(data instanceof HashMap)) {
+			throw new IllegalArgumentException("Queued request data must be a string or a dictionary");
+		}
+
+		QueuedRequest request = new QueuedRequest();
+		request.id = UUID.randomUUID().toString();
+		request.method = options.optString(PROPERTY_METHOD, "GET").toUpperCase();
+		request.url = url;
+		request.headers = options.getKrollDict(PROPERTY_HEADERS);
+		request.data = data != null && !(data instanceof String) ? new KrollDict((HashMap) data) : data;
+		request.urgent = options.optBoolean(PROPERTY_URGENT, false);
+		request.wifiOnly = options.optBoolean(PROPERTY_WIFI_ONLY, false);
+		request.maxRetries = options.optInt(PROPERTY_MAX_RETRIES, DEFAULT_MAX_RETRIES);
+		request.timeout = options.optInt(TiC.PROPERTY_TIMEOUT, DEFAULT_TIMEOUT);
+		request.enqueued = System.currentTimeMillis();
+		request.notBefore = request.enqueued;
+		request.dueTime = request.urgent ? request.enqueued : request.enqueued + BATCH_INTERVAL;
+
+		queue.add(request);
+		persist(request.id, toJSON(request));
+		updateListening();
+		scheduleDispatch(0);
+		return request.id;
+	}
+
+	/**
+	 * Removes a request from the queue. A request that is already being sent is not interrupted, but its
+	 * result is dropped.
+	 * @return whether the request was queued.
+	 */
+	public synchronized boolean cancel(String id)
+	{
+		for (Iterator<QueuedRequest> it = queue.iterator(); it.hasNext();) {
+			QueuedRequest request = it.next();
+			if (request.id.equals(id)) {
+				it.remove();
+				persist(id, null);
+				updateListening();
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public synchronized void clear()
+	{
+		for (QueuedRequest request : queue) {
+			persist(request.id, null);
+		}
+		queue.clear();
+		updateListening();
+	}
+
+	/**
+	 * @return the queue depth, the requests in flight and waiting for Wi-Fi, the completed, failed and
+	 * retried counts, and the average and maximum enqueue to completion latency in milliseconds of the
+	 * last {@link #LATENCY_SAMPLES} completed requests.
+	 */
+	public synchronized KrollDict getStats()
+	{
+		int waitingForWifi = 0;
+		long oldest = 0;
+		for (QueuedRequest request : queue) {
+			if (request.wifiOnly && !wifi) {
+				waitingForWifi++;
+			}
+			if (oldest == 0 || request.enqueued < oldest) {
+				oldest = request.enqueued;
+			}
+		}
+
+		int samples = Math.min(latencyCount, LATENCY_SAMPLES);
+		long total = 0, max = 0;
+		for (int i = 0; i < samples; i++) {
+			total += latencies[i];
+			max = Math.max(max, latencies[i]);
+		}
+
+		KrollDict stats = new KrollDict();
+		stats.put("depth", queue.size());
+		stats.put("inFlight", inFlight);
+		stats.put("waitingForWifi", waitingForWifi);
+		stats.put("completed", completed);
+		stats.put("failed", failed);
+		stats.put("retries", retries);
+		stats.put("averageLatency", samples > 0 ? total / samples : 0);
+		stats.put("maxLatency", max);
+		stats.put("oldestAge", oldest > 0 ? System.currentTimeMillis() - oldest : 0);
+		return stats;
+	}
+
+	private synchronized void dispatch()
+	{
+		scheduledDispatch = null;
+		if (!online) {
+			return;
+		}
+
+		long now = System.currentTimeMillis();
+		// Once the radio is up for one request, send everything else that is allowed to go.
+		boolean radioAwake = inFlight > 0;
+		if (!radioAwake) {
+			for (QueuedRequest request : queue) {
+				if (isSendable(request, now) && request.dueTime <= now) {
+					radioAwake = true;
+					break;
+				}
+			}
+		}
+
+		long next = Long.MAX_VALUE;
+		for (QueuedRequest request : new ArrayList<QueuedRequest>(queue)) {
+			if (request.sending || (request.wifiOnly && !wifi)) {
+				// Sent requests are followed by another dispatch, and Wi-Fi requests wait for a connectivity change.
+				continue;
+			}
+			if (!isSendable(request, now)) {
+				next = Math.min(next, Math.max(request.notBefore, request.dueTime));
+			} else if (!radioAwake) {
+				next = Math.min(next, request.dueTime);
+			} else if (inFlight < MAX_IN_FLIGHT) {
+				send(request);
+			}
+			// Otherwise it is sent when a request in flight completes.
+		}
+		if (next != Long.MAX_VALUE) {
+			scheduleDispatch(Math.max(next - now, 0));
+		}
+	}
+
+	private boolean isSendable(QueuedRequest request, long now)
+	{
+		return !request.sending && request.notBefore <= now && (!request.wifiOnly || wifi);
+	}
+
+	// Must be called while holding the lock on this.
+	private void send(QueuedRequest request)
+	{
+		request.sending = true;
+		request.attempts++;
+		inFlight++;
+		persist(request.id, toJSON(request));
+
+		try {
+			QueuedClientProxy client = new QueuedClientProxy(this, request);
+			client.setTimeout(request.timeout);
+			client.open(request.method, request.url);
+			if (request.headers != null) {
+				for (Map.Entry<String, Object> header : request.headers.entrySet()) {
+					client.setRequestHeader(header.getKey(), TiConvert.toString(header.getValue()));
+				}
+			}
+			client.send(request.data);
+
+		} catch (Exception e) {
+			// The request can never be sent, e.g. an invalid url or method.
+			Log.e(TAG, "Unable to send queued request to " + request.url + ": " + e.getMessage());
+			inFlight--;
+			request.sending = false;
+			finish(request, false, 0, null, e.getMessage());
+		}
+	}
+
+	private synchronized void onResult(QueuedRequest request, QueuedClientProxy client, boolean success, String error)
+	{
+		inFlight--;
+		request.sending = false;
+		if (!queue.contains(request)) {
+			// Cancelled while in flight.
+			scheduleDispatch(0);
+			return;
+		}
+
+		int status = client.getStatus();
+		if (success) {
+			finish(request, true, status, client.getResponseText(), null);
+
+		} else if (status != 0 && status != 408 && status != 429 && status < 500) {
+			// The server rejected the request, so retrying won't help.
+			finish(request, false, status, client.getResponseText(), error);
+
+		} else if (!online) {
+			// Connectivity was lost. This attempt doesn't count, and the request is replayed when it returns.
+			request.attempts--;
+			persist(request.id, toJSON(request));
+
+		} else if (request.attempts > request.maxRetries) {
+			finish(request, false, status, null, error);
+
+		} else {
+			retries++;
+			long backoff = Math.min(MAX_BACKOFF, INITIAL_BACKOFF << Math.min(request.attempts - 1, 20));
+			long delay = (long) (random.nextDouble() * backoff);
+			request.notBefore = System.currentTimeMillis() + delay;
+			request.dueTime = request.notBefore;
+			Log.d(TAG, "Retrying queued request to " + request.url + " in " + delay + "ms", Log.DEBUG_MODE);
+		}
+		scheduleDispatch(0);
+	}
+
+	// Must be called while holding the lock on this.
+	private void finish(QueuedRequest request, boolean success, int status, String responseText, String error)
+	{
+		queue.remove(request);
+		persist(request.id, null);
+		updateListening();
+
+		KrollDict data = new KrollDict();
+		data.put(TiC.PROPERTY_ID, request.id);
+		data.put(TiC.PROPERTY_URL, request.url);
+		data.put(TiC.PROPERTY_STATUS, status);
+		data.put("attempts", request.attempts);
+		data.put("responseText", responseText);
+		if (success) {
+			completed++;
+			long latency = System.currentTimeMillis() - request.enqueued;
+			latencies[latencyCount++ % LATENCY_SAMPLES] = latency;
+			data.put("latency", latency);
+		} else {
+			failed++;
+			data.putCodeAndMessage(TiC.ERROR_CODE_UNKNOWN, error != null ? error : "Request failed");
+		}
+
+		KrollProxy target = eventTarget != null ? eventTarget.get() : null;
+		if (target != null) {
+			target.fireEvent(success ? NetworkModule.EVENT_REQUEST_COMPLETE : NetworkModule.EVENT_REQUEST_ERROR, data);
+		}
+	}
+
+	// Must be called while holding the lock on this.
+	private void scheduleDispatch(long delay)
+	{
+		long time = System.currentTimeMillis() + delay;
+		if (scheduledDispatch != null) {
+			if (scheduledDispatchTime <= time) {
+				return;
+			}
+			scheduledDispatch.cancel(false);
+		}
+		if (executor == null) {
+			executor = Executors.newSingleThreadScheduledExecutor();
+		}
+		scheduledDispatchTime = time;
+		scheduledDispatch = executor.schedule(new Runnable() {
+			public void run()
+			{
+				dispatch();
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+
+	private synchronized void onConnectivityChanged()
+	{
+		boolean wasOnline = online;
+		updateConnectivity();
+		if (online && !wasOnline) {
+			// Wait for the connection to settle, with jitter, before replaying.
+			if (scheduledDispatch != null) {
+				scheduledDispatch.cancel(false);
+				scheduledDispatch = null;
+			}
+			scheduleDispatch(RECONNECT_DELAY + (long) (random.nextDouble() * RECONNECT_DELAY));
+		} else if (online) {
+			// E.g. Wi-Fi became available for requests waiting for it.
+			scheduleDispatch(0);
+		}
+	}
+
+	// Must be called while holding the lock on this.
+	private void updateConnectivity()
+	{
+		online = false;
+		wifi = false;
+		ConnectivityManager cm = (ConnectivityManager) TiApplication.getInstance().getSystemService(Context.CONNECTIVITY_SERVICE);
+		try {
+			NetworkInfo ni = cm != null ? cm.getActiveNetworkInfo() : null;
+			if (ni != null && ni.isAvailable() && ni.isConnected()) {
+				online = true;
+				wifi = ni.getType() == ConnectivityManager.TYPE_WIFI;
+			}
+		} catch (SecurityException e) {
+			Log.w(TAG, "Permission has been removed. Cannot determine network type: " + e.getMessage());
+		}
+	}
+
+	// Listens for connectivity changes only while there are queued requests. Must be called while holding the lock on this.
+	private void updateListening()
+	{
+		if (!queue.isEmpty() && networkListener == null) {
+			networkListener = new TiNetworkListener(new Handler(Looper.getMainLooper()) {
+				@Override
+				public void handleMessage(Message msg)
+				{
+					onConnectivityChanged();
+				}
+			});
+			networkListener.attach(TiApplication.getInstance().getApplicationContext());
+			updateConnectivity();
+
+		} else if (queue.isEmpty() && networkListener != null) {
+			networkListener.detach();
+			networkListener = null;
+		}
+	}
+
+	// Commits on the executor so that callers never wait for the preferences file. Writes stay in order.
+	private void persist(final String id, final String json)
+	{
+		if (executor == null) {
+			executor = Executors.newSingleThreadScheduledExecutor();
+		}
+		final SharedPreferences preferences = prefs;
+		executor.execute(new Runnable() {
+			public void run()
+			{
+				SharedPreferences.Editor editor = preferences.edit();
+				if (json != null) {
+					editor.putString(id, json);
+				} else {
+					editor.remove(id);
+				}
+				if (!editor.commit()) {
+					Log.w(TAG, "Unable to write the request queue");
+				}
+			}
+		});
+	}
+
+	private String toJSON(QueuedRequest request)
+	{
+		try {
+			JSONObject json = new JSONObject();
+			json.put(PROPERTY_METHOD, request.method);
+			json.put(TiC.PROPERTY_URL, request.url);
+			if (request.headers != null) {
+				json.put(PROPERTY_HEADERS, TiConvert.toJSON(request.headers));
+			}
+			if (request.data instanceof KrollDict) {
+				json.put(TiC.PROPERTY_DATA, TiConvert.toJSON((KrollDict) request.data));
+			} else if (request.data != null) {
+				json.put(TiC.PROPERTY_DATA, request.data);
+			}
+			json.put(PROPERTY_URGENT, request.urgent);
+			json.put(PROPERTY_WIFI_ONLY, request.wifiOnly);
+			json.put(PROPERTY_MAX_RETRIES, request.maxRetries);
+			json.put(TiC.PROPERTY_TIMEOUT, request.timeout);
+			json.put(PROPERTY_ATTEMPTS, request.attempts);
+			json.put(PROPERTY_ENQUEUED, request.enqueued);
+			return json.toString();
+		} catch (JSONException e) {
+			throw new IllegalArgumentException("Unable to store queued request: " + e.getMessage());
+		}
+	}
+
+	private QueuedRequest fromJSON(String id, JSONObject json) throws JSONException
+	{
+		QueuedRequest request = new QueuedRequest();
+		request.id = id;
+		request.method = json.getString(PROPERTY_METHOD);
+		request.url = json.getString(TiC.PROPERTY_URL);
+		JSONObject headers = json.optJSONObject(PROPERTY_HEADERS);
+		request.headers = headers != null ? new KrollDict(headers) : null;
+		JSONObject form = json.optJSONObject(TiC.PROPERTY_DATA);
+		request.data = form != null ? new KrollDict(form) : json.optString(TiC.PROPERTY_DATA, null);
+		request.urgent = json.optBoolean(PROPERTY_URGENT, false);
+		request.wifiOnly = json.optBoolean(PROPERTY_WIFI_ONLY, false);
+		request.maxRetries = json.optInt(PROPERTY_MAX_RETRIES, DEFAULT_MAX_RETRIES);
+		request.timeout = json.optInt(TiC.PROPERTY_TIMEOUT, DEFAULT_TIMEOUT);
+		request.attempts = json.optInt(PROPERTY_ATTEMPTS, 0);
+		request.enqueued = json.optLong(PROPERTY_ENQUEUED, System.currentTimeMillis());
+		return request;
+	}
+}
@@ -0,0 +1,74 @@
+/**
+ * Appcelerator Titanium Mobile
+ * Copyright (c) 2014 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Apache Public License
+ * Please see the LICENSE included with this distribution for details.
+ */
+package ti.modules.titanium.network;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.http.entity.mime.MIME;
+import org.apache.http.entity.mime.content.AbstractContentBody;
+import org.apache.james.mime4j.message.BinaryBody;
+import org.appcelerator.titanium.io.TiStream;
+import org.appcelerator.titanium.util.TiStreamHelper;
+
+import ti.modules.titanium.BufferProxy;
+
+/**
+ * A multipart body that copies a readable {@link TiStream} to the request until the stream ends.
+ * The length isn't known in advance, so requests containing it are sent chunked. The stream can only
+ * be read once.
+ */
+public class TiStreamBody extends AbstractContentBody implements BinaryBody
+{
+	private static final int CHUNK_SIZE = 16 * 1024;
+
+	private final TiStream stream;
+	private final String filename;
+
+	public TiStreamBody(TiStream stream, String mimeType, String filename)
+	{
+		super(mimeType != null ? mimeType : "application/octet-stream");
+		this.stream = stream;
+		this.filename = filename;
+	}
+
+	public InputStream getInputStream() throws IOException
+	{
+		return TiStreamHelper.toInputStream(stream, CHUNK_SIZE);
+	}
+
+	public void writeTo(OutputStream out, int mode) throws IOException
+	{
+		BufferProxy buffer = new BufferProxy(CHUNK_SIZE);
+		int count;
+		while ((count = stream.read(new Object[] { buffer, 0, CHUNK_SIZE })) != -1) {
+			out.write(buffer.getBuffer(), 0, count);
+		}
+		out.flush();
+	}
+
+	public String getTransferEncoding()
+	{
+		return MIME.ENC_BINARY;
+	}
+
+	public String getCharset()
+	{
+		return null;
+	}
+
+	public long getContentLength()
+	{
+		return -1;
+	}
+
+	public String getFilename()
+	{
+		return filename;
+	}
+}
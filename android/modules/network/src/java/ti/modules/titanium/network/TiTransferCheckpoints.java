@@ -0,0 +1,136 @@
+/**
+ * Appcelerator Titanium Mobile
+ * Copyright (c) 2014 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Apache Public License
+ * Please see the LICENSE included with this distribution for details.
+ */
+package ti.modules.titanium.network;
+
+import java.io.File;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.appcelerator.titanium.TiApplication;
+import org.appcelerator.titanium.TiBlob;
+import org.appcelerator.titanium.io.TiBaseFile;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+/**
+ * Persists the progress of resumable HTTP transfers so that they can continue after a dropped
+ * connection or an application restart.
+ * <p>
+ * Downloads are keyed on the destination file. The entry holds the URL and the validator
+ * (a strong ETag, or else Last-Modified) of the response that produced the partial file.
+ * Uploads are keyed on the method, URL and source. The entry holds the number of bytes the
+ * server has acknowledged.
+ */
+public class TiTransferCheckpoints
+{
+	private static final String PREFS_NAME = "titanium.network.transfers";
+	private static final String DOWNLOAD_PREFIX = "download:";
+	private static final String UPLOAD_PREFIX = "upload:";
+
+	private static SharedPreferences getPreferences()
+	{
+		TiApplication app = TiApplication.getInstance();
+		if (app == null) {
+			return null;
+		}
+		return app.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+	}
+
+	/**
+	 * @param url the URL being downloaded.
+	 * @param file the partially written destination file.
+	 * @return the validator to send in If-Range, or null if the file can't be resumed from url.
+	 */
+	public static synchronized String getDownloadValidator(String url, File file)
+	{
+		SharedPreferences prefs = getPreferences();
+		if (prefs == null || file.length() == 0) {
+			return null;
+		}
+		String entry = prefs.getString(DOWNLOAD_PREFIX + file.getAbsolutePath(), null);
+		if (entry == null) {
+			return null;
+		}
+		int separator = entry.indexOf('\n');
+		if (separator == -1 || !entry.substring(0, separator).equals(url)) {
+			return null;
+		}
+		return entry.substring(separator + 1);
+	}
+
+	public static synchronized void putDownloadValidator(String url, File file, String validator)
+	{
+		SharedPreferences prefs = getPreferences();
+		if (prefs != null) {
+			prefs.edit().putString(DOWNLOAD_PREFIX + file.getAbsolutePath(), url + "\n" + validator).commit();
+		}
+	}
+
+	public static synchronized void removeDownload(File file)
+	{
+		SharedPreferences prefs = getPreferences();
+		if (prefs != null) {
+			prefs.edit().remove(DOWNLOAD_PREFIX + file.getAbsolutePath()).commit();
+		}
+	}
+
+	/**
+	 * Builds the checkpoint key of an upload. A caller-supplied upload id identifies the source together
+	 * with its length. Otherwise file blobs are identified by path, size and modification time, and
+	 * in-memory blobs by a digest of their content.
+	 * @param uploadId an id the application gave the upload, or null.
+	 * @return the key, or null if the source can't be identified, in which case the upload can't be resumed.
+	 */
+	public static String getUploadKey(String method, String url, TiBlob source, String uploadId)
+	{
+		String sourceId = null;
+		Object data = source.getType() == TiBlob.TYPE_FILE ? source.getData() : null;
+		if (uploadId != null) {
+			sourceId = "id:" + uploadId + ":" + source.getLength();
+		} else if (data instanceof TiBaseFile && ((TiBaseFile) data).getNativeFile() != null) {
+			File file = ((TiBaseFile) data).getNativeFile();
+			sourceId = file.getAbsolutePath() + ":" + file.length() + ":" + file.lastModified();
+		} else {
+			switch (source.getType()) {
+				case TiBlob.TYPE_DATA:
+				case TiBlob.TYPE_IMAGE:
+				case TiBlob.TYPE_STRING:
+					sourceId = "md5:" + DigestUtils.md5Hex(source.getBytes());
+					break;
+			}
+		}
+		if (sourceId == null) {
+			return null;
+		}
+		return UPLOAD_PREFIX + method + " " + url + "|" + sourceId;
+	}
+
+	/**
+	 * @return the number of bytes already acknowledged for the upload, or 0 to start from the beginning.
+	 */
+	public static synchronized long getUploadOffset(String key)
+	{
+		SharedPreferences prefs = getPreferences();
+		return prefs != null ? prefs.getLong(key, 0) : 0;
+	}
+
+	public static synchronized void putUploadOffset(String key, long offset)
+	{
+		SharedPreferences prefs = getPreferences();
+		if (prefs != null) {
+			prefs.edit().putLong(key, offset).commit();
+		}
+	}
+
+	public static synchronized void removeUpload(String key)
+	{
+		SharedPreferences prefs = getPreferences();
+		if (prefs != null) {
+			prefs.edit().remove(key).commit();
+		}
+	}
+}
@@ -7,11 +7,11 @@
 package ti.modules.titanium.network.socket;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.InetSocketAddress;
-import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.UnknownHostException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 
 import org.appcelerator.kroll.KrollDict;
 import org.appcelerator.kroll.KrollFunction;
@@ -21,9 +21,9 @@ import org.appcelerator.kroll.common.Log;
 import org.appcelerator.titanium.TiContext;
 import org.appcelerator.titanium.io.TiStream;
 import org.appcelerator.titanium.util.TiConvert;
-import org.appcelerator.titanium.util.TiStreamHelper;
 
 import ti.modules.titanium.BufferProxy;
+import ti.modules.titanium.network.socket.TiSocketEngine.Connection;
 
 @Kroll.proxy(creatableInModule=SocketModule.class)
 public class TCPProxy extends KrollProxy implements TiStream
@@ -31,12 +31,9 @@ public class TCPProxy extends KrollProxy implements TiStream
 	private static final String TAG = "TCPProxy";
 
 	//private boolean initialized = false;
-	private Socket clientSocket = null;
-	private ServerSocket serverSocket = null;
-	private boolean accepting = false;
+	private volatile Connection connection = null;
 	private KrollDict acceptOptions = null;
 	private int state = 0;
-	private InputStream inputStream = null;
 
 
 	public TCPProxy()
@@ -57,7 +54,9 @@ public class TCPProxy extends KrollProxy implements TiStream
 			Object host = getProperty("host");
 			Object port = getProperty("port");
 			if((host != null) && (port != null) && (TiConvert.toInt(port) > 0)) {
-				new ConnectedSocketThread().start();
+				int timeout = TiConvert.toInt(getProperty("timeout"), 0);
+				connection = TiSocketEngine.getInstance().connect(TiConvert.toString(host), TiConvert.toInt(port), timeout,
+					new SocketListener());
 
 			} else {
 				throw new IllegalArgumentException("Unable to call connect, socket must have a valid host and port");
@@ -75,22 +74,21 @@ public class TCPProxy extends KrollProxy implements TiStream
 			Object port = getProperty("port");
 			Object listenQueueSize = getProperty("listenQueueSize");
 
+			ServerSocketChannel serverChannel = null;
 			try {
-				if ((port != null) && (listenQueueSize != null)) {
-					serverSocket = new ServerSocket(TiConvert.toInt(port), TiConvert.toInt(listenQueueSize));
+				serverChannel = ServerSocketChannel.open();
+				// Without a port the socket is bound to an ephemeral one, and 0 selects the default queue size.
+				int backlog = (listenQueueSize != null) ? TiConvert.toInt(listenQueueSize) : 0;
+				serverChannel.socket().bind(new InetSocketAddress((port != null) ? TiConvert.toInt(port) : 0), backlog);
 
-				} else if (port != null) {
-					serverSocket = new ServerSocket(TiConvert.toInt(port));
-
-				} else {
-					serverSocket = new ServerSocket();
-				}
-
-				new ListeningSocketThread().start();
+				connection = TiSocketEngine.getInstance().listen(serverChannel, new SocketListener());
 				state = SocketModule.LISTENING;
 
 			} catch (IOException e) {
 				e.printStackTrace();
+				if (serverChannel != null) {
+					serverChannel.close();
+				}
 				state = SocketModule.ERROR;
 				throw new Exception("Unable to listen, IO error");
 			}
@@ -108,18 +106,14 @@ public class TCPProxy extends KrollProxy implements TiStream
 		}
 
 		this.acceptOptions = acceptOptions;
-		accepting = true;
+		connection.setAccepting(true);
 	}
 
-	private void closeSocket() throws IOException {
-		if (clientSocket != null) {
-			clientSocket.close();
-			clientSocket = null;
-		}
-
-		if (serverSocket != null) {
-			serverSocket.close();
-			serverSocket = null;
+	private void closeSocket()
+	{
+		if (connection != null) {
+			connection.close();
+			connection = null;
 		}
 	}
 
@@ -172,6 +166,18 @@ public class TCPProxy extends KrollProxy implements TiStream
 		setSocketProperty("accepted", accepted);
 	}
 
+	@Kroll.setProperty @Kroll.method
+	public void setReadable(KrollFunction readable)
+	{
+		setProperty("readable", readable);
+	}
+
+	@Kroll.setProperty @Kroll.method
+	public void setWritable(KrollFunction writable)
+	{
+		setProperty("writable", writable);
+	}
+
 	private void setSocketProperty(String propertyName, Object propertyValue)
 	{
 		if ((state != SocketModule.LISTENING) && (state != SocketModule.CONNECTED)) {
@@ -188,102 +194,91 @@ public class TCPProxy extends KrollProxy implements TiStream
 		return state;
 	}
 
-	private class ConnectedSocketThread extends Thread
+	private class SocketListener implements TiSocketEngine.ConnectionListener
 	{
-		public ConnectedSocketThread()
+		public void onConnected(Connection connection)
 		{
-			super("ConnectedSocketThread");
+			updateState(SocketModule.CONNECTED, "connected", buildConnectedCallbackArgs());
 		}
 
-		public void run()
+		public void onAccepted(Connection connection, SocketChannel channel)
 		{
-			String host = TiConvert.toString(getProperty("host"));
-			Object timeoutProperty = getProperty("timeout");
+			TCPProxy acceptedTcpProxy = new TCPProxy();
+			Socket acceptedSocket = channel.socket();
+			acceptedTcpProxy.setProperty("host", acceptedSocket.getInetAddress().getHostAddress());
+			acceptedTcpProxy.setProperty("port", acceptedSocket.getPort());
+
+			Object optionValue;
+			if((optionValue = acceptOptions.get("timeout")) != null) {
+				acceptedTcpProxy.setProperty("timeout", TiConvert.toInt(optionValue, 0));
+			}
+			if((optionValue = acceptOptions.get("error")) != null) {
+				if(optionValue instanceof KrollFunction) {
+					acceptedTcpProxy.setProperty("error", (KrollFunction) optionValue);
+				}
+			}
 
 			try {
-				if (timeoutProperty != null) {
-					int timeout = TiConvert.toInt(timeoutProperty, 0);
+				acceptedTcpProxy.connection = TiSocketEngine.getInstance().register(channel, acceptedTcpProxy.new SocketListener());
 
-					clientSocket = new Socket();
-					clientSocket.connect(new InetSocketAddress(host, TiConvert.toInt(getProperty("port"))), timeout);
+			} catch (IOException e) {
+				e.printStackTrace();
+				try {
+					channel.close();
 
-				} else {
-					clientSocket = new Socket(host, TiConvert.toInt(getProperty("port")));
+				} catch (IOException closeException) {
+					Log.w(TAG, "Unable to close accepted socket", Log.DEBUG_MODE);
 				}
-				updateState(SocketModule.CONNECTED, "connected", buildConnectedCallbackArgs());
+				return;
+			}
 
-			} catch (UnknownHostException e) {
-				e.printStackTrace();
-				updateState(SocketModule.ERROR, "error", buildErrorCallbackArgs("Unable to connect, unknown host <" + host + ">", 0));
+			acceptedTcpProxy.state = SocketModule.CONNECTED;
 
-			} catch (IOException e) {
-				e.printStackTrace();
-				updateState(SocketModule.ERROR, "error", buildErrorCallbackArgs("Unable to connect, IO error", 0));
+			Object callback = getProperty("accepted");
+			if (callback instanceof KrollFunction) {
+				((KrollFunction) callback).callAsync(getKrollObject(), buildAcceptedCallbackArgs(acceptedTcpProxy));
 			}
 		}
-	}
 
-	private class ListeningSocketThread extends Thread
-	{
-		public ListeningSocketThread()
+		public void onReadable(Connection connection)
+		{
+			Object callback = getProperty("readable");
+			if (callback instanceof KrollFunction) {
+				KrollDict callbackArgs = buildConnectedCallbackArgs();
+				callbackArgs.put("bytesAvailable", connection.available());
+				((KrollFunction) callback).callAsync(getKrollObject(), callbackArgs);
+			}
+		}
+
+		public void onWritable(Connection connection)
 		{
-			super("ListeningSocketThread");
+			Object callback = getProperty("writable");
+			if (callback instanceof KrollFunction) {
+				((KrollFunction) callback).callAsync(getKrollObject(), buildConnectedCallbackArgs());
+			}
 		}
 
-		public void run()
+		public void onError(Connection connection, IOException e)
 		{
-			while(true) {
-				if(accepting) {
-					try {
-						// Check if serverSocket is valid, if not exit
-						if (serverSocket == null) {
-							break;
-						}
-						Socket acceptedSocket = serverSocket.accept();
-
-						TCPProxy acceptedTcpProxy = new TCPProxy();
-						acceptedTcpProxy.clientSocket = acceptedSocket;
-						acceptedTcpProxy.setProperty("host", acceptedTcpProxy.clientSocket.getInetAddress().getHostAddress());
-						acceptedTcpProxy.setProperty("port", acceptedTcpProxy.clientSocket.getPort());
-
-						Object optionValue;
-						if((optionValue = acceptOptions.get("timeout")) != null) {
-							acceptedTcpProxy.setProperty("timeout", TiConvert.toInt(optionValue, 0));
-						}
-						if((optionValue = acceptOptions.get("error")) != null) {
-							if(optionValue instanceof KrollFunction) {
-								acceptedTcpProxy.setProperty("error", (KrollFunction) optionValue);
-							}
-						}
-
-						acceptedTcpProxy.state = SocketModule.CONNECTED;
-
-						Object callback = getProperty("accepted");
-						if (callback instanceof KrollFunction) {
-							((KrollFunction) callback).callAsync(getKrollObject(), buildAcceptedCallbackArgs(acceptedTcpProxy));
-						}
-
-						accepting = false;
-
-					} catch (IOException e) {
-						if (state == SocketModule.LISTENING) {
-							e.printStackTrace();
-							updateState(SocketModule.ERROR, "error", buildErrorCallbackArgs("Unable to accept new connection, IO error", 0));
-						}
-
-						break;
-					}
+			if (state == SocketModule.CLOSED) {
+				return;
+			}
 
-				} else {
-					try {
-						sleep(500);
+			e.printStackTrace();
+			String message;
+			if (state == SocketModule.LISTENING) {
+				message = "Unable to accept new connection, IO error";
 
-					} catch (InterruptedException e) {
-						e.printStackTrace();
-						Log.e(TAG, "Listening thread interrupted");
-					}
-				}
+			} else if (state == SocketModule.CONNECTED) {
+				message = "Socket error, IO error";
+
+			} else if (e instanceof UnknownHostException) {
+				message = "Unable to connect, unknown host <" + TiConvert.toString(getProperty("host")) + ">";
+
+			} else {
+				message = "Unable to connect, IO error";
 			}
+			updateState(SocketModule.ERROR, "error", buildErrorCallbackArgs(message, 0));
 		}
 	}
 
@@ -319,18 +314,7 @@ public class TCPProxy extends KrollProxy implements TiStream
 		this.state = state;
 
 		if (state == SocketModule.ERROR) {
-			try {
-				if (clientSocket != null) {
-					clientSocket.close();
-				}
-
-				if (serverSocket != null) {
-					serverSocket.close();
-				}
-
-			} catch (IOException e) {
-				Log.w(TAG, "Unable to close socket in error state", Log.DEBUG_MODE);
-			}
+			closeSocket();
 		}
 
 		Object callback = getProperty(callbackName);
@@ -398,19 +382,17 @@ public class TCPProxy extends KrollProxy implements TiStream
 			throw new IllegalArgumentException("Invalid number of arguments");
 		}
 
-		if (inputStream == null) {
-			inputStream = clientSocket.getInputStream();
+		byte[] buffer = bufferProxy.getBuffer();
+		if ((offset + length) > buffer.length) {
+			length = buffer.length - offset;
 		}
 
 		try {
-			return TiStreamHelper.read(inputStream, bufferProxy, offset, length);
+			// Blocks until the engine has received data; errors are reported to the error callback by the engine
+			return connection.read(buffer, offset, length);
 
 		} catch (IOException e) {
 			e.printStackTrace();
-			if (state != SocketModule.CLOSED) {
-				closeSocket();
-				updateState(SocketModule.ERROR, "error", buildErrorCallbackArgs("Unable to read from socket, IO error", 0));
-			}
 			throw new IOException("Unable to read from socket, IO error");
 		}
 	}
@@ -464,13 +446,16 @@ public class TCPProxy extends KrollProxy implements TiStream
 			throw new IllegalArgumentException("Invalid number of arguments");
 		}
 
+		byte[] buffer = bufferProxy.getBuffer();
+		if ((offset + length) > buffer.length) {
+			length = buffer.length - offset;
+		}
+
 		try {
-			return TiStreamHelper.write(clientSocket.getOutputStream(), bufferProxy, offset, length);
+			return connection.write(buffer, offset, length);
 
 		} catch (IOException e) {
 			e.printStackTrace();
-			closeSocket();
-			updateState(SocketModule.ERROR, "error", buildErrorCallbackArgs("Unable to write to socket, IO error", 0));
 			throw new IOException("Unable to write to socket, IO error");
 		}
 	}
@@ -498,15 +483,9 @@ public class TCPProxy extends KrollProxy implements TiStream
 			throw new IOException("Socket is not connected or listening, unable to call close on socket in <" + state + "> state");
 		}
 
-		try {
-			state = 0; // set socket state to uninitialized to prevent use while closing
-			closeSocket();
-			state = SocketModule.CLOSED;
-
-		} catch (IOException e) {
-			e.printStackTrace();
-			throw new IOException("Error occured when closing socket");
-		}
+		state = 0; // set socket state to uninitialized to prevent use while closing
+		closeSocket();
+		state = SocketModule.CLOSED;
 	}
 
 	@Override
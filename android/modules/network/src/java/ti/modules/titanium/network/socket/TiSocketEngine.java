@@ -0,0 +1,852 @@
+/**
+ * Appcelerator Titanium Mobile
+ * Copyright (c) 2014 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Apache Public License
+ * Please see the LICENSE included with this distribution for details.
+ */
+package ti.modules.titanium.network.socket;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.appcelerator.kroll.common.Log;
+import org.appcelerator.titanium.util.TiByteBufferPool;
+
+import android.os.SystemClock;
+
+/**
+ * A single-threaded, Selector based socket engine. Every socket created by {@link TCPProxy} and
+ * {@link UDPProxy} is registered here, and connect, accept, read and write readiness for all of
+ * them is handled on one I/O thread using non-blocking channels and pooled direct buffers.
+ *
+ * Incoming data is read eagerly into a per-connection queue until the queued buffers hold
+ * {@link #MAX_INBOUND_BYTES}, at which point reading pauses until the application consumes some of it. The blocking
+ * {@link Connection#read(byte[], int, int)} and {@link Connection#write(byte[], int, int)} calls
+ * keep the TiStream contract for callers that expect it.
+ */
+public class TiSocketEngine implements Runnable
+{
+	private static final String TAG = "TiSocketEngine";
+
+	// Stop reading from a connection once the buffers of its unconsumed data take up this many bytes.
+	// Buffers are counted by capacity, since every read holds a whole pooled buffer however little it received.
+	private static final int MAX_INBOUND_BYTES = 256 * 1024;
+	// Largest payload of a UDP datagram over IPv4.
+	public static final int MAX_DATAGRAM_SIZE = 65507;
+	// Maximum number of datagrams drained from a socket and delivered in one batch.
+	public static final int MAX_DATAGRAM_BATCH = 64;
+
+	protected static TiSocketEngine _instance;
+
+	private final Selector selector;
+	private final Thread thread;
+	private final ConcurrentLinkedQueue<Runnable> pendingTasks = new ConcurrentLinkedQueue<Runnable>();
+	private final List<Connection> connecting = new ArrayList<Connection>();
+	private final TiByteBufferPool bufferPool = TiByteBufferPool.getInstance();
+	private final ThreadPoolExecutor resolver;
+
+	/**
+	 * Receives the events of one connection. All methods are called on the I/O thread and must not block.
+	 */
+	public interface ConnectionListener
+	{
+		void onConnected(Connection connection);
+
+		void onAccepted(Connection connection, SocketChannel channel);
+
+		/**
+		 * Called when data arrives on a connection that had none waiting, and at the end of the stream.
+		 */
+		void onReadable(Connection connection);
+
+		/**
+		 * Called when all queued outgoing data has been written.
+		 */
+		void onWritable(Connection connection);
+
+		void onError(Connection connection, IOException e);
+	}
+
+	/**
+	 * Receives the datagrams of a datagram connection, one call per drained burst.
+	 */
+	public interface DatagramListener extends ConnectionListener
+	{
+		void onDatagrams(Connection connection, List<Datagram> datagrams);
+	}
+
+	/**
+	 * A received datagram.
+	 */
+	public static class Datagram
+	{
+		public final byte[] data;
+		public final InetSocketAddress address;
+
+		public Datagram(byte[] data, InetSocketAddress address)
+		{
+			this.data = data;
+			this.address = address;
+		}
+	}
+
+	/**
+	 * A socket or server socket registered with the engine.
+	 */
+	public class Connection
+	{
+		private final SelectableChannel channel;
+		private final ConnectionListener listener;
+		private final LinkedList<ByteBuffer> inbound = new LinkedList<ByteBuffer>();
+		private final LinkedList<ByteBuffer> outbound = new LinkedList<ByteBuffer>();
+		private SelectionKey key;
+		private ByteBuffer receiveBuffer;
+		private int inboundBytes = 0;
+		private int inboundCapacity = 0;
+		private long connectDeadline = 0;
+		private boolean connected = false;
+		private boolean accepting = false;
+		private boolean readPaused = false;
+		private boolean endOfStream = false;
+		private boolean closed = false;
+		private IOException error;
+
+		private Connection(SelectableChannel channel, ConnectionListener listener)
+		{
+			this.channel = channel;
+			this.listener = listener;
+		}
+
+		public SelectableChannel getChannel()
+		{
+			return channel;
+		}
+
+		/**
+		 * @return the number of received bytes that can be read without blocking.
+		 */
+		public synchronized int available()
+		{
+			return inboundBytes;
+		}
+
+		/**
+		 * Reads received data, blocking until at least one byte is available or the stream ends.
+		 * @return the number of bytes read, or -1 at the end of the stream.
+		 * @throws IOException if the connection failed.
+		 */
+		public int read(byte[] buffer, int offset, int length) throws IOException
+		{
+			if (length <= 0) {
+				return 0;
+			}
+
+			int total = 0;
+			boolean resume = false;
+			synchronized (this) {
+				while (inbound.isEmpty() && !endOfStream && !closed) {
+					try {
+						wait();
+
+					} catch (InterruptedException e) {
+						throw new InterruptedIOException("Interrupted while reading from socket");
+					}
+				}
+
+				if (inbound.isEmpty()) {
+					if (error != null) {
+						throw new IOException(error.getMessage());
+					}
+					return -1;
+				}
+
+				while (total < length && !inbound.isEmpty()) {
+					ByteBuffer head = inbound.peek();
+					int count = Math.min(head.remaining(), length - total);
+					head.get(buffer, offset + total, count);
+					total += count;
+					if (!head.hasRemaining()) {
+						inbound.poll();
+						inboundCapacity -= head.capacity();
+						bufferPool.release(head);
+					}
+				}
+
+				inboundBytes -= total;
+				if (readPaused && inboundCapacity < MAX_INBOUND_BYTES / 2) {
+					readPaused = false;
+					resume = true;
+				}
+			}
+
+			if (resume) {
+				updateInterestLater(this);
+			}
+
+			return total;
+		}
+
+		/**
+		 * Queues data for writing and blocks until all queued data has been written to the socket.
+		 * @return the number of bytes written.
+		 * @throws IOException if the connection failed or was closed.
+		 */
+		public int write(byte[] buffer, int offset, int length) throws IOException
+		{
+			if (length <= 0) {
+				return 0;
+			}
+
+			synchronized (this) {
+				if (closed) {
+					throw new IOException(error != null ? error.getMessage() : "Socket is closed");
+				}
+
+				int position = offset;
+				int end = offset + length;
+				while (position < end) {
+					ByteBuffer chunk = bufferPool.acquire();
+					int count = Math.min(chunk.remaining(), end - position);
+					chunk.put(buffer, position, count);
+					chunk.flip();
+					outbound.add(chunk);
+					position += count;
+				}
+			}
+
+			updateInterestLater(this);
+
+			synchronized (this) {
+				while (!outbound.isEmpty() && !closed) {
+					try {
+						wait();
+
+					} catch (InterruptedException e) {
+						throw new InterruptedIOException("Interrupted while writing to socket");
+					}
+				}
+
+				if (closed) {
+					throw new IOException(error != null ? error.getMessage() : "Socket is closed");
+				}
+			}
+
+			return length;
+		}
+
+		/**
+		 * Starts or stops accepting inbound connections on a listening connection.
+		 * The engine stops accepting after every accepted connection.
+		 */
+		public void setAccepting(boolean accepting)
+		{
+			synchronized (this) {
+				this.accepting = accepting;
+			}
+			updateInterestLater(this);
+		}
+
+		public synchronized boolean isClosed()
+		{
+			return closed;
+		}
+
+		/**
+		 * Closes the channel. No listener methods are called for this connection afterwards.
+		 */
+		public void close()
+		{
+			synchronized (this) {
+				if (closed) {
+					return;
+				}
+				closed = true;
+				notifyAll();
+			}
+
+			closeChannel(this);
+			execute(this, new Runnable() {
+				public void run()
+				{
+					cleanup(Connection.this);
+				}
+			});
+		}
+	}
+
+	public static synchronized TiSocketEngine getInstance() throws IOException
+	{
+		if (_instance == null) {
+			_instance = new TiSocketEngine();
+		}
+		return _instance;
+	}
+
+	private TiSocketEngine() throws IOException
+	{
+		selector = Selector.open();
+
+		// Host names are resolved off the I/O thread so a slow lookup doesn't stall other sockets.
+		resolver = new ThreadPoolExecutor(0, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+			new ThreadFactory() {
+				public Thread newThread(Runnable runnable)
+				{
+					Thread thread = new Thread(runnable, "TiSocketResolver");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+		thread = new Thread(this, "TiSocketEngine");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Connects a new socket channel to host:port.
+	 * @param timeout the connect timeout in milliseconds, or 0 for none.
+	 * @return the connection, whose listener is notified when the connect completes or fails.
+	 */
+	public Connection connect(final String host, final int port, final int timeout, ConnectionListener listener)
+		throws IOException
+	{
+		SocketChannel channel = SocketChannel.open();
+		channel.configureBlocking(false);
+
+		final Connection connection = new Connection(channel, listener);
+		resolver.execute(new Runnable() {
+			public void run()
+			{
+				final InetSocketAddress address;
+				try {
+					address = new InetSocketAddress(InetAddress.getByName(host), port);
+
+				} catch (final IOException e) {
+					execute(connection, new Runnable() {
+						public void run()
+						{
+							fail(connection, e);
+						}
+					});
+					return;
+				}
+
+				execute(connection, new Runnable() {
+					public void run()
+					{
+						startConnect(connection, address, timeout);
+					}
+				});
+			}
+		});
+
+		return connection;
+	}
+
+	/**
+	 * Registers a bound server socket channel. Call {@link Connection#setAccepting(boolean)} to accept.
+	 */
+	public Connection listen(ServerSocketChannel channel, ConnectionListener listener) throws IOException
+	{
+		channel.configureBlocking(false);
+		final Connection connection = new Connection(channel, listener);
+		execute(connection, new Runnable() {
+			public void run()
+			{
+				register(connection, 0);
+			}
+		});
+
+		return connection;
+	}
+
+	/**
+	 * Registers an already connected socket channel, e.g. one accepted by a listening connection.
+	 */
+	public Connection register(SocketChannel channel, ConnectionListener listener) throws IOException
+	{
+		channel.configureBlocking(false);
+		final Connection connection = new Connection(channel, listener);
+		connection.connected = true;
+		execute(connection, new Runnable() {
+			public void run()
+			{
+				register(connection, SelectionKey.OP_READ);
+			}
+		});
+
+		return connection;
+	}
+
+	/**
+	 * Registers a bound datagram channel. Received datagrams are delivered to the listener in batches.
+	 */
+	public Connection register(DatagramChannel channel, DatagramListener listener) throws IOException
+	{
+		channel.configureBlocking(false);
+		final Connection connection = new Connection(channel, listener);
+		connection.connected = true;
+		execute(connection, new Runnable() {
+			public void run()
+			{
+				register(connection, SelectionKey.OP_READ);
+			}
+		});
+
+		return connection;
+	}
+
+	public void run()
+	{
+		while (true) {
+			runPendingTasks();
+
+			try {
+				long timeout = getConnectTimeout();
+				if (timeout > 0) {
+					selector.select(timeout);
+
+				} else {
+					selector.select();
+				}
+
+			} catch (IOException e) {
+				Log.e(TAG, "Error while selecting sockets", e);
+				continue;
+			}
+
+			Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+			while (keys.hasNext()) {
+				SelectionKey key = keys.next();
+				keys.remove();
+
+				Connection connection = (Connection) key.attachment();
+				try {
+					if (key.isValid() && key.isAcceptable()) {
+						handleAccept(connection);
+					}
+					if (key.isValid() && key.isConnectable()) {
+						handleConnect(connection);
+					}
+					if (key.isValid() && key.isReadable()) {
+						if (connection.channel instanceof DatagramChannel) {
+							handleReceive(connection);
+
+						} else {
+							handleRead(connection);
+						}
+					}
+					if (key.isValid() && key.isWritable()) {
+						handleWrite(connection);
+					}
+
+				} catch (CancelledKeyException e) {
+					// closed while we were handling it
+
+				} catch (IOException e) {
+					fail(connection, e);
+
+				} catch (RuntimeException e) {
+					failUnexpected(connection, e);
+				}
+			}
+
+			expireConnects();
+		}
+	}
+
+	/**
+	 * Runs a task for a connection on the I/O thread. A task that throws only fails its own connection.
+	 */
+	private void execute(final Connection connection, final Runnable task)
+	{
+		Runnable guardedTask = new Runnable() {
+			public void run()
+			{
+				try {
+					task.run();
+
+				} catch (CancelledKeyException e) {
+					// closed while the task was pending
+
+				} catch (RuntimeException e) {
+					failUnexpected(connection, e);
+				}
+			}
+		};
+
+		if (Thread.currentThread() == thread) {
+			guardedTask.run();
+
+		} else {
+			pendingTasks.add(guardedTask);
+			selector.wakeup();
+		}
+	}
+
+	private void runPendingTasks()
+	{
+		Runnable task;
+		while ((task = pendingTasks.poll()) != null) {
+			task.run();
+		}
+	}
+
+	// Don't let one connection take down the I/O thread and every other socket on it.
+	private void failUnexpected(Connection connection, RuntimeException e)
+	{
+		Log.e(TAG, "Unexpected error while handling socket", e);
+		IOException error = new IOException(e.toString());
+		error.initCause(e);
+		fail(connection, error);
+	}
+
+	private void register(Connection connection, int ops)
+	{
+		synchronized (connection) {
+			if (connection.closed) {
+				return;
+			}
+		}
+
+		try {
+			connection.key = connection.channel.register(selector, ops, connection);
+			updateInterest(connection);
+
+		} catch (IOException e) {
+			fail(connection, e);
+		}
+	}
+
+	private void startConnect(Connection connection, InetSocketAddress address, int timeout)
+	{
+		synchronized (connection) {
+			if (connection.closed) {
+				return;
+			}
+		}
+
+		try {
+			SocketChannel channel = (SocketChannel) connection.channel;
+			if (channel.connect(address)) {
+				connection.connected = true;
+				register(connection, SelectionKey.OP_READ);
+				connection.listener.onConnected(connection);
+				return;
+			}
+
+			if (timeout > 0) {
+				connection.connectDeadline = SystemClock.uptimeMillis() + timeout;
+				connecting.add(connection);
+			}
+			register(connection, SelectionKey.OP_CONNECT);
+
+		} catch (IOException e) {
+			fail(connection, e);
+		}
+	}
+
+	private void handleAccept(Connection connection) throws IOException
+	{
+		SocketChannel channel = ((ServerSocketChannel) connection.channel).accept();
+		if (channel == null) {
+			return;
+		}
+
+		synchronized (connection) {
+			connection.accepting = false;
+		}
+		updateInterest(connection);
+		connection.listener.onAccepted(connection, channel);
+	}
+
+	private void handleConnect(Connection connection) throws IOException
+	{
+		if (!((SocketChannel) connection.channel).finishConnect()) {
+			return;
+		}
+
+		connecting.remove(connection);
+		connection.connected = true;
+		updateInterest(connection);
+		connection.listener.onConnected(connection);
+	}
+
+	private void handleRead(Connection connection) throws IOException
+	{
+		SocketChannel channel = (SocketChannel) connection.channel;
+		boolean notify = false;
+
+		while (true) {
+			ByteBuffer buffer = bufferPool.acquire();
+			int count;
+			try {
+				count = channel.read(buffer);
+
+			} catch (IOException e) {
+				bufferPool.release(buffer);
+				throw e;
+			}
+
+			if (count <= 0) {
+				bufferPool.release(buffer);
+				if (count < 0) {
+					synchronized (connection) {
+						connection.endOfStream = true;
+						connection.notifyAll();
+					}
+					updateInterest(connection);
+					notify = true;
+				}
+				break;
+			}
+
+			buffer.flip();
+			boolean full;
+			synchronized (connection) {
+				if (connection.closed) {
+					bufferPool.release(buffer);
+					return;
+				}
+
+				notify |= connection.inbound.isEmpty();
+				connection.inbound.add(buffer);
+				connection.inboundBytes += count;
+				connection.inboundCapacity += buffer.capacity();
+				connection.notifyAll();
+
+				if (connection.inboundCapacity >= MAX_INBOUND_BYTES) {
+					connection.readPaused = true;
+				}
+				full = connection.readPaused;
+			}
+
+			if (full) {
+				updateInterest(connection);
+				break;
+			}
+			if (buffer.limit() < buffer.capacity()) {
+				// drained the socket's receive buffer
+				break;
+			}
+		}
+
+		if (notify) {
+			connection.listener.onReadable(connection);
+		}
+	}
+
+	private void handleReceive(Connection connection) throws IOException
+	{
+		DatagramChannel channel = (DatagramChannel) connection.channel;
+		if (connection.receiveBuffer == null) {
+			connection.receiveBuffer = ByteBuffer.allocateDirect(MAX_DATAGRAM_SIZE);
+		}
+
+		// Drain the burst into one batch so the application gets a single callback for it.
+		ByteBuffer buffer = connection.receiveBuffer;
+		List<Datagram> datagrams = new ArrayList<Datagram>();
+		while (datagrams.size() < MAX_DATAGRAM_BATCH) {
+			buffer.clear();
+			SocketAddress address = channel.receive(buffer);
+			if (address == null) {
+				break;
+			}
+
+			buffer.flip();
+			byte[] data = new byte[buffer.remaining()];
+			buffer.get(data);
+			datagrams.add(new Datagram(data, (InetSocketAddress) address));
+		}
+
+		if (!datagrams.isEmpty()) {
+			((DatagramListener) connection.listener).onDatagrams(connection, datagrams);
+		}
+	}
+
+	private void handleWrite(Connection connection) throws IOException
+	{
+		SocketChannel channel = (SocketChannel) connection.channel;
+
+		while (true) {
+			ByteBuffer head;
+			synchronized (connection) {
+				head = connection.outbound.peek();
+			}
+			if (head == null) {
+				break;
+			}
+
+			channel.write(head);
+			if (head.hasRemaining()) {
+				// the socket's send buffer is full, wait for the next write readiness
+				break;
+			}
+
+			synchronized (connection) {
+				connection.outbound.poll();
+			}
+			bufferPool.release(head);
+		}
+
+		boolean drained;
+		synchronized (connection) {
+			drained = connection.outbound.isEmpty();
+			if (drained) {
+				connection.notifyAll();
+			}
+		}
+
+		updateInterest(connection);
+		if (drained) {
+			connection.listener.onWritable(connection);
+		}
+	}
+
+	private void updateInterestLater(final Connection connection)
+	{
+		execute(connection, new Runnable() {
+			public void run()
+			{
+				updateInterest(connection);
+			}
+		});
+	}
+
+	private void updateInterest(Connection connection)
+	{
+		SelectionKey key = connection.key;
+		if (key == null || !key.isValid()) {
+			return;
+		}
+
+		int ops;
+		synchronized (connection) {
+			if (connection.channel instanceof ServerSocketChannel) {
+				ops = connection.accepting ? SelectionKey.OP_ACCEPT : 0;
+
+			} else if (!connection.connected) {
+				ops = SelectionKey.OP_CONNECT;
+
+			} else {
+				ops = (connection.readPaused || connection.endOfStream) ? 0 : SelectionKey.OP_READ;
+				if (!connection.outbound.isEmpty()) {
+					ops |= SelectionKey.OP_WRITE;
+				}
+			}
+		}
+
+		try {
+			key.interestOps(ops);
+
+		} catch (CancelledKeyException e) {
+			// closed on another thread since the key was checked
+		}
+	}
+
+	private long getConnectTimeout()
+	{
+		if (connecting.isEmpty()) {
+			return 0;
+		}
+
+		long now = SystemClock.uptimeMillis();
+		long timeout = Long.MAX_VALUE;
+		for (Connection connection : connecting) {
+			timeout = Math.min(timeout, connection.connectDeadline - now);
+		}
+
+		return Math.max(timeout, 1);
+	}
+
+	private void expireConnects()
+	{
+		if (connecting.isEmpty()) {
+			return;
+		}
+
+		long now = SystemClock.uptimeMillis();
+		for (Connection connection : new ArrayList<Connection>(connecting)) {
+			if (now >= connection.connectDeadline) {
+				fail(connection, new SocketTimeoutException("Connect timed out"));
+			}
+		}
+	}
+
+	private void fail(Connection connection, IOException e)
+	{
+		boolean wasClosed;
+		synchronized (connection) {
+			wasClosed = connection.closed;
+			if (!wasClosed) {
+				connection.closed = true;
+				connection.error = e;
+				connection.notifyAll();
+			}
+		}
+
+		closeChannel(connection);
+		cleanup(connection);
+
+		if (!wasClosed) {
+			try {
+				connection.listener.onError(connection, e);
+
+			} catch (RuntimeException listenerError) {
+				Log.e(TAG, "Unexpected error in socket error listener", listenerError);
+			}
+		}
+	}
+
+	private void closeChannel(Connection connection)
+	{
+		try {
+			connection.channel.close();
+
+		} catch (IOException e) {
+			Log.w(TAG, "Unable to close socket channel", Log.DEBUG_MODE);
+		}
+	}
+
+	private void cleanup(Connection connection)
+	{
+		connecting.remove(connection);
+		if (connection.key != null) {
+			connection.key.cancel();
+		}
+
+		synchronized (connection) {
+			for (ByteBuffer buffer : connection.inbound) {
+				bufferPool.release(buffer);
+			}
+			for (ByteBuffer buffer : connection.outbound) {
+				bufferPool.release(buffer);
+			}
+			connection.inbound.clear();
+			connection.outbound.clear();
+			connection.inboundBytes = 0;
+			connection.inboundCapacity = 0;
+		}
+	}
+}
@@ -0,0 +1,636 @@
+/**
+ * Appcelerator Titanium Mobile
+ * Copyright (c) 2014 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Apache Public License
+ * Please see the LICENSE included with this distribution for details.
+ */
+package ti.modules.titanium.network.socket;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+import org.appcelerator.kroll.KrollDict;
+import org.appcelerator.kroll.KrollFunction;
+import org.appcelerator.kroll.KrollProxy;
+import org.appcelerator.kroll.annotations.Kroll;
+import org.appcelerator.kroll.common.Log;
+import org.appcelerator.titanium.TiApplication;
+import org.appcelerator.titanium.TiContext;
+import org.appcelerator.titanium.io.TiStream;
+import org.appcelerator.titanium.util.TiConvert;
+
+import ti.modules.titanium.BufferProxy;
+import ti.modules.titanium.network.socket.TiSocketEngine.Connection;
+import ti.modules.titanium.network.socket.TiSocketEngine.Datagram;
+
+import android.content.Context;
+import android.net.wifi.WifiManager;
+
+/**
+ * A UDP socket. Unicast and broadcast traffic goes through a DatagramChannel registered with the
+ * shared {@link TiSocketEngine}; once a multicast group is joined the socket is reopened as a
+ * MulticastSocket with its own receive thread, since DatagramChannel can't join groups before Java 7.
+ * In both modes received datagrams are delivered to the data callback in batches, one call per
+ * drained burst, or queued for {@link #read(Object[])} when no data callback is set.
+ */
+@Kroll.proxy(creatableInModule=SocketModule.class)
+public class UDPProxy extends KrollProxy implements TiStream
+{
+	private static final String TAG = "UDPProxy";
+
+	// Datagrams kept for read() when no data callback is set; older ones are dropped first.
+	private static final int MAX_QUEUED_DATAGRAMS = 256;
+
+	private volatile Connection connection = null;
+	private MulticastReceiver multicastReceiver = null;
+	private WifiManager.MulticastLock multicastLock = null;
+	private final Set<String> groups = new HashSet<String>();
+	private final LinkedList<Datagram> received = new LinkedList<Datagram>();
+	private volatile int state = 0;
+
+
+	public UDPProxy()
+	{
+		super();
+		state = SocketModule.INITIALIZED;
+	}
+
+	public UDPProxy(TiContext tiContext)
+	{
+		this();
+	}
+
+	@Kroll.method
+	public void start(@Kroll.argument(optional=true) KrollDict options) throws Exception
+	{
+		if (state == SocketModule.LISTENING) {
+			throw new Exception("Unable to call start on socket in <" + state + "> state");
+		}
+
+		if (options != null && options.containsKey("port")) {
+			setProperty("port", options.get("port"));
+		}
+
+		int port = TiConvert.toInt(getProperty("port"), 0);
+		try {
+			if (groups.isEmpty()) {
+				openChannel(port);
+
+			} else {
+				openMulticastSocket(port);
+			}
+			state = SocketModule.LISTENING;
+
+		} catch (IOException e) {
+			Log.e(TAG, "Unable to start socket", e);
+			state = SocketModule.ERROR;
+			throw new Exception("Unable to start socket, IO error");
+		}
+
+		Object callback = getProperty("started");
+		if (callback instanceof KrollFunction) {
+			((KrollFunction) callback).callAsync(getKrollObject(), buildCallbackArgs());
+		}
+	}
+
+	@Kroll.method
+	public void stop()
+	{
+		state = SocketModule.CLOSED;
+		closeSocket();
+	}
+
+	private void openChannel(int port) throws IOException
+	{
+		DatagramChannel channel = DatagramChannel.open();
+		try {
+			channel.socket().setBroadcast(true);
+			channel.socket().bind(new InetSocketAddress(port));
+			connection = TiSocketEngine.getInstance().register(channel, new SocketListener());
+
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	private void openMulticastSocket(int port) throws IOException
+	{
+		MulticastSocket socket = new MulticastSocket(port);
+		try {
+			socket.setBroadcast(true);
+			for (String group : groups) {
+				socket.joinGroup(InetAddress.getByName(group));
+			}
+
+		} catch (IOException e) {
+			socket.close();
+			throw e;
+		}
+
+		acquireMulticastLock();
+		multicastReceiver = new MulticastReceiver(socket);
+		multicastReceiver.start();
+	}
+
+	private void closeSocket()
+	{
+		if (connection != null) {
+			connection.close();
+			connection = null;
+		}
+
+		if (multicastReceiver != null) {
+			multicastReceiver.close();
+			multicastReceiver = null;
+		}
+		releaseMulticastLock();
+
+		synchronized (received) {
+			received.clear();
+			received.notifyAll();
+		}
+	}
+
+	/**
+	 * Joins a multicast group. If the socket is already started it is reopened on the same port.
+	 * @param group the address of the multicast group.
+	 */
+	@Kroll.method
+	public void joinGroup(String group) throws Exception
+	{
+		if (!groups.add(group)) {
+			return;
+		}
+
+		if (state != SocketModule.LISTENING) {
+			return;
+		}
+
+		if (multicastReceiver != null) {
+			multicastReceiver.socket.joinGroup(InetAddress.getByName(group));
+			return;
+		}
+
+		int port = TiConvert.toInt(getProperty("port"), 0);
+		if (connection != null) {
+			port = ((DatagramChannel) connection.getChannel()).socket().getLocalPort();
+			connection.close();
+			connection = null;
+		}
+
+		try {
+			openMulticastSocket(port);
+
+		} catch (IOException e) {
+			Log.e(TAG, "Unable to join multicast group <" + group + ">", e);
+			groups.remove(group);
+			onSocketError("Unable to join multicast group <" + group + ">, IO error");
+			throw new Exception("Unable to join multicast group <" + group + ">, IO error");
+		}
+	}
+
+	@Kroll.method
+	public void leaveGroup(String group) throws Exception
+	{
+		if (!groups.remove(group)) {
+			return;
+		}
+
+		if (multicastReceiver != null) {
+			multicastReceiver.socket.leaveGroup(InetAddress.getByName(group));
+		}
+	}
+
+	private void acquireMulticastLock()
+	{
+		if (multicastLock != null) {
+			return;
+		}
+
+		try {
+			WifiManager wifiManager = (WifiManager) TiApplication.getInstance().getSystemService(Context.WIFI_SERVICE);
+			multicastLock = wifiManager.createMulticastLock(TAG);
+			multicastLock.setReferenceCounted(false);
+			multicastLock.acquire();
+
+		} catch (SecurityException e) {
+			Log.w(TAG, "Unable to acquire multicast lock, multicast datagrams may be filtered. "
+				+ "Add the CHANGE_WIFI_MULTICAST_STATE permission to receive them.");
+			multicastLock = null;
+		}
+	}
+
+	private void releaseMulticastLock()
+	{
+		if (multicastLock != null) {
+			multicastLock.release();
+			multicastLock = null;
+		}
+	}
+
+	@Kroll.method
+	public int sendString(KrollDict args) throws IOException
+	{
+		String data = TiConvert.toString(args, "data");
+		if (data == null) {
+			throw new IllegalArgumentException("Unable to send, data must be a string");
+		}
+
+		byte[] bytes = data.getBytes("UTF-8");
+		return send(bytes, 0, bytes.length, getDestination(args));
+	}
+
+	@Kroll.method
+	public int sendBytes(KrollDict args) throws IOException
+	{
+		Object data = args.get("data");
+		byte[] bytes;
+		if (data instanceof BufferProxy) {
+			BufferProxy bufferProxy = (BufferProxy) data;
+			bytes = bufferProxy.getBuffer();
+			return send(bytes, 0, bufferProxy.getLength(), getDestination(args));
+
+		} else if (data instanceof Object[]) {
+			Object[] values = (Object[]) data;
+			bytes = new byte[values.length];
+			for (int i = 0; i < values.length; i++) {
+				bytes[i] = (byte) TiConvert.toInt(values[i]);
+			}
+
+		} else {
+			throw new IllegalArgumentException("Unable to send, data must be a buffer or an array of bytes");
+		}
+
+		return send(bytes, 0, bytes.length, getDestination(args));
+	}
+
+	private InetSocketAddress getDestination(KrollDict args)
+	{
+		Object host = args != null && args.containsKey("host") ? args.get("host") : getProperty("host");
+		Object port = args != null && args.containsKey("port") ? args.get("port") : getProperty("port");
+		if (host == null || port == null || TiConvert.toInt(port) <= 0) {
+			throw new IllegalArgumentException("Unable to send, a valid host and port are required");
+		}
+
+		return new InetSocketAddress(TiConvert.toString(host), TiConvert.toInt(port));
+	}
+
+	private int send(byte[] data, int offset, int length, InetSocketAddress destination) throws IOException
+	{
+		if (state != SocketModule.LISTENING) {
+			throw new IOException("Unable to send, socket is not started");
+		}
+		if (destination.isUnresolved()) {
+			throw new IOException("Unable to send, unknown host <" + destination.getHostName() + ">");
+		}
+
+		try {
+			MulticastReceiver receiver = multicastReceiver;
+			if (receiver != null) {
+				receiver.socket.send(new DatagramPacket(data, offset, length, destination));
+				return length;
+			}
+
+			int sent = ((DatagramChannel) connection.getChannel()).send(ByteBuffer.wrap(data, offset, length), destination);
+			if (sent == 0) {
+				Log.w(TAG, "Datagram dropped, socket send buffer is full", Log.DEBUG_MODE);
+			}
+			return sent;
+
+		} catch (IOException e) {
+			Log.e(TAG, "Unable to send datagram", e);
+			throw new IOException("Unable to send datagram, IO error");
+		}
+	}
+
+	@Kroll.setProperty @Kroll.method
+	public void setHost(String host)
+	{
+		setProperty("host", host);
+	}
+
+	@Kroll.setProperty @Kroll.method
+	public void setPort(int port)
+	{
+		setSocketProperty("port", port);
+	}
+
+	@Kroll.setProperty @Kroll.method
+	public void setStarted(KrollFunction started)
+	{
+		setProperty("started", started);
+	}
+
+	@Kroll.setProperty @Kroll.method
+	public void setData(KrollFunction data)
+	{
+		setProperty("data", data);
+	}
+
+	@Kroll.setProperty @Kroll.method
+	public void setError(KrollFunction error)
+	{
+		setProperty("error", error);
+	}
+
+	private void setSocketProperty(String propertyName, Object propertyValue)
+	{
+		if (state != SocketModule.LISTENING) {
+			setProperty(propertyName, propertyValue);
+
+		} else {
+			Log.e(TAG, "Unable to set property <" + propertyName + "> on socket in <" + state + "> state");
+		}
+	}
+
+	@Kroll.getProperty @Kroll.method
+	public int getState()
+	{
+		return state;
+	}
+
+	private class SocketListener implements TiSocketEngine.DatagramListener
+	{
+		public void onDatagrams(Connection connection, List<Datagram> datagrams)
+		{
+			deliver(datagrams);
+		}
+
+		public void onError(Connection connection, IOException e)
+		{
+			if (state == SocketModule.CLOSED) {
+				return;
+			}
+
+			Log.e(TAG, "Unable to receive datagram", e);
+			onSocketError("Unable to receive datagram, IO error");
+		}
+
+		public void onConnected(Connection connection)
+		{
+		}
+
+		public void onAccepted(Connection connection, SocketChannel channel)
+		{
+		}
+
+		public void onReadable(Connection connection)
+		{
+		}
+
+		public void onWritable(Connection connection)
+		{
+		}
+	}
+
+	/**
+	 * Receives multicast datagrams. After the first datagram of a burst the socket is drained
+	 * with a short timeout so the burst is delivered as one batch.
+	 */
+	private class MulticastReceiver extends Thread
+	{
+		private final MulticastSocket socket;
+		private volatile boolean closed = false;
+
+		public MulticastReceiver(MulticastSocket socket)
+		{
+			super("UDPMulticastReceiver");
+			this.socket = socket;
+		}
+
+		public void close()
+		{
+			closed = true;
+			socket.close();
+		}
+
+		public void run()
+		{
+			byte[] buffer = new byte[TiSocketEngine.MAX_DATAGRAM_SIZE];
+			DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+
+			while (!closed) {
+				List<Datagram> datagrams = new ArrayList<Datagram>();
+				try {
+					socket.setSoTimeout(0);
+					receive(packet, datagrams);
+
+					socket.setSoTimeout(1);
+					while (datagrams.size() < TiSocketEngine.MAX_DATAGRAM_BATCH) {
+						receive(packet, datagrams);
+					}
+
+				} catch (SocketTimeoutException e) {
+					// burst drained
+
+				} catch (IOException e) {
+					if (!closed) {
+						Log.e(TAG, "Unable to receive multicast datagram", e);
+						onSocketError("Unable to receive datagram, IO error");
+					}
+					break;
+				}
+
+				if (!datagrams.isEmpty()) {
+					deliver(datagrams);
+				}
+			}
+		}
+
+		private void receive(DatagramPacket packet, List<Datagram> datagrams) throws IOException
+		{
+			packet.setLength(packet.getData().length);
+			socket.receive(packet);
+
+			byte[] data = new byte[packet.getLength()];
+			System.arraycopy(packet.getData(), packet.getOffset(), data, 0, data.length);
+			datagrams.add(new Datagram(data, (InetSocketAddress) packet.getSocketAddress()));
+		}
+	}
+
+	private void deliver(List<Datagram> datagrams)
+	{
+		Object callback = getProperty("data");
+		if (!(callback instanceof KrollFunction)) {
+			synchronized (received) {
+				received.addAll(datagrams);
+				while (received.size() > MAX_QUEUED_DATAGRAMS) {
+					received.poll();
+				}
+				received.notifyAll();
+			}
+			return;
+		}
+
+		Object[] packets = new Object[datagrams.size()];
+		for (int i = 0; i < packets.length; i++) {
+			Datagram datagram = datagrams.get(i);
+			KrollDict packet = new KrollDict();
+			packet.put("buffer", new BufferProxy(datagram.data));
+			packet.put("address", datagram.address.getAddress().getHostAddress());
+			packet.put("port", datagram.address.getPort());
+			packets[i] = packet;
+		}
+
+		KrollDict callbackArgs = buildCallbackArgs();
+		callbackArgs.put("packets", packets);
+		((KrollFunction) callback).callAsync(getKrollObject(), callbackArgs);
+	}
+
+	private void onSocketError(String error)
+	{
+		state = SocketModule.ERROR;
+		closeSocket();
+
+		Object callback = getProperty("error");
+		if (callback instanceof KrollFunction) {
+			KrollDict callbackArgs = buildCallbackArgs();
+			callbackArgs.putCodeAndMessage(0, error);
+			callbackArgs.put("errorCode", 0);
+			((KrollFunction) callback).callAsync(getKrollObject(), callbackArgs);
+		}
+	}
+
+	private KrollDict buildCallbackArgs()
+	{
+		KrollDict callbackArgs = new KrollDict();
+		callbackArgs.put("socket", this);
+
+		return callbackArgs;
+	}
+
+
+	// TiStream interface methods
+	/**
+	 * Reads the next received datagram into the buffer, blocking until one arrives.
+	 * Datagrams longer than the buffer are truncated.
+	 */
+	@Kroll.method
+	public int read(Object args[]) throws IOException
+	{
+		if (state != SocketModule.LISTENING) {
+			throw new IOException("Unable to read from socket, not started");
+		}
+
+		BufferProxy bufferProxy = getBufferArgument(args);
+		int[] range = getRangeArguments(args, bufferProxy);
+
+		Datagram datagram;
+		synchronized (received) {
+			while (received.isEmpty() && state == SocketModule.LISTENING) {
+				try {
+					received.wait();
+
+				} catch (InterruptedException e) {
+					throw new InterruptedIOException("Interrupted while reading from socket");
+				}
+			}
+
+			datagram = received.poll();
+		}
+
+		if (datagram == null) {
+			return -1;
+		}
+
+		int length = Math.min(datagram.data.length, range[1]);
+		System.arraycopy(datagram.data, 0, bufferProxy.getBuffer(), range[0], length);
+		return length;
+	}
+
+	/**
+	 * Sends the buffer as one datagram to the host and port properties.
+	 */
+	@Kroll.method
+	public int write(Object args[]) throws IOException
+	{
+		BufferProxy bufferProxy = getBufferArgument(args);
+		int[] range = getRangeArguments(args, bufferProxy);
+
+		return send(bufferProxy.getBuffer(), range[0], range[1], getDestination(null));
+	}
+
+	private BufferProxy getBufferArgument(Object args[])
+	{
+		if (args.length != 1 && args.length != 3) {
+			throw new IllegalArgumentException("Invalid number of arguments");
+		}
+		if (!(args[0] instanceof BufferProxy)) {
+			throw new IllegalArgumentException("Invalid buffer argument");
+		}
+
+		return (BufferProxy) args[0];
+	}
+
+	private int[] getRangeArguments(Object args[], BufferProxy bufferProxy)
+	{
+		int offset = 0;
+		int length = bufferProxy.getLength();
+
+		if (args.length == 3) {
+			if (args[1] instanceof Number) {
+				offset = ((Number) args[1]).intValue();
+
+			} else {
+				throw new IllegalArgumentException("Invalid offset argument");
+			}
+
+			if (args[2] instanceof Number) {
+				length = ((Number) args[2]).intValue();
+
+			} else {
+				throw new IllegalArgumentException("Invalid length argument");
+			}
+		}
+
+		int bufferLength = bufferProxy.getBuffer().length;
+		if ((offset + length) > bufferLength) {
+			length = bufferLength - offset;
+		}
+
+		return new int[] { offset, length };
+	}
+
+	@Kroll.method
+	public boolean isWritable()
+	{
+		return state == SocketModule.LISTENING;
+	}
+
+	@Kroll.method
+	public boolean isReadable()
+	{
+		return state == SocketModule.LISTENING;
+	}
+
+	@Kroll.method
+	public void close() throws IOException
+	{
+		if (state == SocketModule.CLOSED) {
+			return;
+		}
+
+		state = SocketModule.CLOSED;
+		closeSocket();
+	}
+
+	@Override
+	public String getApiName()
+	{
+		return "Ti.Network.Socket.UDP";
+	}
+}
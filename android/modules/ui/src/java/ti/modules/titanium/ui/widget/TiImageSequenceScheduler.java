@@ -0,0 +1,429 @@
+/**
+ * Appcelerator Titanium Mobile
+ * Copyright (c) 2014 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Apache Public License
+ * Please see the LICENSE included with this distribution for details.
+ */
+package ti.modules.titanium.ui.widget;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.appcelerator.kroll.common.Log;
+import org.appcelerator.titanium.util.TiBitmapPool;
+import org.appcelerator.titanium.view.TiDrawableReference;
+import org.appcelerator.titanium.view.TiDrawableReference.Bounds;
+
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Process;
+import android.os.SystemClock;
+
+/**
+ * Drives the frame animations of all image views (the "images" property) from a single
+ * background thread. Frames are decoded just in time for display, into bitmaps recycled through
+ * {@link TiBitmapPool}. Sequences whose decoded frames fit in the memory budget are decoded once
+ * and then played from memory. Sequences whose view is not visible are suspended, without decoding
+ * or scheduling anything, until {@link #setVisible(Sequence, boolean)} reports the view visible again.
+ */
+public class TiImageSequenceScheduler implements Handler.Callback
+{
+	private static final String TAG = "TiImageSequenceScheduler";
+
+	private static final int MSG_PREPARE = 100;
+	private static final int MSG_START = 101;
+	private static final int MSG_FRAME = 102;
+	private static final int MSG_RELEASE = 103;
+	private static final int MSG_WAKE = 104;
+
+	// Use 1/16th of the available memory for fully cached sequences.
+	private static final long MAX_CACHE_SIZE = Runtime.getRuntime().maxMemory() / 16;
+
+	protected static TiImageSequenceScheduler _instance;
+
+	private Handler handler;
+	private Handler mainHandler;
+	// Bytes held by fully cached sequences. Only accessed on the scheduler thread.
+	private long cacheSize = 0;
+
+	/**
+	 * Callbacks of a {@link Sequence}.
+	 */
+	public interface SequenceListener
+	{
+		/**
+		 * Called on the UI thread once the first frame is ready.
+		 */
+		void onSequenceLoaded(Sequence sequence);
+
+		/**
+		 * Called on the UI thread to display a frame.
+		 */
+		void onSequenceFrame(Sequence sequence, Bitmap bitmap, int index);
+
+		/**
+		 * Called on the UI thread when the sequence is paused.
+		 */
+		void onSequencePaused(Sequence sequence);
+
+		/**
+		 * Called on the UI thread once every repeat has been played.
+		 */
+		void onSequenceFinished(Sequence sequence);
+
+		/**
+		 * Called on the UI thread to determine whether frames need to be decoded.
+		 * @return true if the view is attached and (partially) on screen.
+		 */
+		boolean isSequenceVisible(Sequence sequence);
+	}
+
+	/**
+	 * The playback state of one animated image view.
+	 */
+	public static class Sequence
+	{
+		private final List<TiDrawableReference> frames;
+		private final SequenceListener listener;
+		private final Bitmap[] cache;
+		private boolean cacheable = true;
+		private long cacheBytes = 0;
+
+		private long duration;
+		private int repeatCount;
+		private volatile boolean reverse;
+		private volatile boolean paused = false;
+		private volatile boolean cancelled = false;
+		private volatile boolean visible = true;
+		private boolean started = false;
+		private boolean firedPause = false;
+		// Set while playback waits for the view to become visible. Scheduler thread only.
+		private boolean suspended = false;
+		// The size of the frames, for reusing pooled bitmaps. Scheduler thread only.
+		private Bounds frameBounds;
+
+		private int position = 0;
+		private int loop = 0;
+		private long nextFrameTime = 0;
+		private Bitmap prefetched;
+		private int prefetchedIndex = -1;
+
+		// The frame currently shown and whether it may be reused once it is replaced. UI thread only.
+		private Bitmap displayed;
+		private boolean displayedPooled = false;
+
+		public Sequence(List<TiDrawableReference> frames, boolean reverse, SequenceListener listener)
+		{
+			this.frames = new ArrayList<TiDrawableReference>(frames);
+			this.reverse = reverse;
+			this.listener = listener;
+			this.cache = new Bitmap[this.frames.size()];
+		}
+
+		public void setReverse(boolean reverse)
+		{
+			this.reverse = reverse;
+		}
+
+		public boolean isPaused()
+		{
+			return paused;
+		}
+
+		private int getIndex()
+		{
+			return reverse ? frames.size() - 1 - position : position;
+		}
+	}
+
+	public static TiImageSequenceScheduler getInstance()
+	{
+		if (_instance == null) {
+			_instance = new TiImageSequenceScheduler();
+		}
+		return _instance;
+	}
+
+	protected TiImageSequenceScheduler()
+	{
+		HandlerThread thread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+		thread.start();
+		handler = new Handler(thread.getLooper(), this);
+		mainHandler = new Handler(Looper.getMainLooper());
+	}
+
+	/**
+	 * Decodes the first frame of the sequence ahead of time and notifies the listener when done.
+	 */
+	public void prepare(Sequence sequence)
+	{
+		handler.obtainMessage(MSG_PREPARE, sequence).sendToTarget();
+	}
+
+	/**
+	 * Starts playing the sequence, showing a new frame every duration milliseconds.
+	 * @param repeatCount the number of times to play the sequence, or 0 to repeat forever.
+	 */
+	public void start(Sequence sequence, long duration, int repeatCount)
+	{
+		handler.removeMessages(MSG_FRAME, sequence);
+		sequence.duration = duration;
+		sequence.repeatCount = repeatCount;
+		sequence.paused = false;
+		sequence.started = true;
+		handler.obtainMessage(MSG_START, sequence).sendToTarget();
+	}
+
+	public void pause(Sequence sequence)
+	{
+		sequence.paused = true;
+	}
+
+	public void resume(Sequence sequence)
+	{
+		if (!sequence.paused) {
+			return;
+		}
+		sequence.paused = false;
+		if (sequence.started && !sequence.cancelled) {
+			// Wait one full period so that no frame looks skipped on resume (TIMOB-10207).
+			handler.removeMessages(MSG_FRAME, sequence);
+			sequence.nextFrameTime = SystemClock.uptimeMillis() + sequence.duration;
+			handler.sendMessageAtTime(handler.obtainMessage(MSG_FRAME, sequence), sequence.nextFrameTime);
+		}
+	}
+
+	/**
+	 * Reports whether the view of the sequence is on screen. Must be called on the UI thread whenever
+	 * that may have changed, since a sequence that went off screen is only woken up by this call.
+	 */
+	public void setVisible(Sequence sequence, boolean visible)
+	{
+		boolean wasVisible = sequence.visible;
+		sequence.visible = visible;
+		if (visible && !wasVisible && !sequence.cancelled) {
+			handler.obtainMessage(MSG_WAKE, sequence).sendToTarget();
+		}
+	}
+
+	/**
+	 * Stops the sequence and releases its decoded frames. The frame currently displayed is left untouched.
+	 */
+	public void cancel(Sequence sequence)
+	{
+		sequence.cancelled = true;
+		handler.removeMessages(MSG_FRAME, sequence);
+		handler.obtainMessage(MSG_RELEASE, sequence).sendToTarget();
+	}
+
+	public boolean handleMessage(Message msg)
+	{
+		Sequence sequence = (Sequence) msg.obj;
+		switch (msg.what) {
+			case MSG_PREPARE:
+				handlePrepare(sequence);
+				return true;
+			case MSG_START:
+				handleStart(sequence);
+				return true;
+			case MSG_FRAME:
+				handleFrame(sequence);
+				return true;
+			case MSG_RELEASE:
+				handleRelease(sequence);
+				return true;
+			case MSG_WAKE:
+				handleWake(sequence);
+				return true;
+		}
+		return false;
+	}
+
+	private void handlePrepare(final Sequence sequence)
+	{
+		if (sequence.cancelled || sequence.frames.isEmpty()) {
+			return;
+		}
+		int index = sequence.getIndex();
+		sequence.prefetched = obtainFrame(sequence, index);
+		sequence.prefetchedIndex = index;
+		mainHandler.post(new Runnable()
+		{
+			public void run()
+			{
+				sequence.listener.onSequenceLoaded(sequence);
+			}
+		});
+	}
+
+	private void handleStart(Sequence sequence)
+	{
+		if (sequence.cancelled) {
+			return;
+		}
+		sequence.position = 0;
+		sequence.loop = 0;
+		sequence.nextFrameTime = SystemClock.uptimeMillis() + sequence.duration;
+		handler.sendMessageAtTime(handler.obtainMessage(MSG_FRAME, sequence), sequence.nextFrameTime);
+	}
+
+	private void handleFrame(final Sequence sequence)
+	{
+		if (sequence.cancelled) {
+			return;
+		}
+		if (sequence.paused) {
+			// resume() schedules the next frame.
+			if (!sequence.firedPause) {
+				sequence.firedPause = true;
+				mainHandler.post(new Runnable()
+				{
+					public void run()
+					{
+						sequence.listener.onSequencePaused(sequence);
+					}
+				});
+			}
+			return;
+		}
+		sequence.firedPause = false;
+
+		if (!sequence.visible) {
+			// Don't decode or schedule anything while off screen; setVisible() wakes the sequence up.
+			sequence.suspended = true;
+			return;
+		}
+
+		final int index = sequence.getIndex();
+		final Bitmap bitmap;
+		if (sequence.prefetchedIndex == index) {
+			bitmap = sequence.prefetched;
+		} else {
+			bitmap = obtainFrame(sequence, index);
+			if (sequence.prefetched != null && sequence.cache[sequence.prefetchedIndex] != sequence.prefetched) {
+				TiBitmapPool.getInstance().put(sequence.prefetched);
+			}
+		}
+		sequence.prefetched = null;
+		sequence.prefetchedIndex = -1;
+		final boolean pooled = sequence.cache[index] != bitmap;
+		mainHandler.post(new Runnable()
+		{
+			public void run()
+			{
+				deliverFrame(sequence, bitmap, index, pooled);
+			}
+		});
+
+		if (++sequence.position >= sequence.frames.size()) {
+			sequence.position = 0;
+			sequence.loop++;
+			if (sequence.loop == 1 && sequence.cacheable) {
+				Log.d(TAG, "Playing image sequence from memory: " + sequence.cacheBytes + " bytes", Log.DEBUG_MODE);
+			}
+			if (sequence.repeatCount > 0 && sequence.loop >= sequence.repeatCount) {
+				mainHandler.post(new Runnable()
+				{
+					public void run()
+					{
+						sequence.listener.onSequenceFinished(sequence);
+					}
+				});
+				return;
+			}
+		}
+
+		// Keep a steady pace; if decoding fell behind, don't try to catch up.
+		long now = SystemClock.uptimeMillis();
+		sequence.nextFrameTime = Math.max(sequence.nextFrameTime + sequence.duration, now);
+		handler.sendMessageAtTime(handler.obtainMessage(MSG_FRAME, sequence), sequence.nextFrameTime);
+	}
+
+	private void handleWake(Sequence sequence)
+	{
+		if (!sequence.suspended || sequence.cancelled) {
+			return;
+		}
+		sequence.suspended = false;
+		if (!sequence.paused) {
+			// Show the current frame right away, then continue at the normal pace.
+			handler.removeMessages(MSG_FRAME, sequence);
+			sequence.nextFrameTime = SystemClock.uptimeMillis();
+			handler.sendMessageAtTime(handler.obtainMessage(MSG_FRAME, sequence), sequence.nextFrameTime);
+		}
+	}
+
+	private void handleRelease(Sequence sequence)
+	{
+		if (sequence.cacheable) {
+			cacheSize -= sequence.cacheBytes;
+		}
+		sequence.cacheable = false;
+		sequence.cacheBytes = 0;
+		for (int i = 0; i < sequence.cache.length; i++) {
+			sequence.cache[i] = null;
+		}
+		sequence.prefetched = null;
+		sequence.prefetchedIndex = -1;
+	}
+
+	/**
+	 * Runs on the UI thread.
+	 */
+	private void deliverFrame(Sequence sequence, Bitmap bitmap, int index, boolean pooled)
+	{
+		if (sequence.cancelled) {
+			if (pooled) {
+				TiBitmapPool.getInstance().put(bitmap);
+			}
+			return;
+		}
+		sequence.listener.onSequenceFrame(sequence, bitmap, index);
+		if (sequence.displayedPooled && sequence.displayed != bitmap) {
+			TiBitmapPool.getInstance().put(sequence.displayed);
+		}
+		sequence.displayed = bitmap;
+		sequence.displayedPooled = pooled;
+		setVisible(sequence, sequence.listener.isSequenceVisible(sequence));
+	}
+
+	/**
+	 * Returns the decoded frame, from the sequence cache if possible. Runs on the scheduler thread.
+	 */
+	private Bitmap obtainFrame(Sequence sequence, int index)
+	{
+		Bitmap bitmap = sequence.cache[index];
+		if (bitmap != null && !bitmap.isRecycled()) {
+			return bitmap;
+		}
+
+		TiDrawableReference frame = sequence.frames.get(index);
+		if (sequence.cacheable) {
+			// Cached frames are never reused, so decode into fresh memory.
+			bitmap = frame.getBitmap(true);
+		} else {
+			// Frames of a sequence normally share one size; getBitmap() copes with the odd one that doesn't.
+			if (sequence.frameBounds == null) {
+				sequence.frameBounds = frame.peekBounds();
+			}
+			Bounds bounds = sequence.frameBounds;
+			bitmap = frame.getBitmap(TiBitmapPool.getInstance().get(bounds.width, bounds.height));
+		}
+
+		if (bitmap != null && sequence.cacheable) {
+			int bytes = TiBitmapPool.sizeOf(bitmap);
+			if (cacheSize + bytes <= MAX_CACHE_SIZE) {
+				sequence.cache[index] = bitmap;
+				sequence.cacheBytes += bytes;
+				cacheSize += bytes;
+			} else {
+				// Too big to keep in memory, decode every frame from now on.
+				handleRelease(sequence);
+			}
+		}
+		return bitmap;
+	}
+}
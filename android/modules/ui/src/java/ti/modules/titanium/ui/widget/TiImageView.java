@@ -26,6 +26,7 @@ import android.view.MotionEvent;
 import android.view.View;
 import android.view.View.OnClickListener;
 import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
 import android.widget.ImageView;
 import android.widget.ImageView.ScaleType;
 import android.widget.ZoomControls;
@@ -64,6 +65,17 @@ public class TiImageView extends ViewGroup implements Handler.Callback, OnClickL
 	
 	private WeakReference<TiViewProxy> proxy;
 
+	private OnVisibilityChangeListener visibilityChangeListener;
+	private ViewTreeObserver.OnScrollChangedListener scrollChangedListener;
+
+	/**
+	 * Listener for changes that may move the view on or off screen.
+	 */
+	public interface OnVisibilityChangeListener
+	{
+		void onVisibilityChange(TiImageView view);
+	}
+
 	public TiImageView(Context context) {
 		super(context);
 
@@ -188,6 +200,67 @@ public class TiImageView extends ViewGroup implements Handler.Callback, OnClickL
 		this.clickListener = clickListener;
 	}
 
+	/**
+	 * Sets the listener notified when the view is attached or detached, its visibility or its window's
+	 * visibility changes, it is laid out or an ancestor scrolls.
+	 */
+	public void setOnVisibilityChangeListener(OnVisibilityChangeListener listener)
+	{
+		visibilityChangeListener = listener;
+		if (listener != null && scrollChangedListener == null) {
+			scrollChangedListener = new ViewTreeObserver.OnScrollChangedListener()
+			{
+				public void onScrollChanged()
+				{
+					fireVisibilityChange();
+				}
+			};
+			getViewTreeObserver().addOnScrollChangedListener(scrollChangedListener);
+		}
+	}
+
+	private void fireVisibilityChange()
+	{
+		if (visibilityChangeListener != null) {
+			visibilityChangeListener.onVisibilityChange(this);
+		}
+	}
+
+	@Override
+	protected void onAttachedToWindow()
+	{
+		super.onAttachedToWindow();
+		if (scrollChangedListener != null) {
+			// The view tree observer is replaced on every attach.
+			getViewTreeObserver().addOnScrollChangedListener(scrollChangedListener);
+		}
+		fireVisibilityChange();
+	}
+
+	@Override
+	protected void onDetachedFromWindow()
+	{
+		if (scrollChangedListener != null) {
+			getViewTreeObserver().removeOnScrollChangedListener(scrollChangedListener);
+		}
+		super.onDetachedFromWindow();
+		fireVisibilityChange();
+	}
+
+	@Override
+	protected void onWindowVisibilityChanged(int visibility)
+	{
+		super.onWindowVisibilityChanged(visibility);
+		fireVisibilityChange();
+	}
+
+	@Override
+	protected void onVisibilityChanged(View changedView, int visibility)
+	{
+		super.onVisibilityChanged(changedView, visibility);
+		fireVisibilityChange();
+	}
+
 	public boolean handleMessage(Message msg)
 	{
 		switch (msg.what) {
@@ -422,6 +495,7 @@ public class TiImageView extends ViewGroup implements Handler.Callback, OnClickL
 		
 		TiViewProxy viewProxy = (proxy == null ? null : proxy.get());
 		TiUIHelper.firePostLayoutEvent(viewProxy);
+		fireVisibilityChange();
 	}
 
 	public void setColorFilter(ColorFilter filter)
@@ -461,6 +535,15 @@ public class TiImageView extends ViewGroup implements Handler.Callback, OnClickL
 		updateScaleType();
 	}
 
+	/**
+	 * @return true if the image is always stretched to the size of this view, so it only needs to be
+	 * decoded at that size.
+	 */
+	public boolean isImageFitToView()
+	{
+		return viewWidthDefined && viewHeightDefined && orientation == 0 && !enableZoomControls;
+	}
+
 	public void setOrientation(int orientation)
 	{
 		this.orientation = orientation;
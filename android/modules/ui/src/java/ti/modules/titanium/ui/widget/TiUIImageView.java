@@ -9,9 +9,6 @@ package ti.modules.titanium.ui.widget;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
-import java.util.Timer;
-import java.util.TimerTask;
-import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.appcelerator.kroll.KrollDict;
@@ -38,8 +35,11 @@ import org.appcelerator.titanium.view.TiUIView;
 import ti.modules.titanium.filesystem.FileProxy;
 import ti.modules.titanium.ui.ImageViewProxy;
 import ti.modules.titanium.ui.ScrollViewProxy;
+import ti.modules.titanium.ui.widget.TiImageSequenceScheduler.Sequence;
+import ti.modules.titanium.ui.widget.TiImageSequenceScheduler.SequenceListener;
 import android.app.Activity;
 import android.graphics.Bitmap;
+import android.graphics.Rect;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.os.Handler;
@@ -49,21 +49,16 @@ import android.os.Bundle;
 import android.view.View;
 import android.view.ViewParent;
 
-public class TiUIImageView extends TiUIView implements OnLifecycleEvent, Handler.Callback
+public class TiUIImageView extends TiUIView implements OnLifecycleEvent, Handler.Callback, SequenceListener
 {
 	private static final String TAG = "TiUIImageView";
-	private static final int FRAME_QUEUE_SIZE = 5;
 	public static final int INFINITE = 0;
 	public static final int MIN_DURATION = 30;
 	public static final int DEFAULT_DURATION = 200;
 
-	private Timer timer;
-	private Animator animator;
-	private Loader loader;
-	private Thread loaderThread;
+	private Sequence sequence;
+	private Rect visibleRect = new Rect();
 	private AtomicBoolean animating = new AtomicBoolean(false);
-	private AtomicBoolean isLoading = new AtomicBoolean(false);
-	private AtomicBoolean isStopping = new AtomicBoolean(false);
 	private boolean reverse = false;
 	private boolean paused = false;
 	private boolean firedLoad;
@@ -74,7 +69,8 @@ public class TiUIImageView extends TiUIView implements OnLifecycleEvent, Handler
 	private TiDrawableReference defaultImageSource;
 	private TiDownloadListener downloadListener;
 	private TiLoadImageListener loadImageListener;
-	private Object releasedLock = new Object();
+	// The size the current image is decoded at, or 0 for its full size.
+	private int loadWidth, loadHeight;
 	
 	private Handler mainHandler = new Handler(Looper.getMainLooper(), this);
 	private static final int SET_IMAGE = 10001;
@@ -92,6 +88,16 @@ public class TiUIImageView extends TiUIView implements OnLifecycleEvent, Handler
 		Log.d(TAG, "Creating an ImageView", Log.DEBUG_MODE);
 
 		TiImageView view = new TiImageView(proxy.getActivity(), proxy);
+		view.setOnVisibilityChangeListener(new TiImageView.OnVisibilityChangeListener()
+		{
+			public void onVisibilityChange(TiImageView view)
+			{
+				// Suspends the animation while off screen, and wakes it up once it is back.
+				if (sequence != null) {
+					TiImageSequenceScheduler.getInstance().setVisible(sequence, isSequenceVisible(sequence));
+				}
+			}
+		});
 
 		downloadListener = new TiDownloadListener()
 		{
@@ -102,7 +108,7 @@ public class TiUIImageView extends TiUIView implements OnLifecycleEvent, Handler
 					// The requested image did not make it into our TiResponseCache,
 					// possibly because it had a header forbidding that. Now get it
 					// via the "old way" (not relying on cache).
-					TiLoadImageManager.getInstance().load(TiDrawableReference.fromUrl(imageViewProxy, uri.toString()), loadImageListener);
+					loadImage(TiDrawableReference.fromUrl(imageViewProxy, uri.toString()));
 				}
 			}
 
@@ -130,8 +136,9 @@ public class TiUIImageView extends TiUIView implements OnLifecycleEvent, Handler
 			{
 				// Cache the image
 				if (bitmap != null) {
-					if (mMemoryCache.get(hash) == null) {
-						mMemoryCache.put(hash, bitmap);
+					int key = TiLoadImageManager.getKey(hash, loadWidth, loadHeight);
+					if (mMemoryCache.get(key) == null) {
+						mMemoryCache.put(key, bitmap);
 					}
 
 					// Update UI if the current image source has not been changed.
@@ -230,11 +237,16 @@ public class TiUIImageView extends TiUIView implements OnLifecycleEvent, Handler
 			if (imageref.equals(imgsrc)
 				|| imageref
 					.equals(TiDrawableReference.fromUrl(imageViewProxy, TiUrl.getCleanUri(imgsrc.getUrl()).toString()))) {
-				int hash = imageref.hashCode();
-				Bitmap bitmap = imageref.getBitmap(true);
+				int key = TiLoadImageManager.getKey(imageref.hashCode(), loadWidth, loadHeight);
+				Bitmap bitmap;
+				if (loadWidth > 0 && loadHeight > 0) {
+					bitmap = imageref.getBitmap(loadWidth, loadHeight);
+				} else {
+					bitmap = imageref.getBitmap(true);
+				}
 				if (bitmap != null) {
-					if (mMemoryCache.get(hash) == null) {
-						mMemoryCache.put(hash, bitmap);
+					if (mMemoryCache.get(key) == null) {
+						mMemoryCache.put(key, bitmap);
 					}
 					setImage(bitmap);
 					if (!firedLoad) {
@@ -263,177 +275,71 @@ public class TiUIImageView extends TiUIView implements OnLifecycleEvent, Handler
 		}
 	}
 
-	private class BitmapWithIndex
+	private void setImages()
 	{
-		public BitmapWithIndex(Bitmap b, int i)
-		{
-			this.bitmap = b;
-			this.index = i;
+		if (imageSources == null || imageSources.size() == 0) {
+			fireError("Missing Images", null);
+			return;
 		}
 
-		public Bitmap bitmap;
-		public int index;
+		// Restart the animation with the new images if it was running.
+		boolean wasAnimating = animating.get();
+		cancelSequence();
+		paused = false;
+		firedLoad = false;
+		sequence = new Sequence(imageSources, reverse, this);
+		TiImageSequenceScheduler.getInstance().prepare(sequence);
+		if (wasAnimating) {
+			handleStart();
+		}
 	}
 
-	private class Loader implements Runnable
+	private void cancelSequence()
 	{
-		private ArrayBlockingQueue<BitmapWithIndex> bitmapQueue;
-		private int waitTime = 0;
-		private int sleepTime = 50; //ms
-		private int repeatIndex = 0;
-
-		public Loader()
-		{
-			bitmapQueue = new ArrayBlockingQueue<BitmapWithIndex>(FRAME_QUEUE_SIZE);
-		}
-
-		private boolean isRepeating()
-		{
-			int repeatCount = getRepeatCount();
-			if (repeatCount <= INFINITE) {
-				return true;
-			}
-			return repeatIndex < repeatCount;
-		}
-
-		private int getStart()
-		{
-			if (imageSources == null) {
-				return 0;
-			}
-			if (reverse) {
-				return imageSources.size() - 1;
-			}
-			return 0;
-
-		}
-
-		private boolean isNotFinalFrame(int frame)
-		{
-			synchronized (releasedLock) {
-				if (imageSources == null) {
-					return false;
-				}
-				if (reverse) {
-					return frame >= 0;
-				}
-				return frame < imageSources.size();
-			}
+		if (sequence != null) {
+			TiImageSequenceScheduler.getInstance().cancel(sequence);
+			sequence = null;
 		}
+		animating.set(false);
+	}
 
-		private int getCounter()
-		{
-			if (reverse) {
-				return -1;
-			}
-			return 1;
-		}
-
-		public void run()
-		{
-			if (getProxy() == null) {
-				Log.d(TAG, "Multi-image loader exiting early because proxy has been gc'd");
-				return;
-			}
-			repeatIndex = 0;
-			isLoading.set(true);
-			firedLoad = false;
-			topLoop: while (isRepeating()) {
-
-				if (imageSources == null) {
-					break;
-				}
-				long time = System.currentTimeMillis();
-				for (int j = getStart(); imageSources != null && isNotFinalFrame(j); j += getCounter()) {
-					if (bitmapQueue.size() == FRAME_QUEUE_SIZE && !firedLoad) {
-						fireLoad(TiC.PROPERTY_IMAGES);
-						firedLoad = true;
-					}
-					if (paused && !Thread.currentThread().isInterrupted()) {
-						try {
-							Log.i(TAG, "Pausing", Log.DEBUG_MODE);
-							// User backed-out while animation running
-							if (loader == null) {
-								break;
-							}
-
-							synchronized (this) {
-								wait();
-							}
-
-							Log.i(TAG, "Waking from pause.", Log.DEBUG_MODE);
-							// In the meantime, while paused, user could have backed out, which leads
-							// to release(), which in turn leads to nullified imageSources.
-							if (imageSources == null) {
-								break topLoop;
-							}
-						} catch (InterruptedException e) {
-							Log.w(TAG, "Interrupted from paused state.");
-						}
-					}
-
-					if (!isLoading.get() || isStopping.get()) {
-						break topLoop;
-					}
-
-					waitTime = 0;
-					synchronized (releasedLock) {
-						if (imageSources == null || j >= imageSources.size()) {
-							break topLoop;
-						}
-						Bitmap b = imageSources.get(j).getBitmap(true);
-						BitmapWithIndex bIndex = new BitmapWithIndex(b,j);
-						while (waitTime < getDuration() * imageSources.size()) {
-							try {
-								if (!bitmapQueue.offer(bIndex)) {
-									if (isStopping.get()) {
-										break;
-									} 
-									Thread.sleep(sleepTime);
-									waitTime += sleepTime;
-
-								} else {
-									break;
-								}
-
-							} catch (InterruptedException e) {
-								Log.w(TAG, "Interrupted while adding Bitmap into bitmapQueue");
-								break;
-							}
-						}
-					}
-					repeatIndex++;
-				}
-
-				Log.d(TAG, "TIME TO LOAD FRAMES: " + (System.currentTimeMillis() - time) + "ms", Log.DEBUG_MODE);
-
-			}
-			isLoading.set(false);
+	public void onSequenceLoaded(Sequence s)
+	{
+		if (s == sequence && !firedLoad) {
+			fireLoad(TiC.PROPERTY_IMAGES);
+			firedLoad = true;
 		}
+	}
 
-		public ArrayBlockingQueue<BitmapWithIndex> getBitmapQueue()
-		{
-			return bitmapQueue;
+	public void onSequenceFrame(Sequence s, Bitmap bitmap, int index)
+	{
+		if (s != sequence) {
+			return;
 		}
+		Log.d(TAG, "set image: " + index, Log.DEBUG_MODE);
+		handleSetImage(bitmap);
+		fireChange(index);
 	}
 
-	private void setImages()
+	public void onSequencePaused(Sequence s)
 	{
-		if (imageSources == null || imageSources.size() == 0) {
-			fireError("Missing Images", null);
-			return;
+		if (s == sequence) {
+			fireEvent(TiC.EVENT_PAUSE, new KrollDict());
 		}
+	}
 
-		if (loader == null) {
-			paused = false;
-			isStopping.set(false);
-			firedLoad = false;
-			loader = new Loader();
-			loaderThread = new Thread(loader);
-			Log.d(TAG, "STARTING LOADER THREAD " + loaderThread + " for " + this, Log.DEBUG_MODE);
-			loaderThread.start();
+	public void onSequenceFinished(Sequence s)
+	{
+		if (s == sequence) {
+			animating.set(false);
 		}
+	}
 
+	public boolean isSequenceVisible(Sequence s)
+	{
+		// Frames are only decoded while the view is attached and at least partially on screen.
+		TiImageView view = getView();
+		return view != null && view.getWindowToken() != null && view.isShown() && view.getGlobalVisibleRect(visibleRect);
 	}
 
 	public double getDuration()
@@ -496,47 +402,6 @@ public class TiUIImageView extends TiUIView implements OnLifecycleEvent, Handler
 		fireEvent(TiC.EVENT_ERROR, data);
 	}
 
-	private class Animator extends TimerTask
-	{
-		private Loader loader;
-
-		public Animator(Loader loader)
-		{
-			this.loader = loader;
-		}
-
-		public void run()
-		{
-			boolean waitOnResume = false;
-			try {
-				if (paused) {
-					synchronized (this) {
-						KrollDict data = new KrollDict();
-						fireEvent(TiC.EVENT_PAUSE, data);
-						waitOnResume = true;
-						wait();
-					}
-				}
-
-				BitmapWithIndex b = loader.getBitmapQueue().take();
-				Log.d(TAG, "set image: " + b.index, Log.DEBUG_MODE);
-				setImage(b.bitmap);
-				fireChange(b.index);
-
-				// When the animation is paused, the timer will pause in the middle of a period.
-				// When the animation resumes, the timer resumes from where it left off. As a result, it will look like
-				// one frame is left out when resumed (TIMOB-10207).
-				// To avoid this, we force the thread to wait for one period on resume.
-				if (waitOnResume) {
-					Thread.sleep(currentDuration);
-					waitOnResume = false;
-				}
-			} catch (InterruptedException e) {
-				Log.e(TAG, "Loader interrupted");
-			}
-		}
-	}
-
 	public void start()
 	{
 		if (!TiApplication.isUIThread()) {
@@ -549,26 +414,20 @@ public class TiUIImageView extends TiUIView implements OnLifecycleEvent, Handler
 
 	public void handleStart()
 	{
-		if (animator == null) {
-			timer = new Timer();
-
-			if (loader == null) {
-				loader = new Loader();
-				loaderThread = new Thread(loader);
-				Log.d(TAG, "STARTING LOADER THREAD " + loaderThread + " for " + this, Log.DEBUG_MODE);
-			}
-
-			animator = new Animator(loader);
-			if (!animating.get() && !loaderThread.isAlive()) {
-				isStopping.set(false);
-				loaderThread.start();
+		if (!animating.get()) {
+			if (sequence == null) {
+				setImages();
+				if (sequence == null) {
+					return;
+				}
 			}
 
 			currentDuration = (int) getDuration();
 
 			animating.set(true);
+			paused = false;
 			fireStart();
-			timer.schedule(animator, currentDuration, currentDuration);
+			TiImageSequenceScheduler.getInstance().start(sequence, currentDuration, getRepeatCount());
 		} else {
 			resume();
 		}
@@ -577,22 +436,16 @@ public class TiUIImageView extends TiUIView implements OnLifecycleEvent, Handler
 	public void pause() 
 	{
 		paused = true;
+		if (sequence != null) {
+			TiImageSequenceScheduler.getInstance().pause(sequence);
+		}
 	}
 
 	public void resume()
 	{
 		paused = false;
-		
-		if (animator != null) {
-			synchronized (animator) {
-				animator.notify();
-			}
-		}
-		
-		if (loader != null) {
-			synchronized (loader) {
-				loader.notify();
-			}
+		if (sequence != null) {
+			TiImageSequenceScheduler.getInstance().resume(sequence);
 		}
 	}
 
@@ -607,29 +460,7 @@ public class TiUIImageView extends TiUIView implements OnLifecycleEvent, Handler
 	}
 	public void handleStop()
 	{
-		if (timer != null) {
-			timer.cancel();
-		}
-		animating.set(false);
-		isStopping.set(true);
-
-		if (loaderThread != null) {
-			try {
-				loaderThread.join();
-			} catch (InterruptedException e) {
-				Log.e(TAG, "LoaderThread termination interrupted");
-			}
-			loaderThread = null;
-		}
-		if (loader != null) {
-			synchronized (loader) {
-				loader.notify();
-			}
-		}
-
-		loader = null;
-		timer = null;
-		animator = null;
+		cancelSequence();
 		paused = false;
 
 		fireStop();
@@ -689,10 +520,20 @@ public class TiUIImageView extends TiUIView implements OnLifecycleEvent, Handler
 		}
 
 		if (imageSources.size() == 1) {
+			cancelSequence();
 			TiDrawableReference imageref = imageSources.get(0);
 
+			// Decode the image at the measured size of the view if it is stretched to it anyway.
+			TiImageView view = getView();
+			if (view != null && view.isImageFitToView() && view.getWidth() > 0 && view.getHeight() > 0) {
+				loadWidth = view.getWidth();
+				loadHeight = view.getHeight();
+			} else {
+				loadWidth = loadHeight = 0;
+			}
+
 			// Check if the image is cached in memory
-			int hash = imageref.hashCode();
+			int hash = TiLoadImageManager.getKey(imageref.hashCode(), loadWidth, loadHeight);
 			Bitmap bitmap = mMemoryCache.get(hash);
 			if (bitmap != null) {
 				if (!bitmap.isRecycled()) {
@@ -726,16 +567,25 @@ public class TiUIImageView extends TiUIView implements OnLifecycleEvent, Handler
 				} else {
 					// If the image has been cached in disk or the uri is not valid,
 					// fetch and cache it and update the UI.
-					TiLoadImageManager.getInstance().load(imageref, loadImageListener);
+					loadImage(imageref);
 				}
 			} else {
-				TiLoadImageManager.getInstance().load(imageref, loadImageListener);
+				loadImage(imageref);
 			}
 		} else {
 			setImages();
 		}
 	}
 
+	private void loadImage(TiDrawableReference imageref)
+	{
+		if (loadWidth > 0 && loadHeight > 0) {
+			TiLoadImageManager.getInstance().load(imageref, loadWidth, loadHeight, loadImageListener);
+		} else {
+			TiLoadImageManager.getInstance().load(imageref, loadImageListener);
+		}
+	}
+
 	private void setDefaultImage()
 	{
 		if (defaultImageSource == null) {
@@ -909,6 +759,9 @@ public class TiUIImageView extends TiUIView implements OnLifecycleEvent, Handler
 	public void setReverse(boolean reverse)
 	{
 		this.reverse = reverse;
+		if (sequence != null) {
+			sequence.setReverse(reverse);
+		}
 	}
 
 	public TiBlob toBlob()
@@ -933,28 +786,15 @@ public class TiUIImageView extends TiUIView implements OnLifecycleEvent, Handler
 	public void release()
 	{
 		super.release();
-		if (loader != null) {
-			synchronized (loader) {
-				loader.notify();
-			}
-			loader = null;
-		}
-		animating.set(false);
-		isStopping.set(true);
-		synchronized(releasedLock) {
-			if (imageSources != null) {
-				for (TiDrawableReference imageref : imageSources) {
-					int hash = imageref.hashCode();
-					mMemoryCache.remove(hash); //Release the cached images
-				}
-				imageSources.clear();
-				imageSources = null;
+		cancelSequence();
+		if (imageSources != null) {
+			for (TiDrawableReference imageref : imageSources) {
+				int hash = imageref.hashCode();
+				mMemoryCache.remove(hash); //Release the cached images
+				mMemoryCache.remove(TiLoadImageManager.getKey(hash, loadWidth, loadHeight));
 			}
-		}
-		
-		if (timer != null) {
-			timer.cancel();
-			timer = null;
+			imageSources.clear();
+			imageSources = null;
 		}
 		defaultImageSource = null;
 	}
@@ -6,32 +6,59 @@
  */
 package ti.modules.titanium.utils;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
 import java.nio.charset.Charset;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.codec.digest.DigestUtils;
+import org.appcelerator.kroll.KrollDict;
+import org.appcelerator.kroll.KrollFunction;
 import org.appcelerator.kroll.KrollModule;
 import org.appcelerator.kroll.annotations.Kroll;
 import org.appcelerator.kroll.common.Log;
 import org.appcelerator.titanium.TiBlob;
+import org.appcelerator.titanium.TiC;
 import org.appcelerator.titanium.TiContext;
 import org.appcelerator.titanium.TiFileProxy;
 import org.appcelerator.titanium.io.TiBaseFile;
+import org.appcelerator.titanium.io.TiStream;
 import org.appcelerator.titanium.util.TiMimeTypeHelper;
+import org.appcelerator.titanium.util.TiStreamHelper;
+
+import ti.modules.titanium.BufferProxy;
 
 import android.util.Base64InputStream;
+import android.util.Base64OutputStream;
 
 @Kroll.module
 public class UtilsModule extends KrollModule
 {
 	private static final String TAG = "UtilsModule";
 
+	// Files, streams and blobs are hashed and encoded in chunks of this size.
+	private static final int CHUNK_SIZE = 64 * 1024;
+	private static final int MAX_POOLED_CHUNKS = 2;
+
+	private static final String PROPERTY_DESTINATION = "destination";
+	private static final String PROPERTY_CALLBACK = "callback";
+	private static final String PROPERTY_RESULT = "result";
+
+	private static ExecutorService worker;
+	private static final LinkedList<byte[]> chunks = new LinkedList<byte[]>();
+
 	public UtilsModule()
 	{
 		super();
@@ -54,9 +81,32 @@ public class UtilsModule extends KrollModule
 	}
 
 	@Kroll.method
-	public TiBlob base64encode(Object obj)
+	public TiBlob base64encode(final Object obj, @Kroll.argument(optional=true) KrollDict options)
 	{
-		if (obj instanceof TiBlob) {
+		final Object destination = options != null ? options.get(PROPERTY_DESTINATION) : null;
+		KrollFunction callback = getCallback(options);
+		if (destination != null || callback != null) {
+			// With a destination the result is the number of bytes written, which only the callback gets.
+			Object result = execute(callback, new Callable<Object>() {
+				public Object call() throws Exception
+				{
+					if (destination != null) {
+						return transcode(obj, destination, true);
+					}
+					return base64encode(obj, null);
+				}
+			});
+			return result instanceof TiBlob ? (TiBlob) result : null;
+		}
+
+		if (obj instanceof TiStream) {
+			try {
+				return TiBlob.blobFromString(new String(transcodeToBytes(obj, true), "UTF-8"));
+			} catch (IOException e) {
+				Log.e(TAG, "Problem reading stream: " + e.getMessage(), e);
+				return null;
+			}
+		} else if (obj instanceof TiBlob) {
 			return TiBlob.blobFromString(((TiBlob) obj).toBase64());
 		} else if (obj instanceof TiFileProxy) {
 			try {
@@ -78,8 +128,32 @@ public class UtilsModule extends KrollModule
 	}
 
 	@Kroll.method
-	public TiBlob base64decode(Object obj)
+	public TiBlob base64decode(final Object obj, @Kroll.argument(optional=true) KrollDict options)
 	{
+		final Object destination = options != null ? options.get(PROPERTY_DESTINATION) : null;
+		KrollFunction callback = getCallback(options);
+		if (destination != null || callback != null) {
+			// With a destination the result is the number of bytes written, which only the callback gets.
+			Object result = execute(callback, new Callable<Object>() {
+				public Object call() throws Exception
+				{
+					if (destination != null) {
+						return transcode(obj, destination, false);
+					}
+					return base64decode(obj, null);
+				}
+			});
+			return result instanceof TiBlob ? (TiBlob) result : null;
+		}
+
+		if (obj instanceof TiStream || obj instanceof TiFileProxy) {
+			try {
+				return TiBlob.blobFromData(transcodeToBytes(obj, false));
+			} catch (IOException e) {
+				Log.e(TAG, "Problem reading data: " + e.getMessage(), e);
+				return null;
+			}
+		}
 		String data = convertToString(obj);
 		if (data != null) {
 			try {
@@ -92,29 +166,39 @@ public class UtilsModule extends KrollModule
 	}
 
 	@Kroll.method
-	public String md5HexDigest(Object obj)
+	public String md5HexDigest(final Object obj, @Kroll.argument(optional=true) KrollFunction callback)
 	{
-		if (obj instanceof TiBlob) {
-			return DigestUtils.md5Hex(((TiBlob) obj).getBytes());
-		}
-		String data = convertToString(obj);
-		if (data != null) {
-			return DigestUtils.md5Hex(data);
-		}
-		return null;
+		return (String) execute(callback, new Callable<Object>() {
+			public Object call() throws Exception
+			{
+				if (isStreamable(obj)) {
+					return digest("MD5", obj);
+				}
+				String data = convertToString(obj);
+				if (data != null) {
+					return DigestUtils.md5Hex(data);
+				}
+				return null;
+			}
+		});
 	}
 
 	@Kroll.method
-	public String sha1(Object obj)
+	public String sha1(final Object obj, @Kroll.argument(optional=true) KrollFunction callback)
 	{
-		if (obj instanceof TiBlob) {
-			return DigestUtils.shaHex(((TiBlob) obj).getBytes());
-		}
-		String data = convertToString(obj);
-		if (data != null) {
-			return DigestUtils.shaHex(data);
-		}
-		return null;
+		return (String) execute(callback, new Callable<Object>() {
+			public Object call() throws Exception
+			{
+				if (isStreamable(obj)) {
+					return digest("SHA-1", obj);
+				}
+				String data = convertToString(obj);
+				if (data != null) {
+					return DigestUtils.shaHex(data);
+				}
+				return null;
+			}
+		});
 	}
 
 	@Kroll.method
@@ -124,31 +208,302 @@ public class UtilsModule extends KrollModule
 	}
 
 	@Kroll.method
-	public String sha256(Object obj)
+	public String sha256(final Object obj, @Kroll.argument(optional=true) KrollFunction callback)
 	{
 		// NOTE: DigestUtils with the version before 1.4 doesn't have the function sha256Hex,
 		// so we deal with it ourselves
+		return (String) execute(callback, new Callable<Object>() {
+			public Object call() throws Exception
+			{
+				try {
+					if (isStreamable(obj)) {
+						return digest("SHA-256", obj);
+					}
+					String data = convertToString(obj);
+					MessageDigest algorithm = MessageDigest.getInstance("SHA-256");
+					algorithm.reset();
+					algorithm.update(data.getBytes());
+					return toHex(algorithm.digest());
+				} catch (NoSuchAlgorithmException e) {
+					Log.e(TAG, "SHA256 is not a supported algorithm");
+				}
+				return null;
+			}
+		});
+	}
+
+	private static boolean isStreamable(Object obj)
+	{
+		return obj instanceof TiBlob || obj instanceof TiFileProxy || obj instanceof TiStream;
+	}
+
+	private static KrollFunction getCallback(KrollDict options)
+	{
+		Object callback = options != null ? options.get(PROPERTY_CALLBACK) : null;
+		return callback instanceof KrollFunction ? (KrollFunction) callback : null;
+	}
+
+	/**
+	 * Runs the operation and returns its result. If a callback is given, the operation runs on a
+	 * worker thread instead and its result is passed to the callback as the "result" property.
+	 */
+	private Object execute(final KrollFunction callback, final Callable<Object> operation)
+	{
+		if (callback == null) {
+			try {
+				return operation.call();
+			} catch (RuntimeException e) {
+				throw e;
+			} catch (Exception e) {
+				Log.e(TAG, "Error while processing data: " + e.getMessage(), e);
+				return null;
+			}
+		}
+
+		getWorker().execute(new Runnable() {
+			public void run()
+			{
+				KrollDict result = new KrollDict();
+				try {
+					result.put(PROPERTY_RESULT, operation.call());
+					result.putCodeAndMessage(TiC.ERROR_CODE_NO_ERROR, null);
+				} catch (Exception e) {
+					Log.e(TAG, "Error while processing data: " + e.getMessage(), e);
+					result.putCodeAndMessage(TiC.ERROR_CODE_UNKNOWN, e.getMessage());
+				}
+				callback.callAsync(getKrollObject(), result);
+			}
+		});
+		return null;
+	}
+
+	private static synchronized ExecutorService getWorker()
+	{
+		if (worker == null) {
+			worker = Executors.newSingleThreadExecutor();
+		}
+		return worker;
+	}
+
+	private static byte[] acquireChunk()
+	{
+		synchronized (chunks) {
+			if (!chunks.isEmpty()) {
+				return chunks.removeFirst();
+			}
+		}
+		return new byte[CHUNK_SIZE];
+	}
+
+	private static void releaseChunk(byte[] chunk)
+	{
+		synchronized (chunks) {
+			if (chunks.size() < MAX_POOLED_CHUNKS) {
+				chunks.add(chunk);
+			}
+		}
+	}
+
+	private static String digest(String algorithm, Object source) throws IOException, NoSuchAlgorithmException
+	{
+		MessageDigest digest = MessageDigest.getInstance(algorithm);
+		InputStream in = openInputStream(source);
+		byte[] chunk = acquireChunk();
+		try {
+			int count;
+			while ((count = in.read(chunk)) != -1) {
+				digest.update(chunk, 0, count);
+			}
+		} finally {
+			releaseChunk(chunk);
+			closeSource(source, in);
+		}
+		return toHex(digest.digest());
+	}
+
+	private static String toHex(byte[] bytes)
+	{
+		StringBuilder result = new StringBuilder(bytes.length * 2);
+		for (int i = 0; i < bytes.length; i++) {
+			result.append(Integer.toString((bytes[i] & 0xff) + 0x100, 16).substring(1));
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Base64 encodes or decodes the source into the destination, chunk by chunk.
+	 * @param source a String, TiBlob, TiFileProxy or TiStream.
+	 * @param destination a TiFileProxy or TiStream.
+	 * @param encode true to encode, false to decode.
+	 * @return the number of bytes written.
+	 */
+	private static long transcode(Object source, Object destination, boolean encode) throws IOException
+	{
+		OutputStream out = openOutputStream(destination);
 		try {
-			byte[] b = null;
-			if (obj instanceof TiBlob) {
-				b = ((TiBlob) obj).getBytes();
+			return transcode(source, out, encode);
+		} finally {
+			if (destination instanceof TiStream) {
+				out.flush();
 			} else {
-				String data = convertToString(obj);
-				b = data.getBytes();
+				out.close();
 			}
-			MessageDigest algorithm = MessageDigest.getInstance("SHA-256");
-			algorithm.reset();
-			algorithm.update(b);
-			byte messageDigest[] = algorithm.digest();
-			StringBuilder result = new StringBuilder();
-			for (int i = 0; i < messageDigest.length; i++) {
-				result.append(Integer.toString((messageDigest[i] & 0xff) + 0x100, 16).substring(1));
+		}
+	}
+
+	private static byte[] transcodeToBytes(Object source, boolean encode) throws IOException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		transcode(source, out, encode);
+		return out.toByteArray();
+	}
+
+	private static long transcode(Object source, OutputStream out, boolean encode) throws IOException
+	{
+		CountingOutputStream counter = new CountingOutputStream(out);
+		InputStream in = openInputStream(source);
+		InputStream decoder = null;
+		OutputStream encoder = null;
+		byte[] chunk = acquireChunk();
+		try {
+			if (encode) {
+				encoder = new Base64OutputStream(counter, android.util.Base64.NO_WRAP);
+				int count;
+				while ((count = in.read(chunk)) != -1) {
+					encoder.write(chunk, 0, count);
+				}
+				// Closing the encoder writes the final padded quantum, the counter keeps out open.
+				encoder.close();
+			} else {
+				decoder = new Base64InputStream(in, android.util.Base64.DEFAULT);
+				int count;
+				while ((count = decoder.read(chunk)) != -1) {
+					counter.write(chunk, 0, count);
+				}
 			}
-			return result.toString();
-		} catch (NoSuchAlgorithmException e) {
-			Log.e(TAG, "SHA256 is not a supported algorithm");
+		} finally {
+			releaseChunk(chunk);
+			closeSource(source, in);
+		}
+		return counter.count;
+	}
+
+	private static InputStream openInputStream(Object source) throws IOException
+	{
+		InputStream in = null;
+		if (source instanceof TiBlob) {
+			in = ((TiBlob) source).getInputStream();
+		} else if (source instanceof TiFileProxy) {
+			in = ((TiFileProxy) source).getInputStream();
+		} else if (source instanceof TiStream) {
+			in = TiStreamHelper.toInputStream((TiStream) source, CHUNK_SIZE);
+		} else if (source instanceof String) {
+			in = new ByteArrayInputStream(((String) source).getBytes("UTF-8"));
+		} else {
+			throw new IllegalArgumentException("Invalid type for argument");
+		}
+		if (in == null) {
+			throw new IOException("Unable to read from " + source);
+		}
+		return in;
+	}
+
+	private static OutputStream openOutputStream(Object destination) throws IOException
+	{
+		OutputStream out = null;
+		if (destination instanceof TiFileProxy) {
+			out = ((TiFileProxy) destination).getBaseFile().getOutputStream();
+		} else if (destination instanceof TiStream) {
+			out = new StreamOutputStream((TiStream) destination);
+		} else {
+			throw new IllegalArgumentException("Invalid type for destination");
+		}
+		if (out == null) {
+			throw new IOException("Unable to write to " + destination);
+		}
+		return out;
+	}
+
+	// TiStreams belong to the caller and are left open.
+	private static void closeSource(Object source, InputStream in)
+	{
+		if (source instanceof TiStream) {
+			return;
+		}
+		try {
+			in.close();
+		} catch (IOException e) {
+			Log.w(TAG, e.getMessage(), e, Log.DEBUG_MODE);
+		}
+	}
+
+	/**
+	 * Writes to a TiStream through a reused BufferProxy.
+	 */
+	private static class StreamOutputStream extends OutputStream
+	{
+		private final TiStream stream;
+		private final BufferProxy buffer = new BufferProxy(CHUNK_SIZE);
+
+		public StreamOutputStream(TiStream stream)
+		{
+			this.stream = stream;
+		}
+
+		@Override
+		public void write(int b) throws IOException
+		{
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException
+		{
+			while (len > 0) {
+				int length = Math.min(len, CHUNK_SIZE);
+				System.arraycopy(b, off, buffer.getBuffer(), 0, length);
+				int written = 0;
+				while (written < length) {
+					written += stream.write(new Object[] { buffer, written, length - written });
+				}
+				off += length;
+				len -= length;
+			}
+		}
+	}
+
+	/**
+	 * Counts the bytes written to the wrapped stream. Closing it doesn't close the wrapped stream.
+	 */
+	private static class CountingOutputStream extends OutputStream
+	{
+		private final OutputStream out;
+		private long count = 0;
+
+		public CountingOutputStream(OutputStream out)
+		{
+			this.out = out;
+		}
+
+		@Override
+		public void write(int b) throws IOException
+		{
+			out.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException
+		{
+			out.write(b, off, len);
+			count += len;
+		}
+
+		@Override
+		public void flush() throws IOException
+		{
+			out.flush();
 		}
-		return null;
 	}
 
 	public String transcodeString(String orig, String inEncoding, String outEncoding)
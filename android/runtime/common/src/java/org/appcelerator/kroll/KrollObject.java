@@ -9,6 +9,7 @@ package org.appcelerator.kroll;
 import java.util.HashMap;
 
 import org.appcelerator.kroll.common.AsyncResult;
+import org.appcelerator.kroll.common.TiCallTracer;
 import org.appcelerator.kroll.common.TiMessenger;
 
 import android.os.Handler;
@@ -31,7 +32,7 @@ public abstract class KrollObject implements Handler.Callback
 
 	public KrollObject()
 	{
-		handler = new Handler(TiMessenger.getRuntimeMessenger().getLooper(), this);	
+		handler = new TiCallTracer.TracedHandler(TiMessenger.getRuntimeMessenger().getLooper(), this);
 	}
 
 	/**
@@ -0,0 +1,413 @@
+/**
+ * Appcelerator Titanium Mobile
+ * Copyright (c) 2014 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Apache Public License
+ * Please see the LICENSE included with this distribution for details.
+ */
+package org.appcelerator.kroll.common;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Process;
+import android.os.SystemClock;
+
+/**
+ * Opt-in tracing of cross-thread proxy messaging. While enabled, every message dispatched through a
+ * {@link TracedHandler} is recorded per handler class, message id and thread with its queue wait and
+ * execution time, and every blocking send through {@link TiMessenger} records how long the caller was
+ * blocked, including a {@link TiLatencyHistogram} of the blocking times. Statistics are available through {@link #getStatistics()} and the most recent events can be
+ * written as a Chrome trace-event JSON file with {@link #dumpTraceEvents(File)}.
+ *
+ * When tracing is disabled the only cost is a volatile read per dispatched message.
+ */
+public class TiCallTracer
+{
+	private static final String TAG = "TiCallTracer";
+	private static final int MAX_TRACE_EVENTS = 10000;
+
+	private static final String CATEGORY_EXECUTE = "execute";
+	private static final String CATEGORY_BLOCKING = "blocking";
+
+	private static volatile boolean enabled = false;
+
+	private static final Map<String, CallStatistics> statistics = new HashMap<String, CallStatistics>();
+	private static final Map<Message, Long> enqueueTimes = new IdentityHashMap<Message, Long>();
+	private static final TraceEvent[] traceEvents = new TraceEvent[MAX_TRACE_EVENTS];
+	private static int traceEventIndex = 0;
+	private static int traceEventCount = 0;
+
+	/**
+	 * Aggregated timings for one handler class, message id and thread. All times are in nanoseconds.
+	 */
+	public static class CallStatistics
+	{
+		public final String className;
+		public final int messageId;
+		public final String threadName;
+
+		public long count;
+		public long queueTime;
+		public long maxQueueTime;
+		public long executionTime;
+		public long maxExecutionTime;
+		public long blockingCount;
+		public long blockingTime;
+		public long maxBlockingTime;
+		public final TiLatencyHistogram blockingLatency;
+
+		private CallStatistics(String className, int messageId, String threadName)
+		{
+			this(className, messageId, threadName, new TiLatencyHistogram());
+		}
+
+		private CallStatistics(String className, int messageId, String threadName, TiLatencyHistogram blockingLatency)
+		{
+			this.className = className;
+			this.messageId = messageId;
+			this.threadName = threadName;
+			this.blockingLatency = blockingLatency;
+		}
+
+		private CallStatistics copy()
+		{
+			CallStatistics copy = new CallStatistics(className, messageId, threadName, blockingLatency.copy());
+			copy.count = count;
+			copy.queueTime = queueTime;
+			copy.maxQueueTime = maxQueueTime;
+			copy.executionTime = executionTime;
+			copy.maxExecutionTime = maxExecutionTime;
+			copy.blockingCount = blockingCount;
+			copy.blockingTime = blockingTime;
+			copy.maxBlockingTime = maxBlockingTime;
+			return copy;
+		}
+	}
+
+	private static class TraceEvent
+	{
+		String name;
+		String category;
+		long threadId;
+		String threadName;
+		long startNanos;
+		long durationNanos;
+	}
+
+	/**
+	 * A Handler that reports every message it dispatches to the tracer while tracing is enabled.
+	 * The callback's class is used as the name of the handler in statistics and trace events.
+	 */
+	public static class TracedHandler extends Handler
+	{
+		private final String name;
+
+		public TracedHandler(Looper looper, Handler.Callback callback)
+		{
+			super(looper, callback);
+			this.name = callback.getClass().getSimpleName();
+		}
+
+		public String getName()
+		{
+			return name;
+		}
+
+		@Override
+		public void dispatchMessage(Message message)
+		{
+			if (!enabled) {
+				super.dispatchMessage(message);
+				return;
+			}
+
+			int what = message.what;
+			long queueTime = takeQueueTime(message);
+			long start = System.nanoTime();
+			try {
+				super.dispatchMessage(message);
+
+			} finally {
+				recordExecution(name, what, queueTime, start, System.nanoTime() - start);
+			}
+		}
+	}
+
+	public static boolean isEnabled()
+	{
+		return enabled;
+	}
+
+	public static void setEnabled(boolean enabled)
+	{
+		TiCallTracer.enabled = enabled;
+		if (!enabled) {
+			synchronized (enqueueTimes) {
+				enqueueTimes.clear();
+			}
+		}
+	}
+
+	/**
+	 * Clears all collected statistics and trace events.
+	 */
+	public static void reset()
+	{
+		synchronized (statistics) {
+			statistics.clear();
+			for (int i = 0; i < traceEvents.length; i++) {
+				traceEvents[i] = null;
+			}
+			traceEventIndex = 0;
+			traceEventCount = 0;
+		}
+		synchronized (enqueueTimes) {
+			enqueueTimes.clear();
+		}
+	}
+
+	/**
+	 * @param target the handler a message is targeted at.
+	 * @return the name used for the handler in statistics.
+	 */
+	public static String getHandlerName(Handler target)
+	{
+		if (target instanceof TracedHandler) {
+			return ((TracedHandler) target).getName();
+		}
+
+		return target != null ? target.getClass().getSimpleName() : "unknown";
+	}
+
+	/**
+	 * Remembers when a message was put on a queue that does not stamp it, such as the nested
+	 * message queue of a blocking {@link TiMessenger}. Only messages targeted at a {@link TracedHandler}
+	 * are stamped, since the stamp is removed when the handler dispatches the message.
+	 */
+	public static void markEnqueued(Message message)
+	{
+		if (!enabled || !(message.getTarget() instanceof TracedHandler)) {
+			return;
+		}
+
+		synchronized (enqueueTimes) {
+			enqueueTimes.put(message, System.nanoTime());
+		}
+	}
+
+	/**
+	 * Forgets the stamp of a message that was not put on the queue after all.
+	 */
+	public static void unmarkEnqueued(Message message)
+	{
+		synchronized (enqueueTimes) {
+			enqueueTimes.remove(message);
+		}
+	}
+
+	private static long takeQueueTime(Message message)
+	{
+		Long enqueued;
+		synchronized (enqueueTimes) {
+			enqueued = enqueueTimes.remove(message);
+		}
+		if (enqueued != null) {
+			return System.nanoTime() - enqueued;
+		}
+
+		// Messages sent through a Handler are stamped with their delivery time in uptime millis.
+		long when = message.getWhen();
+		if (when > 0) {
+			long waited = SystemClock.uptimeMillis() - when;
+			return waited > 0 ? waited * 1000000L : 0;
+		}
+
+		return 0;
+	}
+
+	private static void recordExecution(String name, int what, long queueTime, long start, long duration)
+	{
+		Thread thread = Thread.currentThread();
+		synchronized (statistics) {
+			CallStatistics stats = getStatistics(name, what, thread.getName());
+			stats.count++;
+			stats.queueTime += queueTime;
+			stats.executionTime += duration;
+			if (queueTime > stats.maxQueueTime) {
+				stats.maxQueueTime = queueTime;
+			}
+			if (duration > stats.maxExecutionTime) {
+				stats.maxExecutionTime = duration;
+			}
+			addTraceEvent(name, what, CATEGORY_EXECUTE, thread, start, duration);
+		}
+	}
+
+	/**
+	 * Records the time the current thread spent blocked on a message sent to another thread.
+	 */
+	public static void recordBlocking(String name, int what, long start, long duration)
+	{
+		Thread thread = Thread.currentThread();
+		synchronized (statistics) {
+			CallStatistics stats = getStatistics(name, what, thread.getName());
+			stats.blockingCount++;
+			stats.blockingTime += duration;
+			if (duration > stats.maxBlockingTime) {
+				stats.maxBlockingTime = duration;
+			}
+			stats.blockingLatency.record(duration);
+			addTraceEvent(name, what, CATEGORY_BLOCKING, thread, start, duration);
+		}
+	}
+
+	private static CallStatistics getStatistics(String name, int what, String threadName)
+	{
+		String key = name + '#' + what + '@' + threadName;
+		CallStatistics stats = statistics.get(key);
+		if (stats == null) {
+			stats = new CallStatistics(name, what, threadName);
+			statistics.put(key, stats);
+		}
+
+		return stats;
+	}
+
+	private static void addTraceEvent(String name, int what, String category, Thread thread, long start, long duration)
+	{
+		TraceEvent event = traceEvents[traceEventIndex];
+		if (event == null) {
+			event = new TraceEvent();
+			traceEvents[traceEventIndex] = event;
+		}
+
+		event.name = name + '#' + what;
+		event.category = category;
+		event.threadId = thread.getId();
+		event.threadName = thread.getName();
+		event.startNanos = start;
+		event.durationNanos = duration;
+
+		traceEventIndex = (traceEventIndex + 1) % MAX_TRACE_EVENTS;
+		if (traceEventCount < MAX_TRACE_EVENTS) {
+			traceEventCount++;
+		}
+	}
+
+	/**
+	 * @return a snapshot of the collected statistics, one entry per handler class, message id and thread.
+	 */
+	public static List<CallStatistics> getStatistics()
+	{
+		synchronized (statistics) {
+			List<CallStatistics> snapshot = new ArrayList<CallStatistics>(statistics.size());
+			for (CallStatistics stats : statistics.values()) {
+				snapshot.add(stats.copy());
+			}
+			return snapshot;
+		}
+	}
+
+	/**
+	 * Writes the statistics and the most recent trace events to a file in the Chrome trace-event
+	 * format, which can be loaded in chrome://tracing or converted for other tools.
+	 * @param file the file to write.
+	 * @throws IOException if the file could not be written.
+	 */
+	public static void dumpTraceEvents(File file) throws IOException
+	{
+		String json;
+		try {
+			json = toJSON().toString();
+
+		} catch (JSONException e) {
+			throw new IOException("Unable to serialize call trace: " + e.getMessage());
+		}
+
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		try {
+			writer.write(json);
+
+		} finally {
+			writer.close();
+		}
+
+		Log.d(TAG, "Wrote call trace to " + file.getAbsolutePath(), Log.DEBUG_MODE);
+	}
+
+	private static JSONObject toJSON() throws JSONException
+	{
+		int pid = Process.myPid();
+		JSONArray events = new JSONArray();
+		JSONArray stats = new JSONArray();
+		Map<Long, String> threadNames = new HashMap<Long, String>();
+
+		synchronized (statistics) {
+			int first = (traceEventIndex - traceEventCount + MAX_TRACE_EVENTS) % MAX_TRACE_EVENTS;
+			for (int i = 0; i < traceEventCount; i++) {
+				TraceEvent event = traceEvents[(first + i) % MAX_TRACE_EVENTS];
+				JSONObject json = new JSONObject();
+				json.put("name", event.name);
+				json.put("cat", event.category);
+				json.put("ph", "X");
+				json.put("pid", pid);
+				json.put("tid", event.threadId);
+				json.put("ts", event.startNanos / 1000L);
+				json.put("dur", event.durationNanos / 1000L);
+				events.put(json);
+				threadNames.put(event.threadId, event.threadName);
+			}
+
+			for (CallStatistics entry : statistics.values()) {
+				JSONObject json = new JSONObject();
+				json.put("className", entry.className);
+				json.put("messageId", entry.messageId);
+				json.put("thread", entry.threadName);
+				json.put("count", entry.count);
+				json.put("queueTimeUs", entry.queueTime / 1000L);
+				json.put("maxQueueTimeUs", entry.maxQueueTime / 1000L);
+				json.put("executionTimeUs", entry.executionTime / 1000L);
+				json.put("maxExecutionTimeUs", entry.maxExecutionTime / 1000L);
+				json.put("blockingCount", entry.blockingCount);
+				json.put("blockingTimeUs", entry.blockingTime / 1000L);
+				json.put("maxBlockingTimeUs", entry.maxBlockingTime / 1000L);
+				JSONArray histogram = new JSONArray();
+				for (long count : entry.blockingLatency.getBucketCounts()) {
+					histogram.put(count);
+				}
+				json.put("blockingHistogram", histogram);
+				stats.put(json);
+			}
+		}
+
+		for (Map.Entry<Long, String> thread : threadNames.entrySet()) {
+			JSONObject json = new JSONObject();
+			json.put("name", "thread_name");
+			json.put("ph", "M");
+			json.put("pid", pid);
+			json.put("tid", thread.getKey());
+			json.put("args", new JSONObject().put("name", thread.getValue()));
+			events.put(json);
+		}
+
+		JSONObject trace = new JSONObject();
+		trace.put("traceEvents", events);
+		trace.put("statistics", stats);
+		return trace;
+	}
+}
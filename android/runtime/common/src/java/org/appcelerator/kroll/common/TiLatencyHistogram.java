@@ -0,0 +1,119 @@
+/**
+ * Appcelerator Titanium Mobile
+ * Copyright (c) 2014 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Apache Public License
+ * Please see the LICENSE included with this distribution for details.
+ */
+package org.appcelerator.kroll.common;
+
+/**
+ * A fixed-bucket latency histogram. Buckets are power-of-two millisecond
+ * ranges (&lt; 1ms, &lt; 2ms, &lt; 4ms ... &lt; 1024ms, and everything above),
+ * so recording a sample is a few comparisons and no allocation.
+ */
+public class TiLatencyHistogram
+{
+	private static final long[] BUCKET_BOUNDS_MS = { 1, 2, 4, 8, 16, 32, 64, 128, 256, 512, 1024 };
+
+	private final long[] buckets = new long[BUCKET_BOUNDS_MS.length + 1];
+	private long count;
+	private long totalNanos;
+	private long maxNanos;
+
+	/**
+	 * @return the upper bound, in milliseconds, of every bucket but the last one, which is unbounded.
+	 */
+	public static long[] getBucketBounds()
+	{
+		return BUCKET_BOUNDS_MS.clone();
+	}
+
+	/**
+	 * Records one sample.
+	 * @param nanos the measured latency, in nanoseconds.
+	 */
+	public synchronized void record(long nanos)
+	{
+		long millis = nanos / 1000000L;
+		int bucket = 0;
+		while (bucket < BUCKET_BOUNDS_MS.length && millis >= BUCKET_BOUNDS_MS[bucket]) {
+			bucket++;
+		}
+
+		buckets[bucket]++;
+		count++;
+		totalNanos += nanos;
+		if (nanos > maxNanos) {
+			maxNanos = nanos;
+		}
+	}
+
+	public synchronized long getCount()
+	{
+		return count;
+	}
+
+	public synchronized long getTotalNanos()
+	{
+		return totalNanos;
+	}
+
+	public synchronized long getMaxNanos()
+	{
+		return maxNanos;
+	}
+
+	/**
+	 * @return a copy of the per-bucket sample counts, one longer than {@link #getBucketBounds()}.
+	 */
+	public synchronized long[] getBucketCounts()
+	{
+		return buckets.clone();
+	}
+
+	/**
+	 * @return an independent copy of this histogram.
+	 */
+	public synchronized TiLatencyHistogram copy()
+	{
+		TiLatencyHistogram copy = new TiLatencyHistogram();
+		System.arraycopy(buckets, 0, copy.buckets, 0, buckets.length);
+		copy.count = count;
+		copy.totalNanos = totalNanos;
+		copy.maxNanos = maxNanos;
+		return copy;
+	}
+
+	public synchronized void reset()
+	{
+		for (int i = 0; i < buckets.length; i++) {
+			buckets[i] = 0;
+		}
+		count = 0;
+		totalNanos = 0;
+		maxNanos = 0;
+	}
+
+	@Override
+	public synchronized String toString()
+	{
+		StringBuilder builder = new StringBuilder();
+		builder.append("count=").append(count);
+		if (count > 0) {
+			builder.append(" avg=").append(totalNanos / count / 1000L).append("us");
+			builder.append(" max=").append(maxNanos / 1000L).append("us");
+		}
+
+		builder.append(" [");
+		for (int i = 0; i < buckets.length; i++) {
+			if (i > 0) {
+				builder.append(", ");
+			}
+			builder.append(i < BUCKET_BOUNDS_MS.length ? "<" + BUCKET_BOUNDS_MS[i] : ">=" + BUCKET_BOUNDS_MS[i - 1]);
+			builder.append("ms:").append(buckets[i]);
+		}
+		builder.append("]");
+
+		return builder.toString();
+	}
+}
@@ -6,8 +6,9 @@
  */
 package org.appcelerator.kroll.common;
 
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -16,6 +17,7 @@ import org.appcelerator.kroll.KrollRuntime;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
+import android.os.SystemClock;
 
 
 /**
@@ -74,7 +76,16 @@ public class TiMessenger implements Handler.Callback
 		}
 	};
 
-	protected ArrayBlockingQueue<Message> messageQueue = new ArrayBlockingQueue<Message>(10);
+	// Capacity of the nested message queue used while blocking. Unbounded by default so that
+	// senders never stall behind a blocked thread; see setMessageQueueCapacity(int).
+	protected static volatile int messageQueueCapacity = Integer.MAX_VALUE;
+
+	// The capacity is enforced in sendMessage(), so that changing it applies to existing messengers.
+	protected BlockingQueue<Message> messageQueue = new LinkedBlockingQueue<Message>();
+	// Signalled whenever a nested message is queued or a blocking result arrives on this messenger.
+	protected final Object blockingSignal = new Object();
+	// Signalled whenever a nested message is taken off a bounded queue.
+	protected final Object queueSpaceSignal = new Object();
 	protected CountDownLatch blockingLatch;
 	protected AtomicInteger blockingMessageCount = new AtomicInteger(0);
 	protected Handler.Callback callback;
@@ -133,7 +144,18 @@ public class TiMessenger implements Handler.Callback
 	}
 
 	/**
-	 * Sends a message to an {@link java.util.concurrent.ArrayBlockingQueue#ArrayBlockingQueue(int) ArrayBlockingQueue},
+	 * Sets the capacity of the nested message queue of every messenger, including existing ones.
+	 * While a blocked thread's queue is full, senders wait for it to dispatch a message.
+	 * A capacity of 0 or less means unbounded, which is the default.
+	 * @param capacity the maximum number of nested messages queued while a thread is blocking.
+	 */
+	public static void setMessageQueueCapacity(int capacity)
+	{
+		messageQueueCapacity = capacity > 0 ? capacity : Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Sends a message to an {@link java.util.concurrent.LinkedBlockingQueue LinkedBlockingQueue},
 	 * and dispatch messages on the current
 	 * queue while blocking on the passed in AsyncResult. The blocking is done on the Main thread.
 	 * @param message  the message to send.
@@ -146,7 +168,7 @@ public class TiMessenger implements Handler.Callback
 	}
 
 	/**
-	 * Sends a message to an {@link java.util.concurrent.ArrayBlockingQueue#ArrayBlockingQueue(int) ArrayBlockingQueue},
+	 * Sends a message to an {@link java.util.concurrent.LinkedBlockingQueue LinkedBlockingQueue},
 	 * and dispatch messages on the current
 	 * queue while blocking on the passed in AsyncResult. The blocking is done on the Main thread.
 	 * @param message   the message to send.
@@ -160,7 +182,7 @@ public class TiMessenger implements Handler.Callback
 	}
 
 	/**
-	 * Sends a message to an {@link java.util.concurrent.ArrayBlockingQueue#ArrayBlockingQueue(int) ArrayBlockingQueue}, 
+	 * Sends a message to an {@link java.util.concurrent.LinkedBlockingQueue LinkedBlockingQueue}, 
 	 * and dispatch messages on the current
 	 * queue while blocking on the passed in AsyncResult. The blocking is done on the KrollRuntime thread.
 	 * @param message  the message to send.
@@ -173,7 +195,7 @@ public class TiMessenger implements Handler.Callback
 	}
 
 	/**
-	 * Sends a message to an {@link java.util.concurrent.ArrayBlockingQueue#ArrayBlockingQueue(int) ArrayBlockingQueue}, 
+	 * Sends a message to an {@link java.util.concurrent.LinkedBlockingQueue LinkedBlockingQueue}, 
 	 * and dispatch messages on the current
 	 * queue while blocking on the passed in AsyncResult. The blocking is done on the KrollRuntime thread.
 	 * @param message   the message to send.
@@ -187,13 +209,13 @@ public class TiMessenger implements Handler.Callback
 	}
 
 	/**
-	 * Sends a message to an {@link java.util.concurrent.ArrayBlockingQueue#ArrayBlockingQueue(int) ArrayBlockingQueue},
+	 * Sends a message to an {@link java.util.concurrent.LinkedBlockingQueue LinkedBlockingQueue},
 	 * and dispatch messages on the current
 	 * queue while blocking on the passed in AsyncResult. The blocking is done on the KrollRuntime thread.
-	 * If maxTimeout > 0, it will throw an error and return when we cannot get the permission from the semaphore within maxTimeout.
+	 * If maxTimeout > 0, it will throw an error and return when the result is not set within maxTimeout.
 	 * @param message   the message to send.
 	 * @param asyncArg  the argument to be added to AsyncResult.
-	 * @param maxTimeout the maximum time to wait for a permit from the semaphore, in the unit of milliseconds.
+	 * @param maxTimeout the maximum time to wait for the result, in the unit of milliseconds.
 	 * @return  The getResult() value of the AsyncResult put on the message.
 	 * @module.api
 	 */
@@ -224,13 +246,25 @@ public class TiMessenger implements Handler.Callback
 	}
 
 	/**
-	 * Sends a message to an {@link java.util.concurrent.ArrayBlockingQueue#ArrayBlockingQueue(int) ArrayBlockingQueue}, and dispatch messages on the current
-	 * queue while blocking on the passed in AsyncResult. If maxTimeout > 0 and the cannot get the permission from
-	 * the semaphore within maxTimeout, throw an error and return.
+	 * Wakes up the thread blocking in {@link #sendBlockingMessage(Message, TiMessenger, Object, long)}
+	 * on this messenger, if any.
+	 */
+	private void signalBlocking()
+	{
+		synchronized (blockingSignal) {
+			blockingSignal.notifyAll();
+		}
+	}
+
+	/**
+	 * Sends a message to an {@link java.util.concurrent.LinkedBlockingQueue LinkedBlockingQueue}, and dispatch messages on the current
+	 * queue while blocking on the passed in AsyncResult. The current thread sleeps until either the result is set or
+	 * a nested message is queued for it, so there is no polling delay. If maxTimeout > 0 and the result is not set
+	 * within maxTimeout, throw an error and return.
 	 * @param message The message to send.
 	 * @param targetMessenger The TiMessenger to send it to.
 	 * @param asyncArg argument to be added to the AsyncResult put on the message.
-	 * @param maxTimeout the maximum time to wait for a permit from the semaphore.
+	 * @param maxTimeout the maximum time to wait for the result, in milliseconds.
 	 * @return The getResult() value of the AsyncResult put on the message.
 	 */
 	private Object sendBlockingMessage(Message message, TiMessenger targetMessenger, Object asyncArg, final long maxTimeout)
@@ -240,22 +274,31 @@ public class TiMessenger implements Handler.Callback
 			@Override
 			public Object getResult()
 			{
-				int timeout = 0;
-				long elapsedTime = 0;
+				long deadline = maxTimeout > 0 ? SystemClock.uptimeMillis() + maxTimeout : 0;
 				try {
-					// TODO: create a multi-semaphore condition
-					// here so we don't unnecessarily poll
-					while (!tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
-						if (messageQueue.size() == 0) {
-							timeout = 50;
-						} else {
-							dispatchPendingMessages();
+					while (!tryAcquire()) {
+						if (dispatchMessage()) {
+							continue;
 						}
 
-						elapsedTime += timeout;
-						if (maxTimeout > 0 && elapsedTime > maxTimeout) {
-							setException(new Throwable("getResult() has timed out."));
-							break;
+						// Re-check both conditions while holding the signal lock so that
+						// a result or nested message arriving right now is never missed.
+						synchronized (blockingSignal) {
+							if (availablePermits() > 0 || !messageQueue.isEmpty()) {
+								continue;
+							}
+
+							if (deadline > 0) {
+								long remaining = deadline - SystemClock.uptimeMillis();
+								if (remaining <= 0) {
+									setException(new Throwable("getResult() has timed out."));
+									break;
+								}
+								blockingSignal.wait(remaining);
+
+							} else {
+								blockingSignal.wait();
+							}
 						}
 					}
 				} catch (InterruptedException e) {
@@ -276,15 +319,31 @@ public class TiMessenger implements Handler.Callback
 			public void setResult(Object result)
 			{
 				super.setResult(result);
+				signalBlocking();
+			}
+
+			@Override
+			public void setException(Throwable exception)
+			{
+				super.setException(exception);
+				signalBlocking();
 			}
 		};
 
+		int what = message.what;
+		boolean tracing = TiCallTracer.isEnabled();
+		String targetName = tracing ? TiCallTracer.getHandlerName(message.getTarget()) : null;
+		long startTime = tracing ? System.nanoTime() : 0;
+
 		blockingMessageCount.incrementAndGet();
 		message.obj = wrappedAsyncResult;
 		targetMessenger.sendMessage(message);
 
 		Object messageResult = wrappedAsyncResult.getResult();
 		blockingMessageCount.decrementAndGet();
+		if (tracing) {
+			TiCallTracer.recordBlocking(targetName, what, startTime, System.nanoTime() - startTime);
+		}
 		dispatchPendingMessages();
 
 		return messageResult;
@@ -318,19 +377,52 @@ public class TiMessenger implements Handler.Callback
 			target.dispatchMessage(message);
 
 		} else {
-			if (isBlocking()) {
+			if (isBlocking() && enqueueNested(message)) {
+				signalBlocking();
+
+			} else {
+				message.sendToTarget();
+			}
+		}
+	}
+
+	/**
+	 * Puts a message on the nested queue of this blocked messenger, waiting for room while the queue is
+	 * at capacity.
+	 * @return false if this messenger stopped blocking before there was room, so the message must be sent
+	 * to its handler instead.
+	 */
+	private boolean enqueueNested(Message message)
+	{
+		synchronized (queueSpaceSignal) {
+			while (messageQueue.size() >= messageQueueCapacity) {
+				if (!isBlocking()) {
+					return false;
+				}
 				try {
-					messageQueue.put(message);
+					// Timed, since the blocked thread may stop blocking without taking a message.
+					queueSpaceSignal.wait(DEFAULT_TIMEOUT);
 
 				} catch (InterruptedException e) {
-					Log.w(TAG, "Interrupted trying to put new message, sending to handler", e);
-					message.sendToTarget();
+					Thread.currentThread().interrupt();
+					return false;
 				}
+			}
 
-			} else {
-				message.sendToTarget();
+			TiCallTracer.markEnqueued(message);
+			messageQueue.add(message);
+		}
+		return true;
+	}
+
+	private Message pollNested(Message message)
+	{
+		if (message != null && messageQueueCapacity != Integer.MAX_VALUE) {
+			synchronized (queueSpaceSignal) {
+				queueSpaceSignal.notifyAll();
 			}
 		}
+		return message;
 	}
 
 	public void post(Runnable runnable)
@@ -379,7 +471,7 @@ public class TiMessenger implements Handler.Callback
 
 	public boolean dispatchMessage()
 	{
-		Message message = messageQueue.poll();
+		Message message = pollNested(messageQueue.poll());
 
 		if (message == null) {
 			return false;
@@ -397,7 +489,7 @@ public class TiMessenger implements Handler.Callback
 	public boolean dispatchMessage(int timeout, TimeUnit timeUnit)
 	{
 		try {
-			Message message = messageQueue.poll(timeout, timeUnit);
+			Message message = pollNested(messageQueue.poll(timeout, timeUnit));
 			if (message != null) {
 				Log.d(TAG, "Dispatching message: " + message, Log.DEBUG_MODE);
 
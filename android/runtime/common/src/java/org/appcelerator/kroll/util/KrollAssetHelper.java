@@ -6,29 +6,93 @@
  */
 package org.appcelerator.kroll.util;
 
-import java.io.ByteArrayOutputStream;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import android.content.Context;
+import android.content.res.AssetFileDescriptor;
 import android.content.res.AssetManager;
 import android.util.Log;
 
 public class KrollAssetHelper
 {
 	private static final String TAG = "TiAssetHelper";
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	// Sources larger than this are read and decoded on every request instead of being cached.
+	private static final int MAX_CACHED_SOURCE_LENGTH = 64 * 1024;
+	// Upper bound (in chars) for all cached sources combined.
+	private static final int MAX_SOURCE_CACHE_LENGTH = 1024 * 1024;
+
 	private static WeakReference<AssetManager> manager;
 	private static String packageName, cacheDir;
 	private static AssetCrypt assetCrypt;
 
+	private static final SourceCache sourceCache = new SourceCache();
+
 	public interface AssetCrypt
 	{
 		String readAsset(String path);
 	}
 
+	/**
+	 * A small LRU cache of decoded asset sources, bounded by the total number of cached chars.
+	 * Assets are immutable for the lifetime of the process so entries never need to be invalidated.
+	 */
+	private static class SourceCache extends LinkedHashMap<String, String>
+	{
+		private static final long serialVersionUID = 1L;
+
+		private int length = 0;
+
+		public SourceCache()
+		{
+			super(16, 0.75f, true);
+		}
+
+		public synchronized String getSource(String path)
+		{
+			return get(path);
+		}
+
+		public synchronized void putSource(String path, String source)
+		{
+			if (source.length() > MAX_CACHED_SOURCE_LENGTH) {
+				return;
+			}
+			String previous = put(path, source);
+			if (previous != null) {
+				length -= previous.length();
+			}
+			length += source.length();
+
+			Iterator<Map.Entry<String, String>> iterator = entrySet().iterator();
+			while (length > MAX_SOURCE_CACHE_LENGTH && iterator.hasNext()) {
+				length -= iterator.next().getValue().length();
+				iterator.remove();
+			}
+		}
+
+		public synchronized void clearSources()
+		{
+			clear();
+			length = 0;
+		}
+	}
+
 	public static void setAssetCrypt(AssetCrypt assetCrypt)
 	{
 		KrollAssetHelper.assetCrypt = assetCrypt;
@@ -39,6 +103,7 @@ public class KrollAssetHelper
 		KrollAssetHelper.manager = new WeakReference<AssetManager>(context.getAssets());
 		KrollAssetHelper.packageName = context.getPackageName();
 		KrollAssetHelper.cacheDir = context.getCacheDir().getAbsolutePath();
+		sourceCache.clearSources();
 	}
 
 	public static String readAsset(String path)
@@ -52,6 +117,11 @@ public class KrollAssetHelper
 			}
 		}
 
+		String source = sourceCache.getSource(path);
+		if (source != null) {
+			return source;
+		}
+
 		try {
 			AssetManager assetManager = manager.get();
 			if (assetManager == null) {
@@ -59,18 +129,12 @@ public class KrollAssetHelper
 				return null;
 			}
 
-			InputStream in = assetManager.open(path);
-			ByteArrayOutputStream out = new ByteArrayOutputStream();
-			byte buffer[] = new byte[1024];
-			int count = 0;
-
-			while ((count = in.read(buffer)) != -1) {
-				if (out != null) {
-					out.write(buffer, 0, count);
-				}
+			source = readMappedAsset(assetManager, path);
+			if (source == null) {
+				source = readStreamedAsset(assetManager, path);
 			}
-
-			return out.toString();
+			sourceCache.putSource(path, source);
+			return source;
 
 		} catch (IOException e) {
 			Log.e(TAG, "Error while reading asset \"" + path + "\":", e);
@@ -81,25 +145,20 @@ public class KrollAssetHelper
 
 	public static String readFile(String path)
 	{
+		FileInputStream in = null;
 		try {
-			FileInputStream in = new FileInputStream(path);
-			ByteArrayOutputStream out = new ByteArrayOutputStream();
-			byte buffer[] = new byte[1024];
-			int count = 0;
-
-			while ((count = in.read(buffer)) != -1) {
-				if (out != null) {
-					out.write(buffer, 0, count);
-				}
-			}
-
-			return out.toString();
+			in = new FileInputStream(path);
+			FileChannel channel = in.getChannel();
+			return decode(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
 
 		} catch (FileNotFoundException e) {
 			Log.e(TAG, "File not found: " + path, e);
 
 		} catch (IOException e) {
 			Log.e(TAG, "Error while reading file: " + path, e);
+
+		} finally {
+			closeQuietly(in);
 		}
 
 		return null;
@@ -114,4 +173,77 @@ public class KrollAssetHelper
 	{
 		return cacheDir;
 	}
+
+	/**
+	 * Maps an uncompressed asset straight out of the APK and decodes it in a single pass.
+	 * Returns null when the asset is stored compressed and has no file descriptor.
+	 */
+	private static String readMappedAsset(AssetManager assetManager, String path) throws IOException
+	{
+		AssetFileDescriptor descriptor;
+		try {
+			descriptor = assetManager.openFd(path);
+		} catch (FileNotFoundException e) {
+			// Compressed assets can't be opened as a file descriptor, fall back to streaming.
+			return null;
+		}
+
+		FileInputStream in = null;
+		try {
+			in = descriptor.createInputStream();
+			FileChannel channel = in.getChannel();
+			return decode(channel.map(FileChannel.MapMode.READ_ONLY, descriptor.getStartOffset(),
+				descriptor.getLength()));
+		} finally {
+			closeQuietly(in);
+			descriptor.close();
+		}
+	}
+
+	private static String readStreamedAsset(AssetManager assetManager, String path) throws IOException
+	{
+		InputStream in = assetManager.open(path);
+		try {
+			// For compressed assets available() reports the full uncompressed length.
+			byte[] bytes = new byte[Math.max(in.available(), KrollStreamHelper.DEFAULT_BUFFER_SIZE)];
+			int length = 0, count;
+			while ((count = in.read(bytes, length, bytes.length - length)) != -1) {
+				length += count;
+				if (length == bytes.length) {
+					// Only grow if there is more to read, so a correctly presized buffer is never copied.
+					int next = in.read();
+					if (next == -1) {
+						break;
+					}
+					byte[] grown = new byte[bytes.length * 2];
+					System.arraycopy(bytes, 0, grown, 0, length);
+					grown[length++] = (byte) next;
+					bytes = grown;
+				}
+			}
+			return decode(ByteBuffer.wrap(bytes, 0, length));
+		} finally {
+			closeQuietly(in);
+		}
+	}
+
+	private static String decode(ByteBuffer buffer) throws CharacterCodingException
+	{
+		CharsetDecoder decoder = UTF_8.newDecoder()
+			.onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		CharBuffer chars = decoder.decode(buffer);
+		return chars.toString();
+	}
+
+	private static void closeQuietly(InputStream in)
+	{
+		if (in != null) {
+			try {
+				in.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+	}
 }
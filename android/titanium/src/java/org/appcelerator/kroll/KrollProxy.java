@@ -13,11 +13,13 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.appcelerator.kroll.KrollDict;
 import org.appcelerator.kroll.annotations.Kroll;
 import org.appcelerator.kroll.common.AsyncResult;
 import org.appcelerator.kroll.common.Log;
+import org.appcelerator.kroll.common.TiCallTracer;
 import org.appcelerator.kroll.common.TiMessenger;
 import org.appcelerator.titanium.TiApplication;
 import org.appcelerator.titanium.TiBaseActivity;
@@ -88,6 +90,15 @@ public class KrollProxy implements Handler.Callback, KrollProxySupport, OnLifecy
 	private KrollDict langConversionTable = null;
 	private boolean bubbleParent = true;
 
+	// Property changes waiting to be delivered to the model listener on the main thread.
+	private final Object pendingPropertyChangesLock = new Object();
+	private KrollPropertyChangeSet pendingPropertyChanges = null;
+
+	private static AtomicLong queuedPropertyChanges = new AtomicLong();
+	private static AtomicLong coalescedPropertyChanges = new AtomicLong();
+	private static AtomicLong deliveredPropertyChanges = new AtomicLong();
+	private static AtomicLong deliveredPropertyChangeSets = new AtomicLong();
+
 	public static final String PROXY_ID_PREFIX = "proxy$";
 
 
@@ -420,7 +431,7 @@ public class KrollProxy implements Handler.Callback, KrollProxySupport, OnLifecy
 	public Handler getMainHandler()
 	{
 		if (mainHandler == null) {
-			mainHandler = new Handler(TiMessenger.getMainMessenger().getLooper(), this);
+			mainHandler = new TiCallTracer.TracedHandler(TiMessenger.getMainMessenger().getLooper(), this);
 		}
 
 		return mainHandler;
@@ -429,7 +440,7 @@ public class KrollProxy implements Handler.Callback, KrollProxySupport, OnLifecy
 	public Handler getRuntimeHandler()
 	{
 		if (runtimeHandler == null) {
-			runtimeHandler = new Handler(TiMessenger.getRuntimeMessenger().getLooper(), this);
+			runtimeHandler = new TiCallTracer.TracedHandler(TiMessenger.getRuntimeMessenger().getLooper(), this);
 		}
 
 		return runtimeHandler;
@@ -486,7 +497,13 @@ public class KrollProxy implements Handler.Callback, KrollProxySupport, OnLifecy
 			return;
 		}
 		
-		ArrayList<KrollPropertyChange> propertyChanges = new ArrayList<KrollPropertyChange>();
+		boolean isUiThread = TiApplication.isUIThread();
+		if (isUiThread) {
+			// Deliver anything still queued first so changes are applied in order.
+			firePendingPropertyChanges();
+		}
+
+		KrollPropertyChangeSet changes = new KrollPropertyChangeSet(options.size());
 		for (String name : options.keySet()) {
 			Object oldValue = properties.get(name);
 			Object value = options.get(name);
@@ -496,25 +513,22 @@ public class KrollProxy implements Handler.Callback, KrollProxySupport, OnLifecy
 			setProperty(name, value);
 
 			if (shouldFireChange(oldValue, value)) {
-				KrollPropertyChange pch = new KrollPropertyChange(name, oldValue, value);
-				propertyChanges.add(pch);
+				changes.addChange(name, oldValue, value);
 			}
 		}
 
-		// convert to two dimensional array
-		int changeSize = propertyChanges.size();
-		Object[][] changeArray = new Object[changeSize][];
-		for (int i = 0; i < changeSize; i++) {
-			KrollPropertyChange propertyChange = propertyChanges.get(i);
-			changeArray[i] = new Object[] {propertyChange.name, propertyChange.oldValue, propertyChange.newValue};
+		if (modelListener == null) {
+			return;
 		}
 
-		if (KrollRuntime.getInstance().isRuntimeThread()) {
-			firePropertiesChanged(changeArray);
+		if (isUiThread) {
+			changes.fireEvent(this, modelListener);
 
 		} else {
-			Message message = getMainHandler().obtainMessage(MSG_MODEL_PROPERTIES_CHANGED, changeArray);
-			message.sendToTarget();
+			// Joins the changes already waiting for the main thread, so they are delivered in one pass.
+			for (int i = 0; i < changes.entryCount; i++) {
+				queuePropertyChange(changes.keys[i], changes.oldValues[i], changes.newValues[i]);
+			}
 		}
 	}
 
@@ -607,6 +621,11 @@ public class KrollProxy implements Handler.Callback, KrollProxySupport, OnLifecy
 		}
 	}
 	
+	/**
+	 * A batch of property changes delivered to the model listener at once. Changes to a key that is
+	 * already in the set are coalesced: the original old value is kept and only the latest new value
+	 * is delivered.
+	 */
 	public class KrollPropertyChangeSet extends KrollPropertyChange {
 		public int entryCount;
 		public String[] keys;
@@ -616,12 +635,32 @@ public class KrollProxy implements Handler.Callback, KrollProxySupport, OnLifecy
 		public KrollPropertyChangeSet(int capacity) {
 			super(null,null,null);
 			entryCount = 0;
+			capacity = Math.max(capacity, 1);
 			keys = new String[capacity];
 			oldValues = new Object[capacity];
 			newValues = new Object[capacity];
 		}
 		
 		public void addChange(String key, Object oldValue, Object newValue){
+			for (int i = 0; i < entryCount; i++) {
+				if (keys[i].equals(key)) {
+					newValues[i] = newValue;
+					coalescedPropertyChanges.incrementAndGet();
+					return;
+				}
+			}
+			if (entryCount == keys.length) {
+				int capacity = entryCount * 2;
+				String[] newKeys = new String[capacity];
+				Object[] newOldValues = new Object[capacity];
+				Object[] newNewValues = new Object[capacity];
+				System.arraycopy(keys, 0, newKeys, 0, entryCount);
+				System.arraycopy(oldValues, 0, newOldValues, 0, entryCount);
+				System.arraycopy(newValues, 0, newNewValues, 0, entryCount);
+				keys = newKeys;
+				oldValues = newOldValues;
+				newValues = newNewValues;
+			}
 			keys[entryCount] = key;
 			oldValues[entryCount] = oldValue;
 			newValues[entryCount] = newValue;
@@ -629,14 +668,69 @@ public class KrollProxy implements Handler.Callback, KrollProxySupport, OnLifecy
 		}
 		
 		public void fireEvent(KrollProxy proxy, KrollProxyListener listener) {
-			if (listener == null) {
+			if (listener == null || entryCount == 0) {
 				return;
 			}
+			ArrayList<KrollPropertyChange> changes = new ArrayList<KrollPropertyChange>(entryCount);
 			for (int i = 0; i < entryCount; i++) {
-				listener.propertyChanged(keys[i], oldValues[i], newValues[i], proxy);
+				changes.add(new KrollPropertyChange(keys[i], oldValues[i], newValues[i]));
 			}
+			deliveredPropertyChanges.addAndGet(entryCount);
+			deliveredPropertyChangeSets.incrementAndGet();
+			listener.propertiesChanged(changes, proxy);
 		}
 	}
+
+	/**
+	 * Queues a property change for the model listener on the main thread. All changes queued
+	 * before the main thread picks them up are delivered together in a single message, and
+	 * applied by the listener in one pass (see {@link KrollProxyListener#propertiesChanged(java.util.List, KrollProxy)}).
+	 * @param name the property name.
+	 * @param oldValue the old value.
+	 * @param newValue the new value.
+	 */
+	protected void queuePropertyChange(String name, Object oldValue, Object newValue)
+	{
+		boolean scheduleDelivery = false;
+		synchronized (pendingPropertyChangesLock) {
+			if (pendingPropertyChanges == null) {
+				pendingPropertyChanges = new KrollPropertyChangeSet(4);
+				scheduleDelivery = true;
+			}
+			pendingPropertyChanges.addChange(name, oldValue, newValue);
+		}
+		queuedPropertyChanges.incrementAndGet();
+		if (scheduleDelivery) {
+			getMainHandler().sendEmptyMessage(MSG_MODEL_PROPERTY_CHANGE);
+		}
+	}
+
+	private void firePendingPropertyChanges()
+	{
+		KrollPropertyChangeSet changes;
+		synchronized (pendingPropertyChangesLock) {
+			changes = pendingPropertyChanges;
+			pendingPropertyChanges = null;
+		}
+		if (changes != null) {
+			changes.fireEvent(this, modelListener);
+		}
+	}
+
+	/**
+	 * @return counters of the property changes queued for the main thread: "queued" (all changes),
+	 * "coalesced" (changes merged into a pending change of the same key), "delivered" (changes handed
+	 * to model listeners) and "batches" (main thread deliveries).
+	 */
+	public static KrollDict getPropertyChangeStatistics()
+	{
+		KrollDict stats = new KrollDict();
+		stats.put("queued", queuedPropertyChanges.get());
+		stats.put("coalesced", coalescedPropertyChanges.get());
+		stats.put("delivered", deliveredPropertyChanges.get());
+		stats.put("batches", deliveredPropertyChangeSets.get());
+		return stats;
+	}
 	
 	@Kroll.method
 	public void applyProperties(Object arg)
@@ -653,31 +747,31 @@ public class KrollProxy implements Handler.Callback, KrollProxySupport, OnLifecy
 			return;
 		}
 		if (TiApplication.isUIThread()) {
+			// Deliver anything still queued first so changes are applied in order.
+			firePendingPropertyChanges();
+			KrollPropertyChangeSet changes = new KrollPropertyChangeSet(props.size());
 			for (Object key : props.keySet()) {
 				String name = TiConvert.toString(key);
 				Object value = props.get(key);
 				Object current = getProperty(name);
 				setProperty(name, value);
 				if (shouldFireChange(current, value)) {
-					modelListener.propertyChanged(name, current, value, this);
+					changes.addChange(name, current, value);
 				}
 			}
+			changes.fireEvent(this, modelListener);
 			return;		
 		}
 		
-		KrollPropertyChangeSet changes = new KrollPropertyChangeSet(props.size());
 		for (Object key : props.keySet()) {
 			String name = TiConvert.toString(key);
 			Object value = props.get(key);
 			Object current = getProperty(name);
 			setProperty(name, value);
 			if (shouldFireChange(current, value)) {
-				changes.addChange(name, current, value);
+				queuePropertyChange(name, current, value);
 			}
 		}
-		if (changes.entryCount > 0) {
-			getMainHandler().obtainMessage(MSG_MODEL_PROPERTY_CHANGE, changes).sendToTarget();
-		}
 	}
 
 	/**
@@ -912,11 +1006,11 @@ public class KrollProxy implements Handler.Callback, KrollProxySupport, OnLifecy
 	{
 		if (modelListener != null) {
 			if (TiApplication.isUIThread()) {
+				firePendingPropertyChanges();
 				modelListener.propertyChanged(name, oldValue, newValue, this);
 
 			} else {
-				KrollPropertyChange pch = new KrollPropertyChange(name, oldValue, newValue);
-				getMainHandler().obtainMessage(MSG_MODEL_PROPERTY_CHANGE, pch).sendToTarget();
+				queuePropertyChange(name, oldValue, newValue);
 			}
 		}
 	}
@@ -1023,17 +1117,14 @@ public class KrollProxy implements Handler.Callback, KrollProxySupport, OnLifecy
 			Object value = change[INDEX_VALUE];
 
 			properties.put(nameString, change[INDEX_VALUE]);
-			if (isUiThread && modelListener != null) {
-				modelListener.propertyChanged(nameString, change[INDEX_OLD_VALUE], value, this);
+			if (modelListener != null) {
+				if (isUiThread) {
+					modelListener.propertyChanged(nameString, change[INDEX_OLD_VALUE], value, this);
+				} else {
+					queuePropertyChange(nameString, change[INDEX_OLD_VALUE], value);
+				}
 			}
 		}
-
-		if (isUiThread || modelListener == null) {
-			return;
-		}
-
-		Message message = getMainHandler().obtainMessage(MSG_MODEL_PROPERTIES_CHANGED, changes);
-		message.sendToTarget();
 	}
 
 	public ActivityProxy getActivityProxy()
@@ -1080,7 +1171,11 @@ public class KrollProxy implements Handler.Callback, KrollProxySupport, OnLifecy
 	{
 		switch (msg.what) {
 			case MSG_MODEL_PROPERTY_CHANGE: {
-				((KrollPropertyChange) msg.obj).fireEvent(this, modelListener);
+				if (msg.obj != null) {
+					((KrollPropertyChange) msg.obj).fireEvent(this, modelListener);
+				} else {
+					firePendingPropertyChanges();
+				}
 
 				return true;
 			}
@@ -71,6 +71,7 @@ public abstract class TiApplication extends Application implements KrollApplicat
 	private static final String PROPERTY_ENABLE_COVERAGE = "ti.android.enablecoverage";
 	private static final String PROPERTY_DEFAULT_UNIT = "ti.ui.defaultunit";
 	private static final String PROPERTY_USE_LEGACY_WINDOW = "ti.android.useLegacyWindow";
+	private static final String PROPERTY_MESSAGE_QUEUE_CAPACITY = "ti.android.messagequeuecapacity";
 	private static long mainThreadId = 0;
 
 	protected static WeakReference<TiApplication> tiApp = null;
@@ -430,6 +431,7 @@ public abstract class TiApplication extends Application implements KrollApplicat
 
 		TiConfig.DEBUG = TiConfig.LOGD = appProperties.getBool("ti.android.debug", false);
 		USE_LEGACY_WINDOW = appProperties.getBool(PROPERTY_USE_LEGACY_WINDOW, false);
+		TiMessenger.setMessageQueueCapacity(appProperties.getInt(PROPERTY_MESSAGE_QUEUE_CAPACITY, 0));
 
 		startExternalStorageMonitor();
 
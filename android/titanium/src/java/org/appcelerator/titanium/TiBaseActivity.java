@@ -1058,6 +1058,7 @@ public abstract class TiBaseActivity extends ActionBarActivity
 		TiApplication.updateActivityTransitionState(true);
 		tiApp.setCurrentActivity(this, null);
 		TiUIHelper.showSoftKeyboard(getWindow().getDecorView(), false);
+		tiApp.getAppProperties().flushInBackground();
 
 		if (this.isFinishing()) {
 			releaseDialogs(true);
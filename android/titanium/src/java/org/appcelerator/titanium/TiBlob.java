@@ -11,19 +11,23 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URLConnection;
 import java.util.HashMap;
 
 import org.apache.commons.codec.binary.Base64;
 import org.appcelerator.kroll.KrollDict;
+import org.appcelerator.kroll.KrollFunction;
 import org.appcelerator.kroll.KrollProxy;
 import org.appcelerator.kroll.annotations.Kroll;
 import org.appcelerator.kroll.common.Log;
 import org.appcelerator.kroll.util.KrollStreamHelper;
 import org.appcelerator.titanium.io.TiBaseFile;
 import org.appcelerator.titanium.io.TitaniumBlob;
+import org.appcelerator.titanium.util.TiByteSegments;
 import org.appcelerator.titanium.util.TiImageHelper;
+import org.appcelerator.titanium.util.TiImagePipeline;
 import org.appcelerator.titanium.util.TiMimeTypeHelper;
 
 import android.graphics.Bitmap;
@@ -76,6 +80,12 @@ public class TiBlob extends KrollProxy
 	private Bitmap image;
 	private int width, height;
 
+	// Encoding of TYPE_IMAGE blobs. A null format means PNG for images with alpha and JPEG otherwise.
+	// Blobs that own their bitmap only compress it when their bytes are first needed.
+	private CompressFormat imageFormat;
+	private int imageQuality = 100;
+	private boolean ownsImage;
+
 	private TiBlob(int type, Object data, String mimetype)
 	{
 		super();
@@ -138,34 +148,108 @@ public class TiBlob extends KrollProxy
 	}
 	
 	/**
-	 * Creates a blob from a bitmap.
+	 * Creates a blob from a bitmap. The bitmap is compressed (PNG if it has alpha, JPEG otherwise,
+	 * at quality 100) right away, since the caller may recycle or reuse it afterwards.
 	 * @param image the image used to create blob.
 	 * @return new instance of TiBlob.
 	 * @module.api
 	 */
 	public static TiBlob blobFromImage(Bitmap image)
 	{
-	
-		ByteArrayOutputStream bos = new ByteArrayOutputStream();
-		byte data[] = new byte[0];
-		if (image.hasAlpha()) {
-			if (image.compress(CompressFormat.PNG, 100, bos)) {
-				data = bos.toByteArray();
-			}
-		}
-		else {
-			if (image.compress(CompressFormat.JPEG, 100, bos)) {
-				data = bos.toByteArray();
-			}
-		}
+		return blobFromImage(image, null, 100);
+	}
+
+	/**
+	 * Creates a blob from a bitmap that is compressed right away with the given format and quality.
+	 * @param image the image used to create blob.
+	 * @param format the compression format, or null for PNG if the image has alpha and JPEG otherwise.
+	 * @param quality the compression quality, from 0 to 100.
+	 * @return new instance of TiBlob.
+	 * @module.api
+	 */
+	public static TiBlob blobFromImage(Bitmap image, CompressFormat format, int quality)
+	{
+		TiBlob blob = createImageBlob(image, format, quality);
+		blob.getImageBytes();
+		return blob;
+	}
+
+	/**
+	 * Creates a blob that takes ownership of a bitmap. The bitmap is only compressed when the blob's
+	 * bytes are first requested, so the caller must not recycle, reuse or pool it afterwards.
+	 * @param image the image used to create blob.
+	 * @param format the compression format, or null for PNG if the image has alpha and JPEG otherwise.
+	 * @param quality the compression quality, from 0 to 100.
+	 * @return new instance of TiBlob.
+	 * @module.api
+	 */
+	public static TiBlob blobFromOwnedImage(Bitmap image, CompressFormat format, int quality)
+	{
+		TiBlob blob = createImageBlob(image, format, quality);
+		blob.ownsImage = true;
+		return blob;
+	}
 
-		TiBlob blob = new TiBlob(TYPE_IMAGE, data, "image/bitmap");
+	private static TiBlob createImageBlob(Bitmap image, CompressFormat format, int quality)
+	{
+		TiBlob blob = new TiBlob(TYPE_IMAGE, null, "image/bitmap");
 		blob.image = image;
 		blob.width = image.getWidth();
 		blob.height = image.getHeight();
+		blob.imageFormat = format;
+		blob.imageQuality = Math.max(0, Math.min(quality, 100));
 		return blob;
 	}
 
+	/**
+	 * Creates the blob for the result of an image operation. Operations usually create a new bitmap,
+	 * which the new blob owns, but may also return this blob's bitmap unchanged.
+	 */
+	private TiBlob blobFromImageResult(Bitmap result, CompressFormat format, int quality)
+	{
+		if (result != image || ownsImage) {
+			return blobFromOwnedImage(result, format, quality);
+		}
+		return blobFromImage(result, format, quality);
+	}
+
+	/**
+	 * Compresses the bitmap of a TYPE_IMAGE blob, if it hasn't been compressed yet.
+	 * @return the encoded image.
+	 */
+	private synchronized byte[] getImageBytes()
+	{
+		if (data instanceof TiByteSegments) {
+			return ((TiByteSegments) data).toByteArray();
+		}
+		if (data == null) {
+			byte[] bytes = new byte[0];
+			if (image != null) {
+				CompressFormat format = imageFormat;
+				if (format == null) {
+					format = image.hasAlpha() ? CompressFormat.PNG : CompressFormat.JPEG;
+				}
+				ByteArrayOutputStream bos = new ByteArrayOutputStream();
+				if (image.compress(format, imageQuality, bos)) {
+					bytes = bos.toByteArray();
+				}
+			}
+			data = bytes;
+		}
+		return (byte[]) data;
+	}
+
+	/**
+	 * @return the bytes of a TYPE_DATA blob, flattening appended segments if necessary.
+	 */
+	private synchronized byte[] getDataBytes()
+	{
+		if (data instanceof TiByteSegments) {
+			return ((TiByteSegments) data).toByteArray();
+		}
+		return (byte[]) data;
+	}
+
 	/**
 	 * Creates a blob from binary data, with mimeType as "application/octet-stream".
 	 * @param data data used to create blob.
@@ -280,7 +364,7 @@ public class TiBlob extends KrollProxy
 					BitmapFactory.decodeStream(getInputStream(), null, opts);
 					break;
 				case TYPE_DATA:
-					byte[] byteArray = (byte[]) data;
+					byte[] byteArray = getDataBytes();
 					BitmapFactory.decodeByteArray(byteArray, 0, byteArray.length, opts);
 					break;
 			}
@@ -306,15 +390,17 @@ public class TiBlob extends KrollProxy
 		switch(type) {
 			case TYPE_STRING :
 				try {
-					bytes = ((String) data).getBytes("utf-8");
+					bytes = data.toString().getBytes("utf-8");
 				} catch (UnsupportedEncodingException e) {
 					Log.w(TAG, e.getMessage(), e);
 				}
 				break;
 			case TYPE_DATA:
-			case TYPE_IMAGE:
 				//TODO deal with mimetypes.
-				bytes = (byte[]) data;
+				bytes = getDataBytes();
+				break;
+			case TYPE_IMAGE:
+				bytes = getImageBytes();
 				break;
 			case TYPE_FILE:	
 				InputStream stream = getInputStream();
@@ -364,7 +450,12 @@ public class TiBlob extends KrollProxy
 				return (int) fileSize;
 			case TYPE_DATA:
 			case TYPE_IMAGE:
-				return ((byte[])data).length;
+				synchronized (this) {
+					if (data instanceof TiByteSegments) {
+						return ((TiByteSegments) data).length();
+					}
+				}
+				return (type == TYPE_DATA) ? getDataBytes().length : getImageBytes().length;
 			case TYPE_STREAM_BASE64:
 				throw new IllegalStateException("Not yet implemented. TYPE_STREAM_BASE64");
 			default:
@@ -390,31 +481,69 @@ public class TiBlob extends KrollProxy
 			case TYPE_STREAM_BASE64:
 				return (InputStream)data;
 			default:
+				synchronized (this) {
+					if (data instanceof TiByteSegments) {
+						return ((TiByteSegments) data).getInputStream();
+					}
+				}
 				return new ByteArrayInputStream(getBytes());
 		}
 	}
 
+	/**
+	 * Writes the content of this blob to a stream. Appended data and files are copied without
+	 * first being read into a single array.
+	 * @param out the destination. It isn't closed.
+	 * @throws IOException if reading or writing fails.
+	 * @module.api
+	 */
+	public void writeTo(OutputStream out) throws IOException
+	{
+		synchronized (this) {
+			if (data instanceof TiByteSegments) {
+				((TiByteSegments) data).writeTo(out);
+				return;
+			}
+		}
+		if (type == TYPE_FILE || type == TYPE_STREAM_BASE64) {
+			InputStream in = getInputStream();
+			if (in != null) {
+				try {
+					TiBaseFile.copyStream(in, out);
+				} finally {
+					in.close();
+				}
+			}
+		} else {
+			out.write(getBytes());
+		}
+	}
+
+	/**
+	 * Appends the content of another blob. String and data blobs grow in place: only the appended
+	 * bytes are copied, and the result is flattened lazily the next time the whole content is needed.
+	 * @param blob the blob to append.
+	 */
 	@Kroll.method
-	public void append(TiBlob blob)
+	public synchronized void append(TiBlob blob)
 	{
 		switch(type) {
 			case TYPE_STRING :
 				try {
-					String dataString = (String)data;
-					dataString += new String(blob.getBytes(), "utf-8");
+					if (!(data instanceof StringBuilder)) {
+						data = new StringBuilder((String) data);
+					}
+					((StringBuilder) data).append(new String(blob.getBytes(), "utf-8"));
 				} catch (UnsupportedEncodingException e) {
 					Log.w(TAG, e.getMessage(), e);
 				}
 				break;
 			case TYPE_IMAGE:
 			case TYPE_DATA :
-				byte[] dataBytes = (byte[]) data;
-				byte[] appendBytes = blob.getBytes();
-				byte[] newData = new byte[dataBytes.length + appendBytes.length];
-				System.arraycopy(dataBytes, 0, newData, 0, dataBytes.length);
-				System.arraycopy(appendBytes, 0, newData, dataBytes.length, appendBytes.length);
-
-				data = newData;
+				if (!(data instanceof TiByteSegments)) {
+					data = new TiByteSegments(getBytes());
+				}
+				((TiByteSegments) data).append(blob.getBytes());
 				break;
 			case TYPE_FILE :
 				throw new IllegalStateException("Not yet implemented. TYPE_FILE");
@@ -434,7 +563,7 @@ public class TiBlob extends KrollProxy
 		// Only support String and Data. Same as iPhone
 		switch(type) {
 			case TYPE_STRING :
-				result = (String) data;
+				result = data.toString();
 			case TYPE_DATA:
 			case TYPE_FILE:
 				// Don't try to return a string if we can see the 
@@ -469,6 +598,15 @@ public class TiBlob extends KrollProxy
 	 */
 	public Object getData()
 	{
+		if (type == TYPE_IMAGE) {
+			return getImageBytes();
+		}
+		if (type == TYPE_DATA) {
+			return getDataBytes();
+		}
+		if (type == TYPE_STRING) {
+			return data.toString();
+		}
 		return data;
 	}
 
@@ -579,7 +717,7 @@ public class TiBlob extends KrollProxy
 					case TYPE_FILE:
 						return BitmapFactory.decodeStream(getInputStream(),null,opts);
 					case TYPE_DATA:
-						byte[] byteArray = (byte[]) data;
+						byte[] byteArray = getDataBytes();
 						return BitmapFactory.decodeByteArray(byteArray, 0, byteArray.length,opts);
 				}
 			} catch (OutOfMemoryError e) {
@@ -622,7 +760,7 @@ public class TiBlob extends KrollProxy
 				img = null;
 			}
 			
-			return blobFromImage(imageCropped);
+			return blobFromImageResult(imageCropped, null, 100);
 		} catch (OutOfMemoryError e) {
 			Log.e(TAG, "Unable to crop the image. Not enough memory: " + e.getMessage(), e);
 			return null;
@@ -698,7 +836,7 @@ public class TiBlob extends KrollProxy
 				img.recycle();
 				img = null;
 			}
-			return blobFromImage(imageResized);
+			return blobFromImageResult(imageResized, null, 100);
 		} catch (OutOfMemoryError e) {
 			Log.e(TAG, "Unable to resize the image. Not enough memory: " + e.getMessage(), e);
 			return null;
@@ -755,9 +893,9 @@ public class TiBlob extends KrollProxy
 			}
 			
 			if (rotation != 0) {
-				return blobFromImage(TiImageHelper.rotateImage(imageFinal, rotation));
+				return blobFromImageResult(TiImageHelper.rotateImage(imageFinal, rotation), null, 100);
 			}
-			return blobFromImage(imageFinal);
+			return blobFromImageResult(imageFinal, null, 100);
 
 		} catch (OutOfMemoryError e) {
 			Log.e(TAG, "Unable to get the thumbnail image. Not enough memory: " + e.getMessage(), e);
@@ -790,9 +928,9 @@ public class TiBlob extends KrollProxy
 				img = null;
 			}
 			if (rotation != 0) {
-			    return blobFromImage(TiImageHelper.rotateImage(imageWithAlpha, rotation));
+			    return blobFromImageResult(TiImageHelper.rotateImage(imageWithAlpha, rotation), null, 100);
 			}
-			return blobFromImage(imageWithAlpha);
+			return blobFromImageResult(imageWithAlpha, null, 100);
 		} catch (OutOfMemoryError e) {
 			Log.e(TAG, "Unable to get the image with alpha. Not enough memory: " + e.getMessage(), e);
 			return null;
@@ -831,9 +969,9 @@ public class TiBlob extends KrollProxy
 				img = null;
 			}
 			if (rotation != 0) {
-			    return blobFromImage(TiImageHelper.rotateImage(imageRoundedCorner, rotation));
+			    return blobFromImageResult(TiImageHelper.rotateImage(imageRoundedCorner, rotation), null, 100);
 			}
-			return blobFromImage(imageRoundedCorner);
+			return blobFromImageResult(imageRoundedCorner, null, 100);
 		} catch (OutOfMemoryError e) {
 			Log.e(TAG, "Unable to get the image with rounded corner. Not enough memory: " + e.getMessage(), e);
 			return null;
@@ -846,6 +984,42 @@ public class TiBlob extends KrollProxy
 		}
 	}
 
+	/**
+	 * Returns a blob of the same image that is encoded as JPEG with the given quality, from 0.0 to 1.0.
+	 * Like other image blobs, it is only compressed when its bytes are needed.
+	 */
+	@Kroll.method
+	public TiBlob imageAsCompressed(Number quality)
+	{
+		Bitmap img = getImage();
+		if (img == null) {
+			return null;
+		}
+		return blobFromImageResult(img, CompressFormat.JPEG, Math.round(quality.floatValue() * 100));
+	}
+
+	/**
+	 * Applies a chain of image operations in the background and passes the resulting blob to the callback.
+	 * @see TiImagePipeline
+	 */
+	@Kroll.method
+	public void imageAsTransformed(Object[] operations, final KrollFunction callback)
+	{
+		new TiImagePipeline(this, operations).executeAsync(new TiImagePipeline.Listener() {
+			public void onComplete(TiBlob result, String error)
+			{
+				KrollDict data = new KrollDict();
+				if (result != null) {
+					data.put(TiC.PROPERTY_IMAGE, result);
+					data.putCodeAndMessage(TiC.ERROR_CODE_NO_ERROR, null);
+				} else {
+					data.putCodeAndMessage(TiC.ERROR_CODE_UNKNOWN, error);
+				}
+				callback.callAsync(getKrollObject(), data);
+			}
+		});
+	}
+
 	@Kroll.method
 	public TiBlob imageWithTransparentBorder(Number size)
 	{
@@ -867,9 +1041,9 @@ public class TiBlob extends KrollProxy
 				img = null;
 			}
 			if (rotation != 0) {
-				return blobFromImage(TiImageHelper.rotateImage(imageWithBorder, rotation));
+				return blobFromImageResult(TiImageHelper.rotateImage(imageWithBorder, rotation), null, 100);
 			}
-			return blobFromImage(imageWithBorder);
+			return blobFromImageResult(imageWithBorder, null, 100);
 		} catch (OutOfMemoryError e) {
 			Log.e(TAG, "Unable to get the image with transparent border. Not enough memory: " + e.getMessage(), e);
 			return null;
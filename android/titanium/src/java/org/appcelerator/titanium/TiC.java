@@ -957,6 +957,11 @@ public class TiC
 	 */
 	public static final String PROPERTY_CHILD_TEMPLATES = "childTemplates";
 
+	/**
+	 * @module.api
+	 */
+	public static final String PROPERTY_CHUNK_SIZE = "chunkSize";
+
 	/**
 	 * @module.api
 	 */
@@ -992,6 +997,11 @@ public class TiC
 	 */
 	public static final String PROPERTY_COMMENT = "comment";
 
+	/**
+	 * @module.api
+	 */
+	public static final String PROPERTY_COMPRESS_REQUEST = "compressRequest";
+
 	/**
 	 * @module.api
 	 */
@@ -1986,6 +1996,11 @@ public class TiC
 	 */
 	public static final String PROPERTY_REPEAT_COUNT = "repeatCount";
 
+	/**
+	 * @module.api
+	 */
+	public static final String PROPERTY_RESUMABLE = "resumable";
+
 	/**
 	 * @module.api
 	 */
@@ -2422,6 +2437,11 @@ public class TiC
 	 */
 	public static final String PROPERTY_UPDATE_CURRENT_INTENT = "updateCurrentIntent";
 
+	/**
+	 * @module.api
+	 */
+	public static final String PROPERTY_UPLOAD_ID = "uploadId";
+
 	/**
 	 * @module.api
 	 */
@@ -12,7 +12,11 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+import org.appcelerator.kroll.KrollDict;
+import org.appcelerator.kroll.KrollFunction;
 import org.appcelerator.kroll.KrollProxy;
 import org.appcelerator.kroll.annotations.Kroll;
 import org.appcelerator.kroll.common.Log;
@@ -30,6 +34,8 @@ public class TiFileProxy extends KrollProxy
 {
 	private static final String TAG = "TiFileProxy";
 
+	private static ExecutorService transferExecutor;
+
 	protected String path;
 	protected TiBaseFile tbf;
 
@@ -135,9 +141,14 @@ public class TiFileProxy extends KrollProxy
 	}
 
 	@Kroll.method
-	public boolean copy (String destination)
+	public boolean copy (String destination, @Kroll.argument(optional=true) KrollFunction progress,
+		@Kroll.argument(optional=true) KrollFunction callback)
 		throws IOException
 	{
+		if (progress != null || callback != null) {
+			transferAsync(destination, false, progress, callback);
+			return true;
+		}
 		return tbf.copy(destination);
 	}
 
@@ -214,12 +225,75 @@ public class TiFileProxy extends KrollProxy
 	}
 
 	@Kroll.method
-	public boolean move(String destination)
+	public boolean move(String destination, @Kroll.argument(optional=true) KrollFunction progress,
+		@Kroll.argument(optional=true) KrollFunction callback)
 		throws IOException
 	{
+		if (progress != null || callback != null) {
+			transferAsync(destination, true, progress, callback);
+			return true;
+		}
 		return tbf.move(destination);
 	}
 
+	/**
+	 * Copies or moves the file on a background thread, so that progress can be reported while the
+	 * transfer runs. The result is passed to the callback, if any.
+	 */
+	private void transferAsync(final String destination, final boolean move, KrollFunction progress,
+		final KrollFunction callback)
+	{
+		final TiBaseFile.TransferListener listener = createTransferListener(progress);
+		getTransferExecutor().execute(new Runnable() {
+			public void run()
+			{
+				KrollDict result = new KrollDict();
+				result.put("source", TiFileProxy.this);
+				try {
+					boolean success = move ? tbf.move(destination, listener) : tbf.copy(destination, listener);
+					if (success) {
+						result.putCodeAndMessage(TiC.ERROR_CODE_NO_ERROR, null);
+					} else {
+						result.putCodeAndMessage(TiC.ERROR_CODE_UNKNOWN, "Unable to " + (move ? "move" : "copy")
+							+ " file to " + destination);
+					}
+				} catch (IOException e) {
+					Log.e(TAG, "Unable to transfer file to " + destination, e);
+					result.putCodeAndMessage(TiC.ERROR_CODE_UNKNOWN, e.getMessage());
+				}
+				if (callback != null) {
+					callback.callAsync(getKrollObject(), result);
+				}
+			}
+		});
+	}
+
+	private static synchronized ExecutorService getTransferExecutor()
+	{
+		if (transferExecutor == null) {
+			transferExecutor = Executors.newSingleThreadExecutor();
+		}
+		return transferExecutor;
+	}
+
+	private TiBaseFile.TransferListener createTransferListener(final KrollFunction progress)
+	{
+		if (progress == null) {
+			return null;
+		}
+
+		return new TiBaseFile.TransferListener() {
+			public void onProgress(long bytesTransferred, long totalBytes)
+			{
+				KrollDict event = new KrollDict();
+				event.put("source", TiFileProxy.this);
+				event.put("bytesTransferred", bytesTransferred);
+				event.put("totalBytes", totalBytes);
+				progress.callAsync(getKrollObject(), event);
+			}
+		};
+	}
+
 	@Kroll.getProperty @Kroll.method
 	public String getName()
 	{
@@ -7,9 +7,12 @@
 package org.appcelerator.titanium;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
 
 import org.appcelerator.kroll.common.Log;
+import org.appcelerator.titanium.util.TiPreferencesWriter;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -19,13 +22,23 @@ import android.content.SharedPreferences;
 /**
  * API for accessing, storing, and modifying application properties that are 
  * exposed via Ti.App.Properties.
+ * <p>
+ * Changes are visible to readers immediately, but are written to disk in the background:
+ * writes made within {@link #FLUSH_DELAY} milliseconds of each other are coalesced into a single
+ * commit on a background thread. Call {@link #flush()} to force pending changes to disk.
  */
 public class TiProperties
 {
 	private static final String TAG = "TiProperties";
 	private static JSONObject systemProperties;
 
+	/**
+	 * The maximum time in milliseconds a change is held in memory before it is written to disk.
+	 */
+	public static final long FLUSH_DELAY = 500;
+
 	SharedPreferences preferences;
+	private final TiPreferencesWriter writer;
 
 	/**
 	 * Instantiates the private SharedPreferences collection with the given name and context.
@@ -39,6 +52,7 @@ public class TiProperties
 		if (clear) {
 			preferences.edit().clear().commit();
 		}
+		writer = new TiPreferencesWriter(preferences, FLUSH_DELAY);
 	}
 
 	/**
@@ -67,6 +81,8 @@ public class TiProperties
 	 */
 	public SharedPreferences getPreference()
 	{
+		// Callers read the SharedPreferences directly, so they must see all changes.
+		flush();
 		return preferences;
 	}
 
@@ -77,11 +93,11 @@ public class TiProperties
 			try {
 				value = systemProperties.get(key);
 			} catch (JSONException e) {
-				value = preferences.getAll().get(key);
+				value = writer.get(key);
 			}
 		}
 		if (value == null) {
-			value = preferences.getAll().get(key);
+			value = writer.get(key);
 		}
 		return value;
 	}
@@ -106,13 +122,7 @@ public class TiProperties
 			return;
 		}
 
-		SharedPreferences.Editor editor = preferences.edit();
-		if (value == null) {
-			editor.remove(key);
-		} else {
-			editor.putString(key,value);
-		}
-		editor.commit();
+		writer.put(key, value);
 	}
 
 	/**
@@ -133,10 +143,10 @@ public class TiProperties
 				try {
 					value = systemProperties.getInt(key);
 				} catch (JSONException e) {
-					value = preferences.getInt(key,def);
+					value = writer.getInt(key, def);
 				}
 			} else {
-				value = preferences.getInt(key,def);
+				value = writer.getInt(key, def);
 			}
 			return value;
 		} catch(ClassCastException cce) {
@@ -169,9 +179,7 @@ public class TiProperties
 			return;
 		}
 
-		SharedPreferences.Editor editor = preferences.edit();
-		editor.putInt(key,value);
-		editor.commit();
+		writer.put(key, value);
 	}
 	
 	/**
@@ -219,9 +227,7 @@ public class TiProperties
 			return;
 		}
 
-		SharedPreferences.Editor editor = preferences.edit();
-		editor.putString(key,value + "");
-		editor.commit();
+		writer.put(key, value + "");
 	}
 	
 	/**
@@ -242,10 +248,10 @@ public class TiProperties
 				try {
 					value = systemProperties.getBoolean(key);
 				} catch (JSONException e) {
-					value = preferences.getBoolean(key,def);
+					value = writer.getBoolean(key, def);
 				}
 			} else {
-				value = preferences.getBoolean(key,def);
+				value = writer.getBoolean(key, def);
 			}
 			return value;
 		} catch(ClassCastException cce) {
@@ -279,9 +285,7 @@ public class TiProperties
 			return;
 		}
 
-		SharedPreferences.Editor editor = preferences.edit();
-		editor.putBoolean(key,value);
-		editor.commit();
+		writer.put(key, value);
 	}
 
 	/**
@@ -297,14 +301,15 @@ public class TiProperties
 			Log.d(TAG, "getList called with key:" + key + ", def:" + def);
 		}
 
-		int length = preferences.getInt(key+".length", -1);
+		int length = writer.getInt(key + ".length", -1);
 		if (length == -1) {
 			return def;
 		}
 
 		String list[] = new String[length];
 		for (int i = 0; i < length; i++) {
-			list[i] = preferences.getString(key+"."+i, "");
+			Object item = writer.get(key + "." + i);
+			list[i] = item != null ? (String) item : "";
 		}
 		return list;
 	}
@@ -322,14 +327,12 @@ public class TiProperties
 			Log.d(TAG, "setList called with key:" + key + ", value:" + value);
 		}
 
-		SharedPreferences.Editor editor = preferences.edit();
+		Map<String, Object> values = new HashMap<String, Object>();
 		for (int i = 0; i < value.length; i++) {
-			editor.putString(key + "." + i, value[i]);
+			values.put(key + "." + i, value[i]);
 		}
-		editor.putInt(key + ".length", value.length);
-
-		editor.commit();
-
+		values.put(key + ".length", value.length);
+		writer.putAll(values);
 	}
 
 	/**
@@ -349,7 +352,7 @@ public class TiProperties
 	 */
 	public boolean hasProperty(String key)
 	{
-		return systemProperties != null ? systemProperties.has(key) || preferences.contains(key) : preferences.contains(key);
+		return systemProperties != null ? systemProperties.has(key) || writer.contains(key) : writer.contains(key);
 	}
 
 	/**
@@ -367,7 +370,7 @@ public class TiProperties
 				properties.add(key);
 			}
 		}
-		for (String key : preferences.getAll().keySet()) {
+		for (String key : writer.getAll().keySet()) {
 			if (key.endsWith(".length")) {
 				properties.add(key.substring(0, key.length() - 7));
 			} else if (key.matches(".+\\.\\d+$")) {
@@ -394,11 +397,86 @@ public class TiProperties
 			return;
 		}
 
-		if (preferences.contains(key)) {
-			SharedPreferences.Editor editor = preferences.edit();
-			editor.remove(key);
-			editor.commit();
+		if (writer.contains(key)) {
+			writer.put(key, null);
+		}
+	}
+
+	/**
+	 * Maps each key of the given map to its value in a single batch. A null value removes the key,
+	 * Strings, Booleans and integral numbers are stored as with {@link #setString(String, String)},
+	 * {@link #setBool(String, boolean)} and {@link #setInt(String, int)}, other numbers as with
+	 * {@link #setDouble(String, double)}, and String arrays as with {@link #setList(String, String[])}.
+	 * Read-only properties are skipped.
+	 * @param properties the keys and values to set.
+	 * @return the keys whose values were changed.
+	 * @module.api
+	 */
+	public String[] setProperties(Map<String, Object> properties)
+	{
+		ArrayList<String> changed = new ArrayList<String>();
+		Map<String, ?> stored = writer.getAll();
+		for (Map.Entry<String, Object> entry : properties.entrySet()) {
+			String key = entry.getKey();
+			Object value = entry.getValue();
+			if (systemProperties != null && systemProperties.has(key)) {
+				if (Log.isDebugModeEnabled()) {
+					Log.w(TAG, "Cannot overwrite read-only property: " + key);
+				}
+				continue;
+			}
+
+			if (value instanceof Object[]) {
+				Object[] items = (Object[]) value;
+				String[] list = new String[items.length];
+				for (int i = 0; i < items.length; i++) {
+					list[i] = items[i] != null ? items[i].toString() : "";
+				}
+				setList(key, list);
+				changed.add(key);
+				continue;
+			}
+
+			Object newValue;
+			if (value == null || value instanceof String || value instanceof Boolean || value instanceof Integer) {
+				newValue = value;
+			} else if (value instanceof Number) {
+				double number = ((Number) value).doubleValue();
+				if (number == Math.rint(number) && number >= Integer.MIN_VALUE && number <= Integer.MAX_VALUE) {
+					newValue = (int) number;
+				} else {
+					newValue = number + "";
+				}
+			} else {
+				newValue = value.toString();
+			}
+
+			Object current = stored.get(key);
+			if (newValue == null ? current != null : !newValue.equals(current)) {
+				writer.put(key, newValue);
+				changed.add(key);
+			}
 		}
+
+		return changed.toArray(new String[changed.size()]);
+	}
+
+	/**
+	 * Writes all pending changes to disk before returning.
+	 * @module.api
+	 */
+	public void flush()
+	{
+		writer.flush();
+	}
+
+	/**
+	 * Starts writing pending changes to disk on a background thread without waiting for the flush delay,
+	 * e.g. when the application is paused.
+	 */
+	public void flushInBackground()
+	{
+		writer.flushInBackground();
 	}
 
 	public static void setSystemProperties(JSONObject prop) {
@@ -0,0 +1,339 @@
+/**
+ * Appcelerator Titanium Mobile
+ * Copyright (c) 2014 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Apache Public License
+ * Please see the LICENSE included with this distribution for details.
+ */
+package org.appcelerator.titanium.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.appcelerator.kroll.common.Log;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+
+/**
+ * An in-memory index of the application's "Resources/" asset tree. The index is built once per
+ * process from the APK's zip directory, so that existence, size, type and directory listing
+ * queries on {@link TiResourceFile} don't need to open asset streams or call AssetManager.list().
+ * The index is persisted to the cache directory and reused until the APK changes.
+ */
+public class TiAssetIndex
+{
+	private static final String TAG = "TiAssetIndex";
+	private static final String ASSET_ROOT = "assets/Resources/";
+	private static final String INDEX_FILE = "ti-asset-index";
+	private static final int INDEX_VERSION = 1;
+
+	private static TiAssetIndex _instance;
+	private static boolean unavailable = false;
+
+	private final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+	private static class Entry
+	{
+		private final long size;
+		private List<String> children;
+
+		private Entry(long size, boolean directory)
+		{
+			this.size = size;
+			if (directory) {
+				children = new ArrayList<String>();
+			}
+		}
+	}
+
+	/**
+	 * Returns the index, building or loading it on first use.
+	 * @param context the application context.
+	 * @return the index, or null if the APK couldn't be read. Callers should fall back to the AssetManager.
+	 */
+	public static synchronized TiAssetIndex getInstance(Context context)
+	{
+		if (_instance == null && !unavailable && context != null) {
+			try {
+				_instance = load(context);
+			} catch (Exception e) {
+				Log.w(TAG, "Unable to index application assets: " + e.getMessage(), e);
+				unavailable = true;
+			}
+		}
+		return _instance;
+	}
+
+	private TiAssetIndex()
+	{
+		entries.put("", new Entry(0, true));
+	}
+
+	/**
+	 * Normalizes a resource path (relative to "Resources/") to an index key. Leading, trailing and
+	 * repeated slashes are removed and "." / ".." segments are resolved.
+	 * @param path the resource path.
+	 * @return the key, or null if the path points outside of "Resources/".
+	 */
+	public static String normalize(String path)
+	{
+		if (path == null) {
+			return null;
+		}
+		if (path.indexOf("//") == -1 && path.indexOf("./") == -1 && !path.endsWith(".")) {
+			int start = path.startsWith("/") ? 1 : 0;
+			int end = path.endsWith("/") && path.length() > start ? path.length() - 1 : path.length();
+			return path.substring(start, end);
+		}
+
+		List<String> segments = new ArrayList<String>();
+		for (String segment : path.split("/")) {
+			if (segment.length() == 0 || segment.equals(".")) {
+				continue;
+			}
+			if (segment.equals("..")) {
+				if (segments.isEmpty()) {
+					return null;
+				}
+				segments.remove(segments.size() - 1);
+			} else {
+				segments.add(segment);
+			}
+		}
+
+		StringBuilder key = new StringBuilder();
+		for (String segment : segments) {
+			if (key.length() > 0) {
+				key.append('/');
+			}
+			key.append(segment);
+		}
+		return key.toString();
+	}
+
+	/**
+	 * @param path the resource path.
+	 * @return whether a file or directory exists at path.
+	 */
+	public boolean exists(String path)
+	{
+		return getEntry(path) != null;
+	}
+
+	/**
+	 * @param path the resource path.
+	 * @return whether path is a directory.
+	 */
+	public boolean isDirectory(String path)
+	{
+		Entry entry = getEntry(path);
+		return entry != null && entry.children != null;
+	}
+
+	/**
+	 * @param path the resource path.
+	 * @return whether path is a file.
+	 */
+	public boolean isFile(String path)
+	{
+		Entry entry = getEntry(path);
+		return entry != null && entry.children == null;
+	}
+
+	/**
+	 * @param path the resource path.
+	 * @return the uncompressed size of the file at path, or 0 for directories and missing files.
+	 */
+	public long size(String path)
+	{
+		Entry entry = getEntry(path);
+		return entry != null ? entry.size : 0;
+	}
+
+	/**
+	 * @param path the resource path.
+	 * @return the sorted names of the direct children of path. Empty for files and missing paths.
+	 */
+	public List<String> list(String path)
+	{
+		Entry entry = getEntry(path);
+		if (entry == null || entry.children == null) {
+			return new ArrayList<String>();
+		}
+		return new ArrayList<String>(entry.children);
+	}
+
+	private Entry getEntry(String path)
+	{
+		String key = normalize(path);
+		return key != null ? entries.get(key) : null;
+	}
+
+	private void add(String key, long size)
+	{
+		if (key.length() == 0 || key.endsWith("/") || entries.containsKey(key)) {
+			return;
+		}
+		entries.put(key, new Entry(size, false));
+
+		// Register the file with its parent directories, creating them as needed.
+		String child = key;
+		while (true) {
+			int idx = child.lastIndexOf('/');
+			String parentKey = idx == -1 ? "" : child.substring(0, idx);
+			Entry parent = entries.get(parentKey);
+			boolean created = parent == null;
+			if (created) {
+				parent = new Entry(0, true);
+				entries.put(parentKey, parent);
+			}
+			parent.children.add(child.substring(idx + 1));
+			if (!created) {
+				break;
+			}
+			child = parentKey;
+		}
+	}
+
+	private void sortListings()
+	{
+		for (Entry entry : entries.values()) {
+			if (entry.children != null) {
+				Collections.sort(entry.children);
+			}
+		}
+	}
+
+	private static TiAssetIndex load(Context context) throws IOException
+	{
+		File apk = new File(context.getApplicationInfo().sourceDir);
+		int versionCode = 0;
+		try {
+			versionCode = context.getPackageManager().getPackageInfo(context.getPackageName(), 0).versionCode;
+		} catch (PackageManager.NameNotFoundException e) {
+			// The APK's timestamp and length still identify it.
+		}
+		File indexFile = new File(context.getCacheDir(), INDEX_FILE);
+
+		TiAssetIndex index = readIndex(indexFile, apk, versionCode);
+		if (index != null) {
+			Log.d(TAG, "Loaded asset index with " + index.entries.size() + " entries", Log.DEBUG_MODE);
+			return index;
+		}
+
+		index = new TiAssetIndex();
+		ZipFile zip = new ZipFile(apk);
+		try {
+			Enumeration<? extends ZipEntry> zipEntries = zip.entries();
+			while (zipEntries.hasMoreElements()) {
+				ZipEntry zipEntry = zipEntries.nextElement();
+				String name = zipEntry.getName();
+				if (name.startsWith(ASSET_ROOT) && !zipEntry.isDirectory()) {
+					index.add(name.substring(ASSET_ROOT.length()), Math.max(zipEntry.getSize(), 0));
+				}
+			}
+		} finally {
+			zip.close();
+		}
+		index.sortListings();
+		Log.d(TAG, "Built asset index with " + index.entries.size() + " entries", Log.DEBUG_MODE);
+
+		writeIndex(index, indexFile, apk, versionCode);
+		return index;
+	}
+
+	private static TiAssetIndex readIndex(File indexFile, File apk, int versionCode)
+	{
+		if (!indexFile.exists()) {
+			return null;
+		}
+
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+			if (in.readInt() != INDEX_VERSION || in.readInt() != versionCode || in.readLong() != apk.lastModified()
+				|| in.readLong() != apk.length()) {
+				return null;
+			}
+
+			TiAssetIndex index = new TiAssetIndex();
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				String key = in.readUTF();
+				index.add(key, in.readLong());
+			}
+			index.sortListings();
+			return index;
+
+		} catch (IOException e) {
+			Log.w(TAG, "Unable to read the cached asset index: " + e.getMessage(), Log.DEBUG_MODE);
+			return null;
+
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+	}
+
+	private static void writeIndex(TiAssetIndex index, File indexFile, File apk, int versionCode)
+	{
+		List<String> files = new ArrayList<String>();
+		for (Map.Entry<String, Entry> entry : index.entries.entrySet()) {
+			if (entry.getValue().children == null) {
+				files.add(entry.getKey());
+			}
+		}
+
+		File tempFile = new File(indexFile.getPath() + ".tmp");
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+			out.writeInt(INDEX_VERSION);
+			out.writeInt(versionCode);
+			out.writeLong(apk.lastModified());
+			out.writeLong(apk.length());
+			out.writeInt(files.size());
+			for (String key : files) {
+				out.writeUTF(key);
+				out.writeLong(index.entries.get(key).size);
+			}
+			out.close();
+			out = null;
+			if (!tempFile.renameTo(indexFile)) {
+				tempFile.delete();
+			}
+
+		} catch (IOException e) {
+			Log.w(TAG, "Unable to cache the asset index: " + e.getMessage(), Log.DEBUG_MODE);
+			tempFile.delete();
+
+		} finally {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+	}
+}
@@ -6,21 +6,27 @@
  */
 package org.appcelerator.titanium.io;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Reader;
 import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.List;
 
 import org.appcelerator.kroll.common.Log;
 import org.appcelerator.titanium.TiBlob;
+import org.appcelerator.titanium.util.TiByteBufferPool;
 
 /**
  * This is the parent class of all files/directories.
@@ -29,6 +35,24 @@ public abstract class TiBaseFile
 {
 	private static final String TAG = "TiBaseFile";
 
+	// Largest amount handed to a single FileChannel.transferTo call.
+	private static final long MAX_TRANSFER_SIZE = 8 * 1024 * 1024;
+	// Progress is reported after at least this many bytes, so small transfers report only on completion.
+	private static final long PROGRESS_INTERVAL = 1024 * 1024;
+
+	/**
+	 * Receives progress updates for {@link TiBaseFile#copy(String, TransferListener)},
+	 * {@link TiBaseFile#move(String, TransferListener)} and the static transfer helpers.
+	 */
+	public interface TransferListener
+	{
+		/**
+		 * @param bytesTransferred the number of bytes transferred so far.
+		 * @param totalBytes the total number of bytes, or -1 if unknown.
+		 */
+		void onProgress(long bytesTransferred, long totalBytes);
+	}
+
 	public static final int MODE_READ = 0;
 	public static final int MODE_WRITE = 1;
 	public static final int MODE_APPEND = 2;
@@ -131,6 +155,18 @@ public abstract class TiBaseFile
 	}
 
 	public boolean copy(String destination) throws IOException
+	{
+		return copy(destination, null);
+	}
+
+	/**
+	 * Copies this file to destination. When both ends are native files the data is moved by the
+	 * kernel with FileChannel.transferTo, otherwise it is streamed through a pooled direct buffer.
+	 * @param destination the destination path or url.
+	 * @param listener receives progress for large transfers, may be null.
+	 * @return true if the file was copied.
+	 */
+	public boolean copy(String destination, TransferListener listener) throws IOException
 	{
 		InputStream is = null;
 		OutputStream os = null;
@@ -139,24 +175,25 @@ public abstract class TiBaseFile
 		if (destination == null) return false;
 
 		try {
-			is = getInputStream();
-			if (is == null) return false;
-
 			String parts[] = { destination };
 			TiBaseFile bf = TiFileFactory.createTitaniumFile(parts, false);
 			if (bf == null) return false;
 
+			File source = getNativeFile();
+			File dest = bf.getNativeFile();
+			if (source != null && dest != null && source.isFile()) {
+				transferFile(source, dest, false, listener);
+				return true;
+			}
+
+			is = getInputStream();
+			if (is == null) return false;
+
 			os = bf.getOutputStream();
 			if (os == null) return false;
 
-			byte[] buf = new byte[8096];
-			int count = 0;
-			is = new BufferedInputStream(is);
-			os = new BufferedOutputStream(os);
-
-			while((count = is.read(buf)) != -1) {
-				os.write(buf, 0, count);
-			}
+			long totalBytes = (listener != null && type != TYPE_BLOB) ? size() : -1;
+			copyStream(is, os, totalBytes, listener);
 
 			copied = true;
 		} catch (IOException e) {
@@ -248,6 +285,18 @@ public abstract class TiBaseFile
 	}
 
 	public boolean move(String destination)  throws IOException
+	{
+		return move(destination, null);
+	}
+
+	/**
+	 * Moves this file to destination. A rename is tried first; across volumes the file is
+	 * copied with {@link #copy(String, TransferListener)} and then deleted.
+	 * @param destination the destination path or url.
+	 * @param listener receives progress for large transfers, may be null.
+	 * @return true if the file was moved.
+	 */
+	public boolean move(String destination, TransferListener listener) throws IOException
 	{
 		boolean moved = false;
 
@@ -268,7 +317,10 @@ public abstract class TiBaseFile
 					throw new FileNotFoundException("Destination is not a valid location for writing");
 				}
 
-				if(copy(destination)) {
+				if (fsrc.renameTo(fdest)) {
+					moved = true;
+
+				} else if (copy(destination, listener)) {
 					moved = deleteFile();
 				}
 			} else {
@@ -430,17 +482,96 @@ public abstract class TiBaseFile
 	}
 
 	public static void copyStream(InputStream is, OutputStream os) throws IOException {
-		byte[] buf = new byte[8096];
-		int count = 0;
-		while((count = is.read(buf)) != -1) {
-			os.write(buf, 0, count);
+		copyStream(is, os, -1, null);
+	}
+
+	/**
+	 * Copies a stream through a pooled direct buffer. File streams are accessed through their channels.
+	 * @param totalBytes the expected number of bytes for progress reporting, or -1 if unknown.
+	 * @param listener receives progress for large transfers, may be null.
+	 * @return the number of bytes copied.
+	 */
+	public static long copyStream(InputStream is, OutputStream os, long totalBytes, TransferListener listener)
+		throws IOException
+	{
+		ReadableByteChannel in = (is instanceof FileInputStream) ? ((FileInputStream) is).getChannel() : Channels.newChannel(is);
+		WritableByteChannel out = (os instanceof FileOutputStream) ? ((FileOutputStream) os).getChannel() : Channels.newChannel(os);
+
+		TiByteBufferPool pool = TiByteBufferPool.getInstance();
+		ByteBuffer buffer = pool.acquire();
+		long transferred = 0;
+		long reported = 0;
+		try {
+			while (in.read(buffer) != -1) {
+				buffer.flip();
+				while (buffer.hasRemaining()) {
+					transferred += out.write(buffer);
+				}
+				buffer.clear();
+
+				if (listener != null && transferred - reported >= PROGRESS_INTERVAL) {
+					reported = transferred;
+					listener.onProgress(transferred, totalBytes);
+				}
+			}
+
+		} finally {
+			pool.release(buffer);
 		}
+
+		if (listener != null && transferred != reported) {
+			listener.onProgress(transferred, totalBytes);
+		}
+		return transferred;
+	}
+
+	/**
+	 * Copies one native file to another with FileChannel.transferTo, without copying the data
+	 * through the Java heap.
+	 * @param append whether to append to destination instead of replacing it.
+	 * @param listener receives progress for large transfers, may be null.
+	 * @return the number of bytes copied.
+	 */
+	public static long transferFile(File source, File destination, boolean append, TransferListener listener)
+		throws IOException
+	{
+		FileInputStream in = new FileInputStream(source);
+		FileOutputStream out = null;
+		long transferred = 0;
+		long reported = 0;
+		try {
+			out = new FileOutputStream(destination, append);
+			FileChannel inChannel = in.getChannel();
+			FileChannel outChannel = out.getChannel();
+
+			long total = inChannel.size();
+			while (transferred < total) {
+				long count = inChannel.transferTo(transferred, Math.min(total - transferred, MAX_TRANSFER_SIZE), outChannel);
+				if (count <= 0) {
+					break;
+				}
+				transferred += count;
+
+				if (listener != null && (transferred - reported >= PROGRESS_INTERVAL || transferred == total)) {
+					reported = transferred;
+					listener.onProgress(transferred, total);
+				}
+			}
+
+		} finally {
+			in.close();
+			if (out != null) {
+				out.close();
+			}
+		}
+
+		return transferred;
 	}
 
 	protected void copyStream(Reader r, Writer w) throws IOException {
 		char[] buf = new char[8096];
 		int count = 0;
-		while((count = r.read(buf, 0, count)) != -1) {
+		while((count = r.read(buf, 0, buf.length)) != -1) {
 			w.write(buf, 0, count);
 		}
 	}
@@ -377,6 +377,13 @@ public class TiFile extends TiBaseFile
 
 		if (blob != null) {
 			if (!stream) {
+				File source = getBlobNativeFile(blob);
+				if (source != null && source.isFile() && !source.equals(file)) {
+					// file-backed blob, let the kernel copy it
+					transferFile(source, file, append, null);
+					return;
+				}
+
 				try {
 					open(append ? MODE_APPEND : MODE_WRITE, true);
 					copyStream(blob.getInputStream(), outstream);
@@ -398,6 +405,23 @@ public class TiFile extends TiBaseFile
 		}
 	}
 
+	private static File getBlobNativeFile(TiBlob blob)
+	{
+		if (blob.getType() != TiBlob.TYPE_FILE) {
+			return null;
+		}
+
+		Object data = blob.getData();
+		if (data instanceof TitaniumBlob) {
+			return ((TitaniumBlob) data).getFile();
+
+		} else if (data instanceof TiBaseFile) {
+			return ((TiBaseFile) data).getNativeFile();
+		}
+
+		return null;
+	}
+
 	public void writeFromUrl(String url, boolean append) throws IOException
 	{
 		Log.d(TAG, "write called for file = " + file, Log.DEBUG_MODE);
@@ -41,6 +41,10 @@ public class TiResourceFile extends TiBaseFile
 	@Override
 	public boolean isDirectory()
 	{
+		TiAssetIndex index = TiAssetIndex.getInstance(TiApplication.getInstance());
+		if (index != null) {
+			return index.isDirectory(path);
+		}
 		if (typeFetched) {
 			return this.typeDir;
 		}
@@ -52,6 +56,10 @@ public class TiResourceFile extends TiBaseFile
 	@Override
 	public boolean isFile()
 	{
+		TiAssetIndex index = TiAssetIndex.getInstance(TiApplication.getInstance());
+		if (index != null) {
+			return index.isFile(path);
+		}
 		if (typeFetched) {
 			return this.typeFile;
 		}
@@ -145,6 +153,11 @@ public class TiResourceFile extends TiBaseFile
 	@Override
 	public boolean exists()
 	{
+		TiAssetIndex index = TiAssetIndex.getInstance(TiApplication.getInstance());
+		if (index != null) {
+			return index.exists(path);
+		}
+
 		boolean result = false;
 		InputStream is = null;
 		try {
@@ -210,6 +223,11 @@ public class TiResourceFile extends TiBaseFile
 
 	public long size()
 	{
+		TiAssetIndex index = TiAssetIndex.getInstance(TiApplication.getInstance());
+		if (index != null) {
+			return index.size(path);
+		}
+
 		long length = 0;
 		InputStream is = null;
 		try {
@@ -233,6 +251,11 @@ public class TiResourceFile extends TiBaseFile
 	@Override
 	public List<String> getDirectoryListing()
 	{
+		TiAssetIndex index = TiAssetIndex.getInstance(TiApplication.getInstance());
+		if (index != null) {
+			return index.list(path);
+		}
+
 		List<String> listing = new ArrayList<String>();
 		try {
 			String lpath = TiFileHelper2.joinSegments("Resources", path);
@@ -41,6 +41,7 @@ import android.util.TypedValue;
 import android.view.View;
 import android.view.ViewGroup;
 import android.view.ViewParent;
+import android.view.ViewTreeObserver;
 import android.view.animation.AlphaAnimation;
 import android.view.animation.Animation;
 import android.view.animation.AnimationSet;
@@ -134,6 +135,7 @@ public class TiAnimationBuilder
 	protected View view;
 	protected AnimatorHelper animatorHelper;
 	protected TiViewProxy viewProxy;
+	protected boolean hardwareLayerEnabled = false;
 
 	public TiAnimationBuilder()
 	{
@@ -1191,9 +1193,12 @@ public class TiAnimationBuilder
 	 * A helper class for Honeycomb+ Property Animators to animate width/height/top/bottom/left/right/center.
 	 * Based on the Android doc http://developer.android.com/guide/topics/graphics/prop-animation.html, to have
 	 * the ObjectAnimator update properties correctly, the property must have a setter function.
+	 * Layout passes are coalesced per frame, see {@link #requestLayout()}.
 	 */
-	protected class AnimatorHelper
+	protected class AnimatorHelper implements ViewTreeObserver.OnPreDrawListener
 	{
+		private boolean layoutPending = false;
+
 		public void setWidth(final int w)
 		{
 			ViewGroup.LayoutParams params = view.getLayoutParams();
@@ -1205,8 +1210,7 @@ public class TiAnimationBuilder
 				tiParams.optionWidth.setUnits(TypedValue.COMPLEX_UNIT_PX);
 			}
 
-			view.setLayoutParams(params);
-			invalidateParentView();
+			requestLayout();
 		}
 
 		public void setHeight(final int h)
@@ -1220,8 +1224,7 @@ public class TiAnimationBuilder
 				tiParams.optionHeight.setUnits(TypedValue.COMPLEX_UNIT_PX);
 			}
 
-			view.setLayoutParams(params);
-			invalidateParentView();
+			requestLayout();
 		}
 
 		public void setLeft(final int l)
@@ -1232,8 +1235,7 @@ public class TiAnimationBuilder
 				tiParams.optionLeft = new TiDimension(l, TiDimension.TYPE_LEFT);
 				tiParams.optionLeft.setUnits(TypedValue.COMPLEX_UNIT_PX);
 			}
-			view.requestLayout();
-			invalidateParentView();
+			requestLayout();
 		}
 		
 		public void setRight(final int r)
@@ -1244,8 +1246,7 @@ public class TiAnimationBuilder
 				tiParams.optionRight = new TiDimension(r, TiDimension.TYPE_RIGHT);
 				tiParams.optionRight.setUnits(TypedValue.COMPLEX_UNIT_PX);
 			}
-			view.requestLayout();
-			invalidateParentView();
+			requestLayout();
 		}
 
 		public void setTop(final int t)
@@ -1256,8 +1257,7 @@ public class TiAnimationBuilder
 				tiParams.optionTop = new TiDimension(t, TiDimension.TYPE_TOP);
 				tiParams.optionTop.setUnits(TypedValue.COMPLEX_UNIT_PX);
 			}
-			view.requestLayout();
-			invalidateParentView();
+			requestLayout();
 		}
 		
 		public void setBottom(final int b)
@@ -1268,8 +1268,7 @@ public class TiAnimationBuilder
 				tiParams.optionBottom = new TiDimension(b, TiDimension.TYPE_BOTTOM);
 				tiParams.optionBottom.setUnits(TypedValue.COMPLEX_UNIT_PX);
 			}
-			view.requestLayout();
-			invalidateParentView();
+			requestLayout();
 		}
 		
 		public void setCenterX(final int b)
@@ -1280,8 +1279,7 @@ public class TiAnimationBuilder
 				tiParams.optionCenterX = new TiDimension(b, TiDimension.TYPE_CENTER_X);
 				tiParams.optionCenterX.setUnits(TypedValue.COMPLEX_UNIT_PX);
 			}
-			view.requestLayout();
-			invalidateParentView();
+			requestLayout();
 		}
 		
 		public void setCenterY(final int b)
@@ -1292,16 +1290,39 @@ public class TiAnimationBuilder
 				tiParams.optionCenterY = new TiDimension(b, TiDimension.TYPE_CENTER_Y);
 				tiParams.optionCenterY.setUnits(TypedValue.COMPLEX_UNIT_PX);
 			}
-			view.requestLayout();
-			invalidateParentView();
+			requestLayout();
 		}
 		
-		private void invalidateParentView() 
+		/**
+		 * Requests a layout pass for the view at most once per frame, no matter how many of its layout
+		 * properties are animated. The setters above only update the layout params in place; the pass
+		 * requested by the first of them in a frame applies them all. Animators run before the layout
+		 * pass of their frame, so this does not delay the change by a frame.
+		 */
+		private void requestLayout()
 		{
+			if (layoutPending) {
+				return;
+			}
+			layoutPending = true;
+			view.requestLayout();
 			ViewParent vp = view.getParent();
 			if (vp instanceof View) {
+				// Need to invalidate the parent view. Otherwise, it will not draw correctly.
 				((View) vp).invalidate();
 			}
+			view.getViewTreeObserver().addOnPreDrawListener(this);
+		}
+
+		// Called after the layout pass of the frame, so the next change requests a new one.
+		public boolean onPreDraw()
+		{
+			layoutPending = false;
+			ViewTreeObserver observer = view.getViewTreeObserver();
+			if (observer.isAlive()) {
+				observer.removeOnPreDrawListener(this);
+			}
+			return true;
 		}
 	}
 
@@ -1329,6 +1350,7 @@ public class TiAnimationBuilder
 		public void onAnimationCancel(Animator animator)
 		{
 			if (animator instanceof AnimatorSet) {
+				disableHardwareLayer();
 				setAnimationRunningFor(view, false);
 			}
 		}
@@ -1336,6 +1358,10 @@ public class TiAnimationBuilder
 		@SuppressWarnings("unchecked")
 		public void onAnimationEnd(Animator animator)
 		{
+			if (animator instanceof AnimatorSet) {
+				disableHardwareLayer();
+			}
+
 			if (relayoutChild) {
 				if (PRE_HONEYCOMB) {
 					LayoutParams params = null;
@@ -1398,10 +1424,15 @@ public class TiAnimationBuilder
 
 		public void onAnimationRepeat(Animator animator)
 		{
+			enableHardwareLayer();
 		}
 
 		public void onAnimationStart(Animator animator)
 		{
+			// The layer is disabled whenever the set ends or is cancelled, so enable it on every start.
+			if (animator instanceof AnimatorSet) {
+				enableHardwareLayer();
+			}
 			if (animationProxy != null) {
 				animationProxy.fireEvent(TiC.EVENT_START, null);
 			}
@@ -1545,6 +1576,32 @@ public class TiAnimationBuilder
 		}
 	}
 
+	/**
+	 * Renders the view into a hardware layer for the duration of the animation. Only done when
+	 * the animation changes nothing but opacity and transforms, since any change to the layout or
+	 * the background would force the layer to be redrawn on every frame.
+	 */
+	@TargetApi(Build.VERSION_CODES.HONEYCOMB)
+	private void enableHardwareLayer()
+	{
+		if (PRE_HONEYCOMB || animatorHelper != null || backgroundColor != null || !view.isHardwareAccelerated()) {
+			return;
+		}
+		if (view.getLayerType() == View.LAYER_TYPE_NONE) {
+			view.setLayerType(View.LAYER_TYPE_HARDWARE, null);
+			hardwareLayerEnabled = true;
+		}
+	}
+
+	@TargetApi(Build.VERSION_CODES.HONEYCOMB)
+	private void disableHardwareLayer()
+	{
+		if (hardwareLayerEnabled) {
+			view.setLayerType(View.LAYER_TYPE_NONE, null);
+			hardwareLayerEnabled = false;
+		}
+	}
+
 	private void setAnchor(int width, int height)
 	{
 		setAnchor(width, height, anchorX, anchorY);
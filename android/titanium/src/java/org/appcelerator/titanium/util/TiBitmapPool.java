@@ -0,0 +1,116 @@
+/**
+ * Appcelerator Titanium Mobile
+ * Copyright (c) 2014 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Apache Public License
+ * Please see the LICENSE included with this distribution for details.
+ */
+package org.appcelerator.titanium.util;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+
+import org.appcelerator.titanium.TiC;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+
+/**
+ * A pool of mutable bitmaps that are no longer displayed and whose memory can be reused
+ * by BitmapFactory through BitmapFactory.Options.inBitmap (Honeycomb+).
+ * The pool is bounded by a byte budget; bitmaps that don't fit are recycled.
+ */
+public class TiBitmapPool
+{
+	// Use 1/16th of the available memory for pooled bitmaps.
+	private static final long MAX_POOL_SIZE = Runtime.getRuntime().maxMemory() / 16;
+
+	protected static TiBitmapPool _instance;
+
+	private final LinkedList<Bitmap> bitmaps = new LinkedList<Bitmap>();
+	private long size = 0;
+
+	public static synchronized TiBitmapPool getInstance()
+	{
+		if (_instance == null) {
+			_instance = new TiBitmapPool();
+		}
+		return _instance;
+	}
+
+	/**
+	 * @return true if decoded bitmaps can be reused on this platform.
+	 */
+	public static boolean isSupported()
+	{
+		return Build.VERSION.SDK_INT >= TiC.API_LEVEL_HONEYCOMB;
+	}
+
+	/**
+	 * Removes and returns a pooled bitmap with the given dimensions.
+	 * @param width the width of the bitmap that will be decoded.
+	 * @param height the height of the bitmap that will be decoded.
+	 * @return a reusable bitmap, or null if the pool has none of this size.
+	 */
+	public synchronized Bitmap get(int width, int height)
+	{
+		return get(width, height, null);
+	}
+
+	/**
+	 * Removes and returns a pooled bitmap with the given dimensions and configuration.
+	 * @param width the width of the bitmap.
+	 * @param height the height of the bitmap.
+	 * @param config the configuration of the bitmap, or null for any.
+	 * @return a reusable bitmap, or null if the pool has none that matches.
+	 */
+	public synchronized Bitmap get(int width, int height, Bitmap.Config config)
+	{
+		Iterator<Bitmap> iterator = bitmaps.iterator();
+		while (iterator.hasNext()) {
+			Bitmap bitmap = iterator.next();
+			if (bitmap.getWidth() == width && bitmap.getHeight() == height
+				&& (config == null || config == bitmap.getConfig())) {
+				iterator.remove();
+				size -= sizeOf(bitmap);
+				return bitmap;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Hands a bitmap that is no longer used over to the pool. The caller must not use it afterwards.
+	 * @param bitmap the bitmap to reuse.
+	 */
+	public synchronized void put(Bitmap bitmap)
+	{
+		if (bitmap == null || bitmap.isRecycled()) {
+			return;
+		}
+		if (!isSupported() || !bitmap.isMutable()) {
+			bitmap.recycle();
+			return;
+		}
+		size += sizeOf(bitmap);
+		bitmaps.addFirst(bitmap);
+		while (size > MAX_POOL_SIZE && !bitmaps.isEmpty()) {
+			Bitmap eldest = bitmaps.removeLast();
+			size -= sizeOf(eldest);
+			eldest.recycle();
+		}
+	}
+
+	public synchronized void evictAll()
+	{
+		for (Bitmap bitmap : bitmaps) {
+			bitmap.recycle();
+		}
+		bitmaps.clear();
+		size = 0;
+	}
+
+	public static int sizeOf(Bitmap bitmap)
+	{
+		return bitmap.getRowBytes() * bitmap.getHeight();
+	}
+}
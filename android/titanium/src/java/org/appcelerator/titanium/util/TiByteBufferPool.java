@@ -0,0 +1,88 @@
+/**
+ * Appcelerator Titanium Mobile
+ * Copyright (c) 2014 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Apache Public License
+ * Please see the LICENSE included with this distribution for details.
+ */
+package org.appcelerator.titanium.util;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedList;
+
+/**
+ * A bounded pool of equally sized ByteBuffers. Buffers are allocated on demand and at most
+ * maxPooled released buffers are kept for reuse; the rest are left to the garbage collector.
+ * The shared instance hands out direct buffers, which channels can read into and write from
+ * without an intermediate copy.
+ */
+public class TiByteBufferPool
+{
+	public static final int DEFAULT_BUFFER_SIZE = 16 * 1024;
+	private static final int DEFAULT_MAX_POOLED = 32;
+
+	protected static TiByteBufferPool _instance;
+
+	private final LinkedList<ByteBuffer> buffers = new LinkedList<ByteBuffer>();
+	private final int bufferSize;
+	private final int maxPooled;
+	private final boolean direct;
+
+	public static synchronized TiByteBufferPool getInstance()
+	{
+		if (_instance == null) {
+			_instance = new TiByteBufferPool(DEFAULT_BUFFER_SIZE, DEFAULT_MAX_POOLED, true);
+		}
+		return _instance;
+	}
+
+	/**
+	 * @param bufferSize the capacity of every buffer in the pool.
+	 * @param maxPooled the maximum number of released buffers kept for reuse.
+	 * @param direct whether to allocate direct buffers.
+	 */
+	public TiByteBufferPool(int bufferSize, int maxPooled, boolean direct)
+	{
+		this.bufferSize = bufferSize;
+		this.maxPooled = maxPooled;
+		this.direct = direct;
+	}
+
+	public int getBufferSize()
+	{
+		return bufferSize;
+	}
+
+	/**
+	 * @return a cleared buffer of {@link #getBufferSize()} bytes.
+	 */
+	public ByteBuffer acquire()
+	{
+		ByteBuffer buffer = null;
+		synchronized (buffers) {
+			buffer = buffers.poll();
+		}
+
+		if (buffer == null) {
+			return direct ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+		}
+
+		buffer.clear();
+		return buffer;
+	}
+
+	/**
+	 * Returns a buffer obtained from {@link #acquire()} to the pool. The caller must not use it afterwards.
+	 */
+	public void release(ByteBuffer buffer)
+	{
+		if (buffer == null || buffer.capacity() != bufferSize || buffer.isDirect() != direct) {
+			return;
+		}
+
+		synchronized (buffers) {
+			if (buffers.size() < maxPooled) {
+				buffers.add(buffer);
+			}
+		}
+	}
+}
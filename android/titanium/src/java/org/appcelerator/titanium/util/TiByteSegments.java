@@ -0,0 +1,235 @@
+/**
+ * Appcelerator Titanium Mobile
+ * Copyright (c) 2014 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Apache Public License
+ * Please see the LICENSE included with this distribution for details.
+ */
+package org.appcelerator.titanium.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A growable byte sequence stored as a list of segments. Appending copies only the appended bytes,
+ * so assembling a large payload from small chunks is linear rather than quadratic. The segments are
+ * flattened into a single array only when {@link #toByteArray()} is called, and the result is kept
+ * until the next append. {@link #getInputStream()} and {@link #writeTo(OutputStream)} read the
+ * segments in place.
+ * <p>
+ * This class is not thread safe; callers must synchronize access themselves.
+ */
+public class TiByteSegments
+{
+	private static final int MIN_SEGMENT_SIZE = 4096;
+	private static final int MAX_SEGMENT_SIZE = 64 * 1024;
+
+	private final List<byte[]> segments = new ArrayList<byte[]>();
+	// Number of bytes used in the last segment. All other segments are full.
+	private int tailUsed;
+	private int length;
+
+	public TiByteSegments()
+	{
+	}
+
+	/**
+	 * Creates a sequence that starts out with the given bytes. The array is copied.
+	 * @param bytes the initial contents.
+	 */
+	public TiByteSegments(byte[] bytes)
+	{
+		append(bytes, 0, bytes.length);
+	}
+
+	/**
+	 * @return the number of bytes in the sequence.
+	 */
+	public int length()
+	{
+		return length;
+	}
+
+	public void append(byte[] bytes)
+	{
+		append(bytes, 0, bytes.length);
+	}
+
+	/**
+	 * Appends a range of bytes. The range is copied, so the caller may reuse the array.
+	 * @param bytes the source array.
+	 * @param offset the offset of the range in bytes.
+	 * @param count the length of the range.
+	 */
+	public void append(byte[] bytes, int offset, int count)
+	{
+		if (offset < 0 || count < 0 || offset + count > bytes.length) {
+			throw new IndexOutOfBoundsException("offset " + offset + " and count " + count
+				+ " are out of bounds for length " + bytes.length);
+		}
+		appendRange(bytes, offset, count);
+	}
+
+	/**
+	 * Appends count zero bytes.
+	 * @param count the number of bytes to append.
+	 */
+	public void grow(int count)
+	{
+		if (count < 0) {
+			throw new IllegalArgumentException("count must not be negative: " + count);
+		}
+		appendRange(null, 0, count);
+	}
+
+	private void appendRange(byte[] bytes, int offset, int count)
+	{
+		while (count > 0) {
+			byte[] tail = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+			if (tail == null || tailUsed == tail.length) {
+				// Grow geometrically up to MAX_SEGMENT_SIZE, and size large appends to fit in one segment.
+				int size = Math.min(Math.max(length, MIN_SEGMENT_SIZE), MAX_SEGMENT_SIZE);
+				tail = new byte[Math.max(size, count)];
+				segments.add(tail);
+				tailUsed = 0;
+			}
+			// Bytes past tailUsed are never written, so they are still zero when growing.
+			int n = Math.min(count, tail.length - tailUsed);
+			if (bytes != null) {
+				System.arraycopy(bytes, offset, tail, tailUsed, n);
+			}
+			tailUsed += n;
+			offset += n;
+			count -= n;
+			length += n;
+		}
+	}
+
+	/**
+	 * Returns the contents as a single array. The segments are replaced by the returned array, so
+	 * repeated calls without intervening appends don't copy. The array is shared: callers must not
+	 * modify it if the sequence is appended to afterwards.
+	 * @return the contents.
+	 */
+	public byte[] toByteArray()
+	{
+		if (segments.size() == 1 && tailUsed == length && segments.get(0).length == length) {
+			return segments.get(0);
+		}
+
+		byte[] result = new byte[length];
+		copyTo(result, 0);
+
+		segments.clear();
+		if (length > 0) {
+			segments.add(result);
+		}
+		tailUsed = length;
+		return result;
+	}
+
+	/**
+	 * Copies the contents into an array.
+	 * @param dest the destination array. It must have room for {@link #length()} bytes after offset.
+	 * @param offset the position in dest to copy to.
+	 */
+	public void copyTo(byte[] dest, int offset)
+	{
+		for (int i = 0; i < segments.size(); i++) {
+			byte[] segment = segments.get(i);
+			int used = (i == segments.size() - 1) ? tailUsed : segment.length;
+			System.arraycopy(segment, 0, dest, offset, used);
+			offset += used;
+		}
+	}
+
+	/**
+	 * Writes the contents to a stream without flattening them.
+	 * @param out the destination. It isn't closed.
+	 * @throws IOException if writing fails.
+	 */
+	public void writeTo(OutputStream out) throws IOException
+	{
+		for (int i = 0; i < segments.size(); i++) {
+			byte[] segment = segments.get(i);
+			out.write(segment, 0, (i == segments.size() - 1) ? tailUsed : segment.length);
+		}
+	}
+
+	/**
+	 * Returns a stream over the current contents. Bytes appended after this call are not visible
+	 * to the stream.
+	 * @return a new input stream.
+	 */
+	public InputStream getInputStream()
+	{
+		return new SegmentInputStream(new ArrayList<byte[]>(segments), tailUsed);
+	}
+
+	private static class SegmentInputStream extends InputStream
+	{
+		private final List<byte[]> segments;
+		private final int tailUsed;
+		private int index;
+		private int position;
+
+		private SegmentInputStream(List<byte[]> segments, int tailUsed)
+		{
+			this.segments = segments;
+			this.tailUsed = tailUsed;
+		}
+
+		private int limit()
+		{
+			return (index == segments.size() - 1) ? tailUsed : segments.get(index).length;
+		}
+
+		private boolean advance()
+		{
+			while (index < segments.size() && position == limit()) {
+				index++;
+				position = 0;
+			}
+			return index < segments.size();
+		}
+
+		@Override
+		public int read()
+		{
+			if (!advance()) {
+				return -1;
+			}
+			return segments.get(index)[position++] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len)
+		{
+			if (len == 0) {
+				return 0;
+			}
+			if (!advance()) {
+				return -1;
+			}
+			int n = Math.min(len, limit() - position);
+			System.arraycopy(segments.get(index), position, b, off, n);
+			position += n;
+			return n;
+		}
+
+		@Override
+		public int available()
+		{
+			if (index >= segments.size()) {
+				return 0;
+			}
+			int available = limit() - position;
+			for (int i = index + 1; i < segments.size(); i++) {
+				available += (i == segments.size() - 1) ? tailUsed : segments.get(i).length;
+			}
+			return available;
+		}
+	}
+}
@@ -0,0 +1,389 @@
+/**
+ * Appcelerator Titanium Mobile
+ * Copyright (c) 2014 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Apache Public License
+ * Please see the LICENSE included with this distribution for details.
+ */
+package org.appcelerator.titanium.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.appcelerator.kroll.KrollDict;
+import org.appcelerator.kroll.common.Log;
+import org.appcelerator.titanium.TiBlob;
+import org.appcelerator.titanium.TiC;
+
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.CompressFormat;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+/**
+ * Applies a chain of image operations to a blob on a small pool of worker threads.
+ * <p>
+ * Supported operations, given as dictionaries with a "type" key:
+ * <ul>
+ * <li>resize: width and/or height (the other dimension keeps the aspect ratio).</li>
+ * <li>crop: x, y, width, height (defaults crop around the center, like {@link TiBlob#imageAsCropped(Object)}).</li>
+ * <li>rotate: angle in degrees. Without an angle, the image is rotated by its EXIF orientation.</li>
+ * <li>round: radius and border, like {@link TiBlob#imageWithRoundedCorner(Number, Number)}.</li>
+ * <li>encode: format ("png" or "jpeg") and quality (0.0 to 1.0). The result is encoded on the worker.</li>
+ * </ul>
+ * When the chain starts with a resize, encoded sources are decoded with sampling straight to the
+ * smallest size that still covers the target. Intermediate bitmaps are drawn into and handed back to
+ * {@link TiBitmapPool}, and the memory for every new bitmap is checked before it is allocated.
+ */
+public class TiImagePipeline
+{
+	private static final String TAG = "TiImagePipeline";
+
+	// Image operations are memory bound, so only a couple of them run at a time.
+	private static final int THREAD_POOL_SIZE = 2;
+
+	public static final String OPERATION_RESIZE = "resize";
+	public static final String OPERATION_CROP = "crop";
+	public static final String OPERATION_ROTATE = "rotate";
+	public static final String OPERATION_ROUND = "round";
+	public static final String OPERATION_ENCODE = "encode";
+
+	private static final String PROPERTY_ANGLE = "angle";
+	private static final String PROPERTY_RADIUS = "radius";
+	private static final String PROPERTY_BORDER = "border";
+	private static final String PROPERTY_FORMAT = "format";
+	private static final String PROPERTY_QUALITY = "quality";
+
+	private static final Paint FILTER_PAINT = new Paint(Paint.FILTER_BITMAP_FLAG | Paint.DITHER_FLAG);
+
+	private static ExecutorService executor;
+
+	private final TiBlob source;
+	private final List<KrollDict> operations = new ArrayList<KrollDict>();
+
+	private CompressFormat format;
+	private int quality = 100;
+	private boolean encode = false;
+
+	public interface Listener
+	{
+		/**
+		 * Called on a worker thread when the pipeline finishes.
+		 * @param result the transformed image, or null if the pipeline failed.
+		 * @param error a description of the failure, or null.
+		 */
+		void onComplete(TiBlob result, String error);
+	}
+
+	/**
+	 * @param source the blob to transform.
+	 * @param operations the operation dictionaries, applied in order.
+	 * @throws IllegalArgumentException if an operation is not a dictionary or has an unknown type.
+	 */
+	@SuppressWarnings("unchecked")
+	public TiImagePipeline(TiBlob source, Object[] operations)
+	{
+		this.source = source;
+		for (Object operation : operations) {
+			if (!(operation instanceof HashMap)) {
+				throw new IllegalArgumentException("Image operations must be dictionaries");
+			}
+			KrollDict dict = new KrollDict((HashMap<String, Object>) operation);
+			String type = dict.getString(TiC.PROPERTY_TYPE);
+			if (!OPERATION_RESIZE.equals(type) && !OPERATION_CROP.equals(type) && !OPERATION_ROTATE.equals(type)
+				&& !OPERATION_ROUND.equals(type) && !OPERATION_ENCODE.equals(type)) {
+				throw new IllegalArgumentException("Unknown image operation: " + type);
+			}
+			this.operations.add(dict);
+		}
+	}
+
+	private static synchronized ExecutorService getExecutor()
+	{
+		if (executor == null) {
+			executor = Executors.newFixedThreadPool(THREAD_POOL_SIZE);
+		}
+		return executor;
+	}
+
+	/**
+	 * Runs the pipeline on a worker thread.
+	 * @param listener notified with the result.
+	 */
+	public void executeAsync(final Listener listener)
+	{
+		getExecutor().execute(new Runnable() {
+			public void run()
+			{
+				TiBlob result = null;
+				String error = null;
+				try {
+					result = execute();
+				} catch (OutOfMemoryError e) {
+					error = "Not enough memory: " + e.getMessage();
+				} catch (Exception e) {
+					error = e.getMessage();
+				}
+				if (error != null) {
+					Log.e(TAG, "Unable to transform the image. " + error);
+				}
+				listener.onComplete(result, error);
+			}
+		});
+	}
+
+	/**
+	 * Runs the pipeline on the calling thread.
+	 * @return the transformed image.
+	 * @throws IOException if the source can't be decoded.
+	 */
+	public TiBlob execute() throws IOException
+	{
+		int exifRotation = 0;
+		if (source.getType() == TiBlob.TYPE_FILE) {
+			exifRotation = TiImageHelper.getOrientation(source.getNativePath());
+		}
+
+		Bitmap bitmap;
+		boolean owned;
+		if (source.getType() == TiBlob.TYPE_IMAGE) {
+			bitmap = source.getImage();
+			owned = false;
+		} else {
+			bitmap = decode(exifRotation);
+			owned = true;
+		}
+		if (bitmap == null) {
+			throw new IOException("The blob is not an image");
+		}
+
+		for (KrollDict operation : operations) {
+			Bitmap next = apply(operation, bitmap, exifRotation);
+			if (next != bitmap) {
+				if (owned) {
+					TiBitmapPool.getInstance().put(bitmap);
+				}
+				bitmap = next;
+				owned = true;
+			}
+		}
+
+		// A bitmap that is still the source blob's own is compressed right away by blobFromImage().
+		TiBlob result = owned ? TiBlob.blobFromOwnedImage(bitmap, format, quality)
+			: TiBlob.blobFromImage(bitmap, format, quality);
+		if (encode) {
+			// Image blobs are encoded lazily, do it here rather than on the thread that reads the bytes.
+			result.getBytes();
+		}
+		return result;
+	}
+
+	/**
+	 * Decodes the source, sampled down as far as the leading resize operation allows.
+	 */
+	private Bitmap decode(int exifRotation) throws IOException
+	{
+		int width = source.getWidth();
+		int height = source.getHeight();
+		if (width <= 0 || height <= 0) {
+			throw new IOException("The blob is not an image");
+		}
+
+		// Rotations before the first resize decide which source dimension the target width applies to.
+		int rotation = 0;
+		int sampleSize = 1;
+		for (KrollDict operation : operations) {
+			String type = operation.getString(TiC.PROPERTY_TYPE);
+			if (OPERATION_ROTATE.equals(type)) {
+				rotation += operation.optInt(PROPERTY_ANGLE, exifRotation);
+				continue;
+			}
+			if (OPERATION_RESIZE.equals(type)) {
+				boolean swapped = Math.abs(rotation) % 180 == 90;
+				int sourceWidth = swapped ? height : width;
+				int sourceHeight = swapped ? width : height;
+				int[] size = getResizedSize(operation, sourceWidth, sourceHeight);
+				while (sourceWidth / (sampleSize * 2) >= size[0] && sourceHeight / (sampleSize * 2) >= size[1]) {
+					sampleSize *= 2;
+				}
+			}
+			break;
+		}
+
+		BitmapFactory.Options opts = new BitmapFactory.Options();
+		opts.inSampleSize = sampleSize;
+		String mimeType = source.getMimeType();
+		opts.inPreferredConfig = mimeType != null && mimeType.contains("png") ? Bitmap.Config.ARGB_8888
+			: Bitmap.Config.RGB_565;
+		int decodedWidth = (width + sampleSize - 1) / sampleSize;
+		int decodedHeight = (height + sampleSize - 1) / sampleSize;
+		ensureMemory(decodedWidth, decodedHeight, opts.inPreferredConfig);
+
+		if (TiBitmapPool.isSupported()) {
+			opts.inMutable = true;
+			if (sampleSize == 1) {
+				opts.inBitmap = TiBitmapPool.getInstance().get(width, height, opts.inPreferredConfig);
+			}
+		}
+
+		try {
+			return decode(opts);
+		} catch (IllegalArgumentException e) {
+			// The pooled bitmap can't be reused for this image.
+			Bitmap pooled = opts.inBitmap;
+			opts.inBitmap = null;
+			TiBitmapPool.getInstance().put(pooled);
+			return decode(opts);
+		}
+	}
+
+	private Bitmap decode(BitmapFactory.Options opts) throws IOException
+	{
+		if (source.getType() == TiBlob.TYPE_DATA) {
+			byte[] data = (byte[]) source.getData();
+			return BitmapFactory.decodeByteArray(data, 0, data.length, opts);
+		}
+
+		InputStream in = source.getInputStream();
+		if (in == null) {
+			throw new IOException("Unable to read the blob");
+		}
+		try {
+			return BitmapFactory.decodeStream(in, null, opts);
+		} finally {
+			in.close();
+		}
+	}
+
+	private Bitmap apply(KrollDict operation, Bitmap bitmap, int exifRotation)
+	{
+		String type = operation.getString(TiC.PROPERTY_TYPE);
+		int width = bitmap.getWidth();
+		int height = bitmap.getHeight();
+
+		if (OPERATION_RESIZE.equals(type)) {
+			int[] size = getResizedSize(operation, width, height);
+			if (size[0] == width && size[1] == height) {
+				return bitmap;
+			}
+			Bitmap resized = obtainBitmap(size[0], size[1], getConfig(bitmap));
+			new Canvas(resized).drawBitmap(bitmap, null, new Rect(0, 0, size[0], size[1]), FILTER_PAINT);
+			return resized;
+
+		} else if (OPERATION_CROP.equals(type)) {
+			int cropWidth = operation.optInt(TiC.PROPERTY_WIDTH, width);
+			int cropHeight = operation.optInt(TiC.PROPERTY_HEIGHT, height);
+			int x = operation.optInt(TiC.PROPERTY_X, (width - cropWidth) / 2);
+			int y = operation.optInt(TiC.PROPERTY_Y, (height - cropHeight) / 2);
+			if (x < 0 || y < 0 || cropWidth <= 0 || cropHeight <= 0 || x + cropWidth > width || y + cropHeight > height) {
+				throw new IllegalArgumentException("Crop rectangle is outside of the image");
+			}
+			if (x == 0 && y == 0 && cropWidth == width && cropHeight == height) {
+				return bitmap;
+			}
+			Bitmap cropped = obtainBitmap(cropWidth, cropHeight, getConfig(bitmap));
+			new Canvas(cropped).drawBitmap(bitmap, new Rect(x, y, x + cropWidth, y + cropHeight),
+				new Rect(0, 0, cropWidth, cropHeight), null);
+			return cropped;
+
+		} else if (OPERATION_ROTATE.equals(type)) {
+			int angle = operation.optInt(PROPERTY_ANGLE, exifRotation) % 360;
+			if (angle == 0) {
+				return bitmap;
+			}
+			Matrix matrix = new Matrix();
+			matrix.setRotate(angle);
+			RectF bounds = new RectF(0, 0, width, height);
+			matrix.mapRect(bounds);
+			matrix.postTranslate(-bounds.left, -bounds.top);
+			// Rotations that aren't a multiple of 90 degrees leave transparent corners.
+			Bitmap.Config config = angle % 90 == 0 ? getConfig(bitmap) : Bitmap.Config.ARGB_8888;
+			Bitmap rotated = obtainBitmap(Math.round(bounds.width()), Math.round(bounds.height()), config);
+			new Canvas(rotated).drawBitmap(bitmap, matrix, FILTER_PAINT);
+			return rotated;
+
+		} else if (OPERATION_ROUND.equals(type)) {
+			float radius = TiConvert.toFloat(operation, PROPERTY_RADIUS, 0f);
+			float border = TiConvert.toFloat(operation, PROPERTY_BORDER, 1f);
+			ensureMemory(width + (int) (border * 2), height + (int) (border * 2), Bitmap.Config.ARGB_8888);
+			return TiImageHelper.imageWithRoundedCorner(bitmap, radius, border);
+
+		} else if (OPERATION_ENCODE.equals(type)) {
+			String formatName = operation.optString(PROPERTY_FORMAT, null);
+			if ("png".equalsIgnoreCase(formatName)) {
+				format = CompressFormat.PNG;
+			} else if ("jpeg".equalsIgnoreCase(formatName) || "jpg".equalsIgnoreCase(formatName)) {
+				format = CompressFormat.JPEG;
+			}
+			if (operation.containsKeyAndNotNull(PROPERTY_QUALITY)) {
+				quality = Math.round(TiConvert.toFloat(operation, PROPERTY_QUALITY) * 100);
+			}
+			encode = true;
+		}
+		return bitmap;
+	}
+
+	/**
+	 * @return the target size of a resize operation, filling in a missing dimension from the aspect ratio.
+	 */
+	private static int[] getResizedSize(KrollDict operation, int width, int height)
+	{
+		int targetWidth = operation.optInt(TiC.PROPERTY_WIDTH, 0);
+		int targetHeight = operation.optInt(TiC.PROPERTY_HEIGHT, 0);
+		if (targetWidth <= 0 && targetHeight <= 0) {
+			return new int[] { width, height };
+		}
+		if (targetWidth <= 0) {
+			targetWidth = Math.max(1, Math.round((float) width * targetHeight / height));
+		} else if (targetHeight <= 0) {
+			targetHeight = Math.max(1, Math.round((float) height * targetWidth / width));
+		}
+		return new int[] { targetWidth, targetHeight };
+	}
+
+	private static Bitmap.Config getConfig(Bitmap bitmap)
+	{
+		Bitmap.Config config = bitmap.getConfig();
+		return config != null ? config : Bitmap.Config.ARGB_8888;
+	}
+
+	/**
+	 * Returns a cleared, pooled bitmap of the given size and configuration, or allocates one.
+	 */
+	private static Bitmap obtainBitmap(int width, int height, Bitmap.Config config)
+	{
+		Bitmap bitmap = TiBitmapPool.getInstance().get(width, height, config);
+		if (bitmap != null) {
+			bitmap.eraseColor(Color.TRANSPARENT);
+			return bitmap;
+		}
+		ensureMemory(width, height, config);
+		return Bitmap.createBitmap(width, height, config);
+	}
+
+	/**
+	 * Fails before allocating a bitmap that wouldn't fit in the remaining heap, instead of relying
+	 * on catching the OutOfMemoryError afterwards. Pooled bitmaps are released first if needed.
+	 */
+	private static void ensureMemory(int width, int height, Bitmap.Config config)
+	{
+		long bytes = (long) width * height * (config == Bitmap.Config.ARGB_8888 ? 4 : 2);
+		Runtime runtime = Runtime.getRuntime();
+		if (bytes < runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory())) {
+			return;
+		}
+		TiBitmapPool.getInstance().evictAll();
+		if (bytes >= runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory())) {
+			throw new IllegalStateException("Not enough memory for a " + width + "x" + height + " image");
+		}
+	}
+}
@@ -21,7 +21,9 @@ import android.util.SparseArray;
 
 /**
  * Manages the asynchronous opening of InputStreams from URIs so that
- * the resources get put into our TiResponseCache.
+ * the resources get put into our TiResponseCache. Images are decoded on a
+ * bounded thread pool, and concurrent requests for the same image (at the same
+ * size) share a single decode.
  */
 public class TiLoadImageManager implements Handler.Callback
 {
@@ -30,6 +32,7 @@ public class TiLoadImageManager implements Handler.Callback
 	private static final int MSG_FIRE_LOAD_FAILED = 1001;
 	protected static TiLoadImageManager _instance;
 	public static final int THREAD_POOL_SIZE = 2;
+	private static final int UNKNOWN_SIZE = -1;
 
 	protected SparseArray<ArrayList<SoftReference<TiLoadImageListener>>> listeners = new SparseArray<ArrayList<SoftReference<TiLoadImageListener>>>();
 	protected ArrayList<Integer> loadingImageRefs = new ArrayList<Integer>();
@@ -52,14 +55,46 @@ public class TiLoadImageManager implements Handler.Callback
 
 	public void load(TiDrawableReference imageref, TiLoadImageListener listener)
 	{
-		int hash = imageref.hashCode();
+		load(imageref, imageref.hashCode(), UNKNOWN_SIZE, UNKNOWN_SIZE, listener);
+	}
+
+	/**
+	 * Loads the image scaled to the given size. Scaled variants are also stored on disk by
+	 * {@link TiThumbnailCache}, so later loads at the same size skip decoding the full source.
+	 * The listener receives the hash code of imageref.
+	 * @param imageref the image to load.
+	 * @param destWidth width in pixels of the resulting bitmap.
+	 * @param destHeight height in pixels of the resulting bitmap.
+	 * @param listener the listener to notify.
+	 */
+	public void load(TiDrawableReference imageref, int destWidth, int destHeight, TiLoadImageListener listener)
+	{
+		load(imageref, getKey(imageref.hashCode(), destWidth, destHeight), destWidth, destHeight, listener);
+	}
+
+	/**
+	 * @param hash the hash code of the image.
+	 * @param destWidth width in pixels the image is loaded at, or a value <= 0 for the full size.
+	 * @param destHeight height in pixels the image is loaded at, or a value <= 0 for the full size.
+	 * @return a key identifying the image loaded at that size, e.g. for caching it in memory.
+	 */
+	public static int getKey(int hash, int destWidth, int destHeight)
+	{
+		if (destWidth <= 0 || destHeight <= 0) {
+			return hash;
+		}
+		return (hash * 37 + destWidth) * 37 + destHeight;
+	}
+
+	protected void load(TiDrawableReference imageref, int key, int destWidth, int destHeight, TiLoadImageListener listener)
+	{
 		ArrayList<SoftReference<TiLoadImageListener>> listenerList = null;
 		synchronized (listeners) {
-			if (listeners.get(hash) == null) {
+			if (listeners.get(key) == null) {
 				listenerList = new ArrayList<SoftReference<TiLoadImageListener>>();
-				listeners.put(hash, listenerList);
+				listeners.put(key, listenerList);
 			} else {
-				listenerList = listeners.get(hash);
+				listenerList = listeners.get(key);
 			}
 			// We don't allow duplicate listeners for the same image.
 			for (SoftReference<TiLoadImageListener> l : listenerList) {
@@ -71,18 +106,18 @@ public class TiLoadImageManager implements Handler.Callback
 		}
 		
 		synchronized (loadingImageRefs) {
-			if (!loadingImageRefs.contains(hash)) {
-				loadingImageRefs.add(hash);
-				threadPool.execute(new LoadImageJob(imageref));
+			if (!loadingImageRefs.contains(key)) {
+				loadingImageRefs.add(key);
+				threadPool.execute(new LoadImageJob(imageref, key, destWidth, destHeight));
 			}
 		}
 	}
 
-	protected void handleLoadImageMessage(int what, int hash, Bitmap bitmap)
+	protected void handleLoadImageMessage(int what, int key, int hash, Bitmap bitmap)
 	{
 		ArrayList<SoftReference<TiLoadImageListener>> toRemove = new ArrayList<SoftReference<TiLoadImageListener>>();
 		synchronized (listeners) {
-			ArrayList<SoftReference<TiLoadImageListener>> listenerList = listeners.get(hash);
+			ArrayList<SoftReference<TiLoadImageListener>> listenerList = listeners.get(key);
 			for (SoftReference<TiLoadImageListener> listener : listenerList) {
 				TiLoadImageListener l = listener.get();
 				if (l != null) {
@@ -104,10 +139,10 @@ public class TiLoadImageManager implements Handler.Callback
 	{
 		switch (msg.what) {
 			case MSG_FIRE_LOAD_FINISHED:
-				handleLoadImageMessage(MSG_FIRE_LOAD_FINISHED, (Integer)msg.arg1, (Bitmap)msg.obj);
+				handleLoadImageMessage(MSG_FIRE_LOAD_FINISHED, msg.arg1, msg.arg2, (Bitmap)msg.obj);
 				return true;
 			case MSG_FIRE_LOAD_FAILED:
-				handleLoadImageMessage(MSG_FIRE_LOAD_FAILED, (Integer)msg.arg1, null);
+				handleLoadImageMessage(MSG_FIRE_LOAD_FAILED, msg.arg1, msg.arg2, null);
 				return true;
 		}
 		return false;
@@ -116,28 +151,48 @@ public class TiLoadImageManager implements Handler.Callback
 	protected class LoadImageJob implements Runnable
 	{
 		protected TiDrawableReference imageref;
+		protected int key;
+		protected int destWidth, destHeight;
 
 		public LoadImageJob (TiDrawableReference imageref)
+		{
+			this(imageref, imageref.hashCode(), UNKNOWN_SIZE, UNKNOWN_SIZE);
+		}
+
+		public LoadImageJob (TiDrawableReference imageref, int key, int destWidth, int destHeight)
 		{
 			this.imageref = imageref;
+			this.key = key;
+			this.destWidth = destWidth;
+			this.destHeight = destHeight;
 		}
 
 		public void run()
 		{
 			try {
-				Bitmap b = imageref.getBitmap(true);
+				Bitmap b;
+				if (destWidth > 0 && destHeight > 0) {
+					b = imageref.getBitmap(destWidth, destHeight);
+				} else {
+					b = imageref.getBitmap(true);
+				}
 				synchronized (loadingImageRefs) {
-					loadingImageRefs.remove((Integer)imageref.hashCode());
+					loadingImageRefs.remove((Integer) key);
 				}
 				Message msg = handler.obtainMessage(MSG_FIRE_LOAD_FINISHED);
 				msg.obj = b;
-				msg.arg1 = imageref.hashCode();
+				msg.arg1 = key;
+				msg.arg2 = imageref.hashCode();
 				msg.sendToTarget();
 			} catch (Exception e) {
 				// fire a download fail event if we are unable to download
 				Log.e(TAG, "Exception loading image: " + e.getLocalizedMessage());
+				synchronized (loadingImageRefs) {
+					loadingImageRefs.remove((Integer) key);
+				}
 				Message msg = handler.obtainMessage(MSG_FIRE_LOAD_FAILED);
-				msg.arg1 = imageref.hashCode();
+				msg.arg1 = key;
+				msg.arg2 = imageref.hashCode();
 				msg.sendToTarget();
 			}
 		}
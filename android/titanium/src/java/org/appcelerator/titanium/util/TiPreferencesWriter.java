@@ -0,0 +1,225 @@
+/**
+ * Appcelerator Titanium Mobile
+ * Copyright (c) 2014 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Apache Public License
+ * Please see the LICENSE included with this distribution for details.
+ */
+package org.appcelerator.titanium.util;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.appcelerator.kroll.common.Log;
+
+import android.content.SharedPreferences;
+
+/**
+ * Writes changes to a SharedPreferences collection in the background. Changes are visible to the
+ * readers of this class immediately, and changes made within the flush delay of each other are
+ * coalesced into a single commit on a background thread.
+ */
+public class TiPreferencesWriter
+{
+	private static final String TAG = "TiPreferencesWriter";
+
+	// Marks a pending removal in pendingWrites.
+	private static final Object REMOVED = new Object();
+
+	private static ScheduledExecutorService flushExecutor;
+
+	private final SharedPreferences preferences;
+	private final long flushDelay;
+
+	// Changes that have not been committed yet, guarded by itself.
+	private final Map<String, Object> pendingWrites = new HashMap<String, Object>();
+	private final Object flushLock = new Object();
+	private boolean flushScheduled = false;
+
+	/**
+	 * @param preferences the preferences to write to.
+	 * @param flushDelay the maximum time in milliseconds a change is held in memory before it is written.
+	 */
+	public TiPreferencesWriter(SharedPreferences preferences, long flushDelay)
+	{
+		this.preferences = preferences;
+		this.flushDelay = flushDelay;
+	}
+
+	public SharedPreferences getPreferences()
+	{
+		return preferences;
+	}
+
+	/**
+	 * Maps the key to a String, Integer or Boolean value. A null value removes the key.
+	 */
+	public void put(String key, Object value)
+	{
+		synchronized (pendingWrites) {
+			pendingWrites.put(key, value != null ? value : REMOVED);
+			scheduleFlush(flushDelay);
+		}
+	}
+
+	/**
+	 * Maps each key of the given map to its value, as with {@link #put(String, Object)}. The changes are
+	 * committed together.
+	 */
+	public void putAll(Map<String, ?> values)
+	{
+		synchronized (pendingWrites) {
+			for (Map.Entry<String, ?> entry : values.entrySet()) {
+				pendingWrites.put(entry.getKey(), entry.getValue() != null ? entry.getValue() : REMOVED);
+			}
+			scheduleFlush(flushDelay);
+		}
+	}
+
+	public Object get(String key)
+	{
+		Object pending = getPending(key);
+		if (pending == null) {
+			return preferences.getAll().get(key);
+		}
+		return pending != REMOVED ? pending : null;
+	}
+
+	public int getInt(String key, int def)
+	{
+		Object pending = getPending(key);
+		if (pending == null) {
+			return preferences.getInt(key, def);
+		}
+		// Like SharedPreferences, throws a ClassCastException if the value isn't an int.
+		return pending != REMOVED ? (Integer) pending : def;
+	}
+
+	public boolean getBoolean(String key, boolean def)
+	{
+		Object pending = getPending(key);
+		if (pending == null) {
+			return preferences.getBoolean(key, def);
+		}
+		return pending != REMOVED ? (Boolean) pending : def;
+	}
+
+	public boolean contains(String key)
+	{
+		Object pending = getPending(key);
+		if (pending == null) {
+			return preferences.contains(key);
+		}
+		return pending != REMOVED;
+	}
+
+	/**
+	 * @return all keys and values, including the changes that haven't been written yet.
+	 */
+	public Map<String, ?> getAll()
+	{
+		Map<String, Object> all = new HashMap<String, Object>(preferences.getAll());
+		synchronized (pendingWrites) {
+			for (Map.Entry<String, Object> entry : pendingWrites.entrySet()) {
+				if (entry.getValue() == REMOVED) {
+					all.remove(entry.getKey());
+				} else {
+					all.put(entry.getKey(), entry.getValue());
+				}
+			}
+		}
+		return all;
+	}
+
+	/**
+	 * Writes all pending changes to disk before returning.
+	 */
+	public void flush()
+	{
+		synchronized (flushLock) {
+			Map<String, Object> writes;
+			synchronized (pendingWrites) {
+				if (pendingWrites.isEmpty()) {
+					return;
+				}
+				writes = new HashMap<String, Object>(pendingWrites);
+			}
+
+			SharedPreferences.Editor editor = preferences.edit();
+			for (Map.Entry<String, Object> entry : writes.entrySet()) {
+				String key = entry.getKey();
+				Object value = entry.getValue();
+				if (value == REMOVED) {
+					editor.remove(key);
+				} else if (value instanceof Integer) {
+					editor.putInt(key, (Integer) value);
+				} else if (value instanceof Boolean) {
+					editor.putBoolean(key, (Boolean) value);
+				} else {
+					editor.putString(key, (String) value);
+				}
+			}
+			if (!editor.commit()) {
+				Log.w(TAG, "Unable to write " + writes.size() + " preferences, will retry on the next flush");
+				return;
+			}
+
+			// Keep the changes that were made while committing.
+			synchronized (pendingWrites) {
+				for (Map.Entry<String, Object> entry : writes.entrySet()) {
+					if (pendingWrites.get(entry.getKey()) == entry.getValue()) {
+						pendingWrites.remove(entry.getKey());
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Starts writing pending changes to disk on a background thread without waiting for the flush delay.
+	 */
+	public void flushInBackground()
+	{
+		synchronized (pendingWrites) {
+			if (!pendingWrites.isEmpty()) {
+				scheduleFlush(0);
+			}
+		}
+	}
+
+	// Must be called while holding the pendingWrites lock.
+	private void scheduleFlush(long delay)
+	{
+		if (flushScheduled && delay > 0) {
+			return;
+		}
+		flushScheduled = true;
+		getFlushExecutor().schedule(new Runnable() {
+			public void run()
+			{
+				synchronized (pendingWrites) {
+					flushScheduled = false;
+				}
+				flush();
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+
+	private static synchronized ScheduledExecutorService getFlushExecutor()
+	{
+		if (flushExecutor == null) {
+			flushExecutor = Executors.newSingleThreadScheduledExecutor();
+		}
+		return flushExecutor;
+	}
+
+	// Returns null if key has no pending change, REMOVED if it is pending removal, or the pending value.
+	private Object getPending(String key)
+	{
+		synchronized (pendingWrites) {
+			return pendingWrites.get(key);
+		}
+	}
+}
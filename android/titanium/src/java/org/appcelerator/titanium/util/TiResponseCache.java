@@ -31,7 +31,6 @@ import java.util.Map;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.zip.GZIPInputStream;
 
 import org.apache.commons.codec.digest.DigestUtils;
 import org.appcelerator.kroll.common.Log;
@@ -238,21 +237,15 @@ public class TiResponseCache extends ResponseCache
 				return null;
 			}
 			try {
-				boolean isGZip = false;
+				String contentEncoding = null;
 				// Read in the headers
 				try {
 					Map<String, List<String>> headers = readHeaders(hFile);
-					String contentEncoding = getHeader(headers, "content-encoding");
-					if ("gzip".equalsIgnoreCase(contentEncoding)) {
-						isGZip = true;
-					}
+					contentEncoding = getHeader(headers, "content-encoding");
 				} catch (IOException e) {
 					// continue with file read?
 				}
-				if (isGZip) {
-					return new GZIPInputStream(new FileInputStream(bFile));
-				}
-				return new FileInputStream(bFile);
+				return TiStreamHelper.decode(new FileInputStream(bFile), contentEncoding);
 			} catch (FileNotFoundException e) {
 				// Fallback to URL download?
 				return null;
@@ -275,6 +268,52 @@ public class TiResponseCache extends ResponseCache
 		return null;
 	}
 
+	/**
+	 * Returns a validator identifying the cached response for uri: its ETag or Last-Modified header,
+	 * or else the time the response was stored. A new response for the same uri gets a new validator.
+	 * @param uri
+	 * @return the validator, or null if the response is not in Titanium's response cache.
+	 */
+	public static String getCacheValidator(URI uri)
+	{
+		ResponseCache rcc = TiResponseCache.getDefault();
+		if (!(rcc instanceof TiResponseCache) || ((TiResponseCache) rcc).cacheDir == null) {
+			return null;
+		}
+		TiResponseCache rc = (TiResponseCache) rcc;
+		String hash = DigestUtils.shaHex(uri.toString());
+		File hFile = new File(rc.cacheDir, hash + HEADER_SUFFIX);
+		File bFile = new File(rc.cacheDir, hash + BODY_SUFFIX);
+		if (!bFile.exists() || !hFile.exists()) {
+			return null;
+		}
+		try {
+			Map<String, List<String>> headers = readHeaders(hFile);
+			String validator = getHeader(headers, "etag");
+			if (validator == null) {
+				validator = getHeader(headers, "last-modified");
+			}
+			if (validator != null) {
+				return validator;
+			}
+		} catch (IOException e) {
+			return null;
+		}
+		return bFile.lastModified() + "|" + bFile.length();
+	}
+
+	/**
+	 * @return the directory of Titanium's response cache, or null if another ResponseCache is the default.
+	 */
+	public static File getCacheDir()
+	{
+		ResponseCache rcc = TiResponseCache.getDefault();
+		if (rcc instanceof TiResponseCache) {
+			return ((TiResponseCache) rcc).cacheDir;
+		}
+		return null;
+	}
+
 	public static void addCompleteListener(URI uri, CompleteListener listener)
 	{
 		synchronized (completeListeners) {
@@ -7,9 +7,16 @@
 
 package org.appcelerator.titanium.util;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import org.appcelerator.titanium.io.TiStream;
 
 import ti.modules.titanium.BufferProxy;
 
@@ -41,4 +48,96 @@ public class TiStreamHelper
 		return length;
 	}
 
+	/**
+	 * Wraps a stream of HTTP content so that it is decompressed while it is read.
+	 * @param inputStream the encoded content.
+	 * @param contentEncoding the value of the Content-Encoding header, may be null.
+	 * @return a stream of the decoded content. inputStream itself for identity or unknown encodings.
+	 * @throws IOException if the gzip header can't be read.
+	 */
+	public static InputStream decode(InputStream inputStream, String contentEncoding) throws IOException
+	{
+		if (contentEncoding == null) {
+			return inputStream;
+		}
+		String encoding = contentEncoding.trim();
+		if (encoding.equalsIgnoreCase("gzip") || encoding.equalsIgnoreCase("x-gzip")) {
+			return new GZIPInputStream(inputStream);
+
+		} else if (encoding.equalsIgnoreCase("deflate")) {
+			// "deflate" should be zlib wrapped, but some servers send raw deflate data. A zlib
+			// stream starts with a compression method of 8 and a header checksum divisible by 31.
+			BufferedInputStream in = new BufferedInputStream(inputStream);
+			in.mark(2);
+			int b0 = in.read();
+			int b1 = in.read();
+			in.reset();
+			boolean zlib = b0 != -1 && b1 != -1 && (b0 & 0x0F) == 8 && ((b0 << 8) | b1) % 31 == 0;
+			return new InflaterInputStream(in, new Inflater(!zlib));
+		}
+		return inputStream;
+	}
+
+	/**
+	 * Adapts a readable TiStream to an InputStream. Reads go through a BufferProxy that is reused for
+	 * the life of the adapter. Closing the adapter leaves the TiStream open.
+	 * @param stream the stream to read from.
+	 * @param chunkSize the size of the buffer, and so the largest number of bytes read at once.
+	 * @return the adapter.
+	 */
+	public static InputStream toInputStream(TiStream stream, int chunkSize)
+	{
+		return new TiStreamInputStream(stream, chunkSize);
+	}
+
+	private static class TiStreamInputStream extends InputStream
+	{
+		// The longest wait between polls of a stream that has no data yet, in milliseconds.
+		private static final long MAX_POLL_DELAY = 50;
+
+		private final TiStream stream;
+		private final BufferProxy buffer;
+
+		public TiStreamInputStream(TiStream stream, int chunkSize)
+		{
+			this.stream = stream;
+			this.buffer = new BufferProxy(chunkSize);
+		}
+
+		@Override
+		public int read() throws IOException
+		{
+			byte[] single = new byte[1];
+			int count = read(single, 0, 1);
+			return count == -1 ? -1 : single[0] & 0xff;
+		}
+
+		/**
+		 * Blocks until at least one byte is read or the stream ends. A TiStream may return 0 when no data is
+		 * available yet, so it is polled with a growing delay instead of in a busy loop.
+		 */
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException
+		{
+			if (len == 0) {
+				return 0;
+			}
+
+			long delay = 1;
+			int count;
+			while ((count = stream.read(new Object[] { buffer, 0, Math.min(len, buffer.getLength()) })) == 0) {
+				try {
+					Thread.sleep(delay);
+
+				} catch (InterruptedException e) {
+					throw new InterruptedIOException("Interrupted while reading from stream");
+				}
+				delay = Math.min(delay * 2, MAX_POLL_DELAY);
+			}
+			if (count > 0) {
+				System.arraycopy(buffer.getBuffer(), 0, b, off, count);
+			}
+			return count;
+		}
+	}
 }
@@ -0,0 +1,217 @@
+/**
+ * Appcelerator Titanium Mobile
+ * Copyright (c) 2014 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Apache Public License
+ * Please see the LICENSE included with this distribution for details.
+ */
+package org.appcelerator.titanium.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.appcelerator.kroll.common.Log;
+import org.appcelerator.titanium.TiApplication;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+/**
+ * An on-disk cache of downsampled, display-size variants of images, stored next to the
+ * {@link TiResponseCache} directory. Entries are keyed by source and requested size, so that
+ * a later request for the same image at the same size (e.g. on the next launch) can decode the
+ * small variant directly instead of re-reading and re-sampling the full source.
+ */
+public class TiThumbnailCache
+{
+	private static final String TAG = "TiThumbnailCache";
+	private static final String THUMBNAIL_DIR = "thumbnails";
+	private static final String THUMBNAIL_SUFFIX = ".thm";
+	private static final String CACHE_SIZE_KEY = "ti.android.thumbnailcache.size.max";
+	private static final int DEFAULT_CACHE_SIZE = 10 * 1024; // 10MB
+	private static final int JPEG_QUALITY = 90;
+
+	protected static TiThumbnailCache _instance;
+	private static String applicationVersion;
+
+	private File cacheDir;
+	private long maxCacheSize;
+	private ExecutorService writer = Executors.newSingleThreadExecutor();
+
+	public static synchronized TiThumbnailCache getInstance()
+	{
+		if (_instance == null) {
+			_instance = new TiThumbnailCache();
+		}
+		return _instance;
+	}
+
+	protected TiThumbnailCache()
+	{
+		File responseCacheDir = TiResponseCache.getCacheDir();
+		if (responseCacheDir != null) {
+			cacheDir = new File(responseCacheDir.getParentFile(), THUMBNAIL_DIR);
+			if (!cacheDir.exists() && !cacheDir.mkdirs()) {
+				cacheDir = null;
+			}
+		}
+		maxCacheSize = TiApplication.getInstance().getAppProperties().getInt(CACHE_SIZE_KEY, DEFAULT_CACHE_SIZE) * 1024L;
+	}
+
+	/**
+	 * Builds a cache key for a sized variant of a source.
+	 * @param source a stable identifier of the source image, e.g. its url.
+	 * @param size a description of the requested size.
+	 * @return the key.
+	 */
+	public static String getKey(String source, String size)
+	{
+		return DigestUtils.shaHex(source + "|" + size);
+	}
+
+	/**
+	 * Identifies the installed build of the application, for sources packaged with it (e.g. app:// urls and
+	 * file:///android_asset files) that have no modification time of their own.
+	 * @return the version code and the modification time of the APK.
+	 */
+	public static synchronized String getApplicationVersion()
+	{
+		if (applicationVersion == null) {
+			Context context = TiApplication.getInstance();
+			int versionCode = 0;
+			try {
+				versionCode = context.getPackageManager().getPackageInfo(context.getPackageName(), 0).versionCode;
+			} catch (PackageManager.NameNotFoundException e) {
+				// The APK's timestamp still identifies the build.
+			}
+			File apk = new File(context.getApplicationInfo().sourceDir);
+			applicationVersion = versionCode + ":" + apk.lastModified();
+		}
+		return applicationVersion;
+	}
+
+	/**
+	 * Decodes a cached variant. Should be called from a background thread.
+	 * @param key the key returned by {@link #getKey(String, String)}.
+	 * @return the bitmap, or null if there is no cached variant.
+	 */
+	public Bitmap get(String key)
+	{
+		if (cacheDir == null) {
+			return null;
+		}
+		File file = new File(cacheDir, key + THUMBNAIL_SUFFIX);
+		if (!file.exists()) {
+			return null;
+		}
+		try {
+			Bitmap bitmap = BitmapFactory.decodeFile(file.getAbsolutePath());
+			if (bitmap == null) {
+				file.delete();
+			} else {
+				// Keep track of the most recently used entries for trimming.
+				file.setLastModified(System.currentTimeMillis());
+			}
+			return bitmap;
+		} catch (OutOfMemoryError e) {
+			Log.e(TAG, "Unable to load thumbnail. Not enough memory: " + e.getMessage(), e);
+			return null;
+		}
+	}
+
+	/**
+	 * Stores a variant in the background. The bitmap must not be recycled by the caller.
+	 * @param key the key returned by {@link #getKey(String, String)}.
+	 * @param bitmap the decoded variant.
+	 */
+	public void put(final String key, final Bitmap bitmap)
+	{
+		if (cacheDir == null || bitmap == null) {
+			return;
+		}
+		writer.execute(new Runnable()
+		{
+			public void run()
+			{
+				write(key, bitmap);
+				trim();
+			}
+		});
+	}
+
+	private void write(String key, Bitmap bitmap)
+	{
+		File file = new File(cacheDir, key + THUMBNAIL_SUFFIX);
+		if (file.exists()) {
+			return;
+		}
+		File tmpFile = new File(cacheDir, key + ".tmp");
+		FileOutputStream out = null;
+		try {
+			out = new FileOutputStream(tmpFile);
+			if (bitmap.isRecycled()) {
+				return;
+			}
+			boolean written = bitmap.compress(bitmap.hasAlpha() ? Bitmap.CompressFormat.PNG
+				: Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+			out.close();
+			out = null;
+			if (!written || !tmpFile.renameTo(file)) {
+				tmpFile.delete();
+			}
+		} catch (IOException e) {
+			Log.e(TAG, "Unable to write thumbnail: " + e.getMessage(), e);
+			tmpFile.delete();
+		} catch (IllegalStateException e) {
+			// The bitmap was recycled while being written.
+			tmpFile.delete();
+		} finally {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+					// ignore
+				}
+				tmpFile.delete();
+			}
+		}
+	}
+
+	private void trim()
+	{
+		File[] files = cacheDir.listFiles();
+		if (files == null) {
+			return;
+		}
+		long size = 0;
+		for (File file : files) {
+			size += file.length();
+		}
+		if (size <= maxCacheSize) {
+			return;
+		}
+		// Delete the least recently used entries first.
+		Arrays.sort(files, new Comparator<File>()
+		{
+			public int compare(File lhs, File rhs)
+			{
+				long diff = lhs.lastModified() - rhs.lastModified();
+				return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+			}
+		});
+		for (File file : files) {
+			if (size <= maxCacheSize) {
+				break;
+			}
+			size -= file.length();
+			file.delete();
+		}
+	}
+}
@@ -23,15 +23,19 @@ import org.appcelerator.titanium.TiApplication;
 import org.appcelerator.titanium.TiBlob;
 import org.appcelerator.titanium.TiDimension;
 import org.appcelerator.titanium.io.TiBaseFile;
+import org.appcelerator.titanium.util.TiBitmapPool;
 import org.appcelerator.titanium.util.TiConvert;
 import org.appcelerator.titanium.util.TiDownloadListener;
 import org.appcelerator.titanium.util.TiDownloadManager;
 import org.appcelerator.titanium.util.TiFileHelper;
 import org.appcelerator.titanium.util.TiImageHelper;
 import org.appcelerator.titanium.util.TiImageLruCache;
+import org.appcelerator.titanium.util.TiResponseCache;
+import org.appcelerator.titanium.util.TiThumbnailCache;
 import org.appcelerator.titanium.util.TiUIHelper;
 import org.appcelerator.titanium.util.TiUrl;
 
+import android.annotation.TargetApi;
 import android.app.Activity;
 import android.content.pm.ApplicationInfo;
 import android.content.res.Resources;
@@ -40,6 +44,7 @@ import android.graphics.BitmapFactory;
 import android.graphics.Matrix;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
+import android.os.Build;
 import android.util.DisplayMetrics;
 import android.view.View;
 import android.webkit.URLUtil;
@@ -399,6 +404,61 @@ public class TiDrawableReference
 		return b;
 	}
 
+	/**
+	 * Gets the bitmap from the resource without respect to sampling/scaling, decoding into the memory
+	 * of the given bitmap when possible (Honeycomb+, see BitmapFactory.Options.inBitmap). The returned
+	 * bitmap is mutable so that it can be reused again later. If the bitmap can't be reused, this falls
+	 * back to {@link #getBitmap(boolean)}.
+	 * This method should be called from a background thread.
+	 * @param reusableBitmap (null-ok) a bitmap that is no longer displayed and may be overwritten.
+	 * @return Bitmap, or null if errors occurred while trying to load or fetch it.
+	 */
+	@TargetApi(Build.VERSION_CODES.HONEYCOMB)
+	public Bitmap getBitmap(Bitmap reusableBitmap)
+	{
+		if (!TiBitmapPool.isSupported()) {
+			return getBitmap(true);
+		}
+
+		InputStream is = getInputStream();
+		if (is == null) {
+			return getBitmap(true);
+		}
+
+		BitmapFactory.Options opts = new BitmapFactory.Options();
+		opts.inMutable = true;
+		opts.inSampleSize = DEFAULT_SAMPLE_SIZE;
+		opts.inPreferredConfig = Bitmap.Config.RGB_565;
+		opts.inBitmap = reusableBitmap;
+
+		Bitmap b = null;
+		try {
+			oomOccurred = false;
+			b = BitmapFactory.decodeStream(is, null, opts);
+		} catch (IllegalArgumentException e) {
+			// The reusable bitmap doesn't match the decoded image (size or config).
+			Log.d(TAG, "Unable to reuse bitmap: " + e.getMessage(), Log.DEBUG_MODE);
+		} catch (OutOfMemoryError e) {
+			oomOccurred = true;
+			Log.e(TAG, "Unable to load bitmap. Not enough memory: " + e.getMessage(), e);
+			TiBitmapPool.getInstance().evictAll();
+		} finally {
+			try {
+				is.close();
+			} catch (IOException e) {
+				Log.e(TAG, "Problem closing stream: " + e.getMessage(), e);
+			}
+		}
+
+		if (b == null) {
+			if (reusableBitmap != null) {
+				TiBitmapPool.getInstance().put(reusableBitmap);
+			}
+			return getBitmap(true);
+		}
+		return b;
+	}
+
 	private Resources getResources()
 	{
 		return TiApplication.getInstance().getResources();
@@ -608,6 +668,22 @@ public class TiDrawableReference
 	{
 		int srcWidth, srcHeight, destWidth, destHeight;
 
+		if (parent == null) {
+			Activity activity = softActivity.get();
+			if (activity != null && activity.getWindow() != null) {
+				parent = activity.getWindow().getDecorView();
+			}
+		}
+
+		// A display-size variant may have been stored by a previous request (or launch).
+		String thumbnailKey = getThumbnailKey(parent, destWidthDimension, destHeightDimension);
+		if (thumbnailKey != null) {
+			Bitmap thumbnail = TiThumbnailCache.getInstance().get(thumbnailKey);
+			if (thumbnail != null) {
+				return thumbnail;
+			}
+		}
+
 		Bounds bounds = peekBounds();
 		srcWidth = bounds.width;
 		srcHeight = bounds.height;
@@ -617,13 +693,6 @@ public class TiDrawableReference
 			return getBitmap(); // fallback
 		}
 
-		if (parent == null) {
-			Activity activity = softActivity.get();
-			if (activity != null && activity.getWindow() != null) {
-				parent = activity.getWindow().getDecorView();
-			}
-		}
-
 		Bounds destBounds = calcDestSize(srcWidth, srcHeight, destWidthDimension, destHeightDimension, parent);
 		destWidth = destBounds.width;
 		destHeight = destBounds.height;
@@ -719,6 +788,9 @@ public class TiDrawableReference
 					// Created a scaled copy of the bitmap. Note we will get
 					// back the same bitmap if no scaling is required.
 					b = Bitmap.createScaledBitmap(bTemp, destWidth, destHeight, true);
+					if (thumbnailKey != null && destWidth * destHeight < srcWidth * srcHeight) {
+						TiThumbnailCache.getInstance().put(thumbnailKey, b);
+					}
 				}
 
 			} catch (OutOfMemoryError e) {
@@ -751,6 +823,80 @@ public class TiDrawableReference
 		return b;
 	}
 
+	/**
+	 * Builds the key of the display-size variant stored in {@link TiThumbnailCache}.
+	 * @return the key, or null if the source has no stable identity (e.g. blobs and resources).
+	 */
+	private String getThumbnailKey(View parent, TiDimension destWidthDimension, TiDimension destHeightDimension)
+	{
+		String source = null;
+		if (isTypeUrl() && url != null) {
+			source = url;
+			if (url.startsWith(FILE_PREFIX) || url.startsWith("/")) {
+				// Local files can change, so make their identity depend on the file's state.
+				File localFile = new File(url.startsWith(FILE_PREFIX) ? url.substring(FILE_PREFIX.length()) : url);
+				source += "|" + getThumbnailFileVersion(localFile);
+			} else if (isNetworkUrl()) {
+				// Remote images are only cached as long as their response is, and a new response
+				// (e.g. once the old one expired) gets a new key.
+				String validator = null;
+				try {
+					validator = TiResponseCache.getCacheValidator(new URI(TiUrl.getCleanUri(url).toString()));
+				} catch (URISyntaxException e) {
+					// Not cached.
+				}
+				if (validator == null) {
+					return null;
+				}
+				source += "|" + validator;
+			} else {
+				// Bundled resources, e.g. app:// urls, only change when the application is updated.
+				source += "|" + TiThumbnailCache.getApplicationVersion();
+			}
+		} else if (isTypeFile() && file != null && file.getNativeFile() != null) {
+			File nativeFile = file.getNativeFile();
+			source = nativeFile.getAbsolutePath() + "|" + getThumbnailFileVersion(nativeFile);
+		}
+		if (source == null) {
+			return null;
+		}
+
+		StringBuilder size = new StringBuilder();
+		size.append(getThumbnailDimension(parent, destWidthDimension));
+		size.append('x');
+		size.append(getThumbnailDimension(parent, destHeightDimension));
+		if (parent != null) {
+			size.append('@').append(parent.getWidth()).append('x').append(parent.getHeight());
+		}
+		if (anyDensityFalse) {
+			size.append(":density");
+		}
+		if (autoRotate) {
+			size.append(":rotate");
+		}
+		return TiThumbnailCache.getKey(source, size.toString());
+	}
+
+	// Files inside the APK, e.g. file:///android_asset, have no state of their own and change with the application.
+	private static String getThumbnailFileVersion(File file)
+	{
+		if (file.exists()) {
+			return file.lastModified() + "|" + file.length();
+		}
+		return TiThumbnailCache.getApplicationVersion();
+	}
+
+	private static String getThumbnailDimension(View parent, TiDimension dimension)
+	{
+		if (dimension == null) {
+			return "-";
+		}
+		if (dimension.isUnitAuto()) {
+			return TiDimension.UNIT_AUTO;
+		}
+		return String.valueOf(dimension.getAsPixels(parent));
+	}
+
 	/**
 	 * Just runs TiDownloadManager.download(URI, listener) giving it the passed listener.
 	 */
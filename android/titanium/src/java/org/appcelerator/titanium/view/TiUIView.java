@@ -135,6 +135,10 @@ public abstract class TiUIView
 	
 	private AtomicBoolean bLayoutPending = new AtomicBoolean();
 
+	// Set while a batch of property changes is applied, so layout and invalidation happen once per batch.
+	private boolean batchingPropertyChanges = false;
+	private boolean pendingLayout = false, pendingLayoutInformParent = false, pendingInvalidate = false;
+
 
 	/**
 	 * Constructs a TiUIView object with the associated proxy.
@@ -561,6 +565,12 @@ public abstract class TiUIView
 	
 	protected void layoutNativeView(boolean informParent)
 	{
+		if (batchingPropertyChanges) {
+			// Deferred until the whole batch has been applied, see propertiesChanged().
+			pendingLayout = true;
+			pendingLayoutInformParent |= informParent;
+			return;
+		}
 		if (nativeView != null) {
 			Animation a = nativeView.getAnimation();
 			if (a != null && a instanceof TiMatrixAnimation) {
@@ -790,7 +800,7 @@ public abstract class TiUIView
 						if (Build.VERSION.SDK_INT < TiC.API_LEVEL_HONEYCOMB && proxy.hasProperty(TiC.PROPERTY_OPACITY)) {
 							setOpacity(TiConvert.toFloat(proxy.getProperty(TiC.PROPERTY_OPACITY), 1f));
 						}
-						nativeView.postInvalidate();
+						invalidateNativeView();
 					}
 				} else {
 					if (key.equals(TiC.PROPERTY_OPACITY)) {
@@ -798,7 +808,7 @@ public abstract class TiUIView
 					}
 					if (!nativeViewNull) {
 						nativeView.setBackgroundDrawable(null);
-						nativeView.postInvalidate();
+						invalidateNativeView();
 					}
 				}
 			} else {
@@ -854,7 +864,7 @@ public abstract class TiUIView
 
 			}
 			if (!nativeViewNull) {
-				nativeView.postInvalidate();
+				invalidateNativeView();
 			}
 		} else if (key.equals(TiC.PROPERTY_SOFT_KEYBOARD_ON_FOCUS)) {
 			Log.w(TAG, "Focus state changed to " + TiConvert.toString(newValue) + " not honored until next focus event.",
@@ -963,11 +973,46 @@ public abstract class TiUIView
 		}
 	}
 
-	// TODO dead code? @Override
+	/**
+	 * Applies a batch of property changes with at most one layout request and one invalidation
+	 * for the whole batch.
+	 */
 	public void propertiesChanged(List<KrollPropertyChange> changes, KrollProxy proxy)
 	{
-		for (KrollPropertyChange change : changes) {
-			propertyChanged(change.getName(), change.getOldValue(), change.getNewValue(), proxy);
+		if (batchingPropertyChanges) {
+			for (KrollPropertyChange change : changes) {
+				propertyChanged(change.getName(), change.getOldValue(), change.getNewValue(), proxy);
+			}
+			return;
+		}
+
+		batchingPropertyChanges = true;
+		try {
+			for (KrollPropertyChange change : changes) {
+				propertyChanged(change.getName(), change.getOldValue(), change.getNewValue(), proxy);
+			}
+		} finally {
+			batchingPropertyChanges = false;
+			if (pendingLayout) {
+				boolean informParent = pendingLayoutInformParent;
+				pendingLayout = pendingLayoutInformParent = false;
+				layoutNativeView(informParent);
+			}
+			if (pendingInvalidate) {
+				pendingInvalidate = false;
+				if (nativeView != null) {
+					nativeView.postInvalidate();
+				}
+			}
+		}
+	}
+
+	private void invalidateNativeView()
+	{
+		if (batchingPropertyChanges) {
+			pendingInvalidate = true;
+		} else {
+			nativeView.postInvalidate();
 		}
 	}
 	
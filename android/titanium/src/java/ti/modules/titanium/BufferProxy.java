@@ -16,12 +16,15 @@ import org.appcelerator.kroll.annotations.Kroll;
 import org.appcelerator.kroll.common.Log;
 import org.appcelerator.titanium.TiBlob;
 import org.appcelerator.titanium.TiC;
+import org.appcelerator.titanium.util.TiByteSegments;
 import org.appcelerator.titanium.util.TiConvert;
 
 import ti.modules.titanium.codec.CodecModule;
 
 /**
- * A proxy that wraps a primitive byte array buffer
+ * A proxy that wraps a primitive byte array buffer. Appended data is kept in a segmented tail and only
+ * merged into the array when the whole buffer is accessed, so growing a buffer by repeated appends
+ * is linear in the final length.
  */
 @Kroll.proxy(creatableInModule=TitaniumModule.class, propertyAccessors = {
 	TiC.PROPERTY_BYTE_ORDER,
@@ -33,6 +36,8 @@ public class BufferProxy extends KrollProxy
 	private static final String TAG = "BufferProxy";
 
 	private byte[] buffer;
+	// Bytes logically following buffer that haven't been merged into it yet. Null when buffer is complete.
+	private TiByteSegments tail;
 
 	public BufferProxy()
 	{
@@ -128,20 +133,27 @@ public class BufferProxy extends KrollProxy
 	 */
 	public byte[] getBuffer()
 	{
+		if (tail != null) {
+			byte[] merged = new byte[buffer.length + tail.length()];
+			System.arraycopy(buffer, 0, merged, 0, buffer.length);
+			tail.copyTo(merged, buffer.length);
+			buffer = merged;
+			tail = null;
+		}
 		return buffer;
 	}
 
 	@Override
 	public Object getIndexedProperty(int index)
 	{
-		return buffer[index] & 0xFF;
+		return getBuffer()[index] & 0xFF;
 	}
 
 	@Override
 	public void setIndexedProperty(int index, Object value)
 	{
 		if (value instanceof Number) {
-			buffer[index] = ((Number)value).byteValue();
+			getBuffer()[index] = ((Number)value).byteValue();
 		} else {
 			super.setIndexedProperty(index, value);
 		}
@@ -184,6 +196,12 @@ public class BufferProxy extends KrollProxy
 	 */
 	public int write(int position, byte[] sourceBuffer, int sourceOffset, int sourceLength)
 	{
+		if (position == getLength()) {
+			appendBytes(sourceBuffer, sourceOffset, sourceLength);
+			return sourceLength;
+		}
+
+		getBuffer();
 		if ((position + sourceLength) > buffer.length) {
 			buffer = copyOf(buffer, (position + sourceLength));
 		}
@@ -193,10 +211,17 @@ public class BufferProxy extends KrollProxy
 		return sourceLength;
 	}
 
+	private void appendBytes(byte[] sourceBuffer, int sourceOffset, int sourceLength)
+	{
+		if (tail == null) {
+			tail = new TiByteSegments();
+		}
+		tail.append(sourceBuffer, sourceOffset, sourceLength);
+	}
+
 	@Kroll.method
 	public int append(Object[] args)
 	{
-		int destLength = buffer.length;
 		BufferProxy src = (BufferProxy) args[0];
 		byte[] sourceBuffer = src.getBuffer();
 
@@ -212,8 +237,7 @@ public class BufferProxy extends KrollProxy
 
 		validateOffsetAndLength(offset, sourceLength, sourceBuffer.length);
 
-		buffer = copyOf(buffer, (destLength + sourceLength));
-		System.arraycopy(sourceBuffer, offset, buffer, destLength, sourceLength);
+		appendBytes(sourceBuffer, offset, sourceLength);
 		return sourceLength;
 	}
 
@@ -239,13 +263,16 @@ public class BufferProxy extends KrollProxy
 
 		validateOffsetAndLength(sourceOffset, sourceLength, sourceBuffer.length);
 
-		byte[] preInsertBuffer = copyOf(buffer, offset);
-		byte[] postInsertBuffer = copyOfRange(buffer, offset, buffer.length);
+		if (offset == getLength()) {
+			appendBytes(sourceBuffer, sourceOffset, sourceLength);
+			return sourceLength;
+		}
 
-		buffer = new byte[(preInsertBuffer.length + sourceLength + postInsertBuffer.length)];
-		System.arraycopy(preInsertBuffer, 0, buffer, 0, preInsertBuffer.length);
-		System.arraycopy(sourceBuffer, sourceOffset, buffer, preInsertBuffer.length, sourceLength);
-		System.arraycopy(postInsertBuffer, 0, buffer, (preInsertBuffer.length + sourceLength), postInsertBuffer.length);
+		byte[] oldBuffer = getBuffer();
+		buffer = new byte[(oldBuffer.length + sourceLength)];
+		System.arraycopy(oldBuffer, 0, buffer, 0, offset);
+		System.arraycopy(sourceBuffer, sourceOffset, buffer, offset, sourceLength);
+		System.arraycopy(oldBuffer, offset, buffer, (offset + sourceLength), (oldBuffer.length - offset));
 
 		return sourceLength;
 	}
@@ -277,13 +304,14 @@ public class BufferProxy extends KrollProxy
 
 		validateOffsetAndLength(sourceOffset, sourceLength, sourceBuffer.length);
 
-		System.arraycopy(sourceBuffer, sourceOffset, buffer, offset, sourceLength);
+		System.arraycopy(sourceBuffer, sourceOffset, getBuffer(), offset, sourceLength);
 		return sourceLength;
 	}
 
 	@Kroll.method
 	public BufferProxy clone(Object[] args)
 	{
+		byte[] buffer = getBuffer();
 		int offset = 0;
 		if (args.length > 0 && args[0] != null) {
 			offset = TiConvert.toInt(args[0]);
@@ -306,6 +334,7 @@ public class BufferProxy extends KrollProxy
 			throw new IllegalArgumentException("fill requires at least 1 argument: fillByte");
 		}
 
+		byte[] buffer = getBuffer();
 		int fillByte = TiConvert.toInt(args[0]);
 		int offset = 0;
 		if (args.length > 1 && args[1] != null) {
@@ -325,25 +354,26 @@ public class BufferProxy extends KrollProxy
 	@Kroll.method
 	public void clear()
 	{
-		Arrays.fill(buffer, (byte)0);
+		Arrays.fill(getBuffer(), (byte)0);
 	}
 
 	@Kroll.method
 	public void release()
 	{
 		buffer = new byte[0];
+		tail = null;
 	}
 
 	@Kroll.method
 	public String toString()
 	{
-		return new String(buffer);
+		return new String(getBuffer());
 	}
 
 	@Kroll.method
 	public TiBlob toBlob()
 	{
-		return TiBlob.blobFromData(buffer);
+		return TiBlob.blobFromData(getBuffer());
 	}
 
 	/**
@@ -353,7 +383,7 @@ public class BufferProxy extends KrollProxy
 	@Kroll.getProperty @Kroll.method
 	public int getLength()
 	{
-		return buffer.length;
+		return buffer.length + (tail != null ? tail.length() : 0);
 	}
 
 	/**
@@ -370,7 +400,15 @@ public class BufferProxy extends KrollProxy
 
 	public void resize(int length)
 	{
-		buffer = copyOf(buffer, length);
+		int currentLength = getLength();
+		if (length > currentLength) {
+			if (tail == null) {
+				tail = new TiByteSegments();
+			}
+			tail.grow(length - currentLength);
+		} else if (length < currentLength) {
+			buffer = copyOf(getBuffer(), length);
+		}
 	}
 
 	@Override
@@ -7,6 +7,7 @@
 package ti.modules.titanium.codec;
 
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 
 import org.appcelerator.kroll.KrollDict;
@@ -165,6 +166,177 @@ public class CodecModule extends KrollModule
 		return 0;
 	}
 
+	/**
+	 * Encodes an array of numbers of one type into a buffer in a single call.
+	 * Takes the same arguments as encodeNumber, except that src is an array.
+	 * @return the position after the last encoded number.
+	 */
+	@Kroll.method
+	public int encodeNumbers(KrollDict args)
+	{
+		if (!args.containsKey(TiC.PROPERTY_DEST)) {
+			throw new IllegalArgumentException("dest was not specified for encodeNumbers");
+		}
+		if (!(args.get(TiC.PROPERTY_SOURCE) instanceof Object[])) {
+			throw new IllegalArgumentException("src must be an array for encodeNumbers");
+		}
+		if (!args.containsKey(TiC.PROPERTY_TYPE)) {
+			throw new IllegalArgumentException("type was not specified for encodeNumbers");
+		}
+
+		BufferProxy dest = (BufferProxy) args.get(TiC.PROPERTY_DEST);
+		Object[] src = (Object[]) args.get(TiC.PROPERTY_SOURCE);
+		String type = TiConvert.toString(args, TiC.PROPERTY_TYPE);
+		int byteOrder = getByteOrder(args.get(TiC.PROPERTY_BYTE_ORDER));
+
+		int position = 0;
+		if (args.containsKey(TiC.PROPERTY_POSITION)) {
+			position = TiConvert.toInt(args, TiC.PROPERTY_POSITION);
+		}
+
+		return encodeNumbers(src, type, dest.getBuffer(), position, byteOrder);
+	}
+
+	public static int encodeNumbers(Object[] src, String type, byte dest[], int position, int byteOrder)
+	{
+		int width = getWidth(type);
+		if (width == 0) {
+			throw new IllegalArgumentException("Unknown type: " + type);
+		}
+		ByteBuffer buffer = wrap(dest, position, src.length * width, byteOrder);
+
+		int count = src.length;
+		if (TYPE_BYTE.equals(type)) {
+			for (int i = 0; i < count; i++) {
+				buffer.put((byte) TiConvert.toInt(src[i]));
+			}
+		} else if (TYPE_SHORT.equals(type)) {
+			short[] values = new short[count];
+			for (int i = 0; i < count; i++) {
+				values[i] = (short) TiConvert.toInt(src[i]);
+			}
+			buffer.asShortBuffer().put(values);
+		} else if (TYPE_INT.equals(type)) {
+			int[] values = new int[count];
+			for (int i = 0; i < count; i++) {
+				values[i] = (int) toLong(src[i]);
+			}
+			buffer.asIntBuffer().put(values);
+		} else if (TYPE_LONG.equals(type)) {
+			long[] values = new long[count];
+			for (int i = 0; i < count; i++) {
+				values[i] = toLong(src[i]);
+			}
+			buffer.asLongBuffer().put(values);
+		} else if (TYPE_FLOAT.equals(type)) {
+			float[] values = new float[count];
+			for (int i = 0; i < count; i++) {
+				values[i] = TiConvert.toFloat(src[i]);
+			}
+			buffer.asFloatBuffer().put(values);
+		} else {
+			double[] values = new double[count];
+			for (int i = 0; i < count; i++) {
+				values[i] = TiConvert.toDouble(src[i]);
+			}
+			buffer.asDoubleBuffer().put(values);
+		}
+		return position + count * width;
+	}
+
+	/**
+	 * Decodes consecutive numbers of one type from a buffer in a single call.
+	 * Takes the same arguments as decodeNumber, plus an optional count that defaults to
+	 * the number of values remaining after position.
+	 * @return the decoded numbers.
+	 */
+	@Kroll.method
+	public Object decodeNumbers(KrollDict args)
+	{
+		if (!args.containsKey(TiC.PROPERTY_SOURCE)) {
+			throw new IllegalArgumentException("src was not specified for decodeNumbers");
+		}
+		if (!args.containsKey(TiC.PROPERTY_TYPE)) {
+			throw new IllegalArgumentException("type was not specified for decodeNumbers");
+		}
+
+		BufferProxy buffer = (BufferProxy) args.get(TiC.PROPERTY_SOURCE);
+		String type = TiConvert.toString(args, TiC.PROPERTY_TYPE);
+		int byteOrder = getByteOrder(args.get(TiC.PROPERTY_BYTE_ORDER));
+		int width = getWidth(type);
+		if (width == 0) {
+			throw new IllegalArgumentException("Unknown type: " + type);
+		}
+
+		int position = 0;
+		if (args.containsKey(TiC.PROPERTY_POSITION)) {
+			position = TiConvert.toInt(args, TiC.PROPERTY_POSITION);
+		}
+
+		byte src[] = buffer.getBuffer();
+		int count = (src.length - position) / width;
+		if (args.containsKey(TiC.PROPERTY_COUNT)) {
+			count = TiConvert.toInt(args, TiC.PROPERTY_COUNT);
+		}
+
+		return decodeNumbers(src, type, position, count, byteOrder);
+	}
+
+	/**
+	 * Decodes count numbers of the given type. Bytes and shorts are returned as an int[]
+	 * and a short[] respectively, the other types as arrays of the matching primitive type.
+	 */
+	public static Object decodeNumbers(byte src[], String type, int position, int count, int byteOrder)
+	{
+		ByteBuffer buffer = wrap(src, position, count * getWidth(type), byteOrder);
+
+		if (TYPE_BYTE.equals(type)) {
+			// There is no byte[] conversion to JS, so widen to int.
+			int[] values = new int[count];
+			for (int i = 0; i < count; i++) {
+				values[i] = buffer.get();
+			}
+			return values;
+		} else if (TYPE_SHORT.equals(type)) {
+			short[] values = new short[count];
+			buffer.asShortBuffer().get(values);
+			return values;
+		} else if (TYPE_INT.equals(type)) {
+			int[] values = new int[count];
+			buffer.asIntBuffer().get(values);
+			return values;
+		} else if (TYPE_LONG.equals(type)) {
+			long[] values = new long[count];
+			buffer.asLongBuffer().get(values);
+			return values;
+		} else if (TYPE_FLOAT.equals(type)) {
+			float[] values = new float[count];
+			buffer.asFloatBuffer().get(values);
+			return values;
+		} else {
+			double[] values = new double[count];
+			buffer.asDoubleBuffer().get(values);
+			return values;
+		}
+	}
+
+	private static ByteBuffer wrap(byte array[], int position, int length, int byteOrder)
+	{
+		if (position < 0 || length < 0 || position + length > array.length) {
+			throw new IllegalArgumentException("position of " + position + " and length of " + length
+				+ " is larger than the buffer length: " + array.length);
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(array, position, length);
+		buffer.order(byteOrder == BIG_ENDIAN ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+		return buffer;
+	}
+
+	private static long toLong(Object value)
+	{
+		// Go through long so that unsigned 32-bit values keep their bits when narrowed to int.
+		return (value instanceof Number) ? ((Number) value).longValue() : (long) TiConvert.toDouble(value);
+	}
+
 	@Kroll.method
 	public int encodeString(KrollDict args)
 	{
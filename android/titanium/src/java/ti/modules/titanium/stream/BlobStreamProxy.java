@@ -23,6 +23,7 @@ public class BlobStreamProxy extends KrollProxy implements TiStream
 	private TiBlob tiBlob;
 	private InputStream inputStream = null;
 	private boolean isOpen = false;
+	private long position = 0;
 
 	public BlobStreamProxy(TiBlob tiBlob)
 	{
@@ -86,7 +87,11 @@ public class BlobStreamProxy extends KrollProxy implements TiStream
 
 		if(inputStream != null) {
 			try {
-				return TiStreamHelper.read(inputStream, bufferProxy, offset, length);
+				int bytesRead = TiStreamHelper.read(inputStream, bufferProxy, offset, length);
+				if (bytesRead > 0) {
+					position += bytesRead;
+				}
+				return bytesRead;
 
 			} catch (IOException e) {
 				e.printStackTrace();
@@ -116,6 +121,18 @@ public class BlobStreamProxy extends KrollProxy implements TiStream
 		return true;
 	}
 
+	/**
+	 * @return the number of bytes left to read, or -1 if unknown.
+	 */
+	public long getRemainingLength()
+	{
+		if (!isOpen || tiBlob == null) {
+			return -1;
+		}
+
+		return Math.max(tiBlob.getLength() - position, 0);
+	}
+
 	@Kroll.method
 	public void close() throws IOException
 	{
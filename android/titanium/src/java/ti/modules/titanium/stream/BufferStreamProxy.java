@@ -196,6 +196,18 @@ public class BufferStreamProxy extends KrollProxy implements TiStream
 		return true;
 	}
 
+	/**
+	 * @return the number of bytes left to read, or -1 if unknown.
+	 */
+	public long getRemainingLength()
+	{
+		if (!isOpen || mode != StreamModule.MODE_READ) {
+			return -1;
+		}
+
+		return Math.max(buffer.getLength() - position, 0);
+	}
+
 	@Kroll.method
 	public void close() throws IOException
 	{
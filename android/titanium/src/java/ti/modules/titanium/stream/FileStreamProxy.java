@@ -24,6 +24,8 @@ public class FileStreamProxy extends KrollProxy implements TiStream
 
 	private TiFileProxy fileProxy;
 	private boolean isOpen = false;
+	// Bytes read through this stream so far.
+	private long position = 0;
 
 
 	public FileStreamProxy(TiFileProxy fileProxy)
@@ -83,7 +85,11 @@ public class FileStreamProxy extends KrollProxy implements TiStream
 		}
 
 		try {
-			return TiStreamHelper.read(fileProxy.getBaseFile().getExistingInputStream(), bufferProxy, offset, length);
+			int bytesRead = TiStreamHelper.read(fileProxy.getBaseFile().getExistingInputStream(), bufferProxy, offset, length);
+			if (bytesRead > 0) {
+				position += bytesRead;
+			}
+			return bytesRead;
 
 		} catch (IOException e) {
 			Log.e(TAG, "Unable to read from file, IO error", e);
@@ -160,6 +166,24 @@ public class FileStreamProxy extends KrollProxy implements TiStream
 		return fileProxy.getBaseFile().isOpen();
 	}
 
+	/**
+	 * @return the number of bytes left to read, or -1 if unknown.
+	 */
+	public long getRemainingLength()
+	{
+		if (!isOpen || fileProxy.getBaseFile().getExistingInputStream() == null) {
+			return -1;
+		}
+
+		// InputStream.available() only reports what can be read without blocking, not the rest of the file.
+		long size = fileProxy.getBaseFile().size();
+		if (size <= 0) {
+			return -1;
+		}
+
+		return Math.max(size - position, 0);
+	}
+
 	@Kroll.method
 	public void close() throws IOException
 	{
@@ -7,6 +7,13 @@
 package ti.modules.titanium.stream;
 
 import java.io.IOException;
+import java.util.LinkedList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.appcelerator.kroll.KrollDict;
 import org.appcelerator.kroll.KrollFunction;
@@ -25,6 +32,56 @@ public class StreamModule extends KrollModule
 	@Kroll.constant public static final int MODE_WRITE = 1;
 	@Kroll.constant public static final int MODE_APPEND = 2;
 
+	// Chunk size used by readAll when the length of the stream is unknown.
+	private static final int READ_ALL_CHUNK_SIZE = 8 * 1024;
+	private static final int MAX_POOLED_CHUNK_BUFFERS = 4;
+	private static final int IO_THREADS = 4;
+	private static final int MAX_PENDING_IO_OPERATIONS = 64;
+
+	private static ExecutorService ioExecutor;
+	private static final LinkedList<BufferProxy> chunkBuffers = new LinkedList<BufferProxy>();
+
+	private static synchronized ExecutorService getIOExecutor()
+	{
+		if (ioExecutor == null) {
+			// A read from a socket can block until data arrives, holding one of the threads; later
+			// operations wait in the queue, and are rejected once it is full.
+			ioExecutor = new ThreadPoolExecutor(IO_THREADS, IO_THREADS, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(MAX_PENDING_IO_OPERATIONS), new RejectedExecutionHandler()
+				{
+					public void rejectedExecution(Runnable r, ThreadPoolExecutor executor)
+					{
+						throw new RejectedExecutionException("Unable to start stream operation, too many pending operations");
+					}
+				});
+		}
+		return ioExecutor;
+	}
+
+	private static BufferProxy acquireChunkBuffer(int size)
+	{
+		synchronized (chunkBuffers) {
+			for (BufferProxy buffer : chunkBuffers) {
+				if (buffer.getLength() == size) {
+					chunkBuffers.remove(buffer);
+					return buffer;
+				}
+			}
+		}
+
+		return new BufferProxy(size);
+	}
+
+	private static void releaseChunkBuffer(BufferProxy buffer)
+	{
+		synchronized (chunkBuffers) {
+			if (chunkBuffers.size() >= MAX_POOLED_CHUNK_BUFFERS) {
+				chunkBuffers.removeFirst();
+			}
+			chunkBuffers.add(buffer);
+		}
+	}
+
 	@Kroll.method
 	public Object createStream(KrollDict params)
 	//public Object createStream(Object container)
@@ -120,7 +177,7 @@ public class StreamModule extends KrollModule
 		final int flength = length;
 		final KrollFunction fResultsCallback = resultsCallback;
 
-		new Thread(new Runnable() {
+		getIOExecutor().execute(new Runnable() {
 			public void run()
 			{
 				int bytesRead = -1;
@@ -139,7 +196,7 @@ public class StreamModule extends KrollModule
 
 				fResultsCallback.callAsync(getKrollObject(), buildRWCallbackArgs(fsourceStream, bytesRead, errorState, errorDescription));
 			}
-		}).start();
+		});
 	}
 
 	@Kroll.method
@@ -180,7 +237,7 @@ public class StreamModule extends KrollModule
 		}
 
 		if (args.length == 1) {
-			BufferProxy buffer = new BufferProxy(1024);
+			BufferProxy buffer = new BufferProxy();
 			int offset = 0;
 
 			readAll(sourceStream, buffer, offset);
@@ -192,17 +249,13 @@ public class StreamModule extends KrollModule
 			final BufferProxy fbuffer = bufferArg;
 			final KrollFunction fResultsCallback = resultsCallback;
 
-			new Thread(new Runnable() {
+			getIOExecutor().execute(new Runnable() {
 				public void run()
 				{
 					int offset = 0;
 					int errorState = 0;
 					String errorDescription = "";
 
-					if (fbuffer.getLength() < 1024) {
-						fbuffer.resize(1024);
-					}
-
 					try {
 						readAll(fsourceStream, fbuffer, offset);
 
@@ -213,7 +266,7 @@ public class StreamModule extends KrollModule
 
 					fResultsCallback.callAsync(getKrollObject(), buildRWCallbackArgs(fsourceStream, fbuffer.getLength(), errorState, errorDescription));
 				}
-			}).start();
+			});
 
 			return null; // TODO KrollProxy.UNDEFINED;
 		}
@@ -221,20 +274,51 @@ public class StreamModule extends KrollModule
 
 	private void readAll(TiStream sourceStream, BufferProxy buffer, int offset) throws IOException
 	{
-		int totalBytesRead = 0;
+		// Presize from the stream length when it is known so the data is read without regrowing
+		// the buffer; the extra byte lets the final read report the end of the stream.
+		long remaining = getRemainingLength(sourceStream);
+		int capacity = offset + READ_ALL_CHUNK_SIZE;
+		if (remaining >= 0 && remaining < Integer.MAX_VALUE - offset - 1) {
+			capacity = offset + (int) remaining + 1;
+		}
+		if (buffer.getLength() < capacity) {
+			buffer.resize(capacity);
+		}
 
 		while(true) {
-			int bytesRead = sourceStream.read(new Object[] {buffer, offset, 1024});
+			int space = buffer.getLength() - offset;
+			if (space == 0) {
+				// grow geometrically so reading n bytes costs O(n) copying
+				buffer.resize(Math.max(buffer.getLength() * 2, READ_ALL_CHUNK_SIZE));
+				space = buffer.getLength() - offset;
+			}
+
+			int bytesRead = sourceStream.read(new Object[] {buffer, offset, space});
 			if (bytesRead == -1) {
 				break;
 			}
 
-			totalBytesRead += bytesRead;
-			buffer.resize(1024 + totalBytesRead);
 			offset += bytesRead;
 		}
 
-		buffer.resize(totalBytesRead);
+		if (buffer.getLength() != offset) {
+			buffer.resize(offset);
+		}
+	}
+
+	private long getRemainingLength(TiStream stream)
+	{
+		if (stream instanceof FileStreamProxy) {
+			return ((FileStreamProxy) stream).getRemainingLength();
+
+		} else if (stream instanceof BlobStreamProxy) {
+			return ((BlobStreamProxy) stream).getRemainingLength();
+
+		} else if (stream instanceof BufferStreamProxy) {
+			return ((BufferStreamProxy) stream).getRemainingLength();
+		}
+
+		return -1;
 	}
 
 	@Kroll.method
@@ -305,7 +389,7 @@ public class StreamModule extends KrollModule
 		final int flength = length;
 		final KrollFunction fResultsCallback = resultsCallback;
 
-		new Thread(new Runnable() {
+		getIOExecutor().execute(new Runnable() {
 			public void run()
 			{
 				int bytesWritten = -1;
@@ -323,7 +407,7 @@ public class StreamModule extends KrollModule
 
 				fResultsCallback.callAsync(getKrollObject(), buildRWCallbackArgs(foutputStream, bytesWritten, errorState, errorDescription));
 			}
-		}).start();
+		});
 	}
 
 	@Kroll.method
@@ -380,7 +464,7 @@ public class StreamModule extends KrollModule
 			final int fmaxChunkSize = maxChunkSize;
 			final KrollFunction fResultsCallback = resultsCallback;
 
-			new Thread(new Runnable() {
+			getIOExecutor().execute(new Runnable() {
 				public void run()
 				{
 					int totalBytesWritten = 0;
@@ -397,7 +481,7 @@ public class StreamModule extends KrollModule
 
 					fResultsCallback.callAsync(getKrollObject(), buildWriteStreamCallbackArgs(finputStream, foutputStream, totalBytesWritten, errorState, errorDescription));
 				}
-			}).start();
+			});
 
 			return 0;
 		}
@@ -405,18 +489,22 @@ public class StreamModule extends KrollModule
 
 	private int writeStream(TiStream inputStream, TiStream outputStream, int maxChunkSize) throws IOException
 	{
-		BufferProxy buffer = new BufferProxy(maxChunkSize);
+		BufferProxy buffer = acquireChunkBuffer(maxChunkSize);
 		int totalBytesWritten = 0;
 
-		while(true) {
-			int bytesRead = inputStream.read(new Object[] {buffer, 0, maxChunkSize});
-			if (bytesRead == -1) {
-				break;
+		try {
+			while(true) {
+				int bytesRead = inputStream.read(new Object[] {buffer, 0, maxChunkSize});
+				if (bytesRead == -1) {
+					break;
+				}
+
+				int bytesWritten = outputStream.write(new Object[] {buffer, 0, bytesRead});
+				totalBytesWritten += bytesWritten;
 			}
 
-			int bytesWritten = outputStream.write(new Object[] {buffer, 0, bytesRead});
-			totalBytesWritten += bytesWritten;
-			buffer.clear();
+		} finally {
+			releaseChunkBuffer(buffer);
 		}
 
 		return totalBytesWritten;
@@ -473,15 +561,12 @@ public class StreamModule extends KrollModule
 			final KrollFunction fHandler = handler;
 			final int fmaxChunkSize = maxChunkSize;
 
-			new Thread(
-					new Runnable()
-					{
-						public void run()
-						{
-							pump(finputStream, fHandler, fmaxChunkSize);
-						}
-					}
-				) {}.start();
+			getIOExecutor().execute(new Runnable() {
+				public void run()
+				{
+					pump(finputStream, fHandler, fmaxChunkSize);
+				}
+			});
 
 		} else {
 			pump(inputStream, handler, maxChunkSize);
@@ -494,25 +579,28 @@ public class StreamModule extends KrollModule
 		int errorState = 0;
 		String errorDescription = "";
 
+		// Full chunks are read into one pooled buffer that is reused once the handler returns,
+		// so the handler must copy the data if it needs it later. Short chunks get their own buffer.
+		BufferProxy chunkBuffer = acquireChunkBuffer(maxChunkSize);
 		try {
 			while (true) {
-				BufferProxy buffer = new BufferProxy(maxChunkSize);
-				int bytesRead = inputStream.read(new Object[] {buffer, 0, maxChunkSize});
+				int bytesRead = inputStream.read(new Object[] {chunkBuffer, 0, maxChunkSize});
 				if (bytesRead != -1) {
 					totalBytesRead += bytesRead;
 				}
 
-				if (bytesRead != buffer.getLength()) {
+				BufferProxy buffer = chunkBuffer;
+				if (bytesRead != maxChunkSize) {
 					if (bytesRead == -1) {
-						buffer.resize(0);
+						buffer = new BufferProxy();
 
 					} else {
-						buffer.resize(bytesRead);
+						buffer = new BufferProxy(bytesRead);
+						buffer.write(0, chunkBuffer.getBuffer(), 0, bytesRead);
 					}
 				}
 
 				handler.call(getKrollObject(), buildPumpCallbackArgs(inputStream, buffer, bytesRead, totalBytesRead, errorState, errorDescription));
-				buffer = null;
 
 				if (bytesRead == -1) {
 					break;
@@ -523,6 +611,9 @@ public class StreamModule extends KrollModule
 			errorState = 1;
 			errorDescription = e.getMessage();
 			handler.call(getKrollObject(), buildPumpCallbackArgs(inputStream, new BufferProxy(), 0, totalBytesRead, errorState, errorDescription));
+
+		} finally {
+			releaseChunkBuffer(chunkBuffer);
 		}
 	}
 